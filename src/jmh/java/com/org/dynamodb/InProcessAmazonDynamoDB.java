@@ -0,0 +1,54 @@
+package com.org.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeAction;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-table, in-process AmazonDynamoDB for the store path benchmarks. It supports just the calls DynamoDBMapper and
+ * {@link DynamoDBItemClient} make for load/save, and ignores conditions: the point is to measure request building
+ * and item conversion, not DynamoDB.
+ */
+public class InProcessAmazonDynamoDB extends AbstractAmazonDynamoDB {
+
+    private final Map<Map<String, AttributeValue>, Map<String, AttributeValue>> items = new ConcurrentHashMap<>();
+
+    @Override
+    public GetItemResult getItem(GetItemRequest request) {
+        Map<String, AttributeValue> item = items.get(request.getKey());
+        return new GetItemResult().withItem(item == null ? null : new HashMap<>(item));
+    }
+
+    @Override
+    public PutItemResult putItem(PutItemRequest request) {
+        Map<String, AttributeValue> item = request.getItem();
+        items.put(MerchantPaymentCodec.key(item.get(MerchantPaymentCodec.PAYMENT_ID).getS()), new HashMap<>(item));
+        return new PutItemResult();
+    }
+
+    @Override
+    public UpdateItemResult updateItem(UpdateItemRequest request) {
+        Map<String, AttributeValue> item = items.computeIfAbsent(request.getKey(), key -> new ConcurrentHashMap<>(key));
+        if (request.getAttributeUpdates() != null) {
+            for (Map.Entry<String, AttributeValueUpdate> update : request.getAttributeUpdates().entrySet()) {
+                if (AttributeAction.DELETE.toString().equals(update.getValue().getAction())) {
+                    item.remove(update.getKey());
+                } else {
+                    item.put(update.getKey(), update.getValue().getValue());
+                }
+            }
+        }
+        return new UpdateItemResult();
+    }
+}
@@ -0,0 +1,120 @@
+package com.org.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DynamoDBMapper against the hand-written {@link MerchantPaymentCodec}, for the item conversion alone and for a full
+ * load/save through {@link DynamoDBClient} and {@link DynamoDBItemClient} on an {@link InProcessAmazonDynamoDB}.
+ * <p>
+ * Run with: mvn -Pjmh compile exec:exec@jmh -Djmh.includes=StorePathBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorePathBenchmark {
+
+    private static final String TABLE_NAME = "MerchantPayment";
+
+    private DynamoDBMapperTableModel<MerchantPayment> tableModel;
+    private MerchantPaymentCodec codec;
+    private DynamoDBClient mapperClient;
+    private DynamoDBItemClient itemClient;
+
+    private MerchantPayment payment;
+    private PaymentRecord record;
+    private Map<String, AttributeValue> item;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        AmazonDynamoDB dynamoDB = new InProcessAmazonDynamoDB();
+        DynamoDBMapper mapper = new DynamoDBMapper(dynamoDB);
+        tableModel = mapper.getTableModel(MerchantPayment.class);
+        codec = new MerchantPaymentCodec();
+        mapperClient = new DynamoDBClient(mapper);
+        itemClient = new DynamoDBItemClient(dynamoDB, TABLE_NAME);
+
+        payment = MerchantPayment.builder()
+            .newPayment()
+            .withMerchantId("benchmark-merchant")
+            .withStatus(PaymentStatus.Accepted.name())
+            .withCardNumber("1234432198761543")
+            .withCardName("Benchmark")
+            .withExpiryYear(2030)
+            .withExpiryMonth(12)
+            .withCurrency("GBP")
+            .withAmount(50)
+            .withBillingAddress("77Merenda")
+            .withCreationTimestampSeconds(1641845321L)
+            .withVersion(1L)
+            .build();
+        record = PaymentRecord.of(payment);
+        item = codec.toItem(record);
+        itemClient.saveMakePayment(payment);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> convertWithMapper() {
+        return tableModel.convert(payment);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> convertWithCodec() {
+        return codec.toItem(record);
+    }
+
+    @Benchmark
+    public MerchantPayment unconvertWithMapper() {
+        return tableModel.unconvert(item);
+    }
+
+    @Benchmark
+    public PaymentRecord unconvertWithCodec() {
+        return codec.fromItem(item);
+    }
+
+    @Benchmark
+    public MerchantPayment loadWithMapper() {
+        return mapperClient.getMerchantPayment(payment.getPaymentId());
+    }
+
+    @Benchmark
+    public PaymentRecord loadWithCodec() {
+        return itemClient.getRecord(payment.getPaymentId());
+    }
+
+    @Benchmark
+    public MerchantPayment saveWithMapper() {
+        // Conditions are ignored by the in-process table, so saving the same instance over and over is fine.
+        mapperClient.saveMakePayment(payment);
+        return payment;
+    }
+
+    @Benchmark
+    public MerchantPayment saveWithCodec() {
+        itemClient.saveMakePayment(payment);
+        return payment;
+    }
+}
@@ -0,0 +1,219 @@
+package com.org.lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.org.bank.BankSimulator;
+import com.org.json.PaymentJson;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import com.org.store.InMemoryPaymentStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+/**
+ * Measures the per-request cost of the three handlers end to end, and of each stage of the make-payment path.
+ * Storage is the {@link InMemoryPaymentStore} so the numbers exclude network time.
+ * <p>
+ * Run with: mvn -Pjmh compile exec:exec@jmh (add -Djmh.includes=HandlerBenchmark.makePayment to narrow it down).
+ * The gc profiler is on by default, check gc.alloc.rate.norm for bytes allocated per operation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerBenchmark {
+
+    private static final String MERCHANT_ID = "benchmark-merchant";
+
+    @State(Scope.Benchmark)
+    public static class Handlers {
+        InMemoryPaymentStore store;
+        CreatePaymentHandler createPaymentHandler;
+        MakePaymentHandler makePaymentHandler;
+        GetPaymentHandler getPaymentHandler;
+        Context context;
+
+        ObjectMapper objectMapper;
+        BankSimulator bankSimulator;
+
+        String makePaymentBody;
+        MakePaymentInput makePaymentInput;
+        MerchantPayment existingPayment;
+        MerchantPayment settledPayment;
+        MakePaymentResponse makePaymentResponse;
+        GetPaymentResponse getPaymentResponse;
+        APIGatewayV2HTTPEvent createPaymentEvent;
+        APIGatewayV2HTTPEvent getPaymentEvent;
+
+        @Setup(Level.Trial)
+        public void setup() throws JsonProcessingException {
+            store = new InMemoryPaymentStore();
+            createPaymentHandler = new CreatePaymentHandler(store);
+            makePaymentHandler = new MakePaymentHandler(store);
+            getPaymentHandler = new GetPaymentHandler(store);
+            context = new BenchmarkContext();
+
+            objectMapper = new ObjectMapper();
+            objectMapper.setSerializationInclusion(NON_NULL);
+            bankSimulator = new BankSimulator();
+
+            String paymentId = createPaymentHandler.createPayment(new CreatePaymentInput(MERCHANT_ID)).getPaymentId();
+            makePaymentBody = makePaymentBody(paymentId);
+            makePaymentInput = PaymentJson.readMakePaymentInput(makePaymentBody);
+            existingPayment = store.getMerchantPayment(paymentId);
+
+            makePaymentHandler.processMakePayment(makePaymentInput);
+            settledPayment = store.getMerchantPayment(paymentId);
+            makePaymentResponse = new MakePaymentResponse(PaymentStatus.Accepted.name(), null, null);
+            getPaymentResponse = getPaymentHandler.getPayment(new GetPaymentInput(MERCHANT_ID, paymentId));
+
+            createPaymentEvent = new APIGatewayV2HTTPEvent();
+            createPaymentEvent.setBody("{\"merchantId\":\"" + MERCHANT_ID + "\"}");
+
+            getPaymentEvent = new APIGatewayV2HTTPEvent();
+            getPaymentEvent.setQueryStringParameters(Map.of("merchantId", MERCHANT_ID, "paymentId", paymentId));
+        }
+    }
+
+    /**
+     * A freshly created payment per invocation, since a settled payment short-circuits make-payment.
+     */
+    @State(Scope.Thread)
+    public static class FreshPayment {
+        APIGatewayV2HTTPEvent makePaymentEvent;
+        String paymentId;
+
+        @Setup(Level.Invocation)
+        public void setup(Handlers handlers) {
+            paymentId = handlers.createPaymentHandler.createPayment(new CreatePaymentInput(MERCHANT_ID)).getPaymentId();
+            makePaymentEvent = new APIGatewayV2HTTPEvent();
+            makePaymentEvent.setBody(makePaymentBody(paymentId));
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown(Handlers handlers) {
+            handlers.store.delete(paymentId);
+        }
+    }
+
+    /**
+     * Tracks the response of the create-payment benchmark so the created item can be dropped afterwards.
+     */
+    @State(Scope.Thread)
+    public static class CreatedPayment {
+        APIGatewayV2HTTPResponse response;
+
+        @TearDown(Level.Invocation)
+        public void tearDown(Handlers handlers) throws JsonProcessingException {
+            String paymentId = handlers.objectMapper.readTree(response.getBody()).get("paymentId").asText();
+            handlers.store.delete(paymentId);
+        }
+    }
+
+    // End to end, through handleRequest.
+
+    @Benchmark
+    public APIGatewayV2HTTPResponse createPayment(Handlers handlers, CreatedPayment created) {
+        created.response = handlers.createPaymentHandler.handleRequest(handlers.createPaymentEvent, handlers.context);
+        return created.response;
+    }
+
+    @Benchmark
+    public APIGatewayV2HTTPResponse makePayment(Handlers handlers, FreshPayment payment) {
+        return handlers.makePaymentHandler.handleRequest(payment.makePaymentEvent, handlers.context);
+    }
+
+    @Benchmark
+    public APIGatewayV2HTTPResponse getPayment(Handlers handlers) {
+        return handlers.getPaymentHandler.handleRequest(handlers.getPaymentEvent, handlers.context);
+    }
+
+    // Make-payment stages.
+
+    @Benchmark
+    public MakePaymentInput stageParseMakePaymentInput(Handlers handlers) throws JsonProcessingException {
+        return PaymentJson.readMakePaymentInput(handlers.makePaymentBody);
+    }
+
+    /**
+     * The ObjectMapper path the handlers used before PaymentJson, kept as a baseline.
+     */
+    @Benchmark
+    public MakePaymentInput stageParseMakePaymentInputWithObjectMapper(Handlers handlers) throws JsonProcessingException {
+        return handlers.objectMapper.readValue(handlers.makePaymentBody, MakePaymentInput.class);
+    }
+
+    @Benchmark
+    public MerchantPayment stageBuildPaymentToBeSaved(Handlers handlers) {
+        return MerchantPayment.builder()
+            .withMakePaymentInput(handlers.makePaymentInput)
+            .withStatus(handlers.existingPayment.getStatus())
+            .withCreationTimestampSeconds(handlers.existingPayment.getCreationTimestampSeconds())
+            .withVersion(handlers.existingPayment.getVersion())
+            .build();
+    }
+
+    @Benchmark
+    public PaymentStatus stageBankSimulator(Handlers handlers) {
+        return handlers.bankSimulator.authorise(handlers.existingPayment);
+    }
+
+    @Benchmark
+    public MerchantPayment stageStoreRead(Handlers handlers) {
+        return handlers.store.getMerchantPayment(handlers.settledPayment.getPaymentId());
+    }
+
+    @Benchmark
+    public MerchantPayment stageStoreWrite(Handlers handlers) {
+        // saveMakePayment bumps the version in place, so the same instance stays writable.
+        handlers.store.saveMakePayment(handlers.settledPayment);
+        return handlers.settledPayment;
+    }
+
+    @Benchmark
+    public String stageSerializeMakePaymentResponse(Handlers handlers) {
+        return PaymentJson.write(handlers.makePaymentResponse);
+    }
+
+    @Benchmark
+    public String stageSerializeGetPaymentResponse(Handlers handlers) {
+        return PaymentJson.write(handlers.getPaymentResponse);
+    }
+
+    @Benchmark
+    public String stageSerializeGetPaymentResponseWithObjectMapper(Handlers handlers) throws JsonProcessingException {
+        return handlers.objectMapper.writeValueAsString(handlers.getPaymentResponse);
+    }
+
+    private static String makePaymentBody(String paymentId) {
+        return "{\"paymentId\":\"" + paymentId + "\","
+            + "\"merchantId\":\"" + MERCHANT_ID + "\","
+            + "\"cardNumber\":\"1234432198761543\","
+            + "\"expiryYear\":2030,"
+            + "\"expiryMonth\":12,"
+            + "\"currency\":\"GBP\","
+            + "\"amount\":50,"
+            + "\"cardName\":\"Benchmark\","
+            + "\"billingAddress\":\"77Merenda\","
+            + "\"cvv\":\"232\"}";
+    }
+}
@@ -0,0 +1,19 @@
+package com.org.loadgen;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+
+/**
+ * The three calls of a payment, either straight to the handlers or over HTTP to a GatewayServer.
+ */
+interface GatewayTarget extends AutoCloseable {
+
+    APIGatewayV2HTTPResponse createPayment(String body) throws Exception;
+
+    APIGatewayV2HTTPResponse makePayment(String body) throws Exception;
+
+    APIGatewayV2HTTPResponse getPayment(String merchantId, String paymentId) throws Exception;
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,109 @@
+package com.org.loadgen;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.local.embedded.DynamoDBEmbedded;
+import com.amazonaws.services.dynamodbv2.local.shared.access.AmazonDynamoDBLocal;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.org.bank.BankSimulator;
+import com.org.bank.ExecutorBankConnector;
+import com.org.dynamodb.DynamoDBItemClient;
+import com.org.dynamodb.MerchantPaymentCodec;
+import com.org.faults.FaultInjector;
+import com.org.faults.FaultProfile;
+import com.org.lambda.CreatePaymentHandler;
+import com.org.lambda.GetPaymentHandler;
+import com.org.lambda.MakePaymentHandler;
+import com.org.modules.Env;
+import com.org.payments.MerchantPayment;
+import com.org.store.FaultInjectingPaymentStore;
+import com.org.store.InMemoryPaymentStore;
+import com.org.store.PaymentStore;
+
+import java.util.Map;
+
+/**
+ * Calls the handlers in-process, on the in-memory store or on an embedded DynamoDB Local. The bankFaultProfile and
+ * storeFaultProfile env variables add latency and failures as they do in the gateway, since the simulator and the stores
+ * answer far quicker than the real ones.
+ */
+class HandlerTarget implements GatewayTarget {
+
+    private static final String TABLE_NAME = "MerchantPaymentLoadTable";
+
+    private final AmazonDynamoDBLocal dynamoDBLocal;
+    private final CreatePaymentHandler createPaymentHandler;
+    private final MakePaymentHandler makePaymentHandler;
+    private final GetPaymentHandler getPaymentHandler;
+
+    HandlerTarget(String target, int users) {
+        PaymentStore store;
+        if ("memory".equals(target)) {
+            dynamoDBLocal = null;
+            store = new InMemoryPaymentStore();
+        } else if ("dynamodb-local".equals(target)) {
+            System.setProperty("sqlite4java.library.path", "native-libs");
+            dynamoDBLocal = DynamoDBEmbedded.create();
+            store = new DynamoDBItemClient(createTable(dynamoDBLocal.amazonDynamoDB()), TABLE_NAME);
+        } else {
+            throw new IllegalArgumentException("Unknown target: " + target);
+        }
+
+        FaultProfile storeFaults = FaultProfile.parse(Env.get("storeFaultProfile", null));
+        if (storeFaults.isEnabled()) {
+            store = new FaultInjectingPaymentStore(store, new FaultInjector(storeFaults));
+        }
+        BankSimulator bank = new BankSimulator(ExecutorBankConnector.newExecutor(
+            Math.max(users, ExecutorBankConnector.DEFAULT_CONCURRENCY), ExecutorBankConnector.DEFAULT_QUEUE_SIZE),
+            new FaultInjector(FaultProfile.parse(Env.get("bankFaultProfile", null))));
+
+        createPaymentHandler = new CreatePaymentHandler(store);
+        makePaymentHandler = new MakePaymentHandler(store, bank, false, Env.getLong("bankTimeoutMillis", 5_000));
+        getPaymentHandler = new GetPaymentHandler(store);
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse createPayment(String body) {
+        return createPaymentHandler.handle(body);
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse makePayment(String body) {
+        return makePaymentHandler.handle(body);
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse getPayment(String merchantId, String paymentId) {
+        return getPaymentHandler.handle(null, Map.of("merchantId", merchantId, "paymentId", paymentId));
+    }
+
+    @Override
+    public void close() {
+        if (dynamoDBLocal != null) {
+            dynamoDBLocal.shutdown();
+        }
+    }
+
+    /**
+     * Same table as the acceptance tests, MerchantCreationGSI included so writes cost what they do in the deployed table.
+     */
+    private static AmazonDynamoDB createTable(AmazonDynamoDB client) {
+        CreateTableRequest request = new DynamoDBMapper(client).generateCreateTableRequest(MerchantPayment.class)
+            .withTableName(TABLE_NAME)
+            .withProvisionedThroughput(new ProvisionedThroughput(1000L, 1000L));
+        for (GlobalSecondaryIndex index : request.getGlobalSecondaryIndexes()) {
+            index.withProvisionedThroughput(new ProvisionedThroughput(1000L, 1000L))
+                .withProjection(new Projection()
+                    .withProjectionType(ProjectionType.INCLUDE)
+                    .withNonKeyAttributes(MerchantPaymentCodec.MERCHANT_INDEX_ATTRIBUTES));
+        }
+        new DynamoDB(client).createTable(request);
+        return client;
+    }
+}
@@ -0,0 +1,59 @@
+package com.org.loadgen;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Calls a running GatewayServer. Its merchant rate limits apply, so either raise them or spread the load over more merchants.
+ */
+class HttpTarget implements GatewayTarget {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final String url;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+
+    HttpTarget(String url) {
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse createPayment(String body) throws Exception {
+        return post("/create-payment", body);
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse makePayment(String body) throws Exception {
+        return post("/make-payment", body);
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse getPayment(String merchantId, String paymentId) throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(url + "/get-payment?merchantId=" + encode(merchantId)
+            + "&paymentId=" + encode(paymentId))).timeout(TIMEOUT).GET().build());
+    }
+
+    private APIGatewayV2HTTPResponse post(String path, String body) throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(url + path)).timeout(TIMEOUT)
+            .POST(HttpRequest.BodyPublishers.ofString(body)).build());
+    }
+
+    private APIGatewayV2HTTPResponse send(HttpRequest request) throws Exception {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        return APIGatewayV2HTTPResponse.builder()
+            .withStatusCode(response.statusCode())
+            .withBody(response.body())
+            .build();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
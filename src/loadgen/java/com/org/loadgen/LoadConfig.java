@@ -0,0 +1,193 @@
+package com.org.loadgen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * How to drive the gateway, parsed from a comma separated spec like {@link com.org.faults.FaultProfile}'s, e.g.
+ * {@code target=memory,mode=open,rate=500,users=64,durationSeconds=60,amounts=50:90/24:4/1:3/2:3}.
+ * <ul>
+ *     <li>target: memory (the in-process store), dynamodb-local, or http for a running GatewayServer at url.</li>
+ *     <li>mode: closed, users each running a flow after the other (paced every pacingMillis if set), or open, flows
+ *     started at a fixed rate per second whatever the response times, by up to users threads.</li>
+ *     <li>amounts: the make-payment amounts and their weights, 1 is Declined, 2 InsufficientFunds, 24 Pending then
+ *     Accepted, anything else Accepted.</li>
+ * </ul>
+ */
+public class LoadConfig {
+
+    enum Mode {
+        closed,
+        open
+    }
+
+    private String target = "memory";
+    private String url = "http://127.0.0.1:8080";
+    private Mode mode = Mode.closed;
+    private int users = 16;
+    private double rate = 100;
+    private long pacingMillis = 0;
+    private int maxOutstanding = 10_000;
+    private long durationSeconds = 30;
+    private long warmupSeconds = 5;
+    private int merchants = 10;
+    private long seed = 42;
+    private String output = "target/loadgen-result.json";
+    private String amountSpec = "50:90/24:4/1:3/2:3";
+    private final List<Integer> amounts = new ArrayList<>();
+    private final List<Integer> cumulativeWeights = new ArrayList<>();
+
+    public static LoadConfig parse(String spec) {
+        LoadConfig config = new LoadConfig();
+        if (spec != null && !spec.isBlank()) {
+            for (String entry : spec.split(",")) {
+                String[] keyValue = entry.split("=", 2);
+                if (keyValue.length != 2) {
+                    throw new IllegalArgumentException("Invalid load generator option: " + entry);
+                }
+                config.set(keyValue[0].trim(), keyValue[1].trim());
+            }
+        }
+        config.parseAmounts();
+        if (config.users < 1 || config.rate <= 0 || config.durationSeconds < 1 || config.merchants < 1) {
+            throw new IllegalArgumentException("users, rate, durationSeconds and merchants must be positive");
+        }
+        return config;
+    }
+
+    /**
+     * @return a make-payment amount, drawn from the mix.
+     */
+    int nextAmount(Random random) {
+        int draw = random.nextInt(cumulativeWeights.get(cumulativeWeights.size() - 1));
+        for (int i = 0; i < amounts.size(); i++) {
+            if (draw < cumulativeWeights.get(i)) {
+                return amounts.get(i);
+            }
+        }
+        throw new IllegalStateException("Unreachable");
+    }
+
+    private void set(String key, String value) {
+        try {
+            switch (key) {
+                case "target":
+                    target = value;
+                    break;
+                case "url":
+                    url = value;
+                    break;
+                case "mode":
+                    mode = Mode.valueOf(value);
+                    break;
+                case "users":
+                    users = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "pacingMillis":
+                    pacingMillis = Long.parseLong(value);
+                    break;
+                case "maxOutstanding":
+                    maxOutstanding = Integer.parseInt(value);
+                    break;
+                case "durationSeconds":
+                    durationSeconds = Long.parseLong(value);
+                    break;
+                case "warmupSeconds":
+                    warmupSeconds = Long.parseLong(value);
+                    break;
+                case "merchants":
+                    merchants = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "output":
+                    output = value;
+                    break;
+                case "amounts":
+                    amountSpec = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown load generator option: " + key);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+        }
+    }
+
+    private void parseAmounts() {
+        int total = 0;
+        for (String entry : amountSpec.split("/")) {
+            String[] amountWeight = entry.split(":");
+            if (amountWeight.length != 2) {
+                throw new IllegalArgumentException("Invalid amount mix entry, expected AMOUNT:WEIGHT: " + entry);
+            }
+            int weight = Integer.parseInt(amountWeight[1].trim());
+            if (weight <= 0) {
+                continue;
+            }
+            total += weight;
+            amounts.add(Integer.parseInt(amountWeight[0].trim()));
+            cumulativeWeights.add(total);
+        }
+        if (amounts.isEmpty()) {
+            throw new IllegalArgumentException("The amount mix needs at least one positive weight");
+        }
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public long getPacingMillis() {
+        return pacingMillis;
+    }
+
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public long getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getMerchants() {
+        return merchants;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public String getAmountSpec() {
+        return amountSpec;
+    }
+}
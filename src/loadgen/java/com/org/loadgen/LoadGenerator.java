@@ -0,0 +1,259 @@
+package com.org.loadgen;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.org.payments.PaymentStatus;
+
+import java.time.Year;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the create, make and get payment flow against the gateway to find where it saturates, and writes throughput,
+ * latency percentiles and errors as JSON (target/loadgen-result.json by default).
+ * <p>
+ * Run with: mvn -Ploadgen test-compile exec:exec@loadgen -Dloadgen.options=mode=open,rate=500,durationSeconds=60
+ * See {@link LoadConfig} for the options.
+ */
+public class LoadGenerator {
+
+    private final LoadConfig config;
+    private final GatewayTarget target;
+    private final LoadRecorder recorder = new LoadRecorder();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int expiryYear = Year.now().getValue() + 2;
+
+    LoadGenerator(LoadConfig config, GatewayTarget target) {
+        this.config = config;
+        this.target = target;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.parse(args.length > 0 ? args[0] : null);
+        try (GatewayTarget target = "http".equals(config.getTarget()) ? new HttpTarget(config.getUrl())
+            : new HandlerTarget(config.getTarget(), config.getUsers())) {
+            Map<String, Object> report = new LoadGenerator(config, target).run();
+            System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(report));
+            System.out.println("Written to " + config.getOutput());
+        }
+        // The bank's and the store's pools are daemon threads, but the DynamoDB Local ones aren't.
+        System.exit(0);
+    }
+
+    Map<String, Object> run() throws Exception {
+        long startNanos = System.nanoTime();
+        long measureFromNanos = startNanos + TimeUnit.SECONDS.toNanos(config.getWarmupSeconds());
+        long endNanos = measureFromNanos + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+        recorder.setWindow(measureFromNanos, endNanos);
+        System.out.println("Running " + config.getMode() + " loop against " + config.getTarget() + " for "
+            + config.getWarmupSeconds() + "s warmup and " + config.getDurationSeconds() + "s measured");
+
+        ExecutorService users = Executors.newFixedThreadPool(config.getUsers(), new UserThreadFactory());
+        if (config.getMode() == LoadConfig.Mode.closed) {
+            for (int user = 0; user < config.getUsers(); user++) {
+                int userIndex = user;
+                users.execute(() -> runClosedLoop(userIndex, startNanos, endNanos));
+            }
+        } else {
+            runOpenLoop(users, startNanos, endNanos);
+        }
+        users.shutdown();
+        if (!users.awaitTermination(config.getDurationSeconds() + 60, TimeUnit.SECONDS)) {
+            users.shutdownNow();
+        }
+
+        Map<String, Object> report = recorder.report(config, endNanos - measureFromNanos);
+        recorder.write(report, config.getOutput());
+        return report;
+    }
+
+    /**
+     * Each user runs a flow after the other. With pacingMillis, flows are meant to start on a fixed schedule and a late
+     * start counts towards the response time. Without, a flow is meant to start when the previous one ends.
+     */
+    private void runClosedLoop(int user, long startNanos, long endNanos) {
+        long pacingNanos = TimeUnit.MILLISECONDS.toNanos(config.getPacingMillis());
+        long intendedStartNanos = startNanos;
+        for (long flow = 0; intendedStartNanos - endNanos < 0; flow++) {
+            long now = System.nanoTime();
+            if (pacingNanos == 0) {
+                intendedStartNanos = now;
+            } else if (intendedStartNanos - now > 0) {
+                LockSupport.parkNanos(intendedStartNanos - now);
+            }
+            runFlow(intendedStartNanos, new Random(config.getSeed() * 31 + user * 1_000_003L + flow));
+            if (pacingNanos > 0) {
+                intendedStartNanos += pacingNanos;
+            } else {
+                intendedStartNanos = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Flows are meant to start every 1/rate seconds whatever the response times, and wait for a free user if there's none.
+     * Once maxOutstanding flows are waiting, new ones are dropped and counted rather than queued without bounds.
+     */
+    private void runOpenLoop(ExecutorService users, long startNanos, long endNanos) {
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.getRate();
+        AtomicInteger outstanding = new AtomicInteger();
+        for (long flow = 0; ; flow++) {
+            long intendedStartNanos = startNanos + (long) (flow * intervalNanos);
+            if (intendedStartNanos - endNanos >= 0) {
+                return;
+            }
+            long waitNanos = intendedStartNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            if (outstanding.get() >= config.getMaxOutstanding()) {
+                if (recorder.isMeasured(intendedStartNanos)) {
+                    recorder.countDropped();
+                }
+                continue;
+            }
+            outstanding.incrementAndGet();
+            long flowIndex = flow;
+            users.execute(() -> {
+                try {
+                    runFlow(intendedStartNanos, new Random(config.getSeed() * 31 + flowIndex));
+                } finally {
+                    outstanding.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    private void runFlow(long intendedStartNanos, Random random) {
+        boolean measured = recorder.isMeasured(intendedStartNanos);
+        long startNanos = System.nanoTime();
+        boolean succeeded = makeOnePayment(random, measured);
+        if (measured) {
+            recorder.recordFlow(intendedStartNanos, startNanos, System.nanoTime(), !succeeded);
+        }
+    }
+
+    /**
+     * Creates a payment, pays it (paying a Pending one again, as a merchant would) and reads it back.
+     *
+     * @return false if any call failed.
+     */
+    private boolean makeOnePayment(Random random, boolean measured) {
+        String merchantId = "loadgen-merchant-" + random.nextInt(config.getMerchants());
+        JsonNode created = call("create-payment", measured, () -> target.createPayment("{\"merchantId\":\"" + merchantId + "\"}"));
+        if (created == null) {
+            return false;
+        }
+        String paymentId = created.path("paymentId").asText();
+
+        int amount = config.nextAmount(random);
+        String makePaymentBody = makePaymentBody(paymentId, merchantId, amount);
+        JsonNode made = call("make-payment", measured, () -> target.makePayment(makePaymentBody));
+        if (made != null && PaymentStatus.Pending.name().equals(made.path("paymentStatus").asText())) {
+            made = call("make-payment", measured, () -> target.makePayment(makePaymentBody));
+        }
+        if (made == null) {
+            return false;
+        }
+        String status = made.path("paymentStatus").asText();
+        if (measured) {
+            recorder.countOutcome(status);
+            if (!expectedStatus(amount).equals(status)) {
+                recorder.countError("make-payment:" + status + " for amount " + amount);
+            }
+        }
+
+        JsonNode fetched = call("get-payment", measured, () -> target.getPayment(merchantId, paymentId));
+        if (fetched == null) {
+            return false;
+        }
+        if (measured && !status.equals(fetched.path("status").asText())) {
+            // A save that went to the outbox, or a store read behind the write.
+            recorder.countError("get-payment:stale status");
+        }
+        return true;
+    }
+
+    /**
+     * @return the parsed body, or null if the call threw, got an HTTP error or a failCode.
+     */
+    private JsonNode call(String operation, boolean measured, Call call) {
+        long startNanos = System.nanoTime();
+        APIGatewayV2HTTPResponse response;
+        try {
+            response = call.call();
+        } catch (Exception e) {
+            if (measured) {
+                recorder.countError(operation + ":" + e.getClass().getSimpleName());
+            }
+            return null;
+        }
+        if (measured) {
+            recorder.recordOperation(operation, System.nanoTime() - startNanos);
+        }
+
+        if (response.getStatusCode() != 200) {
+            if (measured) {
+                recorder.countError(operation + ":HTTP " + response.getStatusCode());
+            }
+            return null;
+        }
+        JsonNode body;
+        try {
+            body = objectMapper.readTree(response.getBody());
+        } catch (Exception e) {
+            if (measured) {
+                recorder.countError(operation + ":unreadable body");
+            }
+            return null;
+        }
+        if (body.hasNonNull("failCode")) {
+            if (measured) {
+                recorder.countError(operation + ":" + body.get("failCode").asInt());
+            }
+            return null;
+        }
+        return body;
+    }
+
+    private String makePaymentBody(String paymentId, String merchantId, int amount) {
+        return "{\"paymentId\":\"" + paymentId + "\",\"merchantId\":\"" + merchantId + "\",\"cardNumber\":\"1234432198761543\","
+            + "\"expiryYear\":" + expiryYear + ",\"expiryMonth\":12,\"currency\":\"GBP\",\"amount\":" + amount + ","
+            + "\"cardName\":\"loadgen\",\"billingAddress\":\"77Merenda\",\"cvv\":\"232\"}";
+    }
+
+    /**
+     * What BankSimulator answers for the amount, after paying a Pending payment again.
+     */
+    private static String expectedStatus(int amount) {
+        switch (amount) {
+            case 1:
+                return PaymentStatus.Declined.name();
+            case 2:
+                return PaymentStatus.InsufficientFunds.name();
+            default:
+                return PaymentStatus.Accepted.name();
+        }
+    }
+
+    private interface Call {
+        APIGatewayV2HTTPResponse call() throws Exception;
+    }
+
+    private static class UserThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "loadgen-user-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.org.loadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.org.metrics.LatencyHistogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies, outcomes and errors of a run, and the report written at the end.
+ * <p>
+ * A flow's service time runs from when it actually started, its response time from when it was meant to start. The two only
+ * differ when flows start late because the gateway is behind, which is exactly the wait a plain service time hides
+ * (coordinated omission), so response time is the one to compare against a latency target.
+ */
+class LoadRecorder {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final ConcurrentHashMap<String, LatencyHistogram> operations = new ConcurrentHashMap<>();
+    private final LatencyHistogram flowServiceTime = new LatencyHistogram();
+    private final LatencyHistogram flowResponseTime = new LatencyHistogram();
+    private final ConcurrentHashMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder flows = new LongAdder();
+    private final LongAdder failedFlows = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long measureFromNanos;
+    private volatile long measureToNanos;
+
+    /**
+     * Only flows meant to start within the window are recorded, the ones before it are the warmup.
+     */
+    void setWindow(long fromNanos, long toNanos) {
+        this.measureFromNanos = fromNanos;
+        this.measureToNanos = toNanos;
+    }
+
+    boolean isMeasured(long intendedStartNanos) {
+        return intendedStartNanos - measureFromNanos >= 0 && intendedStartNanos - measureToNanos < 0;
+    }
+
+    void recordOperation(String operation, long latencyNanos) {
+        requests.increment();
+        operations.computeIfAbsent(operation, name -> new LatencyHistogram()).recordNanos(latencyNanos);
+    }
+
+    void recordFlow(long intendedStartNanos, long startNanos, long endNanos, boolean failed) {
+        flows.increment();
+        if (failed) {
+            failedFlows.increment();
+        }
+        flowServiceTime.recordNanos(endNanos - startNanos);
+        flowResponseTime.recordNanos(endNanos - intendedStartNanos);
+    }
+
+    void countOutcome(String outcome) {
+        outcomes.computeIfAbsent(outcome, name -> new LongAdder()).increment();
+    }
+
+    void countError(String error) {
+        errors.computeIfAbsent(error, name -> new LongAdder()).increment();
+    }
+
+    /**
+     * An open-loop flow that wasn't started because too many were already waiting.
+     */
+    void countDropped() {
+        dropped.increment();
+    }
+
+    long getFlows() {
+        return flows.sum();
+    }
+
+    Map<String, Object> report(LoadConfig config, long measuredNanos) {
+        double seconds = measuredNanos / 1e9;
+        Map<String, Object> report = new LinkedHashMap<>();
+        Map<String, Object> configReport = new LinkedHashMap<>();
+        configReport.put("target", config.getTarget());
+        configReport.put("mode", config.getMode().name());
+        configReport.put("users", config.getUsers());
+        if (config.getMode() == LoadConfig.Mode.open) {
+            configReport.put("rate", config.getRate());
+        } else {
+            configReport.put("pacingMillis", config.getPacingMillis());
+        }
+        configReport.put("durationSeconds", config.getDurationSeconds());
+        configReport.put("warmupSeconds", config.getWarmupSeconds());
+        configReport.put("merchants", config.getMerchants());
+        configReport.put("amounts", config.getAmountSpec());
+        configReport.put("seed", config.getSeed());
+        report.put("config", configReport);
+
+        report.put("measuredSeconds", seconds);
+        report.put("flows", flows.sum());
+        report.put("failedFlows", failedFlows.sum());
+        report.put("droppedFlows", dropped.sum());
+        report.put("flowsPerSecond", flows.sum() / seconds);
+        report.put("requestsPerSecond", requests.sum() / seconds);
+        report.put("flowResponseTime", latencies(flowResponseTime.snapshot()));
+        report.put("flowServiceTime", latencies(flowServiceTime.snapshot()));
+        Map<String, Object> operationReports = new TreeMap<>();
+        operations.forEach((operation, histogram) -> operationReports.put(operation, latencies(histogram.snapshot())));
+        report.put("operations", operationReports);
+        report.put("outcomes", counts(outcomes));
+        report.put("errors", counts(errors));
+        return report;
+    }
+
+    void write(Map<String, Object> report, String path) throws IOException {
+        File file = new File(path);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+    }
+
+    private static Map<String, Object> latencies(LatencyHistogram.Snapshot snapshot) {
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        latencies.put("count", snapshot.getCount());
+        for (double percentile : PERCENTILES) {
+            latencies.put("p" + (percentile % 1 == 0 ? String.valueOf((int) percentile) : String.valueOf(percentile)) + "Millis",
+                millis(snapshot.getPercentileMicros(percentile)));
+        }
+        latencies.put("maxMillis", millis(snapshot.getMaxMicros()));
+        return latencies;
+    }
+
+    private static double millis(long micros) {
+        return micros / (double) TimeUnit.MILLISECONDS.toMicros(1);
+    }
+
+    private static Map<String, Long> counts(Map<String, LongAdder> adders) {
+        Map<String, Long> counts = new TreeMap<>();
+        adders.forEach((name, adder) -> counts.put(name, adder.sum()));
+        return counts;
+    }
+}
@@ -0,0 +1,78 @@
+package com.org.aggregates;
+
+import java.util.Objects;
+
+/**
+ * One counter of a merchant: the payments that moved to a status in a time bucket, in one currency.
+ */
+public final class AggregateKey {
+
+    private final String merchantId;
+    private final Granularity granularity;
+    private final long bucketStartSeconds;
+    private final String status;
+    private final String currency;
+
+    /**
+     * @param currency the payments' currency, or null for payments without one.
+     */
+    public AggregateKey(String merchantId, Granularity granularity, long bucketStartSeconds, String status, String currency) {
+        this.merchantId = merchantId;
+        this.granularity = granularity;
+        this.bucketStartSeconds = bucketStartSeconds;
+        this.status = status;
+        this.currency = currency;
+    }
+
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public Granularity getGranularity() {
+        return granularity;
+    }
+
+    public long getBucketStartSeconds() {
+        return bucketStartSeconds;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AggregateKey that = (AggregateKey) o;
+        return bucketStartSeconds == that.bucketStartSeconds
+            && merchantId.equals(that.merchantId)
+            && granularity == that.granularity
+            && status.equals(that.status)
+            && Objects.equals(currency, that.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(merchantId, granularity, bucketStartSeconds, status, currency);
+    }
+
+    @Override
+    public String toString() {
+        return "AggregateKey{" +
+            "merchantId='" + merchantId + '\'' +
+            ", granularity=" + granularity +
+            ", bucketStartSeconds=" + bucketStartSeconds +
+            ", status='" + status + '\'' +
+            ", currency='" + currency + '\'' +
+            '}';
+    }
+}
@@ -0,0 +1,29 @@
+package com.org.aggregates;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Where the merchant aggregates are kept, along with the sequence numbers of the changes already counted in them.
+ */
+public interface AggregateStore {
+
+    /**
+     * Most sequence numbers and aggregates together in one {@link #apply}, the DynamoDB limit of a transaction.
+     */
+    int MAX_WRITES = 25;
+
+    /**
+     * Adds the deltas to the aggregates and remembers the sequence numbers they came from, all or nothing.
+     *
+     * @return the sequence numbers that were already counted, in which case nothing was applied.
+     */
+    Set<String> apply(Collection<String> sequenceNumbers, Collection<MerchantAggregate> deltas);
+
+    /**
+     * @return the merchant's aggregates of the buckets starting between fromSeconds and toSeconds (both inclusive),
+     * oldest first.
+     */
+    List<MerchantAggregate> query(String merchantId, Granularity granularity, long fromSeconds, long toSeconds);
+}
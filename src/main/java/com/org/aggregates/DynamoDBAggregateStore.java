@@ -0,0 +1,165 @@
+package com.org.aggregates;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.CancellationReason;
+import com.amazonaws.services.dynamodbv2.model.Put;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+import com.amazonaws.services.dynamodbv2.model.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AggregateStore} on a DynamoDB table keyed by aggregateId, the merchantId and granularity (e.g. "merchantA#H"),
+ * and bucket, the zero-padded bucket start, status and currency (e.g. "000001700000000#Accepted#GBP"), so a merchant's
+ * buckets of a time range are one query.
+ * <p>
+ * Every {@link #apply} is a transaction: a marker item per sequence number, put only if it isn't there yet, and an ADD
+ * per aggregate. If any marker exists the whole transaction is cancelled, so a change is counted at most once. Markers
+ * expire after {@link #MARKER_RETENTION_SECONDS}, longer than a stream keeps its records. Aggregates expire once their
+ * granularity's retention has passed.
+ */
+public class DynamoDBAggregateStore implements AggregateStore {
+
+    public static final String AGGREGATE_ID = "aggregateId";
+    public static final String BUCKET = "bucket";
+    public static final String COUNT = "count";
+    public static final String AMOUNT = "amount";
+    public static final String EXPIRY_TIMESTAMP_SECONDS = "expiryTimestampSeconds";
+
+    static final long MARKER_RETENTION_SECONDS = TimeUnit.DAYS.toSeconds(2);
+
+    private static final String MARKER_PREFIX = "record#";
+    private static final String MARKER_BUCKET = "-";
+    private static final String SEPARATOR = "#";
+    private static final String NO_CURRENCY = "-";
+    private static final String NEW_MARKER_CONDITION = "attribute_not_exists(#aggregateId)";
+    private static final String ADD_UPDATE = "ADD #count :count, #amount :amount SET #expiry = :expiry";
+    private static final String QUERY_KEY_CONDITION = "#aggregateId = :aggregateId AND #bucket BETWEEN :from AND :to";
+    private static final String CONDITIONAL_CHECK_FAILED = "ConditionalCheckFailed";
+
+    private final AmazonDynamoDB dynamoDB;
+    private final String tableName;
+
+    public DynamoDBAggregateStore(AmazonDynamoDB dynamoDB, String tableName) {
+        this.dynamoDB = dynamoDB;
+        this.tableName = tableName;
+    }
+
+    @Override
+    public Set<String> apply(Collection<String> sequenceNumbers, Collection<MerchantAggregate> deltas) {
+        long nowEpochSeconds = Instant.now().getEpochSecond();
+        List<String> markers = new ArrayList<>(sequenceNumbers);
+        List<TransactWriteItem> writes = new ArrayList<>(markers.size() + deltas.size());
+        for (String sequenceNumber : markers) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put(AGGREGATE_ID, new AttributeValue(MARKER_PREFIX + sequenceNumber));
+            item.put(BUCKET, new AttributeValue(MARKER_BUCKET));
+            item.put(EXPIRY_TIMESTAMP_SECONDS, number(nowEpochSeconds + MARKER_RETENTION_SECONDS));
+            writes.add(new TransactWriteItem().withPut(new Put()
+                .withTableName(tableName)
+                .withItem(item)
+                .withConditionExpression(NEW_MARKER_CONDITION)
+                .withExpressionAttributeNames(Map.of("#aggregateId", AGGREGATE_ID))));
+        }
+        for (MerchantAggregate delta : deltas) {
+            AggregateKey key = delta.getKey();
+            long expiry = key.getBucketStartSeconds() + key.getGranularity().getBucketSeconds()
+                + key.getGranularity().getRetentionSeconds();
+            writes.add(new TransactWriteItem().withUpdate(new Update()
+                .withTableName(tableName)
+                .withKey(Map.of(
+                    AGGREGATE_ID, new AttributeValue(aggregateId(key.getMerchantId(), key.getGranularity())),
+                    BUCKET, new AttributeValue(bucket(key))))
+                .withUpdateExpression(ADD_UPDATE)
+                .withExpressionAttributeNames(Map.of("#count", COUNT, "#amount", AMOUNT, "#expiry", EXPIRY_TIMESTAMP_SECONDS))
+                .withExpressionAttributeValues(Map.of(
+                    ":count", number(delta.getCount()),
+                    ":amount", number(delta.getAmount()),
+                    ":expiry", number(expiry)))));
+        }
+
+        // The same token makes a retried request, e.g. after a timeout, a no-op instead of a cancellation.
+        String token = UUID.nameUUIDFromBytes(String.join(",", markers).getBytes(StandardCharsets.UTF_8)).toString();
+        try {
+            dynamoDB.transactWriteItems(new TransactWriteItemsRequest()
+                .withTransactItems(writes)
+                .withClientRequestToken(token));
+            return Set.of();
+        } catch (TransactionCanceledException e) {
+            Set<String> applied = new LinkedHashSet<>();
+            List<CancellationReason> reasons = e.getCancellationReasons();
+            for (int i = 0; reasons != null && i < Math.min(reasons.size(), markers.size()); i++) {
+                if (CONDITIONAL_CHECK_FAILED.equals(reasons.get(i).getCode())) {
+                    applied.add(markers.get(i));
+                }
+            }
+            if (applied.isEmpty()) {
+                throw e;
+            }
+            return applied;
+        }
+    }
+
+    @Override
+    public List<MerchantAggregate> query(String merchantId, Granularity granularity, long fromSeconds, long toSeconds) {
+        List<MerchantAggregate> result = new ArrayList<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResult page = dynamoDB.query(new QueryRequest()
+                .withTableName(tableName)
+                .withKeyConditionExpression(QUERY_KEY_CONDITION)
+                .withExpressionAttributeNames(Map.of("#aggregateId", AGGREGATE_ID, "#bucket", BUCKET))
+                .withExpressionAttributeValues(Map.of(
+                    ":aggregateId", new AttributeValue(aggregateId(merchantId, granularity)),
+                    ":from", new AttributeValue(bucketStart(fromSeconds)),
+                    // '~' sorts after every status, so the buckets starting at toSeconds are included.
+                    ":to", new AttributeValue(bucketStart(toSeconds) + "~")))
+                .withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : page.getItems()) {
+                result.add(fromItem(merchantId, granularity, item));
+            }
+            startKey = page.getLastEvaluatedKey();
+        } while (startKey != null);
+        return result;
+    }
+
+    static String aggregateId(String merchantId, Granularity granularity) {
+        return merchantId + SEPARATOR + granularity.getCode();
+    }
+
+    static String bucket(AggregateKey key) {
+        return bucketStart(key.getBucketStartSeconds()) + SEPARATOR + key.getStatus() + SEPARATOR
+            + (key.getCurrency() == null ? NO_CURRENCY : key.getCurrency());
+    }
+
+    private static String bucketStart(long epochSeconds) {
+        return String.format("%015d", Math.max(0, epochSeconds));
+    }
+
+    private static MerchantAggregate fromItem(String merchantId, Granularity granularity,
+        Map<String, AttributeValue> item) {
+        String[] bucket = item.get(BUCKET).getS().split(SEPARATOR, 3);
+        String currency = NO_CURRENCY.equals(bucket[2]) ? null : bucket[2];
+        AggregateKey key = new AggregateKey(merchantId, granularity, Long.parseLong(bucket[0]), bucket[1], currency);
+        return new MerchantAggregate(key, Long.parseLong(item.get(COUNT).getN()), Long.parseLong(item.get(AMOUNT).getN()));
+    }
+
+    private static AttributeValue number(long value) {
+        return new AttributeValue().withN(Long.toString(value));
+    }
+}
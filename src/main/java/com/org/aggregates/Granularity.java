@@ -0,0 +1,47 @@
+package com.org.aggregates;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size of the time buckets payments are counted in. Every change is counted in a bucket of each granularity, so short
+ * ranges read hours and long ones read days.
+ */
+public enum Granularity {
+    Hour("H", TimeUnit.HOURS.toSeconds(1), TimeUnit.DAYS.toSeconds(8)),
+    Day("D", TimeUnit.DAYS.toSeconds(1), TimeUnit.DAYS.toSeconds(400));
+
+    private final String code;
+    private final long bucketSeconds;
+    private final long retentionSeconds;
+
+    Granularity(String code, long bucketSeconds, long retentionSeconds) {
+        this.code = code;
+        this.bucketSeconds = bucketSeconds;
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    /**
+     * @return the short name aggregates are stored under.
+     */
+    public String getCode() {
+        return code;
+    }
+
+    public long getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    /**
+     * @return how long buckets are kept after they end.
+     */
+    public long getRetentionSeconds() {
+        return retentionSeconds;
+    }
+
+    /**
+     * @return the start of the bucket the given time falls in.
+     */
+    public long bucketStart(long epochSeconds) {
+        return Math.floorDiv(epochSeconds, bucketSeconds) * bucketSeconds;
+    }
+}
@@ -0,0 +1,60 @@
+package com.org.aggregates;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link AggregateStore} in memory, for tests and the local server. Remembers every sequence number it applied.
+ */
+public class InMemoryAggregateStore implements AggregateStore {
+
+    private static final Comparator<MerchantAggregate> BUCKET_ORDER = Comparator
+        .comparingLong((MerchantAggregate aggregate) -> aggregate.getKey().getBucketStartSeconds())
+        .thenComparing(aggregate -> aggregate.getKey().getStatus())
+        .thenComparing(aggregate -> aggregate.getKey().getCurrency(), Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Map<AggregateKey, MerchantAggregate> aggregates = new HashMap<>();
+    private final Set<String> appliedSequenceNumbers = new HashSet<>();
+
+    @Override
+    public synchronized Set<String> apply(Collection<String> sequenceNumbers, Collection<MerchantAggregate> deltas) {
+        Set<String> applied = new LinkedHashSet<>();
+        for (String sequenceNumber : sequenceNumbers) {
+            if (appliedSequenceNumbers.contains(sequenceNumber)) {
+                applied.add(sequenceNumber);
+            }
+        }
+        if (!applied.isEmpty()) {
+            return applied;
+        }
+
+        appliedSequenceNumbers.addAll(sequenceNumbers);
+        for (MerchantAggregate delta : deltas) {
+            aggregates.merge(delta.getKey(), delta,
+                (aggregate, added) -> aggregate.plus(added.getCount(), added.getAmount()));
+        }
+        return applied;
+    }
+
+    @Override
+    public synchronized List<MerchantAggregate> query(String merchantId, Granularity granularity, long fromSeconds,
+        long toSeconds) {
+        List<MerchantAggregate> result = new ArrayList<>();
+        for (MerchantAggregate aggregate : aggregates.values()) {
+            AggregateKey key = aggregate.getKey();
+            if (key.getMerchantId().equals(merchantId) && key.getGranularity() == granularity
+                && key.getBucketStartSeconds() >= fromSeconds && key.getBucketStartSeconds() <= toSeconds) {
+                result.add(aggregate);
+            }
+        }
+        result.sort(BUCKET_ORDER);
+        return result;
+    }
+}
@@ -0,0 +1,42 @@
+package com.org.aggregates;
+
+/**
+ * Number and total amount of the payments counted under a key, or what a batch of changes adds to them.
+ */
+public final class MerchantAggregate {
+
+    private final AggregateKey key;
+    private final long count;
+    private final long amount;
+
+    public MerchantAggregate(AggregateKey key, long count, long amount) {
+        this.key = key;
+        this.count = count;
+        this.amount = amount;
+    }
+
+    public MerchantAggregate plus(long count, long amount) {
+        return new MerchantAggregate(key, this.count + count, this.amount + amount);
+    }
+
+    public AggregateKey getKey() {
+        return key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "MerchantAggregate{" +
+            "key=" + key +
+            ", count=" + count +
+            ", amount=" + amount +
+            '}';
+    }
+}
@@ -0,0 +1,95 @@
+package com.org.aggregates;
+
+import com.org.payments.PaymentRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts the payments settled by a batch of changes into their merchant's aggregates, of every {@link Granularity}.
+ * <p>
+ * The batch is applied in as few {@link AggregateStore#apply} calls as fit: the deltas of the changes in a call are
+ * summed per aggregate first, so a busy merchant's batch is a handful of writes. A change delivered again is skipped by
+ * the store, and only the rest of its call is applied again, so replaying a batch, or part of it, never double counts.
+ */
+public class MerchantAggregator {
+
+    private final AggregateStore aggregateStore;
+
+    public MerchantAggregator(AggregateStore aggregateStore) {
+        this.aggregateStore = aggregateStore;
+    }
+
+    public AggregateStore getAggregateStore() {
+        return aggregateStore;
+    }
+
+    /**
+     * @return the number of payments counted, not including the ones counted before.
+     */
+    public int apply(List<PaymentChange> changes) {
+        int counted = 0;
+        Map<String, PaymentChange> chunk = new LinkedHashMap<>();
+        Set<AggregateKey> chunkKeys = new HashSet<>();
+        for (PaymentChange change : changes) {
+            if (change.getSettledStatus() == null || chunk.containsKey(change.getSequenceNumber())) {
+                continue;
+            }
+            List<AggregateKey> keys = keys(change);
+            int newKeys = 0;
+            for (AggregateKey key : keys) {
+                newKeys += chunkKeys.contains(key) ? 0 : 1;
+            }
+            if (chunk.size() + chunkKeys.size() + 1 + newKeys > AggregateStore.MAX_WRITES) {
+                counted += applyChunk(chunk);
+                chunk.clear();
+                chunkKeys.clear();
+            }
+            chunk.put(change.getSequenceNumber(), change);
+            chunkKeys.addAll(keys);
+        }
+        return counted + applyChunk(chunk);
+    }
+
+    private int applyChunk(Map<String, PaymentChange> chunk) {
+        Map<String, PaymentChange> remaining = new LinkedHashMap<>(chunk);
+        while (!remaining.isEmpty()) {
+            Set<String> applied = aggregateStore.apply(remaining.keySet(), deltas(remaining.values()));
+            if (applied.isEmpty()) {
+                return remaining.size();
+            }
+            if (!remaining.keySet().removeAll(applied)) {
+                throw new IllegalStateException("Store reported changes as counted that weren't applied: " + applied);
+            }
+        }
+        return 0;
+    }
+
+    private static List<MerchantAggregate> deltas(Iterable<PaymentChange> changes) {
+        Map<AggregateKey, MerchantAggregate> deltas = new LinkedHashMap<>();
+        for (PaymentChange change : changes) {
+            int amount = change.getCurrent().getAmount();
+            amount = amount == PaymentRecord.NONE_INT ? 0 : amount;
+            for (AggregateKey key : keys(change)) {
+                deltas.merge(key, new MerchantAggregate(key, 1, amount),
+                    (delta, added) -> delta.plus(added.getCount(), added.getAmount()));
+            }
+        }
+        return new ArrayList<>(deltas.values());
+    }
+
+    private static List<AggregateKey> keys(PaymentChange change) {
+        PaymentRecord payment = change.getCurrent();
+        List<AggregateKey> keys = new ArrayList<>(Granularity.values().length);
+        for (Granularity granularity : Granularity.values()) {
+            keys.add(new AggregateKey(payment.getMerchantId(), granularity,
+                granularity.bucketStart(change.getChangedAtSeconds()), change.getSettledStatus(), payment.getCurrency()));
+        }
+        return Collections.unmodifiableList(keys);
+    }
+}
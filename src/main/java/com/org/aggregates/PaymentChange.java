@@ -0,0 +1,54 @@
+package com.org.aggregates;
+
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+
+/**
+ * One write to a payment, as a change stream record: the payment before and after, and the record's sequence number,
+ * which identifies it in the stream and stays the same when it's delivered again.
+ */
+public final class PaymentChange {
+
+    private final String sequenceNumber;
+    private final long changedAtSeconds;
+    private final PaymentRecord previous;
+    private final PaymentRecord current;
+
+    /**
+     * @param previous the payment before the change, or null if it was created.
+     * @param current  the payment after the change, or null if it was deleted.
+     */
+    public PaymentChange(String sequenceNumber, long changedAtSeconds, PaymentRecord previous, PaymentRecord current) {
+        this.sequenceNumber = sequenceNumber;
+        this.changedAtSeconds = changedAtSeconds;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    /**
+     * @return the final status the payment moved to, or null if the change didn't settle it. A payment settles once, so
+     * each payment is counted once.
+     */
+    public String getSettledStatus() {
+        if (current == null || !PaymentStatus.isFinal(current.getStatus())) {
+            return null;
+        }
+        return previous != null && current.getStatus().equals(previous.getStatus()) ? null : current.getStatus();
+    }
+
+    public String getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public long getChangedAtSeconds() {
+        return changedAtSeconds;
+    }
+
+    public PaymentRecord getPrevious() {
+        return previous;
+    }
+
+    public PaymentRecord getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,30 @@
+package com.org.bank;
+
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends payments to the acquiring bank without blocking the caller.
+ * <p>
+ * Calls are idempotent on {@code paymentId}: a call for a payment that is already in flight joins it, and a payment the
+ * bank already settled gets the same answer again without another call, so callers can retry freely.
+ */
+public interface BankConnector {
+
+    /**
+     * @param timeoutMillis deadline for the bank's answer. Past it the returned future fails with a
+     *                      {@link java.util.concurrent.TimeoutException} and the call is cancelled.
+     * @return the bank's answer. Fails with a {@link java.util.concurrent.RejectedExecutionException} when too many calls
+     * are queued, or with a {@link BankException} when the bank refused the call.
+     */
+    CompletableFuture<PaymentStatus> makePayment(MerchantPayment payment, long timeoutMillis);
+
+    /**
+     * @return number of bank calls in flight right now.
+     */
+    int getInFlight();
+
+    BankConnectorStats getStats();
+}
@@ -0,0 +1,90 @@
+package com.org.bank;
+
+/**
+ * Snapshot of a {@link BankConnector}'s counters, since it was created.
+ */
+public class BankConnectorStats {
+
+    private final int inFlight;
+    private final long calls;
+    private final long deduplicated;
+    private final long retries;
+    private final long timedOut;
+    private final long failed;
+    private final long rejected;
+    private final long meanLatencyMicros;
+    private final long maxLatencyMicros;
+
+    public BankConnectorStats(int inFlight, long calls, long deduplicated, long retries, long timedOut, long failed,
+        long rejected, long meanLatencyMicros, long maxLatencyMicros) {
+        this.inFlight = inFlight;
+        this.calls = calls;
+        this.deduplicated = deduplicated;
+        this.retries = retries;
+        this.timedOut = timedOut;
+        this.failed = failed;
+        this.rejected = rejected;
+        this.meanLatencyMicros = meanLatencyMicros;
+        this.maxLatencyMicros = maxLatencyMicros;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return calls sent to the bank, not counting retries and deduplicated calls.
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return calls answered by joining an in-flight call or from a settled answer, without calling the bank.
+     */
+    public long getDeduplicated() {
+        return deduplicated;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    public long getTimedOut() {
+        return timedOut;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return mean latency of the calls the bank answered, including retries.
+     */
+    public long getMeanLatencyMicros() {
+        return meanLatencyMicros;
+    }
+
+    public long getMaxLatencyMicros() {
+        return maxLatencyMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "BankConnectorStats{" +
+            "inFlight=" + inFlight +
+            ", calls=" + calls +
+            ", deduplicated=" + deduplicated +
+            ", retries=" + retries +
+            ", timedOut=" + timedOut +
+            ", failed=" + failed +
+            ", rejected=" + rejected +
+            ", meanLatencyMicros=" + meanLatencyMicros +
+            ", maxLatencyMicros=" + maxLatencyMicros +
+            '}';
+    }
+}
@@ -0,0 +1,25 @@
+package com.org.bank;
+
+/**
+ * A call the bank answered with an error instead of a payment status.
+ */
+public class BankException extends RuntimeException {
+
+    private final int statusCode;
+
+    public BankException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return true for throttling and server errors, which are safe to retry since calls are idempotent on paymentId.
+     */
+    public boolean isRetryable() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
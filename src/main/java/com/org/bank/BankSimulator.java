@@ -1,10 +1,50 @@
 package com.org.bank;
 
+import com.org.faults.Fault;
+import com.org.faults.FaultInjector;
 import com.org.payments.MerchantPayment;
 import com.org.payments.PaymentStatus;
 
-public class BankSimulator {
-    public PaymentStatus makePayment(MerchantPayment payment) {
+import java.util.concurrent.ExecutorService;
+
+public class BankSimulator extends ExecutorBankConnector {
+
+    private final FaultInjector faultInjector;
+
+    public BankSimulator() {
+        this(newExecutor(DEFAULT_CONCURRENCY, DEFAULT_QUEUE_SIZE), FaultInjector.NONE);
+    }
+
+    /**
+     * @param faultInjector latency and failures to add to each call, so load tests see a bank slower than a method call.
+     *                      Errors are answered as 500s and throttling as 429s, both retried by the connector.
+     */
+    public BankSimulator(ExecutorService executor, FaultInjector faultInjector) {
+        super(executor, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_BACKOFF_MILLIS);
+        this.faultInjector = faultInjector;
+    }
+
+    @Override
+    protected PaymentStatus callBank(MerchantPayment payment) {
+        Fault fault = faultInjector.next();
+        if (!fault.sleep()) {
+            throw new IllegalStateException("Bank call interrupted");
+        }
+
+        switch (fault.getKind()) {
+            case ERROR:
+                throw new BankException(500, "Injected bank error");
+            case THROTTLE:
+                throw new BankException(429, "Injected bank throttling");
+            default:
+                return authorise(payment);
+        }
+    }
+
+    /**
+     * The simulated bank's answer, based on the amount.
+     */
+    public PaymentStatus authorise(MerchantPayment payment) {
         if (payment.getAmount() == 1) {
             return PaymentStatus.Declined;
         } else if (payment.getAmount() == 2) {
@@ -0,0 +1,201 @@
+package com.org.bank;
+
+import com.org.cache.BoundedCache;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns a blocking bank call into a {@link BankConnector}.
+ * <p>
+ * Calls run on a bounded executor, so a slow bank queues up calls and then rejects them instead of piling up threads.
+ * A call past its deadline is interrupted. Retryable {@link BankException}s are retried with backoff while the deadline
+ * allows it, which is safe because the bank call is idempotent on paymentId.
+ */
+public abstract class ExecutorBankConnector implements BankConnector {
+
+    public static final int DEFAULT_CONCURRENCY = 32;
+    public static final int DEFAULT_QUEUE_SIZE = 256;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_BACKOFF_MILLIS = 50;
+
+    private static final int SETTLED_OUTCOMES = 10_000;
+    private static final long SETTLED_OUTCOMES_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final ExecutorService executor;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final ConcurrentHashMap<String, Call> inFlight = new ConcurrentHashMap<>();
+    private final BoundedCache<String, PaymentStatus> settledOutcomes = new BoundedCache<>(SETTLED_OUTCOMES, SETTLED_OUTCOMES_TTL_MILLIS);
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder answered = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Long::max, 0);
+
+    protected ExecutorBankConnector(ExecutorService executor, int maxAttempts, long baseBackoffMillis) {
+        this.executor = executor;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+    }
+
+    /**
+     * A pool of daemon threads with a bounded queue, rejecting calls once the queue is full.
+     */
+    public static ExecutorService newExecutor(int concurrency, int queueSize) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueSize), runnable -> {
+                Thread thread = new Thread(runnable, "bank-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * The blocking call to the bank, run on the executor. It should give up promptly when interrupted.
+     */
+    protected abstract PaymentStatus callBank(MerchantPayment payment);
+
+    @Override
+    public CompletableFuture<PaymentStatus> makePayment(MerchantPayment payment, long timeoutMillis) {
+        PaymentStatus settled = settledOutcomes.get(payment.getPaymentId());
+        if (settled != null) {
+            deduplicated.increment();
+            return CompletableFuture.completedFuture(settled);
+        }
+
+        Call call = new Call(payment, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        Call existing = inFlight.putIfAbsent(payment.getPaymentId(), call);
+        if (existing != null) {
+            // The first caller's deadline bounds the call itself, this caller only stops waiting at its own.
+            deduplicated.increment();
+            return existing.result.copy().orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        calls.increment();
+        try {
+            call.task = executor.submit(call);
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(payment.getPaymentId(), call);
+            rejected.increment();
+            call.result.completeExceptionally(e);
+            return call.result;
+        }
+
+        call.result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((status, e) -> {
+            if (e instanceof TimeoutException) {
+                inFlight.remove(payment.getPaymentId(), call);
+                timedOut.increment();
+                call.task.cancel(true);
+            }
+        });
+        return call.result;
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public BankConnectorStats getStats() {
+        long answeredCalls = answered.sum();
+        return new BankConnectorStats(inFlight.size(), calls.sum(), deduplicated.sum(), retries.sum(), timedOut.sum(),
+            failed.sum(), rejected.sum(),
+            answeredCalls == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(latencyNanos.sum() / answeredCalls),
+            TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get()));
+    }
+
+    /**
+     * Book-keeping happens before completing the call, so a caller seeing the answer also sees it remembered.
+     * An answer arriving after the deadline is still remembered, the bank did settle the payment.
+     */
+    private void answered(Call call, PaymentStatus status) {
+        long latency = System.nanoTime() - call.startNanos;
+        answered.increment();
+        latencyNanos.add(latency);
+        maxLatencyNanos.accumulate(latency);
+        if (PaymentStatus.isFinal(status.name())) {
+            settledOutcomes.put(call.payment.getPaymentId(), status);
+        }
+        inFlight.remove(call.payment.getPaymentId(), call);
+        call.result.complete(status);
+    }
+
+    private void failed(Call call, RuntimeException e) {
+        inFlight.remove(call.payment.getPaymentId(), call);
+        if (call.result.completeExceptionally(e)) {
+            failed.increment();
+        }
+    }
+
+    private class Call implements Runnable {
+        private final MerchantPayment payment;
+        private final long deadlineNanos;
+        private final long startNanos = System.nanoTime();
+        private final CompletableFuture<PaymentStatus> result = new CompletableFuture<>();
+        private volatile Future<?> task;
+
+        Call(MerchantPayment payment, long deadlineNanos) {
+            this.payment = payment;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public void run() {
+            for (int attempt = 1; !result.isDone(); attempt++) {
+                try {
+                    answered(this, callBank(payment));
+                } catch (BankException e) {
+                    if (!e.isRetryable() || attempt >= maxAttempts || !sleepBeforeRetry(attempt)) {
+                        failed(this, e);
+                    } else {
+                        retries.increment();
+                    }
+                } catch (RuntimeException e) {
+                    failed(this, e);
+                }
+            }
+        }
+
+        /**
+         * Exponential backoff with full jitter.
+         *
+         * @return false if the deadline would pass while backing off, or the call was cancelled.
+         */
+        private boolean sleepBeforeRetry(int attempt) {
+            long backoffMillis = ThreadLocalRandom.current().nextLong((baseBackoffMillis << Math.min(attempt - 1, 20)) + 1);
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis) >= deadlineNanos) {
+                return false;
+            }
+            try {
+                Thread.sleep(backoffMillis);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
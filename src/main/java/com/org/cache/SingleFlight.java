@@ -0,0 +1,101 @@
+package com.org.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs a computation once per key among concurrent callers: the first caller runs it, callers arriving while it runs
+ * wait for and share its result, for at most their own wait time. Nothing is kept once it's done, a caller arriving after
+ * that runs it again.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * @param maxWaitMillis how long a caller joining a running computation waits for it.
+     * @throws TimeoutException if the running computation took longer than maxWaitMillis, or the wait was interrupted.
+     */
+    public V execute(K key, Supplier<V> computation, long maxWaitMillis) throws TimeoutException {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = flights.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.increment();
+            return await(running, maxWaitMillis);
+        }
+
+        executed.increment();
+        try {
+            V value = computation.get();
+            flights.remove(key, flight);
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    /**
+     * @return computations run, one per key per flight.
+     */
+    public long getExecuted() {
+        return executed.sum();
+    }
+
+    /**
+     * @return callers that joined a running computation instead of running their own, including those that timed out.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlight{" +
+            "inFlight=" + getInFlight() +
+            ", executed=" + getExecuted() +
+            ", coalesced=" + getCoalesced() +
+            ", timedOut=" + getTimedOut() +
+            '}';
+    }
+
+    private V await(CompletableFuture<V> running, long maxWaitMillis) throws TimeoutException {
+        try {
+            return running.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            timedOut.increment();
+            throw new TimeoutException("Interrupted waiting for the running computation");
+        } catch (ExecutionException e) {
+            // The callers that joined fail the same way as the one that ran it.
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
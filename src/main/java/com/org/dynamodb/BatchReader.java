@@ -0,0 +1,89 @@
+package com.org.dynamodb;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Gets items with BatchGetItem. Keys are split into requests of {@link #MAX_BATCH_SIZE} (the DynamoDB limit), which run
+ * concurrently on the given executor, and each request re-sends its unprocessed keys with exponential backoff and full jitter.
+ */
+public class BatchReader {
+
+    public static final int MAX_BATCH_SIZE = 100;
+
+    private final AmazonDynamoDB dynamoDB;
+    private final Executor executor;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+
+    public BatchReader(AmazonDynamoDB dynamoDB, Executor executor, int maxAttempts, long baseBackoffMillis) {
+        this.dynamoDB = dynamoDB;
+        this.executor = executor;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+    }
+
+    /**
+     * A reader sending its requests one after the other on the calling thread.
+     */
+    public static BatchReader sequential(AmazonDynamoDB dynamoDB) {
+        return new BatchReader(dynamoDB, Runnable::run, 8, 25);
+    }
+
+    /**
+     * @param keys distinct keys, BatchGetItem rejects requests with duplicates.
+     * @return the items found, in no particular order. Missing keys are just left out.
+     * @throws SdkClientException if some keys were still unprocessed after all the attempts.
+     */
+    public List<Map<String, AttributeValue>> getAll(String tableName, List<Map<String, AttributeValue>> keys) {
+        List<CompletableFuture<List<Map<String, AttributeValue>>>> requests = new ArrayList<>(keys.size() / MAX_BATCH_SIZE + 1);
+        for (int from = 0; from < keys.size(); from += MAX_BATCH_SIZE) {
+            List<Map<String, AttributeValue>> batch = keys.subList(from, Math.min(keys.size(), from + MAX_BATCH_SIZE));
+            requests.add(CompletableFuture.supplyAsync(() -> getBatch(tableName, batch), executor));
+        }
+        Batches.joinAll(requests);
+
+        List<Map<String, AttributeValue>> items = new ArrayList<>(keys.size());
+        for (CompletableFuture<List<Map<String, AttributeValue>>> request : requests) {
+            items.addAll(request.join());
+        }
+        return items;
+    }
+
+    private List<Map<String, AttributeValue>> getBatch(String tableName, List<Map<String, AttributeValue>> keys) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>(keys.size());
+        Map<String, KeysAndAttributes> pending = new HashMap<>(2);
+        pending.put(tableName, new KeysAndAttributes().withKeys(keys));
+
+        for (int attempt = 1; ; attempt++) {
+            BatchGetItemResult result = dynamoDB.batchGetItem(new BatchGetItemRequest(pending));
+            List<Map<String, AttributeValue>> found = result.getResponses() == null ? null : result.getResponses().get(tableName);
+            if (found != null) {
+                items.addAll(found);
+            }
+
+            Map<String, KeysAndAttributes> unprocessed = result.getUnprocessedKeys();
+            if (unprocessed == null || unprocessed.isEmpty()) {
+                return items;
+            }
+            if (attempt >= maxAttempts) {
+                KeysAndAttributes unprocessedKeys = unprocessed.get(tableName);
+                throw new SdkClientException((unprocessedKeys == null ? 0 : unprocessedKeys.getKeys().size())
+                    + " keys still unprocessed after " + attempt + " BatchGetItem attempts on " + tableName);
+            }
+            Batches.sleepBeforeRetry(attempt, baseBackoffMillis);
+            pending = unprocessed;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.org.dynamodb;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Puts items with BatchWriteItem. Items are split into requests of {@link #MAX_BATCH_SIZE} (the DynamoDB limit), which
+ * run concurrently on the given executor, and each request re-sends its unprocessed items with exponential backoff and
+ * full jitter.
+ * <p>
+ * BatchWriteItem doesn't take condition expressions, so this is only for items that can't exist yet, e.g. fresh UUID keys.
+ */
+public class BatchWriter {
+
+    public static final int MAX_BATCH_SIZE = 25;
+
+    private final AmazonDynamoDB dynamoDB;
+    private final Executor executor;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+
+    public BatchWriter(AmazonDynamoDB dynamoDB, Executor executor, int maxAttempts, long baseBackoffMillis) {
+        this.dynamoDB = dynamoDB;
+        this.executor = executor;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+    }
+
+    /**
+     * A writer sending its requests one after the other on the calling thread.
+     */
+    public static BatchWriter sequential(AmazonDynamoDB dynamoDB) {
+        return new BatchWriter(dynamoDB, Runnable::run, 8, 25);
+    }
+
+    /**
+     * Waits for all the requests. If any of them fails, its exception is rethrown once the others are done, and the items
+     * of the other requests may or may not have been written.
+     *
+     * @throws SdkClientException if some items were still unprocessed after all the attempts.
+     */
+    public void putAll(String tableName, List<Map<String, AttributeValue>> items) {
+        List<CompletableFuture<Void>> requests = new ArrayList<>(items.size() / MAX_BATCH_SIZE + 1);
+        for (int from = 0; from < items.size(); from += MAX_BATCH_SIZE) {
+            List<Map<String, AttributeValue>> batch = items.subList(from, Math.min(items.size(), from + MAX_BATCH_SIZE));
+            requests.add(CompletableFuture.runAsync(() -> putBatch(tableName, batch), executor));
+        }
+
+        Batches.joinAll(requests);
+    }
+
+    private void putBatch(String tableName, List<Map<String, AttributeValue>> items) {
+        List<WriteRequest> writes = new ArrayList<>(items.size());
+        for (Map<String, AttributeValue> item : items) {
+            writes.add(new WriteRequest(new PutRequest(item)));
+        }
+        Map<String, List<WriteRequest>> pending = new HashMap<>(2);
+        pending.put(tableName, writes);
+
+        for (int attempt = 1; ; attempt++) {
+            Map<String, List<WriteRequest>> unprocessed = dynamoDB.batchWriteItem(new BatchWriteItemRequest(pending))
+                .getUnprocessedItems();
+            if (unprocessed == null || unprocessed.isEmpty()) {
+                return;
+            }
+            if (attempt >= maxAttempts) {
+                throw new SdkClientException(unprocessed.getOrDefault(tableName, List.of()).size()
+                    + " items still unprocessed after " + attempt + " BatchWriteItem attempts on " + tableName);
+            }
+            Batches.sleepBeforeRetry(attempt, baseBackoffMillis);
+            pending = unprocessed;
+        }
+    }
+}
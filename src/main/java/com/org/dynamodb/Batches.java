@@ -0,0 +1,46 @@
+package com.org.dynamodb;
+
+import com.amazonaws.AbortedException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Shared bits of {@link BatchWriter} and {@link BatchReader}.
+ */
+final class Batches {
+
+    private static final long MAX_BACKOFF_MILLIS = 1_000;
+
+    private Batches() {
+    }
+
+    /**
+     * Exponential backoff with full jitter, before re-sending the unprocessed part of a batch request.
+     */
+    static void sleepBeforeRetry(int attempt, long baseBackoffMillis) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, baseBackoffMillis << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException("Interrupted while backing off a batch request", e);
+        }
+    }
+
+    /**
+     * Waits for all the requests, rethrowing the exception of a failed one as is.
+     */
+    static void joinAll(List<? extends CompletableFuture<?>> requests) {
+        try {
+            CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.org.dynamodb;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.TimingInfo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples the HTTP connection pool of the DynamoDB client on every request, to size dynamoDbMaxConnections.
+ * <p>
+ * The SDK only captures pool counters when a request metric collector is installed on the client, so this is registered
+ * as one; it keeps the numbers in memory and doesn't publish anything to CloudWatch.
+ */
+public class ConnectionPoolStats extends RequestMetricCollector {
+
+    private final int maxConnections;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder leasedSum = new LongAdder();
+    private final AtomicLong leased = new AtomicLong();
+    private final AtomicLong available = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong maxLeased = new AtomicLong();
+    private final AtomicLong maxPending = new AtomicLong();
+
+    public ConnectionPoolStats(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    @Override
+    public void collectMetrics(Request<?> request, Response<?> response) {
+        requests.increment();
+        if (response == null) {
+            failedRequests.increment();
+        }
+
+        TimingInfo timingInfo = request.getAWSRequestMetrics().getTimingInfo();
+        long leasedNow = counter(timingInfo, AWSRequestMetrics.Field.HttpClientPoolLeasedCount);
+        long pendingNow = counter(timingInfo, AWSRequestMetrics.Field.HttpClientPoolPendingCount);
+
+        leased.set(leasedNow);
+        pending.set(pendingNow);
+        available.set(counter(timingInfo, AWSRequestMetrics.Field.HttpClientPoolAvailableCount));
+        leasedSum.add(leasedNow);
+        maxLeased.accumulateAndGet(leasedNow, Math::max);
+        maxPending.accumulateAndGet(pendingNow, Math::max);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.sum();
+    }
+
+    public long getLeased() {
+        return leased.get();
+    }
+
+    public long getAvailable() {
+        return available.get();
+    }
+
+    public long getPending() {
+        return pending.get();
+    }
+
+    public long getMaxLeased() {
+        return maxLeased.get();
+    }
+
+    /**
+     * Requests that had to wait for a connection. Anything above zero means the pool is too small.
+     */
+    public long getMaxPending() {
+        return maxPending.get();
+    }
+
+    /**
+     * @return average fraction of the pool leased at the time of a request, between 0 and 1.
+     */
+    public double getAverageUtilization() {
+        long count = requests.sum();
+        return count == 0 ? 0 : (double) leasedSum.sum() / count / maxConnections;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolStats{" +
+            "maxConnections=" + maxConnections +
+            ", requests=" + getRequests() +
+            ", failedRequests=" + getFailedRequests() +
+            ", leased=" + getLeased() +
+            ", available=" + getAvailable() +
+            ", pending=" + getPending() +
+            ", maxLeased=" + getMaxLeased() +
+            ", maxPending=" + getMaxPending() +
+            ", averageUtilization=" + String.format("%.2f", getAverageUtilization()) +
+            '}';
+    }
+
+    private static long counter(TimingInfo timingInfo, AWSRequestMetrics.Field field) {
+        Number value = timingInfo.getCounter(field.name());
+        return value == null ? 0 : value.longValue();
+    }
+}
@@ -1,16 +1,33 @@
 package com.org.dynamodb;
 
+import com.amazonaws.SdkClientException;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ConditionalOperator;
 import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
 import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+import com.org.store.PaymentCursor;
+import com.org.store.PaymentListQuery;
+import com.org.store.PaymentStore;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+
+public class DynamoDBClient implements PaymentStore {
+
+    private static final DynamoDBMapperConfig CONSISTENT_READS = DynamoDBMapperConfig.builder()
+        .withConsistentReads(DynamoDBMapperConfig.ConsistentReads.CONSISTENT)
+        .build();
 
-public class DynamoDBClient {
     private DynamoDBMapper mapper;
 
     public DynamoDBClient(DynamoDBMapper mapper) {
@@ -21,10 +38,23 @@ public class DynamoDBClient {
         return this.mapper;
     }
 
+    @Override
     public void save(MerchantPayment payment) {
         mapper.save(payment);
     }
 
+    /**
+     * The mapper sends BatchWriteItem requests of 25 one after the other, and retries unprocessed items itself.
+     */
+    @Override
+    public void saveAll(List<MerchantPayment> payments) {
+        List<DynamoDBMapper.FailedBatch> failedBatches = mapper.batchSave(payments);
+        if (!failedBatches.isEmpty()) {
+            throw new SdkClientException(failedBatches.size() + " batches failed to save", failedBatches.get(0).getException());
+        }
+    }
+
+    @Override
     public void saveMakePayment(MerchantPayment payment) {
         DynamoDBSaveExpression saveExpression = new DynamoDBSaveExpression();
         Map<String, ExpectedAttributeValue> expected = new HashMap<>();
@@ -37,7 +67,98 @@ public class DynamoDBClient {
         mapper.save(payment, saveExpression);
     }
 
+    @Override
     public MerchantPayment getMerchantPayment(String paymentId) {
         return mapper.load(MerchantPayment.class, paymentId);
     }
+
+    @Override
+    public MerchantPayment getLatestMerchantPayment(String paymentId) {
+        return mapper.load(MerchantPayment.class, paymentId, CONSISTENT_READS);
+    }
+
+    /**
+     * The mapper sends BatchGetItem requests of 100 one after the other, and retries unprocessed keys itself.
+     */
+    @Override
+    public Map<String, MerchantPayment> getMerchantPayments(Collection<String> paymentIds) {
+        List<MerchantPayment> keys = new ArrayList<>(paymentIds.size());
+        for (String paymentId : paymentIds) {
+            MerchantPayment key = new MerchantPayment();
+            key.setPaymentId(paymentId);
+            keys.add(key);
+        }
+
+        Map<String, MerchantPayment> payments = new HashMap<>();
+        for (List<Object> loaded : mapper.batchLoad(keys).values()) {
+            for (Object payment : loaded) {
+                payments.put(((MerchantPayment) payment).getPaymentId(), (MerchantPayment) payment);
+            }
+        }
+        return payments;
+    }
+
+    /**
+     * Same queries as {@link DynamoDBItemClient#listMerchantPayments}, through the mapper.
+     */
+    @Override
+    public PaymentCursor listMerchantPayments(PaymentListQuery query, Consumer<PaymentRecord> sink) {
+        Map<String, String> names = new HashMap<>(8);
+        names.put("#paymentId", MerchantPaymentCodec.PAYMENT_ID);
+        names.put("#merchantId", MerchantPaymentCodec.MERCHANT_ID);
+        names.put("#created", MerchantPaymentCodec.CREATION_TIMESTAMP_SECONDS);
+        names.put("#status", MerchantPaymentCodec.STATUS);
+        names.put("#amount", MerchantPaymentCodec.AMOUNT);
+        names.put("#currency", MerchantPaymentCodec.CURRENCY);
+        names.put("#expiry", MerchantPaymentCodec.EXPIRY_TIMESTAMP_SECONDS);
+        Map<String, AttributeValue> values = new HashMap<>(8);
+        values.put(":merchantId", new AttributeValue(query.getMerchantId()));
+        values.put(":from", new AttributeValue().withN(Long.toString(query.getFromSeconds())));
+        values.put(":to", new AttributeValue().withN(Long.toString(query.getToSeconds())));
+        values.put(":now", new AttributeValue().withN(Long.toString(System.currentTimeMillis() / 1000)));
+        String filter = DynamoDBItemClient.LIST_FILTER;
+        if (query.getStatus() != null) {
+            filter += DynamoDBItemClient.LIST_STATUS_FILTER;
+            values.put(":status", new AttributeValue(query.getStatus()));
+            values.put(":statusCode", MerchantPaymentCodec.statusValue(query.getStatus()));
+        }
+
+        Map<String, AttributeValue> startKey = null;
+        if (query.getAfter() != null) {
+            startKey = new HashMap<>(4);
+            startKey.put(MerchantPaymentCodec.PAYMENT_ID, new AttributeValue(query.getAfter().getPaymentId()));
+            startKey.put(MerchantPaymentCodec.MERCHANT_ID, new AttributeValue(query.getMerchantId()));
+            startKey.put(MerchantPaymentCodec.CREATION_TIMESTAMP_SECONDS,
+                new AttributeValue().withN(Long.toString(query.getAfter().getCreationTimestampSeconds())));
+        }
+
+        int maxEvaluated = query.getLimit() * PaymentListQuery.MAX_EVALUATED_PER_LIMIT;
+        int listed = 0;
+        int evaluated = 0;
+        do {
+            DynamoDBQueryExpression<MerchantPayment> expression = new DynamoDBQueryExpression<MerchantPayment>()
+                .withIndexName(MerchantPaymentCodec.MERCHANT_INDEX)
+                .withConsistentRead(false)
+                .withKeyConditionExpression(DynamoDBItemClient.LIST_KEY_CONDITION)
+                .withFilterExpression(filter)
+                .withProjectionExpression(DynamoDBItemClient.LIST_PROJECTION)
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values)
+                .withScanIndexForward(false)
+                .withLimit(Math.min(query.getLimit() - listed, maxEvaluated - evaluated))
+                .withExclusiveStartKey(startKey);
+            QueryResultPage<MerchantPayment> page = mapper.queryPage(MerchantPayment.class, expression);
+
+            for (MerchantPayment payment : page.getResults()) {
+                sink.accept(PaymentRecord.of(payment));
+            }
+            listed += page.getCount();
+            evaluated += page.getScannedCount();
+            startKey = page.getLastEvaluatedKey();
+        } while (startKey != null && listed < query.getLimit() && evaluated < maxEvaluated);
+
+        return startKey == null ? null : new PaymentCursor(
+            Long.parseLong(startKey.get(MerchantPaymentCodec.CREATION_TIMESTAMP_SECONDS).getN()),
+            startKey.get(MerchantPaymentCodec.PAYMENT_ID).getS());
+    }
 }
@@ -0,0 +1,127 @@
+package com.org.dynamodb;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+
+import java.util.Map;
+
+/**
+ * Connection pool, timeout and retry settings of the DynamoDB client, read from env variables.
+ * The defaults are tighter than the SDK ones (50s socket timeout, 10 retries), which are far too generous for a payment path.
+ */
+public class DynamoDBClientSettings {
+
+    private final String region;
+    private final String endpoint;
+    private final int maxConnections;
+    private final boolean tcpKeepAlive;
+    private final long connectionTtlMillis;
+    private final long connectionMaxIdleMillis;
+    private final int connectionTimeoutMillis;
+    private final int socketTimeoutMillis;
+    private final int requestTimeoutMillis;
+    private final int clientExecutionTimeoutMillis;
+    private final int maxRetries;
+    private final int batchConcurrency;
+    private final int batchMaxAttempts;
+    private final long batchBaseBackoffMillis;
+
+    public DynamoDBClientSettings(Map<String, String> env) {
+        // AWS_REGION is set by the Lambda runtime.
+        this.region = env.getOrDefault("AWS_REGION", Regions.EU_WEST_2.getName());
+        this.endpoint = env.get("dynamoDbEndpoint");
+        this.maxConnections = intValue(env, "dynamoDbMaxConnections", 50);
+        this.tcpKeepAlive = Boolean.parseBoolean(env.getOrDefault("dynamoDbTcpKeepAlive", "true"));
+        this.connectionTtlMillis = longValue(env, "dynamoDbConnectionTtlMillis", 60_000);
+        this.connectionMaxIdleMillis = longValue(env, "dynamoDbConnectionMaxIdleMillis", 60_000);
+        this.connectionTimeoutMillis = intValue(env, "dynamoDbConnectionTimeoutMillis", 1_000);
+        this.socketTimeoutMillis = intValue(env, "dynamoDbSocketTimeoutMillis", 2_000);
+        this.requestTimeoutMillis = intValue(env, "dynamoDbRequestTimeoutMillis", 3_000);
+        this.clientExecutionTimeoutMillis = intValue(env, "dynamoDbClientExecutionTimeoutMillis", 5_000);
+        this.maxRetries = intValue(env, "dynamoDbMaxRetries", 3);
+        this.batchConcurrency = intValue(env, "dynamoDbBatchConcurrency", 8);
+        this.batchMaxAttempts = intValue(env, "dynamoDbBatchMaxAttempts", 8);
+        this.batchBaseBackoffMillis = longValue(env, "dynamoDbBatchBaseBackoffMillis", 25);
+    }
+
+    public static DynamoDBClientSettings fromEnv() {
+        return new DynamoDBClientSettings(System.getenv());
+    }
+
+    public ClientConfiguration toClientConfiguration() {
+        return new ClientConfiguration()
+            .withMaxConnections(maxConnections)
+            .withTcpKeepAlive(tcpKeepAlive)
+            .withConnectionTTL(connectionTtlMillis)
+            .withConnectionMaxIdleMillis(connectionMaxIdleMillis)
+            .withConnectionTimeout(connectionTimeoutMillis)
+            .withSocketTimeout(socketTimeoutMillis)
+            .withRequestTimeout(requestTimeoutMillis)
+            .withClientExecutionTimeout(clientExecutionTimeoutMillis)
+            .withRetryPolicy(PredefinedRetryPolicies.getDynamoDBDefaultRetryPolicyWithCustomMaxRetries(maxRetries));
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * @return endpoint override (e.g. DynamoDB Local), or null to use the regional endpoint.
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return number of batch requests (BatchWriteItem/BatchGetItem) run concurrently, on top of the request threads.
+     */
+    public int getBatchConcurrency() {
+        return batchConcurrency;
+    }
+
+    /**
+     * @return attempts per batch request at re-sending its unprocessed items, before giving up.
+     */
+    public int getBatchMaxAttempts() {
+        return batchMaxAttempts;
+    }
+
+    public long getBatchBaseBackoffMillis() {
+        return batchBaseBackoffMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "DynamoDBClientSettings{" +
+            "region='" + region + '\'' +
+            ", endpoint='" + endpoint + '\'' +
+            ", maxConnections=" + maxConnections +
+            ", tcpKeepAlive=" + tcpKeepAlive +
+            ", connectionTtlMillis=" + connectionTtlMillis +
+            ", connectionMaxIdleMillis=" + connectionMaxIdleMillis +
+            ", connectionTimeoutMillis=" + connectionTimeoutMillis +
+            ", socketTimeoutMillis=" + socketTimeoutMillis +
+            ", requestTimeoutMillis=" + requestTimeoutMillis +
+            ", clientExecutionTimeoutMillis=" + clientExecutionTimeoutMillis +
+            ", maxRetries=" + maxRetries +
+            ", batchConcurrency=" + batchConcurrency +
+            ", batchMaxAttempts=" + batchMaxAttempts +
+            ", batchBaseBackoffMillis=" + batchBaseBackoffMillis +
+            '}';
+    }
+
+    private static int intValue(Map<String, String> env, String name, int defaultValue) {
+        String value = env.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static long longValue(Map<String, String> env, String name, long defaultValue) {
+        String value = env.get(name);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+}
@@ -0,0 +1,461 @@
+package com.org.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+import com.org.store.ClaimingPaymentStore;
+import com.org.store.PaymentCursor;
+import com.org.store.PaymentListQuery;
+import com.org.store.PaymentStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static com.org.dynamodb.MerchantPaymentCodec.AMOUNT;
+import static com.org.dynamodb.MerchantPaymentCodec.BILLING_ADDRESS;
+import static com.org.dynamodb.MerchantPaymentCodec.CARD_NAME;
+import static com.org.dynamodb.MerchantPaymentCodec.CARD_NUMBER;
+import static com.org.dynamodb.MerchantPaymentCodec.CLAIM_EXPIRY_TIMESTAMP_SECONDS;
+import static com.org.dynamodb.MerchantPaymentCodec.COMPACT_ATTRIBUTES;
+import static com.org.dynamodb.MerchantPaymentCodec.COMPACT_CARD;
+import static com.org.dynamodb.MerchantPaymentCodec.COMPACT_CLAIM_EXPIRY;
+import static com.org.dynamodb.MerchantPaymentCodec.CREATION_TIMESTAMP_SECONDS;
+import static com.org.dynamodb.MerchantPaymentCodec.CURRENCY;
+import static com.org.dynamodb.MerchantPaymentCodec.EXPIRY_MONTH;
+import static com.org.dynamodb.MerchantPaymentCodec.EXPIRY_TIMESTAMP_SECONDS;
+import static com.org.dynamodb.MerchantPaymentCodec.EXPIRY_YEAR;
+import static com.org.dynamodb.MerchantPaymentCodec.MERCHANT_ID;
+import static com.org.dynamodb.MerchantPaymentCodec.MERCHANT_INDEX;
+import static com.org.dynamodb.MerchantPaymentCodec.MERCHANT_SHARD;
+import static com.org.dynamodb.MerchantPaymentCodec.ORIGINAL_ATTRIBUTES;
+import static com.org.dynamodb.MerchantPaymentCodec.PAYMENT_ID;
+import static com.org.dynamodb.MerchantPaymentCodec.STATUS;
+import static com.org.dynamodb.MerchantPaymentCodec.VERSION;
+
+/**
+ * {@link PaymentStore} on the low-level GetItem/PutItem API with {@link MerchantPaymentCodec}, instead of DynamoDBMapper.
+ * <p>
+ * Version checks are the ones DynamoDBMapper does for {@code @DynamoDBVersionAttribute}: a new payment requires the version
+ * attribute to be absent, otherwise it must match, and the written version is bumped by one.
+ * <p>
+ * With compactItems, payments are written in the compact format of {@link MerchantPaymentCodec}. Either way items of both
+ * formats are read, conditions accept both, and a write leaves the item in the configured format only, so the flag can be
+ * turned on (and back off) while the table holds both. The DynamoDBMapper store only reads the original format.
+ * <p>
+ * With a {@link ShardedMerchantIndex}, payments are written with their merchantShard and listed over MerchantShardGSI
+ * instead of MerchantCreationGSI.
+ */
+public class DynamoDBItemClient implements ClaimingPaymentStore {
+
+    private static final String NEW_ITEM_CONDITION = "attribute_not_exists(#version)";
+    private static final String VERSION_CONDITION = "#version = :expectedVersion";
+    private static final String MAKE_PAYMENT_CONDITION = "#paymentId = :paymentId AND #merchantId = :merchantId";
+    private static final String CLAIM_CONDITION = "attribute_exists(#paymentId) AND #merchantId = :merchantId"
+        + " AND (attribute_not_exists(#expiry) OR #expiry >= :now)"
+        + " AND (#status IN (:created, :pending, :createdCode, :pendingCode)"
+        + " OR (#status IN (:processing, :processingCode) AND (#claimExpiry < :now OR #ce < :now)))";
+    private static final String COMPLETE_CONDITION = "#status IN (:processing, :processingCode) AND #version = :claimedVersion";
+    // Listing expressions, shared with the DynamoDBMapper store.
+    static final String LIST_KEY_CONDITION = "#merchantId = :merchantId AND #created BETWEEN :from AND :to";
+    static final String LIST_FILTER = "(attribute_not_exists(#expiry) OR #expiry >= :now)";
+    static final String LIST_STATUS_FILTER = " AND #status IN (:status, :statusCode)";
+    static final String LIST_PROJECTION = "#paymentId, #merchantId, #created, #status, #amount, #currency, #expiry";
+
+    private final AmazonDynamoDB dynamoDB;
+    private final String tableName;
+    private final MerchantPaymentCodec codec;
+    private final BatchWriter batchWriter;
+    private final BatchReader batchReader;
+    private final ShardedMerchantIndex shardedIndex;
+
+    public DynamoDBItemClient(AmazonDynamoDB dynamoDB, String tableName) {
+        this(dynamoDB, tableName, BatchWriter.sequential(dynamoDB), BatchReader.sequential(dynamoDB));
+    }
+
+    public DynamoDBItemClient(AmazonDynamoDB dynamoDB, String tableName, BatchWriter batchWriter, BatchReader batchReader) {
+        this(dynamoDB, tableName, batchWriter, batchReader, false);
+    }
+
+    public DynamoDBItemClient(AmazonDynamoDB dynamoDB, String tableName, BatchWriter batchWriter, BatchReader batchReader,
+        boolean compactItems) {
+        this(dynamoDB, tableName, batchWriter, batchReader, compactItems, null);
+    }
+
+    /**
+     * @param shardedIndex index to list payments from, or null for MerchantCreationGSI.
+     */
+    public DynamoDBItemClient(AmazonDynamoDB dynamoDB, String tableName, BatchWriter batchWriter, BatchReader batchReader,
+        boolean compactItems, ShardedMerchantIndex shardedIndex) {
+        this.dynamoDB = dynamoDB;
+        this.tableName = tableName;
+        this.codec = new MerchantPaymentCodec(compactItems, shardedIndex == null ? null : shardedIndex.getMerchantShards());
+        this.batchWriter = batchWriter;
+        this.batchReader = batchReader;
+        this.shardedIndex = shardedIndex;
+    }
+
+    @Override
+    public void save(MerchantPayment payment) {
+        put(payment, false);
+    }
+
+    /**
+     * Writes the payments with BatchWriteItem, see {@link BatchWriter}.
+     */
+    @Override
+    public void saveAll(List<MerchantPayment> payments) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>(payments.size());
+        for (MerchantPayment payment : payments) {
+            if (payment.getVersion() != null) {
+                throw new IllegalArgumentException("Only new payments can be saved in bulk, paymentId: " + payment.getPaymentId());
+            }
+            items.add(codec.toItem(PaymentRecord.of(payment).withVersion(1L)));
+        }
+
+        batchWriter.putAll(tableName, items);
+        for (MerchantPayment payment : payments) {
+            payment.setVersion(1L);
+        }
+    }
+
+    @Override
+    public void saveMakePayment(MerchantPayment payment) {
+        put(payment, true);
+    }
+
+    @Override
+    public MerchantPayment getMerchantPayment(String paymentId) {
+        PaymentRecord record = getRecord(paymentId, false);
+        return record == null ? null : record.toMerchantPayment();
+    }
+
+    @Override
+    public MerchantPayment getLatestMerchantPayment(String paymentId) {
+        PaymentRecord record = getRecord(paymentId, true);
+        return record == null ? null : record.toMerchantPayment();
+    }
+
+    /**
+     * Reads the payments with BatchGetItem, see {@link BatchReader}.
+     */
+    @Override
+    public Map<String, MerchantPayment> getMerchantPayments(Collection<String> paymentIds) {
+        List<Map<String, AttributeValue>> keys = new ArrayList<>(paymentIds.size());
+        for (String paymentId : paymentIds) {
+            keys.add(MerchantPaymentCodec.key(paymentId));
+        }
+
+        List<Map<String, AttributeValue>> items = batchReader.getAll(tableName, keys);
+        Map<String, MerchantPayment> payments = new HashMap<>((int) (items.size() / 0.75f) + 1);
+        for (Map<String, AttributeValue> item : items) {
+            MerchantPayment payment = codec.fromItem(item).toMerchantPayment();
+            payments.put(payment.getPaymentId(), payment);
+        }
+        return payments;
+    }
+
+    /**
+     * Queries MerchantCreationGSI newest first, projecting only the listed attributes. Each query asks for the payments still
+     * missing from the page, and with a status filter more queries follow until the page is full or
+     * {@link PaymentListQuery#MAX_EVALUATED_PER_LIMIT} times the limit were evaluated. Sharded listings go through
+     * {@link ShardedMerchantIndex#list}.
+     */
+    @Override
+    public PaymentCursor listMerchantPayments(PaymentListQuery query, Consumer<PaymentRecord> sink) {
+        Map<String, String> names = new HashMap<>(8);
+        names.put("#paymentId", PAYMENT_ID);
+        names.put("#merchantId", MERCHANT_ID);
+        names.put("#created", CREATION_TIMESTAMP_SECONDS);
+        names.put("#status", STATUS);
+        names.put("#amount", AMOUNT);
+        names.put("#currency", CURRENCY);
+        names.put("#expiry", EXPIRY_TIMESTAMP_SECONDS);
+        Map<String, AttributeValue> values = new HashMap<>(8);
+        values.put(":from", number(query.getFromSeconds()));
+        values.put(":to", number(query.getToSeconds()));
+        values.put(":now", number(System.currentTimeMillis() / 1000));
+        String filter = LIST_FILTER;
+        if (query.getStatus() != null) {
+            filter += LIST_STATUS_FILTER;
+            values.put(":status", new AttributeValue(query.getStatus()));
+            values.put(":statusCode", MerchantPaymentCodec.statusValue(query.getStatus()));
+        }
+        if (shardedIndex != null) {
+            QueryRequest request = new QueryRequest()
+                .withTableName(tableName)
+                .withFilterExpression(filter)
+                .withProjectionExpression(LIST_PROJECTION)
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values);
+            return shardedIndex.list(query, request, codec, sink);
+        }
+        values.put(":merchantId", new AttributeValue(query.getMerchantId()));
+
+        Map<String, AttributeValue> startKey = query.getAfter() == null ? null : indexKey(query.getMerchantId(), query.getAfter());
+        int maxEvaluated = query.getLimit() * PaymentListQuery.MAX_EVALUATED_PER_LIMIT;
+        int listed = 0;
+        int evaluated = 0;
+        do {
+            QueryRequest request = new QueryRequest()
+                .withTableName(tableName)
+                .withIndexName(MERCHANT_INDEX)
+                .withKeyConditionExpression(LIST_KEY_CONDITION)
+                .withFilterExpression(filter)
+                .withProjectionExpression(LIST_PROJECTION)
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values)
+                .withScanIndexForward(false)
+                .withLimit(Math.min(query.getLimit() - listed, maxEvaluated - evaluated))
+                .withExclusiveStartKey(startKey);
+            QueryResult result = dynamoDB.query(request);
+
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                sink.accept(codec.fromItem(item));
+            }
+            listed += result.getCount();
+            evaluated += result.getScannedCount();
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null && listed < query.getLimit() && evaluated < maxEvaluated);
+
+        return startKey == null ? null : new PaymentCursor(Long.parseLong(startKey.get(CREATION_TIMESTAMP_SECONDS).getN()),
+            startKey.get(PAYMENT_ID).getS());
+    }
+
+    @Override
+    public MerchantPayment claimMakePayment(MerchantPayment payment, long nowEpochSeconds, long leaseSeconds) {
+        Map<String, String> names = new HashMap<>(16);
+        Map<String, AttributeValue> values = new HashMap<>(16);
+        names.put("#paymentId", PAYMENT_ID);
+        names.put("#merchantId", MERCHANT_ID);
+        names.put("#expiry", EXPIRY_TIMESTAMP_SECONDS);
+        names.put("#status", STATUS);
+        names.put("#claimExpiry", CLAIM_EXPIRY_TIMESTAMP_SECONDS);
+        names.put("#version", VERSION);
+        names.put("#ce", COMPACT_CLAIM_EXPIRY);
+        values.put(":merchantId", new AttributeValue(payment.getMerchantId()));
+        values.put(":now", number(nowEpochSeconds));
+        values.put(":created", new AttributeValue(PaymentStatus.Created.name()));
+        values.put(":pending", new AttributeValue(PaymentStatus.Pending.name()));
+        values.put(":processing", new AttributeValue(PaymentStatus.Processing.name()));
+        values.put(":createdCode", number(PaymentStatus.Created.getCode()));
+        values.put(":pendingCode", number(PaymentStatus.Pending.getCode()));
+        values.put(":processingCode", number(PaymentStatus.Processing.getCode()));
+        values.put(":claimExpiry", number(nowEpochSeconds + leaseSeconds));
+        values.put(":one", number(1));
+
+        // The card details replace whatever a previous (Pending) attempt stored, like the put of the read/write path does,
+        // and the attributes of the other format go.
+        StringBuilder set;
+        StringBuilder remove = new StringBuilder(" REMOVE #expiry");
+        if (codec.isCompact()) {
+            set = new StringBuilder("SET #status = :processingCode, #ce = :claimExpiry");
+            setOrRemove(set, remove, names, values, COMPACT_CARD, MerchantPaymentCodec.cardValue(payment.getCardNumber(),
+                payment.getCardName(), payment.getBillingAddress(), intValue(payment.getExpiryYear()),
+                intValue(payment.getExpiryMonth())));
+            setOrRemove(set, remove, names, values, CURRENCY, stringValue(payment.getCurrency()));
+            setOrRemove(set, remove, names, values, AMOUNT, numberValue(payment.getAmount()));
+            removeAll(remove, names, ORIGINAL_ATTRIBUTES);
+        } else {
+            set = new StringBuilder("SET #status = :processing, #claimExpiry = :claimExpiry");
+            setOrRemove(set, remove, names, values, CARD_NUMBER, stringValue(payment.getCardNumber()));
+            setOrRemove(set, remove, names, values, CARD_NAME, stringValue(payment.getCardName()));
+            setOrRemove(set, remove, names, values, CURRENCY, stringValue(payment.getCurrency()));
+            setOrRemove(set, remove, names, values, BILLING_ADDRESS, stringValue(payment.getBillingAddress()));
+            setOrRemove(set, remove, names, values, EXPIRY_YEAR, numberValue(payment.getExpiryYear()));
+            setOrRemove(set, remove, names, values, EXPIRY_MONTH, numberValue(payment.getExpiryMonth()));
+            setOrRemove(set, remove, names, values, AMOUNT, numberValue(payment.getAmount()));
+            removeAll(remove, names, COMPACT_ATTRIBUTES);
+        }
+        if (codec.getMerchantShards() != null) {
+            // For payments created before the merchant shards were written.
+            setOrRemove(set, remove, names, values, MERCHANT_SHARD,
+                new AttributeValue(codec.getMerchantShards().shardKey(payment.getMerchantId(), payment.getPaymentId())));
+        }
+
+        UpdateItemRequest request = new UpdateItemRequest()
+            .withTableName(tableName)
+            .withKey(MerchantPaymentCodec.key(payment.getPaymentId()))
+            .withUpdateExpression(set.append(remove).append(" ADD #version :one").toString())
+            .withConditionExpression(CLAIM_CONDITION)
+            .withExpressionAttributeNames(names)
+            .withExpressionAttributeValues(values)
+            .withReturnValues(ReturnValue.ALL_OLD);
+
+        // Throws ConditionalCheckFailedException if the payment can't be claimed.
+        PaymentRecord previous = codec.fromItem(dynamoDB.updateItem(request).getAttributes());
+        payment.setStatus(PaymentStatus.Processing.name());
+        payment.setVersion(previous.hasVersion() ? previous.getVersion() + 1 : 1L);
+        return previous.toMerchantPayment();
+    }
+
+    @Override
+    public void completeMakePayment(String paymentId, long claimedVersion, String status) {
+        Map<String, String> names = new HashMap<>(8);
+        names.put("#status", STATUS);
+        names.put("#claimExpiry", CLAIM_EXPIRY_TIMESTAMP_SECONDS);
+        names.put("#version", VERSION);
+        names.put("#ce", COMPACT_CLAIM_EXPIRY);
+        Map<String, AttributeValue> values = new HashMap<>(8);
+        values.put(":processing", new AttributeValue(PaymentStatus.Processing.name()));
+        values.put(":processingCode", number(PaymentStatus.Processing.getCode()));
+        values.put(":claimedVersion", number(claimedVersion));
+        values.put(":nextVersion", number(claimedVersion + 1));
+        if (codec.isCompact()) {
+            values.put(":status", MerchantPaymentCodec.statusValue(status));
+        } else {
+            values.put(":status", new AttributeValue(status));
+        }
+
+        UpdateItemRequest request = new UpdateItemRequest()
+            .withTableName(tableName)
+            .withKey(MerchantPaymentCodec.key(paymentId))
+            .withUpdateExpression("SET #status = :status, #version = :nextVersion REMOVE #claimExpiry, #ce")
+            .withConditionExpression(COMPLETE_CONDITION)
+            .withExpressionAttributeNames(names)
+            .withExpressionAttributeValues(values);
+
+        dynamoDB.updateItem(request);
+    }
+
+    @Override
+    public void releaseClaim(String paymentId, long claimedVersion, String previousStatus, Long previousExpiryTimestampSeconds) {
+        Map<String, String> names = new HashMap<>(16);
+        names.put("#status", STATUS);
+        names.put("#version", VERSION);
+        names.put("#currency", CURRENCY);
+        names.put("#amount", AMOUNT);
+        Map<String, AttributeValue> values = new HashMap<>(8);
+        values.put(":processing", new AttributeValue(PaymentStatus.Processing.name()));
+        values.put(":processingCode", number(PaymentStatus.Processing.getCode()));
+        values.put(":claimedVersion", number(claimedVersion));
+        values.put(":nextVersion", number(claimedVersion + 1));
+        if (codec.isCompact()) {
+            values.put(":status", MerchantPaymentCodec.statusValue(previousStatus));
+        } else {
+            values.put(":status", new AttributeValue(previousStatus));
+        }
+
+        // The claim and the card details of the attempt go, in either format.
+        StringBuilder set = new StringBuilder("SET #status = :status, #version = :nextVersion");
+        StringBuilder remove = new StringBuilder(" REMOVE #currency, #amount");
+        setOrRemove(set, remove, names, values, EXPIRY_TIMESTAMP_SECONDS, numberValue(previousExpiryTimestampSeconds));
+        removeAll(remove, names, ORIGINAL_ATTRIBUTES);
+        removeAll(remove, names, COMPACT_ATTRIBUTES);
+
+        UpdateItemRequest request = new UpdateItemRequest()
+            .withTableName(tableName)
+            .withKey(MerchantPaymentCodec.key(paymentId))
+            .withUpdateExpression(set.append(remove).toString())
+            .withConditionExpression(COMPLETE_CONDITION)
+            .withExpressionAttributeNames(names)
+            .withExpressionAttributeValues(values);
+
+        dynamoDB.updateItem(request);
+    }
+
+    public PaymentRecord getRecord(String paymentId) {
+        return getRecord(paymentId, false);
+    }
+
+    public PaymentRecord getRecord(String paymentId, boolean consistentRead) {
+        GetItemRequest request = new GetItemRequest()
+            .withTableName(tableName)
+            .withKey(MerchantPaymentCodec.key(paymentId))
+            .withConsistentRead(consistentRead);
+        return codec.fromItem(dynamoDB.getItem(request).getItem());
+    }
+
+    private void put(MerchantPayment payment, boolean mustExistForMerchant) {
+        Long expectedVersion = payment.getVersion();
+        long nextVersion = expectedVersion == null ? 1L : expectedVersion + 1;
+
+        Map<String, String> names = new HashMap<>(4);
+        Map<String, AttributeValue> values = new HashMap<>(4);
+        names.put("#version", VERSION);
+        String condition;
+        if (expectedVersion == null) {
+            condition = NEW_ITEM_CONDITION;
+        } else {
+            condition = VERSION_CONDITION;
+            values.put(":expectedVersion", new AttributeValue().withN(Long.toString(expectedVersion)));
+        }
+        if (mustExistForMerchant) {
+            condition = MAKE_PAYMENT_CONDITION + " AND " + condition;
+            names.put("#paymentId", PAYMENT_ID);
+            names.put("#merchantId", MERCHANT_ID);
+            values.put(":paymentId", new AttributeValue(payment.getPaymentId()));
+            values.put(":merchantId", new AttributeValue(payment.getMerchantId()));
+        }
+
+        PutItemRequest request = new PutItemRequest()
+            .withTableName(tableName)
+            .withItem(codec.toItem(PaymentRecord.of(payment).withVersion(nextVersion)))
+            .withConditionExpression(condition)
+            .withExpressionAttributeNames(names)
+            .withExpressionAttributeValues(values.isEmpty() ? null : values);
+
+        // Throws ConditionalCheckFailedException on a version mismatch, same as the mapper.
+        dynamoDB.putItem(request);
+        payment.setVersion(nextVersion);
+    }
+
+    private static void setOrRemove(StringBuilder set, StringBuilder remove, Map<String, String> names,
+        Map<String, AttributeValue> values, String attribute, AttributeValue value) {
+        String name = "#" + attribute;
+        names.put(name, attribute);
+        if (value == null) {
+            remove.append(", ").append(name);
+        } else {
+            String placeholder = ":" + attribute;
+            values.put(placeholder, value);
+            set.append(", ").append(name).append(" = ").append(placeholder);
+        }
+    }
+
+    private static void removeAll(StringBuilder remove, Map<String, String> names, List<String> attributes) {
+        for (String attribute : attributes) {
+            String name = "#" + attribute;
+            names.put(name, attribute);
+            remove.append(", ").append(name);
+        }
+    }
+
+    private static Map<String, AttributeValue> indexKey(String merchantId, PaymentCursor cursor) {
+        Map<String, AttributeValue> key = MerchantPaymentCodec.key(cursor.getPaymentId());
+        key.put(MERCHANT_ID, new AttributeValue(merchantId));
+        key.put(CREATION_TIMESTAMP_SECONDS, number(cursor.getCreationTimestampSeconds()));
+        return key;
+    }
+
+    private static AttributeValue stringValue(String value) {
+        return value == null ? null : new AttributeValue(value);
+    }
+
+    private static int intValue(Integer value) {
+        return value == null ? PaymentRecord.NONE_INT : value;
+    }
+
+    private static AttributeValue numberValue(Integer value) {
+        return value == null ? null : number(value);
+    }
+
+    private static AttributeValue numberValue(Long value) {
+        return value == null ? null : number(value);
+    }
+
+    private static AttributeValue number(long value) {
+        return new AttributeValue().withN(Long.toString(value));
+    }
+}
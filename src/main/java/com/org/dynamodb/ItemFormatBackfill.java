@@ -0,0 +1,150 @@
+package com.org.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.org.modules.DynamoDBMapperModule;
+import com.org.modules.Env;
+import com.org.payments.PaymentRecord;
+import com.org.ratelimit.MerchantRateLimiter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Rewrites the payments of a table in the format of a {@link MerchantPaymentCodec}, e.g. to the compact one or with their
+ * merchant shards, while the gateway keeps serving. The table is scanned in parallel segments by a {@link ParallelScanner},
+ * and items are rewritten at a limited rate so the backfill doesn't take the capacity the gateway needs.
+ * <p>
+ * Each rewrite keeps the version and is conditional on it, so a payment the gateway updated since it was scanned is left
+ * alone (the gateway's write already decided its format), and the gateway's own version checks are never affected.
+ * <p>
+ * Run with: java -cp target/PaymentGateway-0.1.jar com.org.dynamodb.ItemFormatBackfill, configured with the env variables
+ * merchantPaymentTableName, backfillFormat ("compact" or "original"), backfillSegments (8), backfillItemsPerSecond (100)
+ * and backfillDryRun (false, only counts the items to rewrite). With shardedMerchantIndex it also writes the merchantShard
+ * of the payments, with the shard counts the gateway is configured with.
+ */
+public class ItemFormatBackfill {
+
+    private final AmazonDynamoDB dynamoDB;
+    private final String tableName;
+    private final MerchantPaymentCodec codec;
+    private final ParallelScanner scanner;
+    private final MerchantRateLimiter rateLimiter;
+    private final boolean dryRun;
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder rewritten = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    public ItemFormatBackfill(AmazonDynamoDB dynamoDB, String tableName, MerchantPaymentCodec codec, int segments,
+        double itemsPerSecond, boolean dryRun) {
+        this.dynamoDB = dynamoDB;
+        this.tableName = tableName;
+        this.codec = codec;
+        this.scanner = new ParallelScanner(dynamoDB, segments, 0);
+        this.rateLimiter = new MerchantRateLimiter(new MerchantRateLimiter.MerchantLimit(itemsPerSecond, segments), Map.of());
+        this.dryRun = dryRun;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String format = Env.get("backfillFormat", "compact");
+        if (!"compact".equals(format) && !"original".equals(format)) {
+            throw new IllegalArgumentException("Unknown backfillFormat: " + format);
+        }
+        ItemFormatBackfill backfill = new ItemFormatBackfill(DynamoDBMapperModule.provideAmazonDynamoDB(),
+            Env.get("merchantPaymentTableName", null),
+            new MerchantPaymentCodec("compact".equals(format), Env.getBoolean("shardedMerchantIndex", false)
+                ? DynamoDBMapperModule.provideShardedMerchantIndex().getMerchantShards() : null),
+            Env.getInt("backfillSegments", 8),
+            Env.getLong("backfillItemsPerSecond", 100),
+            Env.getBoolean("backfillDryRun", false));
+        backfill.run();
+        System.out.println(backfill);
+    }
+
+    /**
+     * Backfills all segments, each on its own thread, and returns once the whole table was scanned.
+     *
+     * @throws ExecutionException with the first failure of a segment, after the others finished.
+     */
+    public void run() throws InterruptedException, ExecutionException {
+        scanner.scan(new ScanRequest().withTableName(tableName), item -> {
+            scanned.increment();
+            if (!codec.isInFormat(item)) {
+                rewrite(item);
+            }
+        });
+    }
+
+    private void rewrite(Map<String, AttributeValue> item) {
+        if (dryRun) {
+            rewritten.increment();
+            return;
+        }
+        for (long waitNanos = rateLimiter.tryAcquire(null); waitNanos > 0; waitNanos = rateLimiter.tryAcquire(null)) {
+            LockSupport.parkNanos(waitNanos);
+        }
+
+        PaymentRecord record = codec.fromItem(item);
+        Map<String, String> names = new HashMap<>(2);
+        Map<String, AttributeValue> values = new HashMap<>(2);
+        names.put("#version", MerchantPaymentCodec.VERSION);
+        String condition;
+        if (record.hasVersion()) {
+            condition = "#version = :version";
+            values.put(":version", new AttributeValue().withN(Long.toString(record.getVersion())));
+        } else {
+            condition = "attribute_exists(#paymentId) AND attribute_not_exists(#version)";
+            names.put("#paymentId", MerchantPaymentCodec.PAYMENT_ID);
+        }
+
+        PutItemRequest request = new PutItemRequest()
+            .withTableName(tableName)
+            .withItem(codec.toItem(record))
+            .withConditionExpression(condition)
+            .withExpressionAttributeNames(names)
+            .withExpressionAttributeValues(values.isEmpty() ? null : values);
+        try {
+            dynamoDB.putItem(request);
+            rewritten.increment();
+        } catch (ConditionalCheckFailedException e) {
+            conflicts.increment();
+        }
+    }
+
+    public long getScanned() {
+        return scanned.sum();
+    }
+
+    /**
+     * @return the items rewritten, or with dryRun the ones that would have been.
+     */
+    public long getRewritten() {
+        return rewritten.sum();
+    }
+
+    /**
+     * @return the items updated or deleted by someone else between the scan and the rewrite.
+     */
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ItemFormatBackfill{" +
+            "tableName='" + tableName + '\'' +
+            ", compact=" + codec.isCompact() +
+            ", merchantShards=" + codec.getMerchantShards() +
+            ", dryRun=" + dryRun +
+            ", scanned=" + getScanned() +
+            ", rewritten=" + getRewritten() +
+            ", conflicts=" + getConflicts() +
+            '}';
+    }
+}
@@ -0,0 +1,399 @@
+package com.org.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.org.payments.PaymentRecord.NONE_INT;
+import static com.org.payments.PaymentRecord.NONE_LONG;
+
+/**
+ * Hand-written conversion between {@link PaymentRecord} and DynamoDB items, producing the same attributes as the
+ * {@code @DynamoDBAttribute} mapping on MerchantPayment but without reflection or boxing.
+ * <p>
+ * With {@code compact} it writes the compact format instead: the status as its {@link PaymentStatus#getCode() code},
+ * the card and billing fields packed into one binary attribute and a short name for the claim expiry, which takes about
+ * a fifth off a paid payment. The keys, the attributes projected on {@link #MERCHANT_INDEX}, the TTL attribute and the
+ * version keep their names, so lookups, listings and conditions work on both formats and the index stays as it is.
+ * Items of either format are read, attribute by attribute.
+ * <p>
+ * With {@link MerchantShards}, items also get the {@link #MERCHANT_SHARD} key of {@link #MERCHANT_SHARD_INDEX}.
+ */
+public class MerchantPaymentCodec {
+
+    public static final String PAYMENT_ID = "paymentId";
+    public static final String MERCHANT_ID = "merchantId";
+    public static final String CARD_NUMBER = "cardNumber";
+    public static final String CARD_NAME = "cardName";
+    public static final String EXPIRY_YEAR = "expiryYear";
+    public static final String EXPIRY_MONTH = "expiryMonth";
+    public static final String CURRENCY = "currency";
+    public static final String AMOUNT = "amount";
+    public static final String STATUS = "status";
+    public static final String BILLING_ADDRESS = "billingAddress";
+    public static final String EXPIRY_TIMESTAMP_SECONDS = "expiryTimestampSeconds";
+    public static final String CREATION_TIMESTAMP_SECONDS = "creationTimestampSeconds";
+    public static final String CLAIM_EXPIRY_TIMESTAMP_SECONDS = "claimExpiryTimestampSeconds";
+    public static final String VERSION = "version";
+    public static final String MERCHANT_SHARD = "merchantShard";
+
+    public static final String COMPACT_CLAIM_EXPIRY = "ce";
+    /**
+     * cardNumber, cardName, billingAddress, expiryYear and expiryMonth, see {@link #cardValue}.
+     */
+    public static final String COMPACT_CARD = "cd";
+
+    /**
+     * Attributes only written in the original format, and only in the compact one. The status is in both, as a string or
+     * as a number.
+     */
+    public static final List<String> ORIGINAL_ATTRIBUTES = List.of(CARD_NUMBER, CARD_NAME, EXPIRY_YEAR, EXPIRY_MONTH,
+        BILLING_ADDRESS, CLAIM_EXPIRY_TIMESTAMP_SECONDS);
+    public static final List<String> COMPACT_ATTRIBUTES = List.of(COMPACT_CLAIM_EXPIRY, COMPACT_CARD);
+
+    /**
+     * GSI keyed by merchantId and creationTimestampSeconds, for listings.
+     */
+    public static final String MERCHANT_INDEX = "MerchantCreationGSI";
+    /**
+     * The GSI listings used before, keyed by merchantId and transactionDate. A GSI's keys can't change, so it's kept until
+     * the stack is deployed without it, see the README.
+     */
+    public static final String LEGACY_MERCHANT_INDEX = "MerchantGSI";
+    /**
+     * Non-key attributes projected on {@link #MERCHANT_INDEX}, the ones listings need.
+     */
+    public static final List<String> MERCHANT_INDEX_ATTRIBUTES = List.of(STATUS, AMOUNT, CURRENCY, EXPIRY_TIMESTAMP_SECONDS);
+    /**
+     * GSI keyed by merchantShard ("merchantId#shard", see {@link MerchantShards}) and creationTimestampSeconds, for
+     * listings of merchants writing more than one index partition can take.
+     */
+    public static final String MERCHANT_SHARD_INDEX = "MerchantShardGSI";
+    /**
+     * Non-key attributes projected on {@link #MERCHANT_SHARD_INDEX}, where the merchantId isn't a key.
+     */
+    public static final List<String> MERCHANT_SHARD_INDEX_ATTRIBUTES = List.of(MERCHANT_ID, STATUS, AMOUNT, CURRENCY,
+        EXPIRY_TIMESTAMP_SECONDS);
+
+    // 15 attributes at most, sized so the map never resizes.
+    private static final int ITEM_CAPACITY = 21;
+    private static final byte CARD_FORMAT = 1;
+    private static final int HAS_CARD_NUMBER = 1;
+    private static final int HAS_CARD_NAME = 1 << 1;
+    private static final int HAS_BILLING_ADDRESS = 1 << 2;
+    private static final int HAS_EXPIRY_YEAR = 1 << 3;
+    private static final int HAS_EXPIRY_MONTH = 1 << 4;
+
+    private final boolean compact;
+    private final MerchantShards merchantShards;
+
+    public MerchantPaymentCodec() {
+        this(false);
+    }
+
+    public MerchantPaymentCodec(boolean compact) {
+        this(compact, null);
+    }
+
+    /**
+     * @param merchantShards shards to write the {@link #MERCHANT_SHARD} key for, or null to leave it out.
+     */
+    public MerchantPaymentCodec(boolean compact, MerchantShards merchantShards) {
+        this.compact = compact;
+        this.merchantShards = merchantShards;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public MerchantShards getMerchantShards() {
+        return merchantShards;
+    }
+
+    public Map<String, AttributeValue> toItem(PaymentRecord record) {
+        Map<String, AttributeValue> item = compact ? toCompactItem(record) : toOriginalItem(record);
+        String shardKey = shardKey(item);
+        if (shardKey != null) {
+            item.put(MERCHANT_SHARD, new AttributeValue(shardKey));
+        }
+        return item;
+    }
+
+    private static Map<String, AttributeValue> toOriginalItem(PaymentRecord record) {
+        Map<String, AttributeValue> item = new HashMap<>(ITEM_CAPACITY);
+        putString(item, PAYMENT_ID, record.getPaymentId());
+        putString(item, MERCHANT_ID, record.getMerchantId());
+        putString(item, CARD_NUMBER, record.getCardNumber());
+        putString(item, CARD_NAME, record.getCardName());
+        putString(item, CURRENCY, record.getCurrency());
+        putString(item, STATUS, record.getStatus());
+        putString(item, BILLING_ADDRESS, record.getBillingAddress());
+        putInt(item, EXPIRY_YEAR, record.getExpiryYear());
+        putInt(item, EXPIRY_MONTH, record.getExpiryMonth());
+        putInt(item, AMOUNT, record.getAmount());
+        putLong(item, EXPIRY_TIMESTAMP_SECONDS, record.getExpiryTimestampSeconds());
+        putLong(item, CREATION_TIMESTAMP_SECONDS, record.getCreationTimestampSeconds());
+        putLong(item, CLAIM_EXPIRY_TIMESTAMP_SECONDS, record.getClaimExpiryTimestampSeconds());
+        putLong(item, VERSION, record.getVersion());
+        return item;
+    }
+
+    private static Map<String, AttributeValue> toCompactItem(PaymentRecord record) {
+        Map<String, AttributeValue> item = new HashMap<>(ITEM_CAPACITY);
+        putString(item, PAYMENT_ID, record.getPaymentId());
+        putString(item, MERCHANT_ID, record.getMerchantId());
+        putLong(item, CREATION_TIMESTAMP_SECONDS, record.getCreationTimestampSeconds());
+        putLong(item, EXPIRY_TIMESTAMP_SECONDS, record.getExpiryTimestampSeconds());
+        putLong(item, VERSION, record.getVersion());
+        if (record.getStatus() != null) {
+            item.put(STATUS, statusValue(record.getStatus()));
+        }
+        putInt(item, AMOUNT, record.getAmount());
+        putString(item, CURRENCY, record.getCurrency());
+        putLong(item, COMPACT_CLAIM_EXPIRY, record.getClaimExpiryTimestampSeconds());
+        AttributeValue card = cardValue(record.getCardNumber(), record.getCardName(), record.getBillingAddress(),
+            record.getExpiryYear(), record.getExpiryMonth());
+        if (card != null) {
+            item.put(COMPACT_CARD, card);
+        }
+        return item;
+    }
+
+    /**
+     * @return the record, or null for a null item (i.e. GetItem didn't find it).
+     */
+    public PaymentRecord fromItem(Map<String, AttributeValue> item) {
+        if (item == null) {
+            return null;
+        }
+        AttributeValue card = item.get(COMPACT_CARD);
+        if (card != null) {
+            // Duplicated so that reading doesn't move the position of the item's buffer.
+            return fromItem(item, card.getB().duplicate());
+        }
+        return new PaymentRecord(getString(item, PAYMENT_ID),
+            getString(item, MERCHANT_ID),
+            getString(item, CARD_NUMBER),
+            getString(item, CARD_NAME),
+            getString(item, CURRENCY),
+            getStatus(item),
+            getString(item, BILLING_ADDRESS),
+            getInt(item, EXPIRY_YEAR),
+            getInt(item, EXPIRY_MONTH),
+            getInt(item, AMOUNT),
+            getLong(item, EXPIRY_TIMESTAMP_SECONDS),
+            getLong(item, CREATION_TIMESTAMP_SECONDS),
+            getLong(item, CLAIM_EXPIRY_TIMESTAMP_SECONDS, COMPACT_CLAIM_EXPIRY),
+            getLong(item, VERSION));
+    }
+
+    private static PaymentRecord fromItem(Map<String, AttributeValue> item, ByteBuffer card) {
+        if (card.get() != CARD_FORMAT) {
+            throw new IllegalStateException("Unknown card format for paymentId " + getString(item, PAYMENT_ID));
+        }
+        int fields = card.get();
+        String cardNumber = (fields & HAS_CARD_NUMBER) == 0 ? null : readString(card);
+        String cardName = (fields & HAS_CARD_NAME) == 0 ? null : readString(card);
+        String billingAddress = (fields & HAS_BILLING_ADDRESS) == 0 ? null : readString(card);
+        int expiryYear = (fields & HAS_EXPIRY_YEAR) == 0 ? NONE_INT : readVarInt(card);
+        int expiryMonth = (fields & HAS_EXPIRY_MONTH) == 0 ? NONE_INT : readVarInt(card);
+        return new PaymentRecord(getString(item, PAYMENT_ID),
+            getString(item, MERCHANT_ID),
+            cardNumber,
+            cardName,
+            getString(item, CURRENCY),
+            getStatus(item),
+            billingAddress,
+            expiryYear,
+            expiryMonth,
+            getInt(item, AMOUNT),
+            getLong(item, EXPIRY_TIMESTAMP_SECONDS),
+            getLong(item, CREATION_TIMESTAMP_SECONDS),
+            getLong(item, CLAIM_EXPIRY_TIMESTAMP_SECONDS, COMPACT_CLAIM_EXPIRY),
+            getLong(item, VERSION));
+    }
+
+    /**
+     * @return true if the item has no attribute of the other format, and the right shard key with merchant shards, i.e.
+     * writing it again with this codec wouldn't change it.
+     */
+    public boolean isInFormat(Map<String, AttributeValue> item) {
+        String shardKey = shardKey(item);
+        if (shardKey != null && !shardKey.equals(getString(item, MERCHANT_SHARD))) {
+            return false;
+        }
+        for (String attribute : compact ? ORIGINAL_ATTRIBUTES : COMPACT_ATTRIBUTES) {
+            if (item.containsKey(attribute)) {
+                return false;
+            }
+        }
+        AttributeValue status = item.get(STATUS);
+        return status == null || (compact ? status.getN() != null : status.getS() != null);
+    }
+
+    /**
+     * @return the status as stored in compact items.
+     */
+    public static AttributeValue statusValue(String status) {
+        return new AttributeValue().withN(Integer.toString(PaymentStatus.valueOf(status).getCode()));
+    }
+
+    /**
+     * Packs the card fields as a format byte, a byte flagging the fields present, then the present strings as a varint
+     * length and UTF-8 bytes, and the present numbers as zigzag varints.
+     *
+     * @return the packed fields, or null if none is set.
+     */
+    public static AttributeValue cardValue(String cardNumber, String cardName, String billingAddress, int expiryYear,
+        int expiryMonth) {
+        byte[] number = bytes(cardNumber);
+        byte[] name = bytes(cardName);
+        byte[] address = bytes(billingAddress);
+        int fields = (number == null ? 0 : HAS_CARD_NUMBER) | (name == null ? 0 : HAS_CARD_NAME)
+            | (address == null ? 0 : HAS_BILLING_ADDRESS) | (expiryYear == NONE_INT ? 0 : HAS_EXPIRY_YEAR)
+            | (expiryMonth == NONE_INT ? 0 : HAS_EXPIRY_MONTH);
+        if (fields == 0) {
+            return null;
+        }
+
+        // A varint takes at most 5 bytes.
+        ByteBuffer buffer = ByteBuffer.allocate(2 + 5 * 5 + length(number) + length(name) + length(address));
+        buffer.put(CARD_FORMAT);
+        buffer.put((byte) fields);
+        writeBytes(buffer, number);
+        writeBytes(buffer, name);
+        writeBytes(buffer, address);
+        if (expiryYear != NONE_INT) {
+            writeVarInt(buffer, expiryYear);
+        }
+        if (expiryMonth != NONE_INT) {
+            writeVarInt(buffer, expiryMonth);
+        }
+        buffer.flip();
+        return new AttributeValue().withB(buffer);
+    }
+
+    /**
+     * @return the shard key the item should have, or null without merchant shards.
+     */
+    private String shardKey(Map<String, AttributeValue> item) {
+        String merchantId = getString(item, MERCHANT_ID);
+        String paymentId = getString(item, PAYMENT_ID);
+        if (merchantShards == null || merchantId == null || paymentId == null) {
+            return null;
+        }
+        return merchantShards.shardKey(merchantId, paymentId);
+    }
+
+    public static Map<String, AttributeValue> key(String paymentId) {
+        Map<String, AttributeValue> key = new HashMap<>(2);
+        key.put(PAYMENT_ID, new AttributeValue(paymentId));
+        return key;
+    }
+
+    private static void putString(Map<String, AttributeValue> item, String name, String value) {
+        if (value != null) {
+            item.put(name, new AttributeValue(value));
+        }
+    }
+
+    private static void putInt(Map<String, AttributeValue> item, String name, int value) {
+        if (value != NONE_INT) {
+            item.put(name, new AttributeValue().withN(Integer.toString(value)));
+        }
+    }
+
+    private static void putLong(Map<String, AttributeValue> item, String name, long value) {
+        if (value != NONE_LONG) {
+            item.put(name, new AttributeValue().withN(Long.toString(value)));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes != null) {
+            writeUnsignedVarInt(buffer, bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readUnsignedVarInt(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(ByteBuffer buffer, int value) {
+        writeUnsignedVarInt(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = readUnsignedVarInt(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeUnsignedVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readUnsignedVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String getStatus(Map<String, AttributeValue> item) {
+        AttributeValue value = item.get(STATUS);
+        if (value == null || value.getN() == null) {
+            return value == null ? null : value.getS();
+        }
+        PaymentStatus status = PaymentStatus.fromCode(Integer.parseInt(value.getN()));
+        if (status == null) {
+            throw new IllegalStateException("Unknown status code " + value.getN() + " for paymentId " + getString(item, PAYMENT_ID));
+        }
+        return status.name();
+    }
+
+    private static long getLong(Map<String, AttributeValue> item, String name, String compactName) {
+        long value = getLong(item, name);
+        return value == NONE_LONG ? getLong(item, compactName) : value;
+    }
+
+    private static String getString(Map<String, AttributeValue> item, String name) {
+        AttributeValue value = item.get(name);
+        return value == null ? null : value.getS();
+    }
+
+    private static int getInt(Map<String, AttributeValue> item, String name) {
+        AttributeValue value = item.get(name);
+        return value == null || value.getN() == null ? NONE_INT : Integer.parseInt(value.getN());
+    }
+
+    private static long getLong(Map<String, AttributeValue> item, String name) {
+        AttributeValue value = item.get(name);
+        return value == null || value.getN() == null ? NONE_LONG : Long.parseLong(value.getN());
+    }
+}
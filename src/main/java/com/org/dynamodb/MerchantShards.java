@@ -0,0 +1,89 @@
+package com.org.dynamodb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Number of shards of each merchant on {@link MerchantPaymentCodec#MERCHANT_SHARD_INDEX}, and the shard of each payment:
+ * its paymentId's hash modulo the merchant's shard count, so the shard key of a payment never changes while the count
+ * doesn't. A merchant's payments are spread evenly over its shards, each on its own index partition.
+ * <p>
+ * A shard count should only go up: the payments written under the old count keep their shard, which is still listed,
+ * and move when they're written again. Lowering it hides the payments of the dropped shards from listings until they're
+ * rewritten, e.g. by {@link ItemFormatBackfill}.
+ */
+public class MerchantShards {
+
+    /**
+     * Most shards of a merchant. A listing queries all of them, and its cursor has a position for each.
+     */
+    public static final int MAX_SHARDS = 64;
+
+    private static final String SEPARATOR = "#";
+
+    private final int defaultShards;
+    private final Map<String, Integer> merchantShards;
+
+    /**
+     * @param defaultShards  shards of the merchants without their own count.
+     * @param merchantShards shard counts by merchantId, overriding the default.
+     */
+    public MerchantShards(int defaultShards, Map<String, Integer> merchantShards) {
+        checkShards(defaultShards);
+        merchantShards.values().forEach(MerchantShards::checkShards);
+        this.defaultShards = defaultShards;
+        this.merchantShards = Map.copyOf(merchantShards);
+    }
+
+    /**
+     * Parses per merchant shard counts written as {@code merchantA=8,merchantB=4}.
+     */
+    public static Map<String, Integer> parseMerchantShards(String spec) {
+        Map<String, Integer> shards = new HashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return shards;
+        }
+        for (String entry : spec.split(",")) {
+            String[] merchantShards = entry.trim().split("=", 2);
+            try {
+                shards.put(merchantShards[0].trim(), Integer.parseInt(merchantShards[1].trim()));
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid merchant shard count: " + entry);
+            }
+        }
+        return shards;
+    }
+
+    public int shardCount(String merchantId) {
+        return merchantShards.getOrDefault(merchantId, defaultShards);
+    }
+
+    public int shardOf(String merchantId, String paymentId) {
+        return Math.floorMod(paymentId.hashCode(), shardCount(merchantId));
+    }
+
+    /**
+     * @return the index partition key of the payment, e.g. "merchantA#3".
+     */
+    public String shardKey(String merchantId, String paymentId) {
+        return shardKey(merchantId, shardOf(merchantId, paymentId));
+    }
+
+    public static String shardKey(String merchantId, int shard) {
+        return merchantId + SEPARATOR + shard;
+    }
+
+    @Override
+    public String toString() {
+        return "MerchantShards{" +
+            "defaultShards=" + defaultShards +
+            ", merchantShards=" + merchantShards +
+            '}';
+    }
+
+    private static void checkShards(int shards) {
+        if (shards < 1 || shards > MAX_SHARDS) {
+            throw new IllegalArgumentException("A merchant needs between 1 and " + MAX_SHARDS + " shards, not " + shards);
+        }
+    }
+}
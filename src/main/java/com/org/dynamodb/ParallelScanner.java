@@ -0,0 +1,181 @@
+package com.org.dynamodb;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.org.ratelimit.MerchantRateLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Scans a whole table in parallel segments (Segment/TotalSegments), a task per segment on a {@link ForkJoinPool}, and hands
+ * the items to a sink page by page as they come in, instead of collecting them.
+ * <p>
+ * Reads are paced to a rate of read capacity units shared by all the segments, e.g. a fraction of the table's provisioned
+ * capacity, so a scan doesn't take what the gateway needs. Each page is paid for with the capacity it consumed, and while
+ * the scan is over its rate the next page of every segment waits.
+ */
+public class ParallelScanner {
+
+    private static final int PAGE_SIZE = 100;
+    // An eventually consistent read of an item up to 4KB, for responses without their consumed capacity.
+    private static final double ITEM_READ_UNITS = 0.5;
+
+    private final AmazonDynamoDB dynamoDB;
+    private final int segments;
+    private final double readUnitsPerSecond;
+    private final MerchantRateLimiter rateLimiter;
+    private final LongAdder items = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final DoubleAdder consumedReadUnits = new DoubleAdder();
+    private final LongAdder pacedNanos = new LongAdder();
+
+    /**
+     * @param readUnitsPerSecond read capacity units the scan may consume per second, 0 for no limit.
+     */
+    public ParallelScanner(AmazonDynamoDB dynamoDB, int segments, double readUnitsPerSecond) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("A scan needs at least one segment");
+        }
+        this.dynamoDB = dynamoDB;
+        this.segments = segments;
+        this.readUnitsPerSecond = readUnitsPerSecond;
+        this.rateLimiter = readUnitsPerSecond > 0
+            ? new MerchantRateLimiter(new MerchantRateLimiter.MerchantLimit(readUnitsPerSecond,
+            (int) Math.max(1, Math.ceil(readUnitsPerSecond))), Map.of())
+            : MerchantRateLimiter.unlimited();
+    }
+
+    /**
+     * @return the read capacity units provisioned on the table, 0 for an on-demand table.
+     */
+    public static double provisionedReadUnits(AmazonDynamoDB dynamoDB, String tableName) {
+        Long readCapacityUnits = dynamoDB.describeTable(tableName).getTable().getProvisionedThroughput().getReadCapacityUnits();
+        return readCapacityUnits == null ? 0 : readCapacityUnits;
+    }
+
+    /**
+     * Scans all segments and returns once the whole table was scanned.
+     *
+     * @param request the table, filter, projection and attributes of the scan. The segment and start key are set per
+     *                segment, and the limit unless it has one.
+     * @param sink    gets the items, from all the segments' threads at once.
+     * @throws ExecutionException with the first failure of a segment, after the others finished.
+     */
+    public void scan(ScanRequest request, Consumer<Map<String, AttributeValue>> sink)
+        throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(segments);
+        try {
+            List<Future<?>> futures = new ArrayList<>(segments);
+            for (int segment = 0; segment < segments; segment++) {
+                int scannedSegment = segment;
+                futures.add(pool.submit(() -> scanSegment(request, scannedSegment, sink)));
+            }
+            ExecutionException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failure = failure == null ? e : failure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void scanSegment(ScanRequest request, int segment, Consumer<Map<String, AttributeValue>> sink) {
+        Map<String, AttributeValue> startKey = null;
+        do {
+            ScanRequest page = request.clone()
+                .withSegment(segment)
+                .withTotalSegments(segments)
+                .withLimit(request.getLimit() == null ? PAGE_SIZE : request.getLimit())
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withExclusiveStartKey(startKey);
+            ScanResult result = dynamoDB.scan(page);
+            pages.increment();
+            pay(result);
+
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                items.increment();
+                sink.accept(item);
+            }
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null);
+    }
+
+    /**
+     * Takes the capacity the page consumed from the shared bucket, waiting while the scan is over its rate.
+     */
+    private void pay(ScanResult result) {
+        double readUnits = result.getConsumedCapacity() != null && result.getConsumedCapacity().getCapacityUnits() != null
+            ? result.getConsumedCapacity().getCapacityUnits()
+            : Math.max(1, result.getScannedCount() == null ? 0 : result.getScannedCount()) * ITEM_READ_UNITS;
+        consumedReadUnits.add(readUnits);
+
+        int permits = (int) Math.max(1, Math.ceil(readUnits));
+        for (long waitNanos = rateLimiter.tryAcquire(null, permits); waitNanos > 0;
+             waitNanos = rateLimiter.tryAcquire(null, permits)) {
+            pacedNanos.add(waitNanos);
+            LockSupport.parkNanos(waitNanos);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new AbortedException("Interrupted while pacing a scan");
+            }
+        }
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return items handed to the sink, i.e. the ones the filter kept.
+     */
+    public long getItems() {
+        return items.sum();
+    }
+
+    public long getPages() {
+        return pages.sum();
+    }
+
+    public double getConsumedReadUnits() {
+        return consumedReadUnits.sum();
+    }
+
+    /**
+     * @return time the segments spent waiting for read capacity, added up.
+     */
+    public long getPacedMillis() {
+        return pacedNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelScanner{" +
+            "segments=" + segments +
+            ", readUnitsPerSecond=" + readUnitsPerSecond +
+            ", items=" + getItems() +
+            ", pages=" + getPages() +
+            ", consumedReadUnits=" + getConsumedReadUnits() +
+            ", pacedMillis=" + getPacedMillis() +
+            '}';
+    }
+}
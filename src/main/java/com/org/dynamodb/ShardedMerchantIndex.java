@@ -0,0 +1,221 @@
+package com.org.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.org.payments.PaymentRecord;
+import com.org.store.PaymentCursor;
+import com.org.store.PaymentListQuery;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static com.org.dynamodb.MerchantPaymentCodec.CREATION_TIMESTAMP_SECONDS;
+import static com.org.dynamodb.MerchantPaymentCodec.MERCHANT_SHARD;
+import static com.org.dynamodb.MerchantPaymentCodec.MERCHANT_SHARD_INDEX;
+import static com.org.dynamodb.MerchantPaymentCodec.PAYMENT_ID;
+
+/**
+ * Lists a merchant's payments over {@link MerchantPaymentCodec#MERCHANT_SHARD_INDEX}, scatter-gather: all the merchant's
+ * shards are queried at once on the given executor, each newest first, and merged newest first on the calling thread.
+ * <p>
+ * Each shard is read a bit more than its share of the page, since payments are spread evenly, and a shard that runs out
+ * before the page is full is read again (with the others that ran out) before anything older is listed. Payments read but
+ * not listed are read again for the next page: the cursor has a position per shard, the last payment listed from it, so
+ * every shard continues exactly where the previous page left it, whatever the other shards hold for the same second.
+ */
+public class ShardedMerchantIndex {
+
+    private static final String SHARD_KEY_CONDITION = "#merchantShard = :merchantShard AND #created BETWEEN :from AND :to";
+    private static final int MIN_SHARD_READ = 10;
+
+    private final AmazonDynamoDB dynamoDB;
+    private final MerchantShards merchantShards;
+    private final Executor executor;
+
+    public ShardedMerchantIndex(AmazonDynamoDB dynamoDB, MerchantShards merchantShards, Executor executor) {
+        this.dynamoDB = dynamoDB;
+        this.merchantShards = merchantShards;
+        this.executor = executor;
+    }
+
+    /**
+     * An index querying the shards one after the other on the calling thread.
+     */
+    public static ShardedMerchantIndex sequential(AmazonDynamoDB dynamoDB, MerchantShards merchantShards) {
+        return new ShardedMerchantIndex(dynamoDB, merchantShards, Runnable::run);
+    }
+
+    public MerchantShards getMerchantShards() {
+        return merchantShards;
+    }
+
+    /**
+     * Lists a page, with the same limits as a listing over MerchantCreationGSI, see {@link com.org.store.PaymentStore}.
+     *
+     * @param request the table, filter, projection and attributes of the query, with the :from and :to of the key
+     *                condition. The index, key condition, limit and start key are set per shard.
+     * @return the cursor of the next page, or null if this was the last one.
+     * @throws IllegalArgumentException if the cursor wasn't returned by a listing over the merchant's current shards.
+     */
+    public PaymentCursor list(PaymentListQuery query, QueryRequest request, MerchantPaymentCodec codec,
+        Consumer<PaymentRecord> sink) {
+        List<Shard> shards = shards(query);
+        int maxEvaluated = query.getLimit() * PaymentListQuery.MAX_EVALUATED_PER_LIMIT;
+        int listed = 0;
+        int evaluated = 0;
+        while (listed < query.getLimit()) {
+            // Which shard has the newest payment left is only known once all of them have one read, or are done.
+            List<Shard> unread = new ArrayList<>(shards.size());
+            int open = 0;
+            for (Shard shard : shards) {
+                open += shard.done && shard.read.isEmpty() ? 0 : 1;
+                if (shard.read.isEmpty() && !shard.done) {
+                    unread.add(shard);
+                }
+            }
+            if (!unread.isEmpty()) {
+                if (evaluated >= maxEvaluated) {
+                    break;
+                }
+                int remaining = query.getLimit() - listed;
+                int limit = Math.min(remaining, Math.max(MIN_SHARD_READ, ceilDiv(2 * remaining, open)));
+                evaluated += read(unread, request, codec, Math.min(limit, ceilDiv(maxEvaluated - evaluated, unread.size())));
+                continue;
+            }
+
+            Shard newest = null;
+            for (Shard shard : shards) {
+                if (!shard.read.isEmpty() && (newest == null
+                    || shard.read.peek().getCreationTimestampSeconds() > newest.read.peek().getCreationTimestampSeconds())) {
+                    newest = shard;
+                }
+            }
+            if (newest == null) {
+                break;
+            }
+            PaymentRecord record = newest.read.poll();
+            sink.accept(record);
+            newest.position = new PaymentCursor(record.getCreationTimestampSeconds(), record.getPaymentId());
+            listed++;
+        }
+        return next(shards);
+    }
+
+    private List<Shard> shards(PaymentListQuery query) {
+        int shardCount = merchantShards.shardCount(query.getMerchantId());
+        PaymentCursor after = query.getAfter();
+        List<PaymentCursor> positions;
+        if (after == null) {
+            positions = Collections.nCopies(shardCount, null);
+        } else if (!after.isSharded()) {
+            throw new IllegalArgumentException("Cursor of an unsharded listing");
+        } else if (after.getShards().size() != shardCount) {
+            throw new IllegalArgumentException("Cursor of a listing over " + after.getShards().size() + " shards, not "
+                + shardCount);
+        } else {
+            positions = after.getShards();
+        }
+
+        List<Shard> shards = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards.add(new Shard(MerchantShards.shardKey(query.getMerchantId(), shard), positions.get(shard)));
+        }
+        return shards;
+    }
+
+    /**
+     * Queries the shards concurrently.
+     *
+     * @return the number of payments evaluated.
+     */
+    private int read(List<Shard> shards, QueryRequest request, MerchantPaymentCodec codec, int limit) {
+        List<CompletableFuture<QueryResult>> queries = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            Map<String, String> names = new HashMap<>(request.getExpressionAttributeNames());
+            names.put("#merchantShard", MERCHANT_SHARD);
+            names.put("#created", CREATION_TIMESTAMP_SECONDS);
+            Map<String, AttributeValue> values = new HashMap<>(request.getExpressionAttributeValues());
+            values.put(":merchantShard", new AttributeValue(shard.key));
+            QueryRequest shardRequest = new QueryRequest()
+                .withTableName(request.getTableName())
+                .withIndexName(MERCHANT_SHARD_INDEX)
+                .withKeyConditionExpression(SHARD_KEY_CONDITION)
+                .withFilterExpression(request.getFilterExpression())
+                .withProjectionExpression(request.getProjectionExpression())
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values)
+                .withScanIndexForward(false)
+                .withLimit(limit)
+                .withExclusiveStartKey(shard.startKey);
+            queries.add(CompletableFuture.supplyAsync(() -> dynamoDB.query(shardRequest), executor));
+        }
+        Batches.joinAll(queries);
+
+        int evaluated = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            Shard shard = shards.get(i);
+            QueryResult result = queries.get(i).join();
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                shard.read.add(codec.fromItem(item));
+            }
+            shard.startKey = result.getLastEvaluatedKey();
+            shard.done = shard.startKey == null;
+            evaluated += result.getScannedCount();
+        }
+        return evaluated;
+    }
+
+    /**
+     * A shard continues after the last payment listed from it, or after the last one it evaluated if everything it read
+     * was listed (or filtered out).
+     */
+    private static PaymentCursor next(List<Shard> shards) {
+        List<PaymentCursor> positions = new ArrayList<>(shards.size());
+        boolean more = false;
+        for (Shard shard : shards) {
+            PaymentCursor position = shard.position;
+            if (shard.read.isEmpty()) {
+                position = shard.done ? PaymentCursor.END : shard.startKey == null ? position
+                    : new PaymentCursor(Long.parseLong(shard.startKey.get(CREATION_TIMESTAMP_SECONDS).getN()),
+                    shard.startKey.get(PAYMENT_ID).getS());
+            }
+            positions.add(position);
+            more |= position != PaymentCursor.END;
+        }
+        return more ? PaymentCursor.ofShards(positions) : null;
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    private static final class Shard {
+
+        private final String key;
+        private final ArrayDeque<PaymentRecord> read = new ArrayDeque<>();
+        private PaymentCursor position;
+        private Map<String, AttributeValue> startKey;
+        private boolean done;
+
+        private Shard(String key, PaymentCursor position) {
+            this.key = key;
+            this.position = position;
+            this.done = position == PaymentCursor.END;
+            if (position != null && !done) {
+                startKey = MerchantPaymentCodec.key(position.getPaymentId());
+                startKey.put(MERCHANT_SHARD, new AttributeValue(key));
+                startKey.put(CREATION_TIMESTAMP_SECONDS,
+                    new AttributeValue().withN(Long.toString(position.getCreationTimestampSeconds())));
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.org.expiry;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.org.cache.BoundedCache;
+import com.org.modules.Logs;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import com.org.store.PaymentStore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the Created payments of a long-running gateway until they're paid or expire, in {@link TimingWheel}s striped by
+ * paymentId. Every tick the payments due are checked against the store in batches, since another gateway may have paid
+ * them, and the ones really expired are remembered and handed to the listeners, a batch at a time.
+ * <p>
+ * Expired payments are remembered in a bounded cache, so a stale paymentId can be turned down without reading the store.
+ * An expired payment never becomes payable again, so a hit is always right and a miss just reads the store as before.
+ */
+public class PaymentExpiryIndex implements AutoCloseable {
+
+    /**
+     * Most payments checked against the store, and handed to the listeners, at once.
+     */
+    public static final int BATCH_SIZE = 1_000;
+
+    private final PaymentStore paymentStore;
+    private final TimingWheel[] wheels;
+    private final int mask;
+    private final BoundedCache<String, Boolean> expiredPayments;
+    private final List<Consumer<List<String>>> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder unconfirmed = new LongAdder();
+    private final LambdaLogger logger = LambdaRuntime.getLogger();
+    private ScheduledExecutorService ticker;
+
+    /**
+     * @param paymentStore      the store to check due payments against, not the one tracking them.
+     * @param stripes           number of wheels, rounded up to a power of two.
+     * @param expiredCacheSize  expired paymentIds to remember.
+     */
+    public PaymentExpiryIndex(PaymentStore paymentStore, int stripes, int expiredCacheSize) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        long nowEpochSeconds = Instant.now().getEpochSecond();
+        this.paymentStore = paymentStore;
+        this.wheels = new TimingWheel[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            wheels[i] = new TimingWheel(nowEpochSeconds, 1024);
+        }
+        this.expiredPayments = new BoundedCache<>(expiredCacheSize, 0);
+    }
+
+    /**
+     * Tracks a Created payment, which expires once expiryTimestampSeconds has passed.
+     */
+    public void track(String paymentId, long expiryTimestampSeconds) {
+        TimingWheel wheel = wheelFor(paymentId);
+        synchronized (wheel) {
+            wheel.schedule(paymentId, expiryTimestampSeconds + 1);
+        }
+    }
+
+    /**
+     * Stops tracking a payment that was paid (or had its expiry removed).
+     */
+    public void untrack(String paymentId) {
+        TimingWheel wheel = wheelFor(paymentId);
+        synchronized (wheel) {
+            wheel.cancel(paymentId);
+        }
+    }
+
+    /**
+     * @return true if the payment is known to have expired.
+     */
+    public boolean isExpired(String paymentId) {
+        if (expiredPayments.get(paymentId) != null) {
+            rejected.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param listener gets the paymentIds that expired, at most {@link #BATCH_SIZE} at a time, on the ticking thread.
+     */
+    public void addListener(Consumer<List<String>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Expires the payments due up to the given time.
+     *
+     * @return the number of payments that expired.
+     */
+    public int tick(long nowEpochSeconds) {
+        List<String> due = new ArrayList<>();
+        for (TimingWheel wheel : wheels) {
+            synchronized (wheel) {
+                wheel.advance(nowEpochSeconds, due::add);
+            }
+        }
+
+        int expiredNow = 0;
+        for (int from = 0; from < due.size(); from += BATCH_SIZE) {
+            List<String> batch = confirm(due.subList(from, Math.min(due.size(), from + BATCH_SIZE)), nowEpochSeconds);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            for (String paymentId : batch) {
+                expiredPayments.put(paymentId, Boolean.TRUE);
+            }
+            expiredNow += batch.size();
+            List<String> event = Collections.unmodifiableList(batch);
+            for (Consumer<List<String>> listener : listeners) {
+                listener.accept(event);
+            }
+        }
+        expired.add(expiredNow);
+        return expiredNow;
+    }
+
+    /**
+     * Ticks every second on a daemon thread, until {@link #close()}.
+     */
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "payment-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                tick(Instant.now().getEpochSecond());
+            } catch (RuntimeException e) {
+                logger.log(Logs.withStackTrace("Failed expiring payments", e));
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    public long getTracked() {
+        long tracked = 0;
+        for (TimingWheel wheel : wheels) {
+            synchronized (wheel) {
+                tracked += wheel.size();
+            }
+        }
+        return tracked;
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    /**
+     * @return lookups of expired payments answered without reading the store.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return due payments that couldn't be checked against the store, and were left to expire lazily.
+     */
+    public long getUnconfirmed() {
+        return unconfirmed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentExpiryIndex{" +
+            "tracked=" + getTracked() +
+            ", expired=" + getExpired() +
+            ", rejected=" + getRejected() +
+            ", unconfirmed=" + getUnconfirmed() +
+            '}';
+    }
+
+    /**
+     * @return the due payments that are gone or expired in the store. Ones that are still Created with a later expiry are
+     * tracked again, paid ones are dropped.
+     */
+    private List<String> confirm(List<String> due, long nowEpochSeconds) {
+        Map<String, MerchantPayment> payments;
+        try {
+            payments = paymentStore.getMerchantPayments(due);
+        } catch (RuntimeException e) {
+            unconfirmed.add(due.size());
+            logger.log(Logs.withStackTrace("Failed checking " + due.size() + " due payments", e));
+            return List.of();
+        }
+
+        Instant now = Instant.ofEpochSecond(nowEpochSeconds);
+        List<String> confirmed = new ArrayList<>(due.size());
+        for (String paymentId : due) {
+            MerchantPayment payment = payments.get(paymentId);
+            if (payment == null || payment.isExpired(now)) {
+                confirmed.add(paymentId);
+            } else if (PaymentStatus.Created.name().equals(payment.getStatus()) && payment.getExpiryTimestampSeconds() != null) {
+                track(paymentId, payment.getExpiryTimestampSeconds());
+            }
+        }
+        return confirmed;
+    }
+
+    private TimingWheel wheelFor(String paymentId) {
+        int hash = paymentId.hashCode();
+        return wheels[(hash ^ (hash >>> 16)) & mask];
+    }
+}
@@ -0,0 +1,281 @@
+package com.org.expiry;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of ids with a deadline in epoch seconds: 4 levels of 64 slots of 1s, 64s, ~68min and ~3
+ * days, and an overflow list beyond that. Adding, rescheduling and cancelling an id is O(1), and so is each tick, each id
+ * being moved down a level at most 4 times before it's due.
+ * <p>
+ * Ids are kept in parallel arrays, linked into their slot by index, with an open addressing table from id to index, so
+ * there are no objects per id besides the id itself and millions of them cost a few dozen bytes each. The arrays grow
+ * with the number of ids and never shrink.
+ * <p>
+ * Not thread safe.
+ */
+public class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final int OVERFLOW = LEVELS * SLOTS;
+    private static final int NONE = -1;
+
+    private final int[] heads = new int[OVERFLOW + 1];
+    private String[] ids;
+    private long[] deadlines;
+    private int[] next;
+    private int[] previous;
+    private int[] slots;
+    // Entry index + 1 by the id's hash, 0 for an empty bucket.
+    private int[] table;
+    private int tableMask;
+    private int freeList = NONE;
+    private int used;
+    private int size;
+    private long currentSecond;
+
+    public TimingWheel(long nowEpochSeconds, int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        ids = new String[capacity];
+        deadlines = new long[capacity];
+        next = new int[capacity];
+        previous = new int[capacity];
+        slots = new int[capacity];
+        table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        tableMask = table.length - 1;
+        Arrays.fill(heads, NONE);
+        currentSecond = nowEpochSeconds;
+    }
+
+    /**
+     * Schedules the id, or reschedules it if it's already there.
+     *
+     * @return false if the deadline has already passed, in which case the id isn't (or no longer) scheduled.
+     */
+    public boolean schedule(String id, long deadlineEpochSeconds) {
+        int bucket = find(id);
+        int entry = table[bucket] - 1;
+        if (deadlineEpochSeconds <= currentSecond) {
+            if (entry != NONE) {
+                remove(bucket, entry);
+            }
+            return false;
+        }
+
+        if (entry == NONE) {
+            entry = allocate(id);
+            bucket = find(id);
+            table[bucket] = entry + 1;
+            size++;
+        } else {
+            unlink(entry);
+        }
+        deadlines[entry] = deadlineEpochSeconds;
+        link(entry, slotFor(deadlineEpochSeconds));
+        return true;
+    }
+
+    /**
+     * @return true if the id was scheduled.
+     */
+    public boolean cancel(String id) {
+        int bucket = find(id);
+        int entry = table[bucket] - 1;
+        if (entry == NONE) {
+            return false;
+        }
+        remove(bucket, entry);
+        return true;
+    }
+
+    public boolean contains(String id) {
+        return table[find(id)] != 0;
+    }
+
+    /**
+     * Moves the wheel up to the given second, handing each id whose deadline is at or before it to the consumer, in
+     * deadline order. Those ids are no longer scheduled.
+     *
+     * @return the number of ids that were due.
+     */
+    public int advance(long nowEpochSeconds, Consumer<String> due) {
+        int expired = 0;
+        while (currentSecond < nowEpochSeconds) {
+            if (size == 0) {
+                currentSecond = nowEpochSeconds;
+                break;
+            }
+            long second = ++currentSecond;
+            if ((second & SLOT_MASK) == 0) {
+                cascade(second);
+            }
+
+            int slot = (int) (second & SLOT_MASK);
+            int entry = heads[slot];
+            heads[slot] = NONE;
+            while (entry != NONE) {
+                int following = next[entry];
+                String id = ids[entry];
+                removeFromTable(find(id));
+                free(entry);
+                size--;
+                expired++;
+                due.accept(id);
+                entry = following;
+            }
+        }
+        return expired;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * At the start of a slot of a higher level, its ids are due within that slot and move down, the highest level first
+     * so they can keep moving down.
+     */
+    private void cascade(long second) {
+        if ((second & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0) {
+            redistribute(OVERFLOW);
+        }
+        for (int level = LEVELS - 1; level >= 1; level--) {
+            if ((second & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                redistribute(level * SLOTS + (int) ((second >>> (SLOT_BITS * level)) & SLOT_MASK));
+            }
+        }
+    }
+
+    private void redistribute(int slot) {
+        int entry = heads[slot];
+        heads[slot] = NONE;
+        while (entry != NONE) {
+            int following = next[entry];
+            link(entry, slotFor(deadlines[entry]));
+            entry = following;
+        }
+    }
+
+    /**
+     * The lowest level whose current slot span contains the deadline, so the slot hasn't been passed yet.
+     */
+    private int slotFor(long deadline) {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * (level + 1);
+            if ((deadline >>> shift) == (currentSecond >>> shift)) {
+                return level * SLOTS + (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+            }
+        }
+        return OVERFLOW;
+    }
+
+    private void link(int entry, int slot) {
+        int head = heads[slot];
+        next[entry] = head;
+        previous[entry] = NONE;
+        if (head != NONE) {
+            previous[head] = entry;
+        }
+        heads[slot] = entry;
+        slots[entry] = slot;
+    }
+
+    private void unlink(int entry) {
+        if (previous[entry] == NONE) {
+            heads[slots[entry]] = next[entry];
+        } else {
+            next[previous[entry]] = next[entry];
+        }
+        if (next[entry] != NONE) {
+            previous[next[entry]] = previous[entry];
+        }
+    }
+
+    private void remove(int bucket, int entry) {
+        unlink(entry);
+        removeFromTable(bucket);
+        free(entry);
+        size--;
+    }
+
+    private int allocate(String id) {
+        int entry;
+        if (freeList != NONE) {
+            entry = freeList;
+            freeList = next[entry];
+        } else {
+            if (used == ids.length) {
+                grow();
+            }
+            entry = used++;
+        }
+        ids[entry] = id;
+        return entry;
+    }
+
+    private void free(int entry) {
+        ids[entry] = null;
+        next[entry] = freeList;
+        freeList = entry;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        deadlines = Arrays.copyOf(deadlines, capacity);
+        next = Arrays.copyOf(next, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+
+        // Keeps the table at most half full.
+        int[] entries = table;
+        table = new int[capacity * 2];
+        tableMask = table.length - 1;
+        for (int value : entries) {
+            if (value != 0) {
+                int bucket = hash(ids[value - 1]) & tableMask;
+                while (table[bucket] != 0) {
+                    bucket = (bucket + 1) & tableMask;
+                }
+                table[bucket] = value;
+            }
+        }
+    }
+
+    /**
+     * @return the bucket of the id, or the empty bucket where it would go.
+     */
+    private int find(String id) {
+        int bucket = hash(id) & tableMask;
+        while (table[bucket] != 0 && !ids[table[bucket] - 1].equals(id)) {
+            bucket = (bucket + 1) & tableMask;
+        }
+        return bucket;
+    }
+
+    /**
+     * Linear probing deletion without tombstones: the following entries that can't be found past the gap anymore are
+     * shifted back into it.
+     */
+    private void removeFromTable(int bucket) {
+        int gap = bucket;
+        int probe = (bucket + 1) & tableMask;
+        while (table[probe] != 0) {
+            int home = hash(ids[table[probe] - 1]) & tableMask;
+            if (((probe - home) & tableMask) >= ((probe - gap) & tableMask)) {
+                table[gap] = table[probe];
+                gap = probe;
+            }
+            probe = (probe + 1) & tableMask;
+        }
+        table[gap] = 0;
+    }
+
+    private static int hash(String id) {
+        int hash = id.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,56 @@
+package com.org.faults;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fault drawn for one call: how long to stall it, and how it should fail.
+ */
+public final class Fault {
+
+    public enum Kind {
+        NONE,
+        // A server side error, e.g. a 500.
+        ERROR,
+        THROTTLE,
+        CONDITIONAL_CHECK_FAILED
+    }
+
+    private final Kind kind;
+    private final long latencyNanos;
+
+    Fault(Kind kind, long latencyNanos) {
+        this.kind = kind;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * Stalls the calling thread for the fault's latency.
+     *
+     * @return false if the thread got interrupted, with its interrupt flag set again.
+     */
+    public boolean sleep() {
+        if (latencyNanos <= 0) {
+            return true;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(latencyNanos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Fault{kind=" + kind + ", latencyNanos=" + latencyNanos + '}';
+    }
+}
@@ -0,0 +1,66 @@
+package com.org.faults;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Draws a {@link Fault} per call from a {@link FaultProfile}.
+ * <p>
+ * The n-th fault only depends on the profile's seed and n, so a run with the same seed and the same number of calls
+ * injects the same faults, even when calls are concurrent and get their faults in a different order.
+ */
+public class FaultInjector {
+
+    public static final FaultInjector NONE = new FaultInjector(FaultProfile.NONE);
+
+    private static final Fault NO_FAULT = new Fault(Fault.Kind.NONE, 0);
+
+    private final FaultProfile profile;
+    private final long spikeNanos;
+    private final AtomicLong calls = new AtomicLong();
+
+    public FaultInjector(FaultProfile profile) {
+        this.profile = profile;
+        this.spikeNanos = (long) (profile.getSpikeMillis() * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    public Fault next() {
+        if (!profile.isEnabled()) {
+            return NO_FAULT;
+        }
+        SplittableRandom random = new SplittableRandom(mix(profile.getSeed(), calls.getAndIncrement()));
+
+        long latencyNanos = profile.getLatency().sampleNanos(random);
+        if (random.nextDouble() < profile.getSpikeRate()) {
+            latencyNanos += spikeNanos;
+        }
+
+        double draw = random.nextDouble();
+        Fault.Kind kind;
+        if (draw < profile.getErrorRate()) {
+            kind = Fault.Kind.ERROR;
+        } else if (draw < profile.getErrorRate() + profile.getThrottleRate()) {
+            kind = Fault.Kind.THROTTLE;
+        } else if (draw < profile.getErrorRate() + profile.getThrottleRate() + profile.getConditionalCheckFailedRate()) {
+            kind = Fault.Kind.CONDITIONAL_CHECK_FAILED;
+        } else {
+            kind = Fault.Kind.NONE;
+        }
+        return new Fault(kind, latencyNanos);
+    }
+
+    public FaultProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * SplitMix64's finalizer over seed and call number, so neighbouring calls get unrelated random streams.
+     */
+    private static long mix(long seed, long call) {
+        long z = seed + (call + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,148 @@
+package com.org.faults;
+
+/**
+ * What a {@link FaultInjector} adds to each call: a latency, rare latency spikes on top of it, and failure rates.
+ * <p>
+ * Parsed from a comma separated spec, e.g. {@code latency=lognormal:40:0.6,spikeRate=0.01,spikeMillis=2000,errorRate=0.01,
+ * throttleRate=0.02,conditionalCheckFailedRate=0.005,seed=42}. Missing keys default to no fault and seed 1, so two runs
+ * with the same spec inject the same sequence of faults.
+ */
+public class FaultProfile {
+
+    public static final FaultProfile NONE = new FaultProfile(LatencyDistribution.NONE, 0, 0, 0, 0, 0, 1);
+
+    private final LatencyDistribution latency;
+    private final double spikeRate;
+    private final double spikeMillis;
+    private final double errorRate;
+    private final double throttleRate;
+    private final double conditionalCheckFailedRate;
+    private final long seed;
+
+    /**
+     * @param spikeRate                  fraction of calls getting an extra {@code spikeMillis}, e.g. a GC pause or a
+     *                                   retried connection.
+     * @param conditionalCheckFailedRate fraction of calls failing the version check, only applied to conditional writes.
+     */
+    public FaultProfile(LatencyDistribution latency, double spikeRate, double spikeMillis, double errorRate,
+        double throttleRate, double conditionalCheckFailedRate, long seed) {
+        if (errorRate + throttleRate + conditionalCheckFailedRate > 1) {
+            throw new IllegalArgumentException("Error, throttle and conditional check failed rates add up to more than 1");
+        }
+        this.latency = latency;
+        this.spikeRate = spikeRate;
+        this.spikeMillis = spikeMillis;
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+        this.conditionalCheckFailedRate = conditionalCheckFailedRate;
+        this.seed = seed;
+    }
+
+    /**
+     * @return the profile described by the spec, or {@link #NONE} for a null or blank spec.
+     */
+    public static FaultProfile parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return NONE;
+        }
+
+        LatencyDistribution latency = LatencyDistribution.NONE;
+        double spikeRate = 0;
+        double spikeMillis = 0;
+        double errorRate = 0;
+        double throttleRate = 0;
+        double conditionalCheckFailedRate = 0;
+        long seed = 1;
+
+        for (String entry : spec.split(",")) {
+            String[] keyValue = entry.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Invalid fault profile entry: " + entry);
+            }
+            String value = keyValue[1].trim();
+            try {
+                switch (keyValue[0].trim()) {
+                    case "latency":
+                        latency = LatencyDistribution.parse(value);
+                        break;
+                    case "spikeRate":
+                        spikeRate = rate(value);
+                        break;
+                    case "spikeMillis":
+                        spikeMillis = Double.parseDouble(value);
+                        break;
+                    case "errorRate":
+                        errorRate = rate(value);
+                        break;
+                    case "throttleRate":
+                        throttleRate = rate(value);
+                        break;
+                    case "conditionalCheckFailedRate":
+                        conditionalCheckFailedRate = rate(value);
+                        break;
+                    case "seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown fault profile key: " + keyValue[0]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid fault profile entry: " + entry, e);
+            }
+        }
+        return new FaultProfile(latency, spikeRate, spikeMillis, errorRate, throttleRate, conditionalCheckFailedRate, seed);
+    }
+
+    public boolean isEnabled() {
+        return this != NONE;
+    }
+
+    public LatencyDistribution getLatency() {
+        return latency;
+    }
+
+    public double getSpikeRate() {
+        return spikeRate;
+    }
+
+    public double getSpikeMillis() {
+        return spikeMillis;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public double getThrottleRate() {
+        return throttleRate;
+    }
+
+    public double getConditionalCheckFailedRate() {
+        return conditionalCheckFailedRate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        return "FaultProfile{" +
+            "latency=" + latency +
+            ", spikeRate=" + spikeRate +
+            ", spikeMillis=" + spikeMillis +
+            ", errorRate=" + errorRate +
+            ", throttleRate=" + throttleRate +
+            ", conditionalCheckFailedRate=" + conditionalCheckFailedRate +
+            ", seed=" + seed +
+            '}';
+    }
+
+    private static double rate(String value) {
+        double rate = Double.parseDouble(value);
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Rates must be between 0 and 1, got " + value);
+        }
+        return rate;
+    }
+}
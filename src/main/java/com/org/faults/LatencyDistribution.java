@@ -0,0 +1,107 @@
+package com.org.faults;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency added to a call by a {@link FaultProfile}.
+ */
+public abstract class LatencyDistribution {
+
+    public static final LatencyDistribution NONE = fixed(0);
+
+    /**
+     * @return a latency to add, in nanoseconds.
+     */
+    abstract long sampleNanos(SplittableRandom random);
+
+    public static LatencyDistribution fixed(double millis) {
+        long nanos = toNanos(millis);
+        return new LatencyDistribution() {
+            @Override
+            long sampleNanos(SplittableRandom random) {
+                return nanos;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed:" + millis;
+            }
+        };
+    }
+
+    public static LatencyDistribution uniform(double minMillis, double maxMillis) {
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException("uniform latency needs min <= max, got " + minMillis + "-" + maxMillis);
+        }
+        return new LatencyDistribution() {
+            @Override
+            long sampleNanos(SplittableRandom random) {
+                return toNanos(minMillis + random.nextDouble() * (maxMillis - minMillis));
+            }
+
+            @Override
+            public String toString() {
+                return "uniform:" + minMillis + "-" + maxMillis;
+            }
+        };
+    }
+
+    /**
+     * A long right tail, the usual shape of network call latencies.
+     *
+     * @param medianMillis half of the calls are faster than this.
+     * @param sigma        standard deviation of the log, 0.5 puts p99 at about 3.2x the median, 1 at about 10x.
+     */
+    public static LatencyDistribution logNormal(double medianMillis, double sigma) {
+        return new LatencyDistribution() {
+            @Override
+            long sampleNanos(SplittableRandom random) {
+                // Box-Muller, SplittableRandom has no nextGaussian.
+                double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+                return toNanos(medianMillis * Math.exp(sigma * gaussian));
+            }
+
+            @Override
+            public String toString() {
+                return "lognormal:" + medianMillis + ":" + sigma;
+            }
+        };
+    }
+
+    /**
+     * Parses "fixed:MILLIS", "uniform:MIN-MAX" or "lognormal:MEDIAN:SIGMA", with all the times in milliseconds.
+     */
+    public static LatencyDistribution parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            switch (parts[0]) {
+                case "fixed":
+                    if (parts.length == 2) {
+                        return fixed(Double.parseDouble(parts[1]));
+                    }
+                    break;
+                case "uniform":
+                    String[] range = parts.length == 2 ? parts[1].split("-") : new String[0];
+                    if (range.length == 2) {
+                        return uniform(Double.parseDouble(range[0]), Double.parseDouble(range[1]));
+                    }
+                    break;
+                case "lognormal":
+                    if (parts.length == 3) {
+                        return logNormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + spec, e);
+        }
+        throw new IllegalArgumentException("Invalid latency distribution: " + spec);
+    }
+
+    private static long toNanos(double millis) {
+        return Math.max(0, (long) (millis * TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+}
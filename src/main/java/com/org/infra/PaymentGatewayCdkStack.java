@@ -1,5 +1,7 @@
 package com.org.infra;
 
+import com.org.aggregates.DynamoDBAggregateStore;
+import com.org.dynamodb.MerchantPaymentCodec;
 import software.amazon.awscdk.core.*;
 import software.amazon.awscdk.services.apigateway.LambdaIntegration;
 import software.amazon.awscdk.services.apigateway.Method;
@@ -7,8 +9,12 @@ import software.amazon.awscdk.services.apigateway.Resource;
 import software.amazon.awscdk.services.apigateway.RestApi;
 import software.amazon.awscdk.services.dynamodb.*;
 import software.amazon.awscdk.services.lambda.Code;
+import software.amazon.awscdk.services.lambda.EventSourceMappingOptions;
 import software.amazon.awscdk.services.lambda.Function;
 import software.amazon.awscdk.services.lambda.Runtime;
+import software.amazon.awscdk.services.lambda.StartingPosition;
+import software.amazon.awscdk.services.sqs.DeadLetterQueue;
+import software.amazon.awscdk.services.sqs.Queue;
 
 import java.util.HashMap;
 
@@ -32,27 +38,100 @@ public class PaymentGatewayCdkStack extends Stack {
             .writeCapacity(10)
             .removalPolicy(RemovalPolicy.DESTROY)
             .timeToLiveAttribute("expiryTimestampSeconds")
+            // Feeds the merchant aggregates, see PaymentStreamHandler.
+            .stream(StreamViewType.NEW_AND_OLD_IMAGES)
             .tableName(tableName)
             .build();
         Table merchantPaymentTable = new Table(this, tableName, tableProps);
 
-        //Global Secondary Index
+        //The original listing index, on transactionDate. CloudFormation can't change a GSI's keys in place, nor create or
+        //delete more than one GSI per update, so it's only dropped by a later deploy with -c dropLegacyMerchantIndex=true.
+        if (!isContextTrue("dropLegacyMerchantIndex")) {
+            merchantPaymentTable.addGlobalSecondaryIndex(GlobalSecondaryIndexProps.builder()
+                .indexName(MerchantPaymentCodec.LEGACY_MERCHANT_INDEX)
+                .projectionType(ProjectionType.ALL)
+                .partitionKey(Attribute.builder()
+                    .name(MerchantPaymentCodec.MERCHANT_ID)
+                    .type(AttributeType.STRING)
+                    .build())
+                .sortKey(Attribute.builder()
+                    .name("transactionDate")
+                    .type(AttributeType.STRING)
+                    .build())
+                .build());
+        }
+
+        //Global Secondary Index, for listing a merchant's payments. Only what the listing needs is projected.
         merchantPaymentTable.addGlobalSecondaryIndex(GlobalSecondaryIndexProps.builder()
-            .indexName("MerchantGSI")
-            .projectionType(ProjectionType.ALL)
+            .indexName(MerchantPaymentCodec.MERCHANT_INDEX)
+            .projectionType(ProjectionType.INCLUDE)
+            .nonKeyAttributes(MerchantPaymentCodec.MERCHANT_INDEX_ATTRIBUTES)
+            .partitionKey(Attribute.builder()
+                .name(MerchantPaymentCodec.MERCHANT_ID)
+                .type(AttributeType.STRING)
+                .build())
+            .sortKey(Attribute.builder()
+                .name(MerchantPaymentCodec.CREATION_TIMESTAMP_SECONDS)
+                .type(AttributeType.NUMBER)
+                .build())
+            .build());
+
+        //Same listing for merchants with more writes than one index partition takes, spread over "merchantId#shard" keys.
+        //Only written with shardedMerchantIndex, MerchantCreationGSI can go once every gateway lists from this one. Added by
+        //a deploy of its own with -c shardedMerchantIndex=true, for the same one-GSI-per-update reason.
+        if (isContextTrue("shardedMerchantIndex")) {
+            merchantPaymentTable.addGlobalSecondaryIndex(GlobalSecondaryIndexProps.builder()
+                .indexName(MerchantPaymentCodec.MERCHANT_SHARD_INDEX)
+                .projectionType(ProjectionType.INCLUDE)
+                .nonKeyAttributes(MerchantPaymentCodec.MERCHANT_SHARD_INDEX_ATTRIBUTES)
+                .partitionKey(Attribute.builder()
+                    .name(MerchantPaymentCodec.MERCHANT_SHARD)
+                    .type(AttributeType.STRING)
+                    .build())
+                .sortKey(Attribute.builder()
+                    .name(MerchantPaymentCodec.CREATION_TIMESTAMP_SECONDS)
+                    .type(AttributeType.NUMBER)
+                    .build())
+                .build());
+        }
+
+        //Settled payments per merchant, status and currency, by hour and day. Markers of the counted stream records expire too.
+        Table merchantAggregateTable = new Table(this, "MerchantAggregate", TableProps.builder()
             .partitionKey(Attribute.builder()
-                .name("merchantId")
+                .name(DynamoDBAggregateStore.AGGREGATE_ID)
                 .type(AttributeType.STRING)
                 .build())
             .sortKey(Attribute.builder()
-                .name("transactionDate")
+                .name(DynamoDBAggregateStore.BUCKET)
                 .type(AttributeType.STRING)
                 .build())
+            .readCapacity(5)
+            .writeCapacity(10)
+            .removalPolicy(RemovalPolicy.DESTROY)
+            .timeToLiveAttribute(DynamoDBAggregateStore.EXPIRY_TIMESTAMP_SECONDS)
+            .tableName("MerchantAggregate")
             .build());
 
+        //Make-payments waiting for the bank, with makePaymentMode=async. Jobs failing 5 times in a row are set aside.
+        Queue makePaymentQueue = Queue.Builder.create(this, "MakePaymentQueue")
+            .queueName("MakePaymentQueue")
+            .visibilityTimeout(Duration.minutes(6))
+            .deadLetterQueue(DeadLetterQueue.builder()
+                .queue(Queue.Builder.create(this, "MakePaymentDeadLetterQueue")
+                    .queueName("MakePaymentDeadLetterQueue")
+                    .retentionPeriod(Duration.days(14))
+                    .build())
+                .maxReceiveCount(5)
+                .build())
+            .build();
+
         //Lambda Environment Variables to pass to the Lambdas
         HashMap<String, String> env = new HashMap<String, String>();
         env.put("merchantPaymentTableName", merchantPaymentTable.getTableName());
+        env.put("merchantAggregateTableName", merchantAggregateTable.getTableName());
+        env.put("makePaymentQueueUrl", makePaymentQueue.getQueueUrl());
+        // Stopping at C1 makes the JIT much cheaper during init and the first requests, which dominate for short lived containers.
+        env.put("JAVA_TOOL_OPTIONS", "-XX:+TieredCompilation -XX:TieredStopAtLevel=1");
 
         //Lambda setup
         Function createPaymentLambda = Function.Builder.create(this, "CreatePaymentHandler")
@@ -66,6 +145,28 @@ public class PaymentGatewayCdkStack extends Stack {
             .build();
         merchantPaymentTable.grantFullAccess(createPaymentLambda);
 
+        Function batchCreatePaymentLambda = Function.Builder.create(this, "BatchCreatePaymentHandler")
+            .runtime(Runtime.JAVA_11)
+            .functionName("BatchCreatePaymentHandler")
+            .timeout(Duration.minutes(1))
+            .memorySize(500)
+            .environment(env)
+            .code(Code.fromAsset("target/PaymentGateway-0.1.jar"))
+            .handler("com.org.lambda.BatchCreatePaymentHandler::handleRequest")
+            .build();
+        merchantPaymentTable.grantFullAccess(batchCreatePaymentLambda);
+
+        Function listPaymentsLambda = Function.Builder.create(this, "ListPaymentsHandler")
+            .runtime(Runtime.JAVA_11)
+            .functionName("ListPaymentsHandler")
+            .timeout(Duration.minutes(1))
+            .memorySize(500)
+            .environment(env)
+            .code(Code.fromAsset("target/PaymentGateway-0.1.jar"))
+            .handler("com.org.lambda.ListPaymentsHandler::handleRequest")
+            .build();
+        merchantPaymentTable.grantReadData(listPaymentsLambda);
+
         Function makePaymentLambda = Function.Builder.create(this, "MakePaymentHandler")
             .runtime(Runtime.JAVA_11)
             .functionName("MakePaymentHandler")
@@ -76,6 +177,28 @@ public class PaymentGatewayCdkStack extends Stack {
             .handler("com.org.lambda.MakePaymentHandler::handleRequest")
             .build();
         merchantPaymentTable.grantFullAccess(makePaymentLambda);
+        makePaymentQueue.grantSendMessages(makePaymentLambda);
+
+        // The worker runs in async mode whatever makePaymentMode the API lambdas have, its concurrency bounds the bank calls.
+        HashMap<String, String> workerEnv = new HashMap<String, String>(env);
+        workerEnv.put("makePaymentMode", "async");
+        Function makePaymentWorkerLambda = Function.Builder.create(this, "MakePaymentWorkerHandler")
+            .runtime(Runtime.JAVA_11)
+            .functionName("MakePaymentWorkerHandler")
+            .timeout(Duration.minutes(1))
+            .memorySize(500)
+            .reservedConcurrentExecutions(10)
+            .environment(workerEnv)
+            .code(Code.fromAsset("target/PaymentGateway-0.1.jar"))
+            .handler("com.org.lambda.MakePaymentWorkerHandler::handleRequest")
+            .build();
+        makePaymentWorkerLambda.addEventSourceMapping("MakePaymentQueue", EventSourceMappingOptions.builder()
+            .eventSourceArn(makePaymentQueue.getQueueArn())
+            .batchSize(10)
+            .build());
+        makePaymentQueue.grantConsumeMessages(makePaymentWorkerLambda);
+        makePaymentQueue.grantSendMessages(makePaymentWorkerLambda);
+        merchantPaymentTable.grantReadWriteData(makePaymentWorkerLambda);
 
         Function getPaymentLambda = Function.Builder.create(this, "GetPaymentHandler")
             .runtime(Runtime.JAVA_11)
@@ -88,6 +211,38 @@ public class PaymentGatewayCdkStack extends Stack {
             .build();
         merchantPaymentTable.grantFullAccess(getPaymentLambda);
 
+        Function paymentStreamLambda = Function.Builder.create(this, "PaymentStreamHandler")
+            .runtime(Runtime.JAVA_11)
+            .functionName("PaymentStreamHandler")
+            .timeout(Duration.minutes(1))
+            .memorySize(500)
+            .environment(env)
+            .code(Code.fromAsset("target/PaymentGateway-0.1.jar"))
+            .handler("com.org.lambda.PaymentStreamHandler::handleRequest")
+            .build();
+        // A failing batch is split until the bad record is alone, counted records are skipped when it's retried.
+        paymentStreamLambda.addEventSourceMapping("PaymentStream", EventSourceMappingOptions.builder()
+            .eventSourceArn(merchantPaymentTable.getTableStreamArn())
+            .startingPosition(StartingPosition.TRIM_HORIZON)
+            .batchSize(100)
+            .maxBatchingWindow(Duration.seconds(5))
+            .bisectBatchOnError(true)
+            .retryAttempts(10)
+            .build());
+        merchantPaymentTable.grantStreamRead(paymentStreamLambda);
+        merchantAggregateTable.grantReadWriteData(paymentStreamLambda);
+
+        Function merchantStatsLambda = Function.Builder.create(this, "MerchantStatsHandler")
+            .runtime(Runtime.JAVA_11)
+            .functionName("MerchantStatsHandler")
+            .timeout(Duration.minutes(1))
+            .memorySize(500)
+            .environment(env)
+            .code(Code.fromAsset("target/PaymentGateway-0.1.jar"))
+            .handler("com.org.lambda.MerchantStatsHandler::handleRequest")
+            .build();
+        merchantAggregateTable.grantReadData(merchantStatsLambda);
+
         // Allow lambdas to be called from API Gateway.
         RestApi api = RestApi.Builder.create(this, "Java CDK")
             .restApiName("Java CDK").
@@ -98,6 +253,18 @@ public class PaymentGatewayCdkStack extends Stack {
             .requestTemplates(new HashMap<String, String>() {{
                 put("application/json", "{ \"statusCode\": \"200\" }");
             }}).build();
+        LambdaIntegration batchCreatePaymentIntegration = LambdaIntegration.Builder.create(batchCreatePaymentLambda)
+            .requestTemplates(new HashMap<String, String>() {{
+                put("application/json", "{ \"statusCode\": \"200\" }");
+            }}).build();
+        LambdaIntegration listPaymentsIntegration = LambdaIntegration.Builder.create(listPaymentsLambda)
+            .requestTemplates(new HashMap<String, String>() {{
+                put("application/json", "{ \"statusCode\": \"200\" }");
+            }}).build();
+        LambdaIntegration merchantStatsIntegration = LambdaIntegration.Builder.create(merchantStatsLambda)
+            .requestTemplates(new HashMap<String, String>() {{
+                put("application/json", "{ \"statusCode\": \"200\" }");
+            }}).build();
         LambdaIntegration makePaymentIntegration = LambdaIntegration.Builder.create(makePaymentLambda)
             .requestTemplates(new HashMap<String, String>() {{
                 put("application/json", "{ \"statusCode\": \"200\" }");
@@ -108,11 +275,20 @@ public class PaymentGatewayCdkStack extends Stack {
             }}).build();
 
         Resource createPaymentResource = api.getRoot().addResource("create-payment");
+        Resource batchCreatePaymentResource = api.getRoot().addResource("create-payments");
         Resource makePaymentResource = api.getRoot().addResource("make-payment");
         Resource getPaymentResource = api.getRoot().addResource("get-payment");
+        Resource batchGetPaymentResource = api.getRoot().addResource("get-payments");
+        Resource listPaymentsResource = api.getRoot().addResource("list-payments");
+        Resource merchantStatsResource = api.getRoot().addResource("merchant-stats");
         Method createPaymentMethod = createPaymentResource.addMethod("POST", createPaymentIntegration);
+        Method batchCreatePaymentMethod = batchCreatePaymentResource.addMethod("POST", batchCreatePaymentIntegration);
         Method makePaymentMethod = makePaymentResource.addMethod("POST", makePaymentIntegration);
         Method getPaymentMethod = getPaymentResource.addMethod("GET", getPaymentIntegration);
+        // Batch lookups are served by the same lambda, they just come with a body.
+        batchGetPaymentResource.addMethod("POST", getPaymentIntegration);
+        Method listPaymentsMethod = listPaymentsResource.addMethod("GET", listPaymentsIntegration);
+        Method merchantStatsMethod = merchantStatsResource.addMethod("GET", merchantStatsIntegration);
 
         CfnOutput.Builder.create(this, "RegionOutput")
             .description("")
@@ -131,6 +307,21 @@ public class PaymentGatewayCdkStack extends Stack {
             .value("CreatePayment Lambda:" + urlPrefix + createPaymentMethod.getResource().getPath())
             .build();
 
+        CfnOutput.Builder.create(this, "BatchCreatePaymentLambda")
+            .description("")
+            .value("BatchCreatePayment Lambda:" + urlPrefix + batchCreatePaymentMethod.getResource().getPath())
+            .build();
+
+        CfnOutput.Builder.create(this, "ListPaymentsLambda")
+            .description("")
+            .value("ListPayments Lambda:" + urlPrefix + listPaymentsMethod.getResource().getPath())
+            .build();
+
+        CfnOutput.Builder.create(this, "MerchantStatsLambda")
+            .description("")
+            .value("MerchantStats Lambda:" + urlPrefix + merchantStatsMethod.getResource().getPath())
+            .build();
+
         CfnOutput.Builder.create(this, "MakePaymentLambda")
             .description("")
             .value("MakePayment Lambda:" + urlPrefix + makePaymentMethod.getResource().getPath())
@@ -141,4 +332,8 @@ public class PaymentGatewayCdkStack extends Stack {
             .value("GetPayment Lambda:" + urlPrefix + getPaymentMethod.getResource().getPath())
             .build();
     }
-}
\ No newline at end of file
+
+    private boolean isContextTrue(String key) {
+        return "true".equals(String.valueOf(getNode().tryGetContext(key)));
+    }
+}
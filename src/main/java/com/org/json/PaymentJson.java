@@ -0,0 +1,482 @@
+package com.org.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.org.lambda.BatchCreatePaymentInput;
+import com.org.lambda.BatchCreatePaymentResponse;
+import com.org.lambda.BatchGetPaymentInput;
+import com.org.lambda.CreatePaymentInput;
+import com.org.lambda.CreatePaymentResponse;
+import com.org.lambda.GetPaymentInput;
+import com.org.lambda.GetPaymentResponse;
+import com.org.lambda.MakePaymentInput;
+import com.org.lambda.MakePaymentResponse;
+import com.org.payments.PaymentRecord;
+import com.org.queue.MakePaymentJob;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The JSON codec for every request and response body of the gateway.
+ * <p>
+ * Readers and writers are written by hand on top of the jackson-core streaming API: bodies are parsed token by token
+ * straight into the input classes and responses are generated field by field, with no reflection and no intermediate tree.
+ * The contract is the one the ObjectMapper used to give us: all input fields are required, unknown fields are rejected,
+ * and null fields are left out of responses.
+ */
+public final class PaymentJson {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final int MAKE_PAYMENT_FIELDS = 10;
+    private static final int ALL_MAKE_PAYMENT_FIELDS = (1 << MAKE_PAYMENT_FIELDS) - 1;
+
+    private PaymentJson() {
+    }
+
+    public static CreatePaymentInput readCreatePaymentInput(String body) throws JsonProcessingException {
+        try (JsonParser parser = startObject(body)) {
+            String merchantId = null;
+            boolean merchantIdSet = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("merchantId".equals(field)) {
+                    merchantId = readString(parser);
+                    merchantIdSet = true;
+                } else {
+                    throw unknownField(parser, field);
+                }
+            }
+            if (!merchantIdSet) {
+                throw new JsonParseException(parser, "Missing required field: merchantId");
+            }
+            return new CreatePaymentInput(merchantId);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new JsonParseException(null, "Unreadable body: " + e.getMessage());
+        }
+    }
+
+    public static BatchCreatePaymentInput readBatchCreatePaymentInput(String body) throws JsonProcessingException {
+        try (JsonParser parser = startObject(body)) {
+            String merchantId = null;
+            Integer count = null;
+            int seen = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("merchantId".equals(field)) {
+                    merchantId = readString(parser);
+                    seen |= 1;
+                } else if ("count".equals(field)) {
+                    count = readInteger(parser);
+                    seen |= 1 << 1;
+                } else {
+                    throw unknownField(parser, field);
+                }
+            }
+            if (seen != 3) {
+                throw new JsonParseException(parser, "Missing required fields, both merchantId and count are required");
+            }
+            return new BatchCreatePaymentInput(merchantId, count);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new JsonParseException(null, "Unreadable body: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads {"payments": [{"merchantId": ..., "paymentId": ...}, ...]}, stopping with an error past maxPayments entries.
+     */
+    public static BatchGetPaymentInput readBatchGetPaymentInput(String body, int maxPayments) throws JsonProcessingException {
+        try (JsonParser parser = startObject(body)) {
+            List<GetPaymentInput> payments = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (!"payments".equals(field)) {
+                    throw unknownField(parser, field);
+                }
+                if (parser.currentToken() != JsonToken.START_ARRAY) {
+                    throw new JsonParseException(parser, "Expected an array for field: payments");
+                }
+                payments = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (payments.size() == maxPayments) {
+                        throw new JsonParseException(parser, "At most " + maxPayments + " payments can be requested at once");
+                    }
+                    payments.add(readGetPaymentInput(parser));
+                }
+                if (parser.currentToken() != JsonToken.END_ARRAY) {
+                    throw new JsonParseException(parser, "Expected objects in field: payments");
+                }
+            }
+            if (payments == null) {
+                throw new JsonParseException(parser, "Missing required field: payments");
+            }
+            return new BatchGetPaymentInput(payments);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new JsonParseException(null, "Unreadable body: " + e.getMessage());
+        }
+    }
+
+    public static MakePaymentInput readMakePaymentInput(String body) throws JsonProcessingException {
+        try (JsonParser parser = startObject(body)) {
+            String paymentId = null;
+            String merchantId = null;
+            String cardName = null;
+            String cardNumber = null;
+            Integer expiryYear = null;
+            Integer expiryMonth = null;
+            String currency = null;
+            Integer amount = null;
+            String billingAddress = null;
+            String cvv = null;
+            int seen = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "paymentId":
+                        paymentId = readString(parser);
+                        seen |= 1;
+                        break;
+                    case "merchantId":
+                        merchantId = readString(parser);
+                        seen |= 1 << 1;
+                        break;
+                    case "cardName":
+                        cardName = readString(parser);
+                        seen |= 1 << 2;
+                        break;
+                    case "cardNumber":
+                        cardNumber = readString(parser);
+                        seen |= 1 << 3;
+                        break;
+                    case "expiryYear":
+                        expiryYear = readInteger(parser);
+                        seen |= 1 << 4;
+                        break;
+                    case "expiryMonth":
+                        expiryMonth = readInteger(parser);
+                        seen |= 1 << 5;
+                        break;
+                    case "currency":
+                        currency = readString(parser);
+                        seen |= 1 << 6;
+                        break;
+                    case "amount":
+                        amount = readInteger(parser);
+                        seen |= 1 << 7;
+                        break;
+                    case "billingAddress":
+                        billingAddress = readString(parser);
+                        seen |= 1 << 8;
+                        break;
+                    case "cvv":
+                        cvv = readString(parser);
+                        seen |= 1 << 9;
+                        break;
+                    default:
+                        throw unknownField(parser, field);
+                }
+            }
+            if (seen != ALL_MAKE_PAYMENT_FIELDS) {
+                throw new JsonParseException(parser, "Missing required fields, all of paymentId, merchantId, cardName, cardNumber, "
+                    + "expiryYear, expiryMonth, currency, amount, billingAddress and cvv are required");
+            }
+            return new MakePaymentInput(paymentId, merchantId, cardName, cardNumber, expiryYear, expiryMonth, currency, amount,
+                billingAddress, cvv);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new JsonParseException(null, "Unreadable body: " + e.getMessage());
+        }
+    }
+
+    public static String write(CreatePaymentResponse response) {
+        StringWriter writer = new StringWriter(96);
+        try (JsonGenerator generator = FACTORY.createGenerator(writer)) {
+            writeFields(generator, response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    public static String write(BatchCreatePaymentResponse response) {
+        StringWriter writer = new StringWriter(32 + 96 * response.getPayments().size());
+        try (JsonGenerator generator = FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("payments");
+            for (CreatePaymentResponse payment : response.getPayments()) {
+                writeFields(generator, payment);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    public static String write(MakePaymentResponse response) {
+        StringWriter writer = new StringWriter(64);
+        try (JsonGenerator generator = FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            writeString(generator, "paymentStatus", response.getPaymentStatus());
+            writeInteger(generator, "failCode", response.getFailCode());
+            writeString(generator, "failReason", response.getFailReason());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    public static String write(GetPaymentResponse response) {
+        StringWriter writer = new StringWriter(256);
+        try (JsonGenerator generator = FACTORY.createGenerator(writer)) {
+            writeFields(generator, response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private static void writeFields(JsonGenerator generator, CreatePaymentResponse response) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "paymentId", response.getPaymentId());
+        writeString(generator, "status", response.getStatus());
+        writeLong(generator, "creationTimestampSeconds", response.getCreationTimestampSeconds());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a GetPaymentResponse as one object into an already open generator, e.g. as an element of an array.
+     */
+    public static void writeFields(JsonGenerator generator, GetPaymentResponse response) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "cardNumber", response.getCardNumber());
+        writeInteger(generator, "expiryYear", response.getExpiryYear());
+        writeInteger(generator, "expiryMonth", response.getExpiryMonth());
+        writeString(generator, "currency", response.getCurrency());
+        writeInteger(generator, "amount", response.getAmount());
+        writeString(generator, "status", response.getStatus());
+        writeString(generator, "cardName", response.getCardName());
+        writeString(generator, "billingAddress", response.getBillingAddress());
+        writeLong(generator, "creationTimestampSeconds", response.getCreationTimestampSeconds());
+        writeInteger(generator, "failCode", response.getFailCode());
+        writeString(generator, "failReason", response.getFailReason());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes an already rendered GetPaymentResponse body as an element of an array, with the paymentId added first.
+     */
+    public static void writeRenderedPayment(JsonGenerator generator, String paymentId, String renderedBody) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("paymentId", paymentId);
+        // The body is one of our own non-empty objects, so its fields can be spliced in as is.
+        generator.writeRaw(',');
+        generator.writeRaw(renderedBody, 1, renderedBody.length() - 2);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes one payment of a listing into an already open generator, with the fields projected on MerchantCreationGSI.
+     */
+    public static void writeListedPayment(JsonGenerator generator, PaymentRecord record) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "paymentId", record.getPaymentId());
+        writeString(generator, "status", record.getStatus());
+        if (record.getAmount() != PaymentRecord.NONE_INT) {
+            generator.writeNumberField("amount", record.getAmount());
+        }
+        writeString(generator, "currency", record.getCurrency());
+        if (record.getCreationTimestampSeconds() != PaymentRecord.NONE_LONG) {
+            generator.writeNumberField("creationTimestampSeconds", record.getCreationTimestampSeconds());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Reads a queued make-payment, as written by {@link #write(MakePaymentJob)}.
+     */
+    public static MakePaymentJob readMakePaymentJob(String body) throws JsonProcessingException {
+        try (JsonParser parser = startObject(body)) {
+            String paymentId = null;
+            String merchantId = null;
+            String previousStatus = null;
+            Integer attempt = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("paymentId".equals(field)) {
+                    paymentId = readString(parser);
+                } else if ("merchantId".equals(field)) {
+                    merchantId = readString(parser);
+                } else if ("previousStatus".equals(field)) {
+                    previousStatus = readString(parser);
+                } else if ("attempt".equals(field)) {
+                    attempt = readInteger(parser);
+                } else {
+                    throw unknownField(parser, field);
+                }
+            }
+            if (paymentId == null || merchantId == null || previousStatus == null) {
+                throw new JsonParseException(parser, "Missing required fields, paymentId, merchantId and previousStatus are required");
+            }
+            return new MakePaymentJob(paymentId, merchantId, previousStatus, attempt == null ? 0 : attempt);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new JsonParseException(null, "Unreadable body: " + e.getMessage());
+        }
+    }
+
+    public static String write(MakePaymentJob job) {
+        StringWriter writer = new StringWriter(128);
+        try (JsonGenerator generator = FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            writeString(generator, "paymentId", job.getPaymentId());
+            writeString(generator, "merchantId", job.getMerchantId());
+            writeString(generator, "previousStatus", job.getPreviousStatus());
+            generator.writeNumberField("attempt", job.getAttempt());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    public static String writeError(String errorMessage) {
+        StringWriter writer = new StringWriter(64);
+        try (JsonGenerator generator = FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStringField("errorMessage", errorMessage);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    public static JsonFactory factory() {
+        return FACTORY;
+    }
+
+    private static JsonParser startObject(String body) throws IOException {
+        if (body == null) {
+            throw new JsonParseException(null, "Request body is missing");
+        }
+        JsonParser parser = FACTORY.createParser(body);
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            parser.close();
+            throw new JsonParseException(parser, "Request body must be a JSON object");
+        }
+        return parser;
+    }
+
+    /**
+     * Strings accept any scalar, like Jackson's StringDeserializer does.
+     */
+    private static String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        } else if (token != null && token.isScalarValue()) {
+            return parser.getText();
+        }
+        throw new JsonParseException(parser, "Expected a string for field: " + parser.getCurrentName());
+    }
+
+    /**
+     * Integers accept numbers (floats are truncated) and numeric strings, like Jackson's default coercion does.
+     */
+    private static Integer readInteger(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getIntValue();
+        } else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return (int) parser.getDoubleValue();
+        } else if (token == JsonToken.VALUE_NULL) {
+            return null;
+        } else if (token == JsonToken.VALUE_STRING) {
+            String text = parser.getText().trim();
+            if (text.isEmpty()) {
+                return null;
+            }
+            try {
+                return Integer.valueOf(text);
+            } catch (NumberFormatException e) {
+                throw new JsonParseException(parser, "Expected a number for field: " + parser.getCurrentName());
+            }
+        }
+        throw new JsonParseException(parser, "Expected a number for field: " + parser.getCurrentName());
+    }
+
+    private static GetPaymentInput readGetPaymentInput(JsonParser parser) throws IOException {
+        String merchantId = null;
+        String paymentId = null;
+        int seen = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("merchantId".equals(field)) {
+                merchantId = readString(parser);
+                seen |= 1;
+            } else if ("paymentId".equals(field)) {
+                paymentId = readString(parser);
+                seen |= 1 << 1;
+            } else {
+                throw unknownField(parser, field);
+            }
+        }
+        if (seen != 3 || merchantId == null || paymentId == null) {
+            throw new JsonParseException(parser, "Missing required fields, both merchantId and paymentId are required");
+        }
+        return new GetPaymentInput(merchantId, paymentId);
+    }
+
+    private static JsonParseException unknownField(JsonParser parser, String field) {
+        return new JsonParseException(parser, "Unrecognized field: " + field);
+    }
+
+    private static void writeString(JsonGenerator generator, String name, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        }
+    }
+
+    private static void writeInteger(JsonGenerator generator, String name, Integer value) throws IOException {
+        if (value != null) {
+            generator.writeNumberField(name, value.intValue());
+        }
+    }
+
+    private static void writeLong(JsonGenerator generator, String name, Long value) throws IOException {
+        if (value != null) {
+            generator.writeNumberField(name, value.longValue());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.org.lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.org.json.PaymentJson;
+import com.org.metrics.GatewayMetrics;
+import com.org.metrics.HandlerMetrics;
+import com.org.metrics.Stage;
+import com.org.modules.Env;
+import com.org.modules.GatewayModule;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import com.org.ratelimit.MerchantRateLimiter;
+import com.org.store.PaymentStore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.org.modules.ResponseBuilder.error;
+import static com.org.modules.ResponseBuilder.ok;
+import static com.org.modules.ResponseBuilder.tooManyRequests;
+
+/**
+ * Creates up to maxBatchCreatePayments payment ids for a merchant in one request, stored with {@link PaymentStore#saveAll}.
+ */
+public class BatchCreatePaymentHandler implements RequestHandler<APIGatewayV2HTTPEvent, APIGatewayV2HTTPResponse> {
+
+    private static final int DEFAULT_MAX_PAYMENTS = 500;
+
+    private final PaymentStore paymentStore;
+    private final GatewayModule gatewayModule;
+    private final MerchantRateLimiter rateLimiter;
+    private final HandlerMetrics metrics;
+    private final int maxPayments;
+
+    public BatchCreatePaymentHandler() {
+        gatewayModule = GatewayModule.get();
+        paymentStore = gatewayModule.getPaymentStore();
+        rateLimiter = gatewayModule.getRateLimiter();
+        metrics = gatewayModule.getMetrics().forHandler("BatchCreatePaymentHandler");
+        maxPayments = Env.getInt("maxBatchCreatePayments", DEFAULT_MAX_PAYMENTS);
+    }
+
+    public BatchCreatePaymentHandler(PaymentStore paymentStore) {
+        this(paymentStore, MerchantRateLimiter.unlimited());
+    }
+
+    public BatchCreatePaymentHandler(PaymentStore paymentStore, MerchantRateLimiter rateLimiter) {
+        this.paymentStore = paymentStore;
+        this.gatewayModule = null;
+        this.rateLimiter = rateLimiter;
+        this.metrics = new HandlerMetrics(GatewayMetrics.DEFAULT_NAMESPACE, "BatchCreatePaymentHandler");
+        this.maxPayments = DEFAULT_MAX_PAYMENTS;
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse handleRequest(APIGatewayV2HTTPEvent event, Context context) {
+        long start = System.nanoTime();
+        try {
+            return handle(event.getBody());
+        } finally {
+            if (gatewayModule != null) {
+                gatewayModule.reportFirstRequest("BatchCreatePaymentHandler", start, context.getLogger());
+                gatewayModule.flushMetrics(metrics, context.getLogger());
+            }
+        }
+    }
+
+    public APIGatewayV2HTTPResponse handle(String body) {
+        long start = System.nanoTime();
+        try {
+            BatchCreatePaymentInput paymentInput = PaymentJson.readBatchCreatePaymentInput(body);
+            metrics.record(Stage.Parse, start);
+            if (paymentInput.getCount() == null || paymentInput.getCount() < 1 || paymentInput.getCount() > maxPayments) {
+                return metrics.failed(error("count must be between 1 and " + maxPayments, 400));
+            }
+            // A permit per payment, a batch costs as much as the requests it replaces.
+            long retryAfterNanos = rateLimiter.tryAcquire(paymentInput.getMerchantId(), paymentInput.getCount());
+            if (retryAfterNanos > 0) {
+                return metrics.failed(tooManyRequests(retryAfterNanos));
+            }
+
+            BatchCreatePaymentResponse batchCreatePaymentResponse = createPayments(paymentInput);
+
+            start = System.nanoTime();
+            String jsonResponse = PaymentJson.write(batchCreatePaymentResponse);
+            metrics.record(Stage.Serialize, start);
+            metrics.countStatus(PaymentStatus.Created.name(), paymentInput.getCount());
+
+            return ok(jsonResponse);
+        } catch (JsonProcessingException e) {
+            return metrics.failed(error("Input is missing or have extra fields, check docs", 400));
+        } catch (RuntimeException e) {
+            metrics.countFailCode(500);
+            throw e;
+        }
+    }
+
+    public HandlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    BatchCreatePaymentResponse createPayments(BatchCreatePaymentInput paymentInput) {
+        long creationTimestampSeconds = Instant.now().getEpochSecond();
+        List<MerchantPayment> payments = new ArrayList<>(paymentInput.getCount());
+        for (int i = 0; i < paymentInput.getCount(); i++) {
+            payments.add(MerchantPayment.builder()
+                .newPayment()
+                .withStatus(PaymentStatus.Created.name())
+                .withMerchantId(paymentInput.getMerchantId())
+                .withCreationTimestampSeconds(creationTimestampSeconds)
+                .build());
+        }
+
+        long start = System.nanoTime();
+        paymentStore.saveAll(payments);
+        metrics.record(Stage.StoreWrite, start);
+
+        List<CreatePaymentResponse> createdPayments = new ArrayList<>(payments.size());
+        for (MerchantPayment payment : payments) {
+            createdPayments.add(new CreatePaymentResponse(payment.getPaymentId(), payment.getStatus(),
+                payment.getCreationTimestampSeconds()));
+        }
+        return new BatchCreatePaymentResponse(createdPayments);
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.org.lambda;
+
+public class BatchCreatePaymentInput {
+
+    private String merchantId;
+    private Integer count;
+
+    public BatchCreatePaymentInput(String merchantId, Integer count) {
+        this.merchantId = merchantId;
+        this.count = count;
+    }
+
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public void setMerchantId(String merchantId) {
+        this.merchantId = merchantId;
+    }
+
+    public Integer getCount() {
+        return count;
+    }
+
+    public void setCount(Integer count) {
+        this.count = count;
+    }
+}
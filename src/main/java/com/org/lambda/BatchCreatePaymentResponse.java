@@ -0,0 +1,20 @@
+package com.org.lambda;
+
+import java.util.List;
+
+public class BatchCreatePaymentResponse {
+
+    private List<CreatePaymentResponse> payments;
+
+    public BatchCreatePaymentResponse(List<CreatePaymentResponse> payments) {
+        this.payments = payments;
+    }
+
+    public List<CreatePaymentResponse> getPayments() {
+        return payments;
+    }
+
+    public void setPayments(List<CreatePaymentResponse> payments) {
+        this.payments = payments;
+    }
+}
@@ -0,0 +1,20 @@
+package com.org.lambda;
+
+import java.util.List;
+
+public class BatchGetPaymentInput {
+
+    private List<GetPaymentInput> payments;
+
+    public BatchGetPaymentInput(List<GetPaymentInput> payments) {
+        this.payments = payments;
+    }
+
+    public List<GetPaymentInput> getPayments() {
+        return payments;
+    }
+
+    public void setPayments(List<GetPaymentInput> payments) {
+        this.payments = payments;
+    }
+}
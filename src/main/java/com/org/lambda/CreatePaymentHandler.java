@@ -5,50 +5,91 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.org.dynamodb.DynamoDBClient;
-import com.org.modules.DynamoDBMapperModule;
+import com.org.json.PaymentJson;
+import com.org.metrics.GatewayMetrics;
+import com.org.metrics.HandlerMetrics;
+import com.org.metrics.Stage;
+import com.org.modules.GatewayModule;
 import com.org.payments.MerchantPayment;
 import com.org.payments.PaymentStatus;
+import com.org.ratelimit.MerchantRateLimiter;
+import com.org.store.PaymentStore;
 
 import java.time.Instant;
 
-import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
 import static com.org.modules.ResponseBuilder.error;
 import static com.org.modules.ResponseBuilder.ok;
+import static com.org.modules.ResponseBuilder.tooManyRequests;
 
 public class CreatePaymentHandler implements RequestHandler<APIGatewayV2HTTPEvent, APIGatewayV2HTTPResponse> {
 
-    private final DynamoDBClient dynamoDBClient;
-    private final ObjectMapper objectMapper;
+    private final PaymentStore paymentStore;
+    private final GatewayModule gatewayModule;
+    private final MerchantRateLimiter rateLimiter;
+    private final HandlerMetrics metrics;
 
     public CreatePaymentHandler() {
-        dynamoDBClient = new DynamoDBClient(DynamoDBMapperModule.provideDynamoDBMapper());
-        objectMapper = new ObjectMapper();
-        objectMapper.setSerializationInclusion(NON_NULL);
+        gatewayModule = GatewayModule.get();
+        paymentStore = gatewayModule.getPaymentStore();
+        rateLimiter = gatewayModule.getRateLimiter();
+        metrics = gatewayModule.getMetrics().forHandler("CreatePaymentHandler");
     }
 
-    public CreatePaymentHandler(DynamoDBClient client) {
-        this.dynamoDBClient = client;
-        objectMapper = new ObjectMapper();
-        objectMapper.setSerializationInclusion(NON_NULL);
+    public CreatePaymentHandler(PaymentStore paymentStore) {
+        this(paymentStore, MerchantRateLimiter.unlimited());
+    }
+
+    public CreatePaymentHandler(PaymentStore paymentStore, MerchantRateLimiter rateLimiter) {
+        this.paymentStore = paymentStore;
+        this.gatewayModule = null;
+        this.rateLimiter = rateLimiter;
+        this.metrics = new HandlerMetrics(GatewayMetrics.DEFAULT_NAMESPACE, "CreatePaymentHandler");
     }
 
     @Override
     public APIGatewayV2HTTPResponse handleRequest(APIGatewayV2HTTPEvent event, Context context) {
+        long start = System.nanoTime();
         try {
-            CreatePaymentInput paymentInput = objectMapper.readValue(event.getBody(), CreatePaymentInput.class);
+            return handle(event.getBody());
+        } finally {
+            if (gatewayModule != null) {
+                gatewayModule.reportFirstRequest("CreatePaymentHandler", start, context.getLogger());
+                gatewayModule.flushMetrics(metrics, context.getLogger());
+            }
+        }
+    }
+
+    public APIGatewayV2HTTPResponse handle(String body) {
+        long start = System.nanoTime();
+        try {
+            CreatePaymentInput paymentInput = PaymentJson.readCreatePaymentInput(body);
+            metrics.record(Stage.Parse, start);
+
+            long retryAfterNanos = rateLimiter.tryAcquire(paymentInput.getMerchantId());
+            if (retryAfterNanos > 0) {
+                return metrics.failed(tooManyRequests(retryAfterNanos));
+            }
 
             CreatePaymentResponse createPaymentResponse = createPayment(paymentInput);
 
-            String jsonResponse = objectMapper.writeValueAsString(createPaymentResponse);
+            start = System.nanoTime();
+            String jsonResponse = PaymentJson.write(createPaymentResponse);
+            metrics.record(Stage.Serialize, start);
+            metrics.countStatus(createPaymentResponse.getStatus(), 1);
 
             return ok(jsonResponse);
         } catch (JsonProcessingException e) {
-            return error("Input is missing or have extra fields, check docs", 400);
+            return metrics.failed(error("Input is missing or have extra fields, check docs", 400));
+        } catch (RuntimeException e) {
+            metrics.countFailCode(500);
+            throw e;
         }
     }
 
+    public HandlerMetrics getMetrics() {
+        return metrics;
+    }
+
     CreatePaymentResponse createPayment(CreatePaymentInput paymentInput) {
         MerchantPayment payment = MerchantPayment.builder()
             .newPayment()
@@ -57,7 +98,9 @@ public class CreatePaymentHandler implements RequestHandler<APIGatewayV2HTTPEven
             .withCreationTimestampSeconds(Instant.now().getEpochSecond())
             .build();
 
-        dynamoDBClient.save(payment);
+        long start = System.nanoTime();
+        paymentStore.save(payment);
+        metrics.record(Stage.StoreWrite, start);
 
         return new CreatePaymentResponse(payment.getPaymentId(), payment.getStatus(), payment.getCreationTimestampSeconds());
     }
@@ -4,54 +4,134 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.org.dynamodb.DynamoDBClient;
-import com.org.modules.DynamoDBMapperModule;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.org.cache.BoundedCache;
+import com.org.json.PaymentJson;
+import com.org.metrics.GatewayMetrics;
+import com.org.metrics.HandlerMetrics;
+import com.org.metrics.Stage;
+import com.org.modules.Env;
+import com.org.modules.GatewayModule;
 import com.org.payments.MerchantPayment;
 import com.org.payments.PaymentStatus;
+import com.org.ratelimit.MerchantRateLimiter;
+import com.org.store.PaymentStore;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
 import static com.org.modules.ResponseBuilder.error;
 import static com.org.modules.ResponseBuilder.ok;
+import static com.org.modules.ResponseBuilder.tooManyRequests;
 import static java.lang.Math.max;
 
 public class GetPaymentHandler implements RequestHandler<APIGatewayV2HTTPEvent, APIGatewayV2HTTPResponse> {
 
-    private final DynamoDBClient dynamoDBClient;
-    private final ObjectMapper objectMapper;
+    private static final String NOT_FOUND_REASON = "PaymentId is expired or not found";
+    private static final String NOT_AUTHORISED_REASON = "This merchant doesn't have access to this payment";
+    private static final int DEFAULT_MAX_BATCH_PAYMENTS = 500;
+
+    private final PaymentStore paymentStore;
+    private final GatewayModule gatewayModule;
+    private final MerchantRateLimiter rateLimiter;
+    private final HandlerMetrics metrics;
+    // Settled payments never change, so their rendered body can be served without going to the store.
+    private final BoundedCache<String, RenderedPayment> settledPayments;
+    // Unknown/expired paymentIds, kept shortly so probing for random ids doesn't hit the store. Only cached once a
+    // consistent read confirms the miss.
+    private final BoundedCache<String, Boolean> notFoundPayments;
+    private final String notFoundBody;
+    private final String notAuthorisedBody;
+    private final int maxBatchPayments;
 
     public GetPaymentHandler() {
-        dynamoDBClient = new DynamoDBClient(DynamoDBMapperModule.provideDynamoDBMapper());
-        objectMapper = new ObjectMapper();
-        objectMapper.setSerializationInclusion(NON_NULL);
+        this(GatewayModule.get().getPaymentStore(), GatewayModule.get(), GatewayModule.get().getRateLimiter());
+    }
+
+    public GetPaymentHandler(PaymentStore paymentStore) {
+        this(paymentStore, MerchantRateLimiter.unlimited());
+    }
+
+    public GetPaymentHandler(PaymentStore paymentStore, MerchantRateLimiter rateLimiter) {
+        this(paymentStore, null, rateLimiter);
     }
 
-    public GetPaymentHandler(DynamoDBClient client) {
-        this.dynamoDBClient = client;
-        objectMapper = new ObjectMapper();
-        objectMapper.setSerializationInclusion(NON_NULL);
+    private GetPaymentHandler(PaymentStore paymentStore, GatewayModule gatewayModule, MerchantRateLimiter rateLimiter) {
+        this.paymentStore = paymentStore;
+        this.gatewayModule = gatewayModule;
+        this.rateLimiter = rateLimiter;
+        this.metrics = gatewayModule != null ? gatewayModule.getMetrics().forHandler("GetPaymentHandler")
+            : new HandlerMetrics(GatewayMetrics.DEFAULT_NAMESPACE, "GetPaymentHandler");
+        this.settledPayments = new BoundedCache<>(Env.getInt("settledPaymentCacheSize", 10_000), 0);
+        this.notFoundPayments = new BoundedCache<>(Env.getInt("notFoundPaymentCacheSize", 10_000),
+            Env.getLong("notFoundPaymentCacheTtlMillis", 5_000));
+        this.notFoundBody = PaymentJson.write(failure(404, NOT_FOUND_REASON));
+        this.notAuthorisedBody = PaymentJson.write(failure(401, NOT_AUTHORISED_REASON));
+        this.maxBatchPayments = Env.getInt("maxBatchGetPayments", DEFAULT_MAX_BATCH_PAYMENTS);
     }
 
     @Override
     public APIGatewayV2HTTPResponse handleRequest(APIGatewayV2HTTPEvent event, Context context) {
+        long start = System.nanoTime();
         try {
+            return handle(event.getBody(), event.getQueryStringParameters());
+        } finally {
+            if (gatewayModule != null) {
+                gatewayModule.reportFirstRequest("GetPaymentHandler", start, context.getLogger());
+                gatewayModule.flushMetrics(metrics, context.getLogger());
+            }
+        }
+    }
 
-            String merchantId = event.getQueryStringParameters().get("merchantId");
-            String paymentId = event.getQueryStringParameters().get("paymentId");
+    /**
+     * @param body                  a batch lookup if not blank.
+     * @param queryStringParameters merchantId and paymentId otherwise, may be null.
+     */
+    public APIGatewayV2HTTPResponse handle(String body, Map<String, String> queryStringParameters) {
+        long start = System.nanoTime();
+        try {
+            // A POST body is a batch lookup.
+            if (body != null && !body.isBlank()) {
+                BatchGetPaymentInput batchInput = PaymentJson.readBatchGetPaymentInput(body, maxBatchPayments);
+                metrics.record(Stage.Parse, start);
+                long retryAfterNanos = acquirePermits(batchInput.getPayments());
+                if (retryAfterNanos > 0) {
+                    return metrics.failed(tooManyRequests(retryAfterNanos));
+                }
+                return ok(renderPayments(batchInput.getPayments()));
+            }
+
+            if (queryStringParameters == null) {
+                return metrics.failed(error("Missing merhantId/paymentId parameters", 400));
+            }
+            String merchantId = queryStringParameters.get("merchantId");
+            String paymentId = queryStringParameters.get("paymentId");
 
             if (merchantId == null || paymentId == null) {
-                return error("Missing merhantId/paymentId parameters", 400);
+                return metrics.failed(error("Missing merhantId/paymentId parameters", 400));
+            }
+            long retryAfterNanos = rateLimiter.tryAcquire(merchantId);
+            if (retryAfterNanos > 0) {
+                return metrics.failed(tooManyRequests(retryAfterNanos));
             }
 
             GetPaymentInput paymentInput = new GetPaymentInput(merchantId, paymentId);
 
-            GetPaymentResponse getPaymentResponse = getPayment(paymentInput);
-
-            String jsonResponse = objectMapper.writeValueAsString(getPaymentResponse);
+            String jsonResponse = renderPayment(paymentInput);
 
             return ok(jsonResponse);
+        } catch (JsonProcessingException e) {
+            return metrics.failed(error("Input is missing or have extra fields, check docs", 400));
         } catch (Exception e) {
-            return error("Internal Error", 500);
+            return metrics.failed(error("Internal Error", 500));
         }
     }
 
@@ -62,32 +142,176 @@ public class GetPaymentHandler implements RequestHandler<APIGatewayV2HTTPEvent,
      * @return GetPayment
      */
     GetPaymentResponse getPayment(GetPaymentInput paymentInput) {
-        MerchantPayment payment = dynamoDBClient.getMerchantPayment(paymentInput.getPaymentId());
+        MerchantPayment payment = paymentStore.getMerchantPayment(paymentInput.getPaymentId());
+        return toResponse(paymentInput, payment);
+    }
+
+    /**
+     * Same as {@link #getPayment(GetPaymentInput)} but returns the JSON body, going through the settled and not found caches.
+     */
+    String renderPayment(GetPaymentInput paymentInput) {
+        String body = renderFromCache(paymentInput);
+        if (body != null) {
+            return body;
+        }
+        long start = System.nanoTime();
+        MerchantPayment payment = paymentStore.getMerchantPayment(paymentInput.getPaymentId());
+        if (payment == null) {
+            // An eventually consistent read can miss a payment created a moment ago, which mustn't be cached as not found.
+            payment = paymentStore.getLatestMerchantPayment(paymentInput.getPaymentId());
+        }
+        metrics.record(Stage.StoreRead, start);
+        return render(paymentInput, payment, true);
+    }
+
+    /**
+     * Batch version of {@link #renderPayment(GetPaymentInput)}: a JSON array with one element per input, in the same order,
+     * each being the get-payment body with its paymentId. Payments missing from the caches are read with one
+     * {@link PaymentStore#getMerchantPayments} call. Its misses aren't cached as not found, confirming them would take a
+     * consistent read each.
+     */
+    String renderPayments(List<GetPaymentInput> paymentInputs) {
+        String[] bodies = new String[paymentInputs.size()];
+        Set<String> missedPaymentIds = new LinkedHashSet<>();
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = renderFromCache(paymentInputs.get(i));
+            if (bodies[i] == null) {
+                missedPaymentIds.add(paymentInputs.get(i).getPaymentId());
+            }
+        }
+        long start = System.nanoTime();
+        Map<String, MerchantPayment> payments = Map.of();
+        if (!missedPaymentIds.isEmpty()) {
+            payments = paymentStore.getMerchantPayments(missedPaymentIds);
+            metrics.record(Stage.StoreRead, start);
+        }
+
+        StringWriter writer = new StringWriter(256 * bodies.length + 2);
+        try (JsonGenerator generator = PaymentJson.factory().createGenerator(writer)) {
+            generator.writeStartArray();
+            for (int i = 0; i < bodies.length; i++) {
+                GetPaymentInput paymentInput = paymentInputs.get(i);
+                MerchantPayment payment = payments.get(paymentInput.getPaymentId());
+                String body = bodies[i] != null ? bodies[i] : render(paymentInput, payment, false);
+                PaymentJson.writeRenderedPayment(generator, paymentInput.getPaymentId(), body);
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Takes a permit per payment from each merchant of a batch. Merchants that had permits keep them spent if another
+     * merchant of the batch is over its limit.
+     *
+     * @return 0 if the batch can go ahead, otherwise the longest wait of the merchants over their limit.
+     */
+    private long acquirePermits(List<GetPaymentInput> paymentInputs) {
+        Map<String, Integer> permits = new HashMap<>();
+        for (GetPaymentInput paymentInput : paymentInputs) {
+            permits.merge(paymentInput.getMerchantId() == null ? "" : paymentInput.getMerchantId(), 1, Integer::sum);
+        }
+        long retryAfterNanos = 0;
+        for (Map.Entry<String, Integer> merchantPermits : permits.entrySet()) {
+            retryAfterNanos = Math.max(retryAfterNanos, rateLimiter.tryAcquire(merchantPermits.getKey(), merchantPermits.getValue()));
+        }
+        return retryAfterNanos;
+    }
+
+    public HandlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public BoundedCache<String, RenderedPayment> getSettledPaymentCache() {
+        return settledPayments;
+    }
+
+    public BoundedCache<String, Boolean> getNotFoundPaymentCache() {
+        return notFoundPayments;
+    }
+
+    /**
+     * @return the body from the settled or not found caches, or null if the store has to be read.
+     */
+    private String renderFromCache(GetPaymentInput paymentInput) {
+        String paymentId = paymentInput.getPaymentId();
+
+        RenderedPayment cached = settledPayments.get(paymentId);
+        if (cached != null) {
+            if (cached.merchantId.equals(paymentInput.getMerchantId())) {
+                return cached.body;
+            }
+            metrics.countFailCode(401);
+            return notAuthorisedBody;
+        }
+        if (notFoundPayments.get(paymentId) != null) {
+            metrics.countFailCode(404);
+            return notFoundBody;
+        }
+        return null;
+    }
+
+    /**
+     * @param missConfirmed true if a null payment was read consistently, so it can be cached as not found.
+     */
+    private String render(GetPaymentInput paymentInput, MerchantPayment payment, boolean missConfirmed) {
+        String paymentId = paymentInput.getPaymentId();
+        GetPaymentResponse response = toResponse(paymentInput, payment);
+        long start = System.nanoTime();
+        String body = PaymentJson.write(response);
+        metrics.record(Stage.Serialize, start);
+        if (response.getFailCode() != null) {
+            metrics.countFailCode(response.getFailCode());
+        }
+
+        if (response.getFailCode() == null && PaymentStatus.isFinal(payment.getStatus())) {
+            settledPayments.put(paymentId, new RenderedPayment(payment.getMerchantId(), body));
+        } else if (Integer.valueOf(404).equals(response.getFailCode()) && (payment != null || missConfirmed)) {
+            notFoundPayments.put(paymentId, Boolean.TRUE);
+        }
+        return body;
+    }
+
+    private GetPaymentResponse toResponse(GetPaymentInput paymentInput, MerchantPayment payment) {
+        if (payment == null || payment.isExpired(Instant.now())) {
+            return failure(404, NOT_FOUND_REASON);
+        } else if (!payment.getMerchantId().equals(paymentInput.getMerchantId())) {
+            return failure(401, NOT_AUTHORISED_REASON);
+        }
 
         GetPaymentResponse response = new GetPaymentResponse();
         String mask = "*".repeat(12);
 
-        if (payment == null) {
-            response.setFailCode(404);
-            response.setFailReason("PaymentId is expired or not found");
-        } else if (!payment.getMerchantId().equals(paymentInput.getMerchantId())) {
-            response.setFailCode(401);
-            response.setFailReason("This merchant doesn't have access to this payment");
-        } else {
-            response.setStatus(payment.getStatus());
-            response.setCreationTimestampSeconds(payment.getCreationTimestampSeconds());
-            if (!payment.getStatus().equals(PaymentStatus.Created.name())) {
-                response.setAmount(payment.getAmount());
-                response.setCurrency(payment.getCurrency());
-                response.setCardName(payment.getCardName());
-                response.setCardNumber(mask + payment.getCardNumber().substring(max(payment.getCardNumber().length() - 4, 0)));
-                response.setAmount(payment.getAmount());
-                response.setExpiryMonth(payment.getExpiryMonth());
-                response.setExpiryYear(payment.getExpiryYear());
-                response.setBillingAddress(payment.getBillingAddress());
-            }
+        response.setStatus(payment.getStatus());
+        response.setCreationTimestampSeconds(payment.getCreationTimestampSeconds());
+        if (!payment.getStatus().equals(PaymentStatus.Created.name())) {
+            response.setAmount(payment.getAmount());
+            response.setCurrency(payment.getCurrency());
+            response.setCardName(payment.getCardName());
+            response.setCardNumber(mask + payment.getCardNumber().substring(max(payment.getCardNumber().length() - 4, 0)));
+            response.setExpiryMonth(payment.getExpiryMonth());
+            response.setExpiryYear(payment.getExpiryYear());
+            response.setBillingAddress(payment.getBillingAddress());
         }
         return response;
     }
 
+    private static GetPaymentResponse failure(int failCode, String failReason) {
+        GetPaymentResponse response = new GetPaymentResponse();
+        response.setFailCode(failCode);
+        response.setFailReason(failReason);
+        return response;
+    }
+
+    public static final class RenderedPayment {
+        private final String merchantId;
+        private final String body;
+
+        private RenderedPayment(String merchantId, String body) {
+            this.merchantId = merchantId;
+            this.body = body;
+        }
+    }
 }
@@ -0,0 +1,171 @@
+package com.org.lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.org.json.PaymentJson;
+import com.org.metrics.GatewayMetrics;
+import com.org.metrics.HandlerMetrics;
+import com.org.metrics.Stage;
+import com.org.modules.GatewayModule;
+import com.org.payments.PaymentStatus;
+import com.org.ratelimit.MerchantRateLimiter;
+import com.org.store.PaymentCursor;
+import com.org.store.PaymentListQuery;
+import com.org.store.PaymentStore;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import static com.org.modules.ResponseBuilder.error;
+import static com.org.modules.ResponseBuilder.ok;
+import static com.org.modules.ResponseBuilder.tooManyRequests;
+
+/**
+ * Lists a merchant's payments newest first, one page at a time, over MerchantCreationGSI. Payments are written to the
+ * response as the store reads them, so a page is never held in memory as objects.
+ */
+public class ListPaymentsHandler implements RequestHandler<APIGatewayV2HTTPEvent, APIGatewayV2HTTPResponse> {
+
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private final PaymentStore paymentStore;
+    private final GatewayModule gatewayModule;
+    private final MerchantRateLimiter rateLimiter;
+    private final HandlerMetrics metrics;
+
+    public ListPaymentsHandler() {
+        gatewayModule = GatewayModule.get();
+        paymentStore = gatewayModule.getPaymentStore();
+        rateLimiter = gatewayModule.getRateLimiter();
+        metrics = gatewayModule.getMetrics().forHandler("ListPaymentsHandler");
+    }
+
+    public ListPaymentsHandler(PaymentStore paymentStore) {
+        this(paymentStore, MerchantRateLimiter.unlimited());
+    }
+
+    public ListPaymentsHandler(PaymentStore paymentStore, MerchantRateLimiter rateLimiter) {
+        this.paymentStore = paymentStore;
+        this.gatewayModule = null;
+        this.rateLimiter = rateLimiter;
+        this.metrics = new HandlerMetrics(GatewayMetrics.DEFAULT_NAMESPACE, "ListPaymentsHandler");
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse handleRequest(APIGatewayV2HTTPEvent event, Context context) {
+        long start = System.nanoTime();
+        try {
+            return handle(event.getQueryStringParameters());
+        } finally {
+            if (gatewayModule != null) {
+                gatewayModule.reportFirstRequest("ListPaymentsHandler", start, context.getLogger());
+                gatewayModule.flushMetrics(metrics, context.getLogger());
+            }
+        }
+    }
+
+    public APIGatewayV2HTTPResponse handle(Map<String, String> parameters) {
+        try {
+            if (parameters == null || parameters.get("merchantId") == null) {
+                return metrics.failed(error("Missing merchantId parameter", 400));
+            }
+            long retryAfterNanos = rateLimiter.tryAcquire(parameters.get("merchantId"));
+            if (retryAfterNanos > 0) {
+                return metrics.failed(tooManyRequests(retryAfterNanos));
+            }
+
+            long start = System.nanoTime();
+            PaymentListQuery query;
+            try {
+                query = toQuery(parameters);
+            } catch (IllegalArgumentException e) {
+                return metrics.failed(error(e.getMessage(), 400));
+            }
+            metrics.record(Stage.Parse, start);
+
+            try {
+                return ok(listPayments(query));
+            } catch (IllegalArgumentException e) {
+                // A cursor the store can't continue from, e.g. one from before the merchant's shard count changed.
+                return metrics.failed(error(e.getMessage(), 400));
+            }
+        } catch (Exception e) {
+            return metrics.failed(error("Internal Error", 500));
+        }
+    }
+
+    public HandlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return {"payments": [...], "nextCursor": ...}, nextCursor being left out on the last page.
+     */
+    String listPayments(PaymentListQuery query) {
+        StringWriter writer = new StringWriter(64 + 128 * query.getLimit());
+        try (JsonGenerator generator = PaymentJson.factory().createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("payments");
+            // Payments are written as they're read, so this is the store read and the serialization together.
+            long start = System.nanoTime();
+            PaymentCursor next = paymentStore.listMerchantPayments(query, record -> {
+                try {
+                    PaymentJson.writeListedPayment(generator, record);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            metrics.record(Stage.StoreRead, start);
+            generator.writeEndArray();
+            if (next != null) {
+                generator.writeStringField("nextCursor", next.encode());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    static PaymentListQuery toQuery(Map<String, String> parameters) {
+        long from = longParameter(parameters, "from", 0L);
+        long to = longParameter(parameters, "to", Long.MAX_VALUE);
+        if (from > to) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        long limit = longParameter(parameters, "limit", DEFAULT_LIMIT);
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        String status = parameters.get("status");
+        if (status != null) {
+            try {
+                PaymentStatus.valueOf(status);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown status: " + status);
+            }
+        }
+        String cursor = parameters.get("cursor");
+        PaymentCursor after = cursor == null ? null : PaymentCursor.decode(cursor);
+
+        return new PaymentListQuery(parameters.get("merchantId"), from, to, status, (int) limit, after);
+    }
+
+    private static long longParameter(Map<String, String> parameters, String name, long defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+}
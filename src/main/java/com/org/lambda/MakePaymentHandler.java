@@ -2,75 +2,230 @@ package com.org.lambda;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.org.bank.BankConnector;
 import com.org.bank.BankSimulator;
-import com.org.dynamodb.DynamoDBClient;
-import com.org.modules.DynamoDBMapperModule;
+import com.org.cache.SingleFlight;
+import com.org.json.PaymentJson;
+import com.org.metrics.GatewayMetrics;
+import com.org.metrics.HandlerMetrics;
+import com.org.metrics.Stage;
+import com.org.modules.Env;
+import com.org.modules.GatewayModule;
+import com.org.modules.Logs;
+import com.org.outbox.MakePaymentOutbox;
 import com.org.payments.MerchantPayment;
 import com.org.payments.PaymentStatus;
+import com.org.queue.MakePaymentJob;
+import com.org.queue.MakePaymentQueue;
+import com.org.ratelimit.MerchantRateLimiter;
+import com.org.store.ClaimingPaymentStore;
+import com.org.store.PaymentStore;
 
 import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
-import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
 import static com.org.modules.ResponseBuilder.error;
 import static com.org.modules.ResponseBuilder.ok;
+import static com.org.modules.ResponseBuilder.tooManyRequests;
 
 public class MakePaymentHandler implements RequestHandler<APIGatewayV2HTTPEvent, APIGatewayV2HTTPResponse> {
 
-    private final DynamoDBClient dynamoDBClient;
-    private final ObjectMapper objectMapper;
-    private final BankSimulator bankSimulator;
-    private LambdaLogger logger;
+    private static final long DEFAULT_CLAIM_LEASE_SECONDS = 30;
+    private static final long DEFAULT_BANK_TIMEOUT_MILLIS = 5_000;
 
-    public MakePaymentHandler(final DynamoDBClient dynamoDBClient) {
-        this.dynamoDBClient = dynamoDBClient;
-        this.objectMapper = new ObjectMapper();
-        this.bankSimulator = new BankSimulator();
-        objectMapper.setSerializationInclusion(NON_NULL);
+    private final PaymentStore paymentStore;
+    private final BankConnector bankConnector;
+    private final MakePaymentOutbox makePaymentOutbox;
+    // Payments are queued for the bank instead of waiting for it, null in sync mode.
+    private final MakePaymentQueue makePaymentQueue;
+    private final GatewayModule gatewayModule;
+    private final MerchantRateLimiter rateLimiter;
+    private final HandlerMetrics metrics;
+    // The store to claim payments in, null unless in claim mode.
+    private final ClaimingPaymentStore claimingStore;
+    private final long claimLeaseSeconds;
+    private final long bankTimeoutMillis;
+    // Concurrent retries of the same request share one execution, null if switched off.
+    private final SingleFlight<MakePaymentInput, MakePaymentResponse> singleFlight;
+    private final long coalescedWaitMillis;
+    // Not the request's logger, handlers are shared by concurrent requests in the standalone server.
+    private final LambdaLogger logger = LambdaRuntime.getLogger();
+
+    public MakePaymentHandler(final PaymentStore paymentStore) {
+        this(paymentStore, false);
+    }
+
+    /**
+     * @param claimPayments claim the payment with one conditional write before calling the bank, instead of reading it
+     *                      and writing it back with a version check afterwards. The store must be a
+     *                      {@link ClaimingPaymentStore}.
+     */
+    public MakePaymentHandler(final PaymentStore paymentStore, boolean claimPayments) {
+        this(paymentStore, new BankSimulator(), claimPayments, DEFAULT_BANK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Async mode, see {@link #queueMakePayment(MakePaymentInput)}.
+     */
+    public MakePaymentHandler(final PaymentStore paymentStore, MakePaymentQueue makePaymentQueue) {
+        this(paymentStore, new BankSimulator(), null, makePaymentQueue, MerchantRateLimiter.unlimited(), false,
+            DEFAULT_BANK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param bankTimeoutMillis how long to wait for the bank before giving up on the payment with a 504.
+     */
+    public MakePaymentHandler(final PaymentStore paymentStore, BankConnector bankConnector, boolean claimPayments,
+        long bankTimeoutMillis) {
+        this(paymentStore, bankConnector, null, MerchantRateLimiter.unlimited(), claimPayments, bankTimeoutMillis);
+    }
+
+    /**
+     * @param makePaymentOutbox where payments that failed to save go to be saved later, or null to only log them.
+     */
+    public MakePaymentHandler(final PaymentStore paymentStore, BankConnector bankConnector, MakePaymentOutbox makePaymentOutbox,
+        MerchantRateLimiter rateLimiter, boolean claimPayments, long bankTimeoutMillis) {
+        this(paymentStore, bankConnector, makePaymentOutbox, null, rateLimiter, claimPayments, bankTimeoutMillis);
+    }
+
+    /**
+     * @param makePaymentQueue where payments are queued for the bank in async mode, or null to call the bank in the request.
+     */
+    public MakePaymentHandler(final PaymentStore paymentStore, BankConnector bankConnector, MakePaymentOutbox makePaymentOutbox,
+        MakePaymentQueue makePaymentQueue, MerchantRateLimiter rateLimiter, boolean claimPayments, long bankTimeoutMillis) {
+        this.paymentStore = paymentStore;
+        this.bankConnector = bankConnector;
+        this.makePaymentOutbox = makePaymentOutbox;
+        this.makePaymentQueue = makePaymentQueue;
+        this.rateLimiter = rateLimiter;
+        this.metrics = new HandlerMetrics(GatewayMetrics.DEFAULT_NAMESPACE, "MakePaymentHandler");
+        this.gatewayModule = null;
+        this.claimingStore = claimPayments ? ClaimingPaymentStore.of(paymentStore) : null;
+        if (claimPayments && claimingStore == null) {
+            throw new IllegalArgumentException(paymentStore.getClass().getSimpleName() + " doesn't support claims");
+        }
+        this.claimLeaseSeconds = DEFAULT_CLAIM_LEASE_SECONDS;
+        this.bankTimeoutMillis = bankTimeoutMillis;
+        this.singleFlight = new SingleFlight<>();
+        this.coalescedWaitMillis = defaultCoalescedWaitMillis(bankTimeoutMillis);
     }
 
     public MakePaymentHandler() {
-        dynamoDBClient = new DynamoDBClient(DynamoDBMapperModule.provideDynamoDBMapper());
-        objectMapper = new ObjectMapper();
-        bankSimulator = new BankSimulator();
-        objectMapper.setSerializationInclusion(NON_NULL);
+        gatewayModule = GatewayModule.get();
+        paymentStore = gatewayModule.getPaymentStore();
+        bankConnector = gatewayModule.getBankConnector();
+        makePaymentOutbox = gatewayModule.getMakePaymentOutbox();
+        rateLimiter = gatewayModule.getRateLimiter();
+        metrics = gatewayModule.getMetrics().forHandler("MakePaymentHandler");
+        claimLeaseSeconds = Env.getLong("makePaymentClaimLeaseSeconds", DEFAULT_CLAIM_LEASE_SECONDS);
+        bankTimeoutMillis = Env.getLong("bankTimeoutMillis", DEFAULT_BANK_TIMEOUT_MILLIS);
+        singleFlight = Env.getBoolean("makePaymentSingleFlight", true) ? new SingleFlight<>() : null;
+        coalescedWaitMillis = Env.getLong("makePaymentCoalescedWaitMillis", defaultCoalescedWaitMillis(bankTimeoutMillis));
+
+        String mode = Env.get("makePaymentMode", "read-write");
+        makePaymentQueue = "async".equals(mode) ? gatewayModule.getMakePaymentQueue() : null;
+        boolean claimMode = "claim".equals(mode);
+        claimingStore = claimMode ? ClaimingPaymentStore.of(paymentStore) : null;
+        if (claimMode && claimingStore == null) {
+            logger.log("makePaymentMode=claim isn't supported by " + paymentStore.getClass().getSimpleName()
+                + ", falling back to read-write");
+        }
     }
 
     @Override
     public APIGatewayV2HTTPResponse handleRequest(APIGatewayV2HTTPEvent event, Context context) {
-        logger = context.getLogger();
-        APIGatewayV2HTTPResponse response;
+        long start = System.nanoTime();
+        APIGatewayV2HTTPResponse response = handle(event.getBody());
+
+        if (gatewayModule != null) {
+            gatewayModule.reportFirstRequest("MakePaymentHandler", start, context.getLogger());
+            gatewayModule.flushMetrics(metrics, context.getLogger());
+        }
+        return response;
+    }
 
+    public APIGatewayV2HTTPResponse handle(String body) {
+        long start = System.nanoTime();
         try {
-            MakePaymentInput paymentInput = objectMapper.readValue(event.getBody(), MakePaymentInput.class);
+            MakePaymentInput paymentInput = PaymentJson.readMakePaymentInput(body);
+            metrics.record(Stage.Parse, start);
+
+            long retryAfterNanos = rateLimiter.tryAcquire(paymentInput.getMerchantId());
+            if (retryAfterNanos > 0) {
+                metrics.countFailCode(429);
+                return tooManyRequests(retryAfterNanos);
+            }
 
-            MakePaymentResponse paymentResponse = processMakePayment(paymentInput);
+            MakePaymentResponse paymentResponse = makePayment(paymentInput);
+            metrics.countStatus(paymentResponse.getPaymentStatus(), 1);
+            if (paymentResponse.getFailCode() != null) {
+                metrics.countFailCode(paymentResponse.getFailCode());
+            }
 
-            String jsonResponse = objectMapper.writeValueAsString(paymentResponse);
+            start = System.nanoTime();
+            String jsonResponse = PaymentJson.write(paymentResponse);
+            metrics.record(Stage.Serialize, start);
 
             // The reason why I choose to always return Ok response with failure codes, is because I assume there should be
             // another layer for the authorisation of the merchant client to use the merchantId.
             // So I assumed that these http status codes are reserved for that use case.
-            response = ok(jsonResponse);
+            return ok(jsonResponse);
         } catch (JsonProcessingException e) {
-            response = error("Input is missing or have extra fields, check docs", 400);
+            metrics.countFailCode(400);
+            return error("Input is missing or have extra fields, check docs", 400);
+        } catch (RuntimeException e) {
+            metrics.countFailCode(500);
+            throw e;
         }
+    }
 
-        return response;
+    /**
+     * Same as {@link #processMakePayment(MakePaymentInput)}, but a request identical to one already running in this process
+     * waits for it and gets its response, instead of calling the bank and then failing the version check. A request waiting
+     * longer than makePaymentCoalescedWaitMillis is told to retry.
+     */
+    MakePaymentResponse makePayment(MakePaymentInput paymentInput) {
+        if (singleFlight == null) {
+            return processMakePayment(paymentInput);
+        }
+        try {
+            // Keyed on the whole input rather than the paymentId, so another merchant or other card details never share a response.
+            return singleFlight.execute(paymentInput, () -> processMakePayment(paymentInput), coalescedWaitMillis);
+        } catch (TimeoutException e) {
+            return new MakePaymentResponse(PaymentStatus.Processing.name(), 409, "Payment is being processed, retry later");
+        }
     }
 
     MakePaymentResponse processMakePayment(MakePaymentInput paymentInput) {
-        MerchantPayment existingPayment = dynamoDBClient.getMerchantPayment(paymentInput.getPaymentId());
+        if (makePaymentQueue != null) {
+            return queueMakePayment(paymentInput);
+        }
+        if (claimingStore != null) {
+            return claimAndProcessMakePayment(paymentInput);
+        }
+
+        long start = System.nanoTime();
+        MerchantPayment existingPayment = paymentStore.getMerchantPayment(paymentInput.getPaymentId());
+        metrics.record(Stage.StoreRead, start);
         if (isPaymentExpiredOrNonExist(existingPayment)) {
             return new MakePaymentResponse(PaymentStatus.NotFound.name(), 404, "PaymentId is expired or not found");
 
         } else if (!existingPayment.getMerchantId().equals(paymentInput.getMerchantId())) {
             return new MakePaymentResponse(PaymentStatus.NotAuthorised.name(), 401, "This merchant doesn't have access to this payment");
 
+        } else if (PaymentStatus.Processing.name().equals(existingPayment.getStatus())) {
+            // Claimed by a request in claim mode, which writes the bank's answer.
+            return new MakePaymentResponse(PaymentStatus.Processing.name(), 409, "Payment is being processed, retry later");
+
         } else if (isPaymentSettled(existingPayment)) {
             // TODO: Customise failCode/failReason based on the status stored.
             return new MakePaymentResponse(existingPayment.getStatus(), null, null);
@@ -83,8 +238,16 @@ public class MakePaymentHandler implements RequestHandler<APIGatewayV2HTTPEvent,
                 .withVersion(existingPayment.getVersion())
                 .build();
 
-            //TODO: If the bankSimulator.makePayment is idempotent (e.g on paymentId), add retries based on status codes.
-            PaymentStatus paymentStatus = bankSimulator.makePayment(paymentToBeSaved);
+            // The bank connector is idempotent on paymentId and retries throttling/server errors itself.
+            PaymentStatus paymentStatus;
+            start = System.nanoTime();
+            try {
+                paymentStatus = bankConnector.makePayment(paymentToBeSaved, bankTimeoutMillis).join();
+            } catch (CompletionException | CancellationException e) {
+                return bankFailure(existingPayment.getStatus(), e);
+            } finally {
+                metrics.record(Stage.BankCall, start);
+            }
 
             paymentToBeSaved.setStatus(paymentStatus.name());
 
@@ -94,27 +257,199 @@ public class MakePaymentHandler implements RequestHandler<APIGatewayV2HTTPEvent,
         }
     }
 
+    /**
+     * Async mode: saves the card details with the payment as Pending, with a version check, and queues it for the bank
+     * without waiting for the answer. The merchant polls get-payment until the payment is settled.
+     */
+    private MakePaymentResponse queueMakePayment(MakePaymentInput paymentInput) {
+        long start = System.nanoTime();
+        MerchantPayment existingPayment = paymentStore.getMerchantPayment(paymentInput.getPaymentId());
+        metrics.record(Stage.StoreRead, start);
+        if (isPaymentExpiredOrNonExist(existingPayment)) {
+            return new MakePaymentResponse(PaymentStatus.NotFound.name(), 404, "PaymentId is expired or not found");
+
+        } else if (!existingPayment.getMerchantId().equals(paymentInput.getMerchantId())) {
+            return new MakePaymentResponse(PaymentStatus.NotAuthorised.name(), 401, "This merchant doesn't have access to this payment");
+
+        } else if (PaymentStatus.Processing.name().equals(existingPayment.getStatus())) {
+            // Claimed by a request in claim mode, which writes the bank's answer.
+            return new MakePaymentResponse(PaymentStatus.Processing.name(), 409, "Payment is being processed, retry later");
+
+        } else if (isPaymentSettled(existingPayment)) {
+            return new MakePaymentResponse(existingPayment.getStatus(), null, null);
+        }
+
+        MerchantPayment queuedPayment = MerchantPayment.builder()
+            .withMakePaymentInput(paymentInput)
+            .withStatus(PaymentStatus.Pending.name())
+            .withCreationTimestampSeconds(existingPayment.getCreationTimestampSeconds())
+            .withVersion(existingPayment.getVersion())
+            .build();
+        start = System.nanoTime();
+        try {
+            paymentStore.saveMakePayment(queuedPayment);
+            metrics.record(Stage.StoreWrite, start);
+        } catch (ConditionalCheckFailedException e) {
+            metrics.record(Stage.StoreWrite, start);
+            return new MakePaymentResponse(PaymentStatus.Processing.name(), 409, "Payment is being processed, retry later");
+        }
+
+        try {
+            makePaymentQueue.send(new MakePaymentJob(paymentInput.getPaymentId(), paymentInput.getMerchantId(),
+                existingPayment.getStatus(), 0));
+        } catch (RuntimeException e) {
+            // The payment stays Pending with its card details, making it again queues it again.
+            return new MakePaymentResponse(PaymentStatus.Pending.name(), 503, "Too many payments waiting on the bank, retry later");
+        }
+        return new MakePaymentResponse(PaymentStatus.Pending.name(), null, null);
+    }
+
+    /**
+     * Claims the payment first, so only one request at a time gets to call the bank for it, and the final status is written
+     * without another read. Reads only happen when the claim is rejected, to tell the merchant why.
+     */
+    private MakePaymentResponse claimAndProcessMakePayment(MakePaymentInput paymentInput) {
+        MerchantPayment claimedPayment = MerchantPayment.builder()
+            .withMakePaymentInput(paymentInput)
+            .build();
+
+        MerchantPayment previousPayment;
+        long start = System.nanoTime();
+        try {
+            previousPayment = claimingStore.claimMakePayment(claimedPayment, Instant.now().getEpochSecond(), claimLeaseSeconds);
+            metrics.record(Stage.StoreWrite, start);
+        } catch (ConditionalCheckFailedException e) {
+            start = metrics.record(Stage.StoreWrite, start);
+            MerchantPayment existingPayment = paymentStore.getMerchantPayment(paymentInput.getPaymentId());
+            metrics.record(Stage.StoreRead, start);
+            return rejectedClaim(paymentInput, existingPayment);
+        }
+
+        // The bank needs the status from before the claim, a Pending payment is a resubmission.
+        claimedPayment.setStatus(previousPayment.getStatus());
+        claimedPayment.setCreationTimestampSeconds(previousPayment.getCreationTimestampSeconds());
+        PaymentStatus paymentStatus;
+        start = System.nanoTime();
+        try {
+            paymentStatus = bankConnector.makePayment(claimedPayment, bankTimeoutMillis).join();
+            start = metrics.record(Stage.BankCall, start);
+        } catch (CompletionException | CancellationException e) {
+            metrics.record(Stage.BankCall, start);
+            // Hand the payment back rather than letting the claim lapse, a retry gets the bank's answer for this paymentId.
+            // A claim taken over from a lapsed one has no status to go back to, that one just lapses again. A Created payment
+            // gets its expiry back without this attempt's card details, a Pending one keeps the details the bank may have.
+            if (!PaymentStatus.Processing.name().equals(previousPayment.getStatus())) {
+                try {
+                    if (PaymentStatus.Created.name().equals(previousPayment.getStatus())) {
+                        claimingStore.releaseClaim(claimedPayment.getPaymentId(), claimedPayment.getVersion(),
+                            previousPayment.getStatus(), previousPayment.getExpiryTimestampSeconds());
+                    } else {
+                        claimingStore.completeMakePayment(claimedPayment.getPaymentId(), claimedPayment.getVersion(),
+                            previousPayment.getStatus());
+                    }
+                } catch (ConditionalCheckFailedException superseded) {
+                    // The claim lapsed and was taken over, it's no longer ours to release.
+                } catch (Exception releaseFailure) {
+                    // The claim lapses after the lease instead, the payment shows Processing until then.
+                    metrics.countOutcome("Unreleased", 1);
+                    logger.log(Logs.withStackTrace("Failed releasing the claim on paymentId: " + claimedPayment.getPaymentId(),
+                        releaseFailure));
+                }
+            }
+            return bankFailure(previousPayment.getStatus(), e);
+        }
+
+        try {
+            claimingStore.completeMakePayment(claimedPayment.getPaymentId(), claimedPayment.getVersion(), paymentStatus.name());
+            metrics.record(Stage.StoreWrite, start);
+        } catch (ConditionalCheckFailedException e) {
+            // The claim lapsed and was taken over, the request holding it now writes the bank's answer.
+            metrics.record(Stage.StoreWrite, start);
+        } catch (Exception e) {
+            metrics.record(Stage.StoreWrite, start);
+            // The outbox writes it on top of the claimed version, which has no expiry or claim lease to keep.
+            claimedPayment.setStatus(paymentStatus.name());
+            saveLater(claimedPayment, e);
+        }
+
+        return new MakePaymentResponse(paymentStatus.name(), null, null);
+    }
+
+    /**
+     * The bank didn't answer, so the payment keeps its status and the merchant should retry it.
+     */
+    private MakePaymentResponse bankFailure(String paymentStatus, RuntimeException e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof TimeoutException || cause instanceof CancellationException) {
+            return new MakePaymentResponse(paymentStatus, 504, "Bank didn't respond in time, retry later");
+        } else if (cause instanceof RejectedExecutionException) {
+            return new MakePaymentResponse(paymentStatus, 503, "Too many payments waiting on the bank, retry later");
+        } else {
+            return new MakePaymentResponse(paymentStatus, 502, "Bank failed processing the payment, retry later");
+        }
+    }
+
+    private MakePaymentResponse rejectedClaim(MakePaymentInput paymentInput, MerchantPayment existingPayment) {
+        if (isPaymentExpiredOrNonExist(existingPayment)) {
+            return new MakePaymentResponse(PaymentStatus.NotFound.name(), 404, "PaymentId is expired or not found");
+
+        } else if (!existingPayment.getMerchantId().equals(paymentInput.getMerchantId())) {
+            return new MakePaymentResponse(PaymentStatus.NotAuthorised.name(), 401, "This merchant doesn't have access to this payment");
+
+        } else if (PaymentStatus.Processing.name().equals(existingPayment.getStatus())) {
+            return new MakePaymentResponse(PaymentStatus.Processing.name(), 409, "Payment is being processed, retry later");
+
+        } else {
+            // Settled, or it moved back to Pending between the claim and the read.
+            return new MakePaymentResponse(existingPayment.getStatus(), null, null);
+        }
+    }
+
+    public HandlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public SingleFlight<MakePaymentInput, MakePaymentResponse> getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * Long enough for the running request to get the bank's answer and save it.
+     */
+    private static long defaultCoalescedWaitMillis(long bankTimeoutMillis) {
+        return bankTimeoutMillis + 1_000;
+    }
+
     private boolean isPaymentSettled(MerchantPayment existingPayment) {
         return !(PaymentStatus.Pending.name().equals(existingPayment.getStatus())
             || PaymentStatus.Created.name().equals(existingPayment.getStatus()));
     }
 
     private boolean isPaymentExpiredOrNonExist(MerchantPayment existingPayment) {
-        return existingPayment == null ||
-            (existingPayment.getExpiryTimestampSeconds() != null &&
-                Instant.ofEpochSecond(existingPayment.getExpiryTimestampSeconds()).compareTo(Instant.now()) < 0);
+        return existingPayment == null || existingPayment.isExpired(Instant.now());
     }
 
     private void saveToDynamo(MerchantPayment payment) {
+        long start = System.nanoTime();
         try {
-            dynamoDBClient.saveMakePayment(payment);
+            paymentStore.saveMakePayment(payment);
+            metrics.record(Stage.StoreWrite, start);
         } catch (Exception e) {
-            //TODO:
-            // There will be an inconsistent state in this case between the bank status and our status. See README for other options.
-            // - Add retries with a strategy (e.g exponential back offs) with timeout when saving to DDB (based on Exceptions).
-            // - Emit a metric and alarm on it, Push to DLQ for async retries.
-            logger.log("Failed saving to DDB for paymentId: " + payment.getPaymentId());
+            saveLater(payment, e);
+        }
+    }
+
+    /**
+     * The bank already answered, so keep its answer in the outbox to be saved later rather than losing it. Without room in
+     * an outbox the store and the bank disagree, which is counted as Outcome.Unsaved to alarm on, until the reconciler or
+     * a retry by the merchant fixes it.
+     */
+    private void saveLater(MerchantPayment payment, Exception e) {
+        if (makePaymentOutbox != null && makePaymentOutbox.append(payment)) {
+            return;
         }
+        metrics.countOutcome("Unsaved", 1);
+        logger.log(Logs.withStackTrace("Failed saving to DDB for paymentId: " + payment.getPaymentId(), e));
     }
 
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package com.org.lambda;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Objects;
+
 public class MakePaymentInput {
 
     private String paymentId;
@@ -118,4 +120,30 @@ public class MakePaymentInput {
     public void setCvv(String cvv) {
         this.cvv = cvv;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MakePaymentInput that = (MakePaymentInput) o;
+        return Objects.equals(paymentId, that.paymentId)
+            && Objects.equals(merchantId, that.merchantId)
+            && Objects.equals(cardName, that.cardName)
+            && Objects.equals(cardNumber, that.cardNumber)
+            && Objects.equals(expiryYear, that.expiryYear)
+            && Objects.equals(expiryMonth, that.expiryMonth)
+            && Objects.equals(currency, that.currency)
+            && Objects.equals(amount, that.amount)
+            && Objects.equals(billingAddress, that.billingAddress)
+            && Objects.equals(cvv, that.cvv);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(paymentId, merchantId, cardNumber, amount);
+    }
 }
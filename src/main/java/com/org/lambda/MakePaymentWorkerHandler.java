@@ -0,0 +1,92 @@
+package com.org.lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.org.json.PaymentJson;
+import com.org.metrics.HandlerMetrics;
+import com.org.metrics.Stage;
+import com.org.modules.Env;
+import com.org.modules.GatewayModule;
+import com.org.modules.Logs;
+import com.org.queue.MakePaymentJob;
+import com.org.queue.MakePaymentQueue;
+import com.org.queue.MakePaymentWorker;
+import com.org.queue.MakePaymentWorker.Outcome;
+
+/**
+ * Works off the make-payment queue of async mode, a batch of SQS messages at a time. Jobs to retry or resubmit are sent
+ * to the queue again as new messages, delayed by their attempt, so one slow payment doesn't hold back the rest of the
+ * batch. A job that fails, e.g. reading the store, is retried the same way. Only a job that can't even be sent again
+ * fails the batch, which SQS then redelivers: jobs already done are skipped by the worker.
+ */
+public class MakePaymentWorkerHandler implements RequestHandler<SQSEvent, Void> {
+
+    private static final long DEFAULT_BANK_TIMEOUT_MILLIS = 5_000;
+
+    private final MakePaymentWorker worker;
+    private final MakePaymentQueue makePaymentQueue;
+    private final GatewayModule gatewayModule;
+    private final HandlerMetrics metrics;
+    private final LambdaLogger logger = LambdaRuntime.getLogger();
+
+    public MakePaymentWorkerHandler() {
+        gatewayModule = GatewayModule.get();
+        makePaymentQueue = gatewayModule.getMakePaymentQueue();
+        if (makePaymentQueue == null) {
+            throw new IllegalStateException("makePaymentMode isn't async");
+        }
+        worker = new MakePaymentWorker(gatewayModule.getPaymentStore(), gatewayModule.getBankConnector(),
+            gatewayModule.getMakePaymentOutbox(), Env.getLong("bankTimeoutMillis", DEFAULT_BANK_TIMEOUT_MILLIS));
+        metrics = gatewayModule.getMetrics().forHandler("MakePaymentWorkerHandler");
+    }
+
+    @Override
+    public Void handleRequest(SQSEvent event, Context context) {
+        try {
+            for (SQSEvent.SQSMessage message : event.getRecords()) {
+                handle(message.getBody());
+            }
+        } finally {
+            gatewayModule.flushMetrics(metrics, context.getLogger());
+        }
+        return null;
+    }
+
+    private void handle(String body) {
+        long start = System.nanoTime();
+        MakePaymentJob job;
+        try {
+            job = PaymentJson.readMakePaymentJob(body);
+        } catch (JsonProcessingException e) {
+            // Redelivering won't make it readable.
+            logger.log(Logs.withStackTrace("Dropped unreadable make-payment job: " + body, e));
+            metrics.countFailCode(400);
+            return;
+        }
+        metrics.record(Stage.Parse, start);
+
+        start = System.nanoTime();
+        Outcome outcome;
+        try {
+            outcome = worker.process(job);
+        } catch (RuntimeException e) {
+            // Failing the batch would redeliver the jobs before this one too, resubmitting theirs twice.
+            logger.log(Logs.withStackTrace("Failed processing " + job, e));
+            metrics.countOutcome("Error", 1);
+            outcome = Outcome.Retry;
+        }
+        metrics.record(Stage.BankCall, start);
+        metrics.countOutcome(outcome.name(), 1);
+        if (job.getAttempt() + 1 < MakePaymentWorker.MAX_ATTEMPTS) {
+            if (outcome == Outcome.Retry) {
+                makePaymentQueue.send(job.nextAttempt());
+            } else if (outcome == Outcome.Resubmit) {
+                makePaymentQueue.send(job.resubmission());
+            }
+        }
+    }
+}
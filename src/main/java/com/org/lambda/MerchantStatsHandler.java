@@ -0,0 +1,202 @@
+package com.org.lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.org.aggregates.AggregateKey;
+import com.org.aggregates.AggregateStore;
+import com.org.aggregates.Granularity;
+import com.org.aggregates.MerchantAggregate;
+import com.org.aggregates.MerchantAggregator;
+import com.org.json.PaymentJson;
+import com.org.metrics.GatewayMetrics;
+import com.org.metrics.HandlerMetrics;
+import com.org.metrics.Stage;
+import com.org.modules.GatewayModule;
+import com.org.ratelimit.MerchantRateLimiter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.org.modules.ResponseBuilder.error;
+import static com.org.modules.ResponseBuilder.ok;
+import static com.org.modules.ResponseBuilder.tooManyRequests;
+
+/**
+ * A merchant's settled payments per status and currency over a time range, from the aggregates kept by
+ * {@link PaymentStreamHandler}: the totals of the range, and the buckets they add up from, oldest first.
+ * <p>
+ * The range is given in epoch seconds and covers the hour (or day) buckets starting in it; it defaults to the last day.
+ */
+public class MerchantStatsHandler implements RequestHandler<APIGatewayV2HTTPEvent, APIGatewayV2HTTPResponse> {
+
+    static final int MAX_BUCKETS = 1000;
+
+    private final AggregateStore aggregateStore;
+    private final GatewayModule gatewayModule;
+    private final MerchantRateLimiter rateLimiter;
+    private final HandlerMetrics metrics;
+
+    public MerchantStatsHandler() {
+        gatewayModule = GatewayModule.get();
+        MerchantAggregator aggregator = gatewayModule.getMerchantAggregator();
+        aggregateStore = aggregator == null ? null : aggregator.getAggregateStore();
+        rateLimiter = gatewayModule.getRateLimiter();
+        metrics = gatewayModule.getMetrics().forHandler("MerchantStatsHandler");
+    }
+
+    public MerchantStatsHandler(AggregateStore aggregateStore) {
+        this(aggregateStore, MerchantRateLimiter.unlimited());
+    }
+
+    public MerchantStatsHandler(AggregateStore aggregateStore, MerchantRateLimiter rateLimiter) {
+        this.aggregateStore = aggregateStore;
+        this.gatewayModule = null;
+        this.rateLimiter = rateLimiter;
+        this.metrics = new HandlerMetrics(GatewayMetrics.DEFAULT_NAMESPACE, "MerchantStatsHandler");
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse handleRequest(APIGatewayV2HTTPEvent event, Context context) {
+        long start = System.nanoTime();
+        try {
+            return handle(event.getQueryStringParameters());
+        } finally {
+            if (gatewayModule != null) {
+                gatewayModule.reportFirstRequest("MerchantStatsHandler", start, context.getLogger());
+                gatewayModule.flushMetrics(metrics, context.getLogger());
+            }
+        }
+    }
+
+    public APIGatewayV2HTTPResponse handle(Map<String, String> parameters) {
+        try {
+            if (aggregateStore == null) {
+                return metrics.failed(error("Merchant stats aren't enabled", 404));
+            }
+            if (parameters == null || parameters.get("merchantId") == null) {
+                return metrics.failed(error("Missing merchantId parameter", 400));
+            }
+            long retryAfterNanos = rateLimiter.tryAcquire(parameters.get("merchantId"));
+            if (retryAfterNanos > 0) {
+                return metrics.failed(tooManyRequests(retryAfterNanos));
+            }
+
+            long start = System.nanoTime();
+            Granularity granularity;
+            long from;
+            long to;
+            try {
+                granularity = granularityParameter(parameters.get("granularity"));
+                to = longParameter(parameters, "to", Instant.now().getEpochSecond());
+                from = longParameter(parameters, "from", to - Granularity.Day.getBucketSeconds());
+                if (from > to) {
+                    throw new IllegalArgumentException("from must not be after to");
+                }
+                if ((to - from) / granularity.getBucketSeconds() >= MAX_BUCKETS) {
+                    throw new IllegalArgumentException("The range must cover fewer than " + MAX_BUCKETS + " buckets");
+                }
+            } catch (IllegalArgumentException e) {
+                return metrics.failed(error(e.getMessage(), 400));
+            }
+            metrics.record(Stage.Parse, start);
+
+            start = System.nanoTime();
+            List<MerchantAggregate> aggregates = aggregateStore.query(parameters.get("merchantId"), granularity,
+                granularity.bucketStart(from), to);
+            metrics.record(Stage.StoreRead, start);
+            start = System.nanoTime();
+            String body = write(parameters.get("merchantId"), granularity, from, to, aggregates);
+            metrics.record(Stage.Serialize, start);
+            return ok(body);
+        } catch (Exception e) {
+            return metrics.failed(error("Internal Error", 500));
+        }
+    }
+
+    public HandlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return {"merchantId", "granularity", "from", "to", "totals": [...], "buckets": [...]}.
+     */
+    static String write(String merchantId, Granularity granularity, long from, long to, List<MerchantAggregate> aggregates) {
+        // Totals by status, then currency.
+        Map<String, MerchantAggregate> totals = new TreeMap<>();
+        for (MerchantAggregate aggregate : aggregates) {
+            AggregateKey key = aggregate.getKey();
+            totals.merge(key.getStatus() + "#" + key.getCurrency(), aggregate,
+                (total, added) -> total.plus(added.getCount(), added.getAmount()));
+        }
+
+        StringWriter writer = new StringWriter(256 + 96 * aggregates.size());
+        try (JsonGenerator generator = PaymentJson.factory().createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStringField("merchantId", merchantId);
+            generator.writeStringField("granularity", granularity.name().toLowerCase(Locale.ROOT));
+            generator.writeNumberField("from", from);
+            generator.writeNumberField("to", to);
+            generator.writeArrayFieldStart("totals");
+            for (MerchantAggregate total : totals.values()) {
+                generator.writeStartObject();
+                writeCounts(generator, total);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("buckets");
+            for (MerchantAggregate aggregate : aggregates) {
+                generator.writeStartObject();
+                generator.writeNumberField("bucketStartSeconds", aggregate.getKey().getBucketStartSeconds());
+                writeCounts(generator, aggregate);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private static void writeCounts(JsonGenerator generator, MerchantAggregate aggregate) throws IOException {
+        generator.writeStringField("status", aggregate.getKey().getStatus());
+        if (aggregate.getKey().getCurrency() != null) {
+            generator.writeStringField("currency", aggregate.getKey().getCurrency());
+        }
+        generator.writeNumberField("count", aggregate.getCount());
+        generator.writeNumberField("amount", aggregate.getAmount());
+    }
+
+    private static Granularity granularityParameter(String value) {
+        if (value == null) {
+            return Granularity.Hour;
+        }
+        for (Granularity granularity : Granularity.values()) {
+            if (granularity.name().equalsIgnoreCase(value.trim())) {
+                return granularity;
+            }
+        }
+        throw new IllegalArgumentException("granularity must be hour or day");
+    }
+
+    private static long longParameter(Map<String, String> parameters, String name, long defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+}
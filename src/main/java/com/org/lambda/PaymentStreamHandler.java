@@ -0,0 +1,123 @@
+package com.org.lambda;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.StreamRecord;
+import com.org.aggregates.MerchantAggregator;
+import com.org.aggregates.PaymentChange;
+import com.org.dynamodb.MerchantPaymentCodec;
+import com.org.metrics.GatewayMetrics;
+import com.org.metrics.HandlerMetrics;
+import com.org.metrics.Stage;
+import com.org.modules.GatewayModule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumes the payment table's stream (new and old images) and counts the payments it settles into the merchant
+ * aggregates. A failed batch is retried by Lambda as a whole, and the changes it already counted are skipped.
+ */
+public class PaymentStreamHandler implements RequestHandler<DynamodbEvent, Void> {
+
+    private static final String REMOVE = "REMOVE";
+
+    private final MerchantAggregator aggregator;
+    private final MerchantPaymentCodec codec = new MerchantPaymentCodec();
+    private final GatewayModule gatewayModule;
+    private final HandlerMetrics metrics;
+
+    public PaymentStreamHandler() {
+        gatewayModule = GatewayModule.get();
+        aggregator = gatewayModule.getMerchantAggregator();
+        metrics = gatewayModule.getMetrics().forHandler("PaymentStreamHandler");
+        if (aggregator == null) {
+            throw new IllegalStateException("merchantAggregateTableName isn't set");
+        }
+    }
+
+    public PaymentStreamHandler(MerchantAggregator aggregator) {
+        this.aggregator = aggregator;
+        this.gatewayModule = null;
+        this.metrics = new HandlerMetrics(GatewayMetrics.DEFAULT_NAMESPACE, "PaymentStreamHandler");
+    }
+
+    @Override
+    public Void handleRequest(DynamodbEvent event, Context context) {
+        try {
+            handle(event);
+        } finally {
+            if (gatewayModule != null) {
+                gatewayModule.flushMetrics(metrics, context.getLogger());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of payments counted.
+     */
+    public int handle(DynamodbEvent event) {
+        long start = System.nanoTime();
+        List<PaymentChange> changes = toChanges(event);
+        metrics.record(Stage.Parse, start);
+
+        start = System.nanoTime();
+        int counted = aggregator.apply(changes);
+        metrics.record(Stage.StoreWrite, start);
+        metrics.countOutcome("Counted", counted);
+        metrics.countOutcome("Skipped", changes.size() - counted);
+        return counted;
+    }
+
+    public HandlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    List<PaymentChange> toChanges(DynamodbEvent event) {
+        List<PaymentChange> changes = new ArrayList<>(event.getRecords().size());
+        for (DynamodbEvent.DynamodbStreamRecord record : event.getRecords()) {
+            StreamRecord streamRecord = record.getDynamodb();
+            if (REMOVE.equals(record.getEventName()) || streamRecord == null || streamRecord.getNewImage() == null) {
+                continue;
+            }
+            long changedAtSeconds = streamRecord.getApproximateCreationDateTime() == null
+                ? TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis())
+                : TimeUnit.MILLISECONDS.toSeconds(streamRecord.getApproximateCreationDateTime().getTime());
+            changes.add(new PaymentChange(streamRecord.getSequenceNumber(), changedAtSeconds,
+                codec.fromItem(toItem(streamRecord.getOldImage())), codec.fromItem(toItem(streamRecord.getNewImage()))));
+        }
+        return changes;
+    }
+
+    /**
+     * Converts a stream image to the SDK's attribute values. Payment items only have string, number and binary
+     * attributes.
+     */
+    static Map<String, AttributeValue> toItem(
+        Map<String, com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue> image) {
+        if (image == null) {
+            return null;
+        }
+        Map<String, AttributeValue> item = new HashMap<>(image.size() * 2);
+        for (Map.Entry<String, com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue> entry
+            : image.entrySet()) {
+            com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue value = entry.getValue();
+            if (value.getS() != null) {
+                item.put(entry.getKey(), new AttributeValue().withS(value.getS()));
+            } else if (value.getN() != null) {
+                item.put(entry.getKey(), new AttributeValue().withN(value.getN()));
+            } else if (value.getB() != null) {
+                item.put(entry.getKey(), new AttributeValue().withB(value.getB()));
+            } else if (value.getBOOL() != null) {
+                item.put(entry.getKey(), new AttributeValue().withBOOL(value.getBOOL()));
+            }
+        }
+        return item;
+    }
+}
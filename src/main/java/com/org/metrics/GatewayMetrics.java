@@ -0,0 +1,65 @@
+package com.org.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The {@link HandlerMetrics} of every handler in the process. In Lambda each handler flushes its own after every invocation,
+ * a long-lived server flushes them all periodically instead.
+ */
+public class GatewayMetrics {
+
+    public static final String DEFAULT_NAMESPACE = "PaymentGateway";
+
+    private final String namespace;
+    private final ConcurrentHashMap<String, HandlerMetrics> handlers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    public GatewayMetrics(String namespace) {
+        this.namespace = namespace;
+    }
+
+    public HandlerMetrics forHandler(String handlerName) {
+        return handlers.computeIfAbsent(handlerName, name -> new HandlerMetrics(namespace, name));
+    }
+
+    /**
+     * Passes an EMF line per handler that recorded anything since the last flush.
+     */
+    public void flush(Consumer<String> out) {
+        for (HandlerMetrics handler : handlers.values()) {
+            String line = handler.flush();
+            if (line != null) {
+                out.accept(line);
+            }
+        }
+    }
+
+    /**
+     * Flushes to stdout every interval, on a daemon thread.
+     */
+    public synchronized void startPeriodicFlush(long intervalSeconds) {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleAtFixedRate(() -> flush(System.out::println), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops flushing periodically, and flushes what's left.
+     */
+    public synchronized void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+        flush(System.out::println);
+    }
+}
@@ -0,0 +1,223 @@
+package com.org.metrics;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.org.json.PaymentJson;
+import com.org.payments.PaymentStatus;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of each {@link Stage} of one handler, and counts of the payment statuses and fail codes it returned, and of
+ * the outcomes of background work that doesn't answer with a payment status, like the make-payment worker's.
+ * <p>
+ * Recording doesn't allocate or lock, except the first count of each outcome. {@link #flush()} takes everything
+ * recorded since the last flush as a line in CloudWatch Embedded Metric Format, which CloudWatch Logs turns into
+ * metrics with the handler name as dimension.
+ */
+public class HandlerMetrics {
+
+    static final int[] FAIL_CODES = {400, 401, 404, 409, 429, 500, 502, 503, 504};
+    private static final double[] PERCENTILES = {50, 90, 99};
+    private static final PaymentStatus[] STATUSES = PaymentStatus.values();
+    private static final Stage[] STAGES = Stage.values();
+
+    private final String namespace;
+    private final String handlerName;
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+    private final LongAdder[] statuses = new LongAdder[STATUSES.length];
+    private final LongAdder[] failCodes = new LongAdder[FAIL_CODES.length];
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    public HandlerMetrics(String namespace, String handlerName) {
+        this.namespace = namespace;
+        this.handlerName = handlerName;
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = new LongAdder();
+        }
+        for (int i = 0; i < failCodes.length; i++) {
+            failCodes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the time since startNanos for the stage.
+     *
+     * @return now, to start timing the next stage from.
+     */
+    public long record(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        stages[stage.ordinal()].recordNanos(now - startNanos);
+        return now;
+    }
+
+    public void countStatus(String status, long count) {
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (STATUSES[i].name().equals(status)) {
+                statuses[i].add(count);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts anything that isn't a {@link PaymentStatus}, reported as Outcome.&lt;outcome&gt;.
+     */
+    public void countOutcome(String outcome, long count) {
+        LongAdder counter = outcomes.get(outcome);
+        if (counter == null) {
+            counter = outcomes.computeIfAbsent(outcome, name -> new LongAdder());
+        }
+        counter.add(count);
+    }
+
+    /**
+     * Counts the HTTP status of a failed response.
+     *
+     * @return the response.
+     */
+    public APIGatewayV2HTTPResponse failed(APIGatewayV2HTTPResponse response) {
+        countFailCode(response.getStatusCode());
+        return response;
+    }
+
+    /**
+     * Counts a fail code, from the HTTP status or the failCode of the body. Anything not in {@link #FAIL_CODES} is
+     * ignored.
+     */
+    public void countFailCode(int failCode) {
+        for (int i = 0; i < FAIL_CODES.length; i++) {
+            if (FAIL_CODES[i] == failCode) {
+                failCodes[i].increment();
+                return;
+            }
+        }
+    }
+
+    public String getHandlerName() {
+        return handlerName;
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    /**
+     * @return an EMF log line with what was recorded since the last flush, or null if nothing was.
+     */
+    public String flush() {
+        LatencyHistogram.Snapshot[] snapshots = new LatencyHistogram.Snapshot[STAGES.length];
+        long[] statusCounts = new long[STATUSES.length];
+        long[] failCodeCounts = new long[FAIL_CODES.length];
+        boolean recorded = false;
+        for (int i = 0; i < STAGES.length; i++) {
+            snapshots[i] = stages[i].snapshotAndReset();
+            recorded |= snapshots[i].getCount() > 0;
+        }
+        for (int i = 0; i < STATUSES.length; i++) {
+            statusCounts[i] = statuses[i].sumThenReset();
+            recorded |= statusCounts[i] > 0;
+        }
+        for (int i = 0; i < FAIL_CODES.length; i++) {
+            failCodeCounts[i] = failCodes[i].sumThenReset();
+            recorded |= failCodeCounts[i] > 0;
+        }
+        Map<String, Long> outcomeCounts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> outcome : outcomes.entrySet()) {
+            long count = outcome.getValue().sumThenReset();
+            if (count > 0) {
+                outcomeCounts.put(outcome.getKey(), count);
+            }
+        }
+        recorded |= !outcomeCounts.isEmpty();
+        if (!recorded) {
+            return null;
+        }
+
+        StringWriter writer = new StringWriter(1024);
+        try (JsonGenerator generator = PaymentJson.factory().createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("_aws");
+            generator.writeNumberField("Timestamp", System.currentTimeMillis());
+            generator.writeArrayFieldStart("CloudWatchMetrics");
+            generator.writeStartObject();
+            generator.writeStringField("Namespace", namespace);
+            generator.writeArrayFieldStart("Dimensions");
+            generator.writeStartArray();
+            generator.writeString("Handler");
+            generator.writeEndArray();
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("Metrics");
+            for (int i = 0; i < STAGES.length; i++) {
+                if (snapshots[i].getCount() > 0) {
+                    for (double percentile : PERCENTILES) {
+                        writeDefinition(generator, STAGES[i] + ".p" + (int) percentile, "Microseconds");
+                    }
+                    writeDefinition(generator, STAGES[i] + ".max", "Microseconds");
+                    writeDefinition(generator, STAGES[i] + ".count", "Count");
+                }
+            }
+            for (int i = 0; i < STATUSES.length; i++) {
+                if (statusCounts[i] > 0) {
+                    writeDefinition(generator, "Status." + STATUSES[i], "Count");
+                }
+            }
+            for (int i = 0; i < FAIL_CODES.length; i++) {
+                if (failCodeCounts[i] > 0) {
+                    writeDefinition(generator, "FailCode." + FAIL_CODES[i], "Count");
+                }
+            }
+            for (String outcome : outcomeCounts.keySet()) {
+                writeDefinition(generator, "Outcome." + outcome, "Count");
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+
+            generator.writeStringField("Handler", handlerName);
+            for (int i = 0; i < STAGES.length; i++) {
+                if (snapshots[i].getCount() > 0) {
+                    for (double percentile : PERCENTILES) {
+                        generator.writeNumberField(STAGES[i] + ".p" + (int) percentile, snapshots[i].getPercentileMicros(percentile));
+                    }
+                    generator.writeNumberField(STAGES[i] + ".max", snapshots[i].getMaxMicros());
+                    generator.writeNumberField(STAGES[i] + ".count", snapshots[i].getCount());
+                }
+            }
+            for (int i = 0; i < STATUSES.length; i++) {
+                if (statusCounts[i] > 0) {
+                    generator.writeNumberField("Status." + STATUSES[i], statusCounts[i]);
+                }
+            }
+            for (int i = 0; i < FAIL_CODES.length; i++) {
+                if (failCodeCounts[i] > 0) {
+                    generator.writeNumberField("FailCode." + FAIL_CODES[i], failCodeCounts[i]);
+                }
+            }
+            for (Map.Entry<String, Long> outcome : outcomeCounts.entrySet()) {
+                generator.writeNumberField("Outcome." + outcome.getKey(), outcome.getValue());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private static void writeDefinition(JsonGenerator generator, String name, String unit) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("Name", name);
+        generator.writeStringField("Unit", unit);
+        generator.writeEndObject();
+    }
+}
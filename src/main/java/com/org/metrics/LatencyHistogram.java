@@ -0,0 +1,129 @@
+package com.org.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Lock-free latency histogram in microseconds, with log-linear buckets: exact below 16 microseconds, then 16 buckets per power of two,
+ * so a percentile is within about 6% of the recorded value. Recording is a few atomic increments and never allocates.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^41 microseconds is about 25 days, anything longer lands in the last bucket.
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAccumulator maxMicros = new LongAccumulator(Long::max, 0);
+
+    public void recordNanos(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketOf(value));
+        maxMicros.accumulate(value);
+    }
+
+    public Snapshot snapshot() {
+        long[] bucketCounts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketCounts[i] = counts.get(i);
+        }
+        return new Snapshot(bucketCounts, maxMicros.get());
+    }
+
+    /**
+     * Takes what was recorded since the last reset. Values recorded concurrently land in this snapshot or the next one.
+     */
+    public Snapshot snapshotAndReset() {
+        long[] bucketCounts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketCounts[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(bucketCounts, maxMicros.getThenReset());
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value falling in the bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public static class Snapshot {
+        private final long[] bucketCounts;
+        private final long count;
+        private final long maxMicros;
+
+        private Snapshot(long[] bucketCounts, long maxMicros) {
+            long total = 0;
+            for (long bucketCount : bucketCounts) {
+                total += bucketCount;
+            }
+            this.bucketCounts = bucketCounts;
+            this.count = total;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        /**
+         * @param percentile between 0 and 100.
+         * @return the value at the percentile in microseconds, 0 if nothing was recorded.
+         */
+        public long getPercentileMicros(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                seen += bucketCounts[i];
+                if (seen >= rank) {
+                    // The max can be behind the counts if it was reset while they were being read.
+                    return maxMicros > 0 ? Math.min(highestValueOf(i), maxMicros) : highestValueOf(i);
+                }
+            }
+            return maxMicros;
+        }
+
+        /**
+         * Adds the other snapshot's values, e.g. to merge the histograms of several threads.
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = bucketCounts.clone();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += other.bucketCounts[i];
+            }
+            return new Snapshot(merged, Math.max(maxMicros, other.maxMicros));
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.org.metrics;
+
+/**
+ * The stages of a request timed by {@link HandlerMetrics}.
+ */
+public enum Stage {
+    Parse,
+    StoreRead,
+    BankCall,
+    StoreWrite,
+    Serialize
+}
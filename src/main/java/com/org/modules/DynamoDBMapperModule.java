@@ -1,24 +1,98 @@
 package com.org.modules;
 
-import com.amazonaws.regions.Regions;
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.org.dynamodb.BatchReader;
+import com.org.dynamodb.BatchWriter;
+import com.org.dynamodb.ConnectionPoolStats;
+import com.org.dynamodb.DynamoDBClientSettings;
+import com.org.dynamodb.MerchantShards;
+import com.org.dynamodb.ShardedMerchantIndex;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DynamoDBMapperModule {
 
     public static DynamoDBMapper provideDynamoDBMapper() {
-        AmazonDynamoDB client = AmazonDynamoDBClientBuilder.standard()
-            .withRegion(Regions.EU_WEST_2)
-            .build();
-
         String tableName = System.getenv("merchantPaymentTableName");
 
         DynamoDBMapperConfig mapperConfig = DynamoDBMapperConfig.builder()
             .withTableNameOverride(DynamoDBMapperConfig.TableNameOverride.withTableNameReplacement(tableName))
             .build();
 
-        return new DynamoDBMapper(client, mapperConfig);
+        return new DynamoDBMapper(provideAmazonDynamoDB(), mapperConfig);
+    }
+
+    /**
+     * One client, and so one connection pool, per JVM. Configured through {@link DynamoDBClientSettings}.
+     */
+    public static AmazonDynamoDB provideAmazonDynamoDB() {
+        return ClientHolder.CLIENT;
+    }
+
+    public static ConnectionPoolStats provideConnectionPoolStats() {
+        return ClientHolder.POOL_STATS;
+    }
+
+    /**
+     * Batch writer on the shared client. It shares a pool with {@link #provideBatchReader()} and
+     * {@link #provideShardedMerchantIndex}, so together they run up to dynamoDbBatchConcurrency requests at once.
+     */
+    public static BatchWriter provideBatchWriter() {
+        return BatchHolder.BATCH_WRITER;
+    }
+
+    public static BatchReader provideBatchReader() {
+        return BatchHolder.BATCH_READER;
+    }
+
+    /**
+     * Merchants get merchantIndexShards shards (1), and their own counts with merchantShards, e.g. "merchantA=8,merchantB=4".
+     */
+    public static ShardedMerchantIndex provideShardedMerchantIndex() {
+        MerchantShards merchantShards = new MerchantShards(Env.getInt("merchantIndexShards", 1),
+            MerchantShards.parseMerchantShards(Env.get("merchantShards", null)));
+        return new ShardedMerchantIndex(ClientHolder.CLIENT, merchantShards, BatchHolder.EXECUTOR);
+    }
+
+    private static class BatchHolder {
+        private static final ExecutorService EXECUTOR = newBatchExecutor(ClientHolder.SETTINGS.getBatchConcurrency());
+        private static final BatchWriter BATCH_WRITER = new BatchWriter(ClientHolder.CLIENT, EXECUTOR,
+            ClientHolder.SETTINGS.getBatchMaxAttempts(), ClientHolder.SETTINGS.getBatchBaseBackoffMillis());
+        private static final BatchReader BATCH_READER = new BatchReader(ClientHolder.CLIENT, EXECUTOR,
+            ClientHolder.SETTINGS.getBatchMaxAttempts(), ClientHolder.SETTINGS.getBatchBaseBackoffMillis());
+
+        private static ExecutorService newBatchExecutor(int threads) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "dynamodb-batch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static class ClientHolder {
+        private static final DynamoDBClientSettings SETTINGS = DynamoDBClientSettings.fromEnv();
+        private static final ConnectionPoolStats POOL_STATS = new ConnectionPoolStats(SETTINGS.getMaxConnections());
+        private static final AmazonDynamoDB CLIENT = buildClient();
+
+        private static AmazonDynamoDB buildClient() {
+            AmazonDynamoDBClientBuilder builder = AmazonDynamoDBClientBuilder.standard()
+                .withClientConfiguration(SETTINGS.toClientConfiguration())
+                .withMetricsCollector(POOL_STATS);
+
+            if (SETTINGS.getEndpoint() != null) {
+                builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(SETTINGS.getEndpoint(), SETTINGS.getRegion()));
+            } else {
+                builder.withRegion(SETTINGS.getRegion());
+            }
+            return builder.build();
+        }
     }
 }
@@ -0,0 +1,39 @@
+package com.org.modules;
+
+/**
+ * Typed access to the env variables used to configure the gateway, with defaults.
+ */
+public class Env {
+
+    public static String get(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        String value = get(name, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        String value = get(name, null);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public static double getDouble(String name, double defaultValue) {
+        String value = get(name, null);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = get(name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return true in a Lambda container, where the runtime sets AWS_LAMBDA_FUNCTION_NAME, false in the standalone server.
+     */
+    public static boolean isLambda() {
+        return System.getenv("AWS_LAMBDA_FUNCTION_NAME") != null;
+    }
+}
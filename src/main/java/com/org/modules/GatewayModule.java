@@ -0,0 +1,290 @@
+package com.org.modules;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.org.aggregates.DynamoDBAggregateStore;
+import com.org.aggregates.MerchantAggregator;
+import com.org.bank.BankConnector;
+import com.org.bank.BankSimulator;
+import com.org.bank.ExecutorBankConnector;
+import com.org.expiry.PaymentExpiryIndex;
+import com.org.faults.FaultInjector;
+import com.org.faults.FaultProfile;
+import com.org.json.PaymentJson;
+import com.org.lambda.CreatePaymentResponse;
+import com.org.lambda.GetPaymentResponse;
+import com.org.lambda.MakePaymentInput;
+import com.org.lambda.MakePaymentResponse;
+import com.org.metrics.GatewayMetrics;
+import com.org.metrics.HandlerMetrics;
+import com.org.outbox.MakePaymentOutbox;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import com.org.queue.InMemoryMakePaymentQueue;
+import com.org.queue.MakePaymentQueue;
+import com.org.queue.MakePaymentWorker;
+import com.org.queue.SqsMakePaymentQueue;
+import com.org.ratelimit.MerchantRateLimiter;
+import com.org.ratelimit.MerchantRateLimiter.MerchantLimit;
+import com.org.store.ExpiryIndexedPaymentStore;
+import com.org.store.PaymentStore;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Everything the handlers need, built once per container on first use and shared by all handler instances.
+ * <p>
+ * Since the handlers are constructed during the Lambda init phase, building this there also moves the priming
+ * (JSON codec classes, SecureRandom seeding, mapper reflection and the TLS handshake to DynamoDB) out of the first request.
+ * Priming can be switched off with the env variable primeOnInit=false.
+ */
+public class GatewayModule {
+
+    private final PaymentStore paymentStore;
+    private final BankConnector bankConnector;
+    private final MakePaymentOutbox makePaymentOutbox;
+    private final MerchantRateLimiter rateLimiter;
+    private final GatewayMetrics metrics;
+    private final PaymentExpiryIndex expiryIndex;
+    private final MerchantAggregator merchantAggregator;
+    private final MakePaymentQueue makePaymentQueue;
+    private final long initDurationMillis;
+    private final long primingDurationMillis;
+    private final AtomicBoolean firstRequestReported = new AtomicBoolean();
+
+    private GatewayModule() {
+        long start = System.nanoTime();
+        paymentStore = PaymentStoreModule.providePaymentStore();
+        bankConnector = provideBankConnector();
+        makePaymentOutbox = provideMakePaymentOutbox(paymentStore);
+        rateLimiter = provideRateLimiter();
+        metrics = new GatewayMetrics(Env.get("metricsNamespace", GatewayMetrics.DEFAULT_NAMESPACE));
+        expiryIndex = provideExpiryIndex(paymentStore, metrics);
+        merchantAggregator = provideMerchantAggregator();
+        makePaymentQueue = provideMakePaymentQueue(paymentStore, bankConnector, makePaymentOutbox, metrics);
+
+        long primingStart = System.nanoTime();
+        if (!"false".equals(System.getenv("primeOnInit"))) {
+            prime();
+        }
+        long end = System.nanoTime();
+
+        primingDurationMillis = TimeUnit.NANOSECONDS.toMillis(end - primingStart);
+        initDurationMillis = TimeUnit.NANOSECONDS.toMillis(end - start);
+        LambdaRuntime.getLogger().log("Init took " + initDurationMillis + " ms, of which priming took " + primingDurationMillis
+            + " ms");
+    }
+
+    public static GatewayModule get() {
+        return Holder.INSTANCE;
+    }
+
+    public PaymentStore getPaymentStore() {
+        return paymentStore;
+    }
+
+    public BankConnector getBankConnector() {
+        return bankConnector;
+    }
+
+    /**
+     * @return the outbox for make-payment results that failed to save, or null if it's disabled or couldn't be opened.
+     */
+    public MakePaymentOutbox getMakePaymentOutbox() {
+        return makePaymentOutbox;
+    }
+
+    /**
+     * Shared by all handlers, so a merchant's limit covers all endpoints together.
+     */
+    public MerchantRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public GatewayMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the index of Created payments, or null unless paymentExpiryIndex is on. It only expires payments once started.
+     */
+    public PaymentExpiryIndex getExpiryIndex() {
+        return expiryIndex;
+    }
+
+    /**
+     * @return the aggregator of settled payments, or null unless merchantAggregateTableName is set.
+     */
+    public MerchantAggregator getMerchantAggregator() {
+        return merchantAggregator;
+    }
+
+    /**
+     * @return the queue of async make-payments, or null unless makePaymentMode is async.
+     */
+    public MakePaymentQueue getMakePaymentQueue() {
+        return makePaymentQueue;
+    }
+
+    public long getInitDurationMillis() {
+        return initDurationMillis;
+    }
+
+    public long getPrimingDurationMillis() {
+        return primingDurationMillis;
+    }
+
+    /**
+     * Logs how long the first request of this container took, separately from the init time. Later calls are no-ops.
+     *
+     * @param startNanos System.nanoTime() taken when the request started.
+     */
+    public void reportFirstRequest(String handlerName, long startNanos, LambdaLogger logger) {
+        if (!firstRequestReported.get() && firstRequestReported.compareAndSet(false, true)) {
+            long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            logger.log("First request to " + handlerName + " took " + tookMillis + " ms (init took " + initDurationMillis + " ms)");
+        }
+    }
+
+    /**
+     * Logs what the handler recorded during the invocation, CloudWatch picks the metrics up from the EMF line.
+     */
+    public void flushMetrics(HandlerMetrics handlerMetrics, LambdaLogger logger) {
+        String line = handlerMetrics.flush();
+        if (line != null) {
+            logger.log(line);
+        }
+    }
+
+    private static BankConnector provideBankConnector() {
+        FaultProfile faultProfile = FaultProfile.parse(Env.get("bankFaultProfile", null));
+        if (faultProfile.isEnabled()) {
+            LambdaRuntime.getLogger().log("Injecting faults in the bank: " + faultProfile);
+        }
+        return new BankSimulator(ExecutorBankConnector.newExecutor(
+            Env.getInt("bankConcurrency", ExecutorBankConnector.DEFAULT_CONCURRENCY),
+            Env.getInt("bankQueueSize", ExecutorBankConnector.DEFAULT_QUEUE_SIZE)),
+            new FaultInjector(faultProfile));
+    }
+
+    private static PaymentExpiryIndex provideExpiryIndex(PaymentStore paymentStore, GatewayMetrics metrics) {
+        if (!(paymentStore instanceof ExpiryIndexedPaymentStore)) {
+            return null;
+        }
+        PaymentExpiryIndex expiryIndex = ((ExpiryIndexedPaymentStore) paymentStore).getExpiryIndex();
+        HandlerMetrics expiryMetrics = metrics.forHandler("PaymentExpiryIndex");
+        expiryIndex.addListener(paymentIds -> expiryMetrics.countOutcome("Expired", paymentIds.size()));
+        return expiryIndex;
+    }
+
+    private static MerchantAggregator provideMerchantAggregator() {
+        String tableName = Env.get("merchantAggregateTableName", null);
+        if (tableName == null) {
+            return null;
+        }
+        return new MerchantAggregator(new DynamoDBAggregateStore(DynamoDBMapperModule.provideAmazonDynamoDB(), tableName));
+    }
+
+    /**
+     * SQS when makePaymentQueueUrl is set, otherwise a queue in memory with makePaymentWorkers (16) threads calling the bank,
+     * holding up to makePaymentQueueSize (10000) payments.
+     */
+    private static MakePaymentQueue provideMakePaymentQueue(PaymentStore paymentStore, BankConnector bankConnector,
+        MakePaymentOutbox makePaymentOutbox, GatewayMetrics metrics) {
+        if (!"async".equals(Env.get("makePaymentMode", "read-write"))) {
+            return null;
+        }
+        String queueUrl = Env.get("makePaymentQueueUrl", null);
+        if (queueUrl != null) {
+            return new SqsMakePaymentQueue(AmazonSQSClientBuilder.defaultClient(), queueUrl);
+        }
+
+        InMemoryMakePaymentQueue queue = new InMemoryMakePaymentQueue(Env.getInt("makePaymentQueueSize", 10_000));
+        HandlerMetrics workerMetrics = metrics.forHandler("MakePaymentWorker");
+        queue.addListener(outcome -> workerMetrics.countOutcome(outcome.name(), 1));
+        queue.start(new MakePaymentWorker(paymentStore, bankConnector, makePaymentOutbox,
+            Env.getLong("bankTimeoutMillis", 5_000)), Env.getInt("makePaymentWorkers", 16));
+        return queue;
+    }
+
+    private static MakePaymentOutbox provideMakePaymentOutbox(PaymentStore paymentStore) {
+        // Off on Lambda by default: every function would map its own journal and run a drainer, for a container's lifetime.
+        if (!Env.getBoolean("makePaymentOutbox", !Env.isLambda())) {
+            return null;
+        }
+        String path = Env.get("makePaymentOutboxPath", "/tmp/make-payment-outbox.journal");
+        try {
+            MakePaymentOutbox outbox = MakePaymentOutbox.open(Paths.get(path),
+                Env.getInt("makePaymentOutboxBytes", 16 * 1024 * 1024), paymentStore);
+            outbox.start(Env.getLong("makePaymentOutboxDrainIntervalMillis", 200));
+            if (outbox.getDepth() > 0) {
+                LambdaRuntime.getLogger().log("Draining " + outbox.getDepth() + " make-payment results left in " + path);
+            }
+            return outbox;
+        } catch (IOException e) {
+            LambdaRuntime.getLogger().log(Logs.withStackTrace("Couldn't open the make-payment outbox at " + path
+                + ", failed saves will be lost", e));
+            return null;
+        }
+    }
+
+    /**
+     * Limits each merchant to merchantRateLimitPerSecond (50, 0 for no limit) with bursts of merchantRateLimitBurst (100).
+     * Merchants can get their own limits with merchantRateLimits, e.g. "merchantA=200:400,merchantB=5".
+     */
+    private static MerchantRateLimiter provideRateLimiter() {
+        // Off on Lambda by default: the buckets are per container, and containers come and go with the load, so a merchant's
+        // real limit there would be 50/s times however many containers it happens to hit.
+        double permitsPerSecond = Env.getDouble("merchantRateLimitPerSecond", Env.isLambda() ? 0 : 50);
+        MerchantLimit defaultLimit = permitsPerSecond <= 0 ? null
+            : new MerchantLimit(permitsPerSecond, Env.getInt("merchantRateLimitBurst", 100));
+        return new MerchantRateLimiter(defaultLimit, MerchantRateLimiter.parseMerchantLimits(Env.get("merchantRateLimits", null)));
+    }
+
+    private void prime() {
+        try {
+            // Loads and runs the reader/writer of every request/response type.
+            PaymentJson.readCreatePaymentInput("{\"merchantId\":\"priming\"}");
+            MakePaymentInput makePaymentInput = PaymentJson.readMakePaymentInput("{\"paymentId\":\"priming\",\"merchantId\":\"priming\","
+                + "\"cardNumber\":\"0000000000000000\",\"expiryYear\":2000,\"expiryMonth\":1,\"currency\":\"GBP\",\"amount\":1,"
+                + "\"cardName\":\"priming\",\"billingAddress\":\"priming\",\"cvv\":\"000\"}");
+            PaymentJson.write(new CreatePaymentResponse("priming", PaymentStatus.Created.name(), 0L));
+            PaymentJson.write(new MakePaymentResponse(PaymentStatus.Accepted.name(), 404, "priming"));
+            PaymentJson.writeError("priming");
+
+            GetPaymentResponse getPaymentResponse = new GetPaymentResponse();
+            getPaymentResponse.setCardNumber(makePaymentInput.getCardNumber());
+            getPaymentResponse.setExpiryYear(makePaymentInput.getExpiryYear());
+            getPaymentResponse.setExpiryMonth(makePaymentInput.getExpiryMonth());
+            getPaymentResponse.setCurrency(makePaymentInput.getCurrency());
+            getPaymentResponse.setAmount(makePaymentInput.getAmount());
+            getPaymentResponse.setStatus(PaymentStatus.Accepted.name());
+            getPaymentResponse.setCardName(makePaymentInput.getCardName());
+            getPaymentResponse.setBillingAddress(makePaymentInput.getBillingAddress());
+            getPaymentResponse.setCreationTimestampSeconds(0L);
+            getPaymentResponse.setFailCode(404);
+            getPaymentResponse.setFailReason("priming");
+            PaymentJson.write(getPaymentResponse);
+
+            // UUID.randomUUID() seeds SecureRandom on first use, which is slow.
+            MerchantPayment.builder().newPayment().withMakePaymentInput(makePaymentInput).build();
+        } catch (Exception e) {
+            LambdaRuntime.getLogger().log(Logs.withStackTrace("Priming serialization failed", e));
+        }
+
+        try {
+            // Opens the connection (DNS, TLS) and warms up the store's own reflection by reading a key that doesn't exist.
+            paymentStore.getMerchantPayment("priming-" + System.nanoTime());
+        } catch (Exception e) {
+            LambdaRuntime.getLogger().log(Logs.withStackTrace("Priming the payment store failed", e));
+        }
+    }
+
+    private static class Holder {
+        private static final GatewayModule INSTANCE = new GatewayModule();
+    }
+}
@@ -0,0 +1,23 @@
+package com.org.modules;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Log lines for {@link com.amazonaws.services.lambda.runtime.LambdaLogger}, which only takes strings. It writes a
+ * multi-line message as one CloudWatch Logs entry, so a stack trace stays with its message.
+ */
+public class Logs {
+
+    /**
+     * @return the message followed by the stack trace of the failure.
+     */
+    public static String withStackTrace(String message, Throwable failure) {
+        StringWriter writer = new StringWriter(1024);
+        PrintWriter printer = new PrintWriter(writer);
+        printer.println(message);
+        failure.printStackTrace(printer);
+        printer.flush();
+        return writer.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.org.modules;
+
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.org.dynamodb.DynamoDBClient;
+import com.org.dynamodb.DynamoDBItemClient;
+import com.org.expiry.PaymentExpiryIndex;
+import com.org.faults.FaultInjector;
+import com.org.faults.FaultProfile;
+import com.org.store.ClaimingExpiryIndexedPaymentStore;
+import com.org.store.ClaimingFaultInjectingPaymentStore;
+import com.org.store.ClaimingPaymentStore;
+import com.org.store.ExpiryIndexedPaymentStore;
+import com.org.store.FaultInjectingPaymentStore;
+import com.org.store.InMemoryPaymentStore;
+import com.org.store.PaymentStore;
+
+import java.time.Instant;
+
+public class PaymentStoreModule {
+
+    /**
+     * Picks the store from the "paymentStoreType" env variable: "dynamodb" (default, DynamoDBMapper),
+     * "dynamodb-lowlevel" (hand-written codec on GetItem/PutItem) or "memory" for standalone deployments.
+     * With "compactItems" set to true the low-level store writes the compact item format, see {@link DynamoDBItemClient}.
+     * The other stores can't read it, so it fails with any other store type.
+     * With "shardedMerchantIndex" set to true it writes merchant shards and lists over MerchantShardGSI, see
+     * {@link DynamoDBMapperModule#provideShardedMerchantIndex()}.
+     * With a "storeFaultProfile" (see {@link FaultProfile}) the store is wrapped to inject latency and failures, for load tests.
+     * With "paymentExpiryIndex" set to true, Created payments are tracked until they expire, see {@link PaymentExpiryIndex},
+     * which only makes sense for a long-running gateway.
+     */
+    public static PaymentStore providePaymentStore() {
+        PaymentStore store = provideStore(System.getenv("paymentStoreType"));
+        PaymentStore paymentStore = store;
+
+        FaultProfile faultProfile = FaultProfile.parse(System.getenv("storeFaultProfile"));
+        if (faultProfile.isEnabled()) {
+            LambdaRuntime.getLogger().log("Injecting faults in the payment store: " + faultProfile);
+            ClaimingPaymentStore claimingStore = ClaimingPaymentStore.of(paymentStore);
+            paymentStore = claimingStore != null
+                ? new ClaimingFaultInjectingPaymentStore(claimingStore, new FaultInjector(faultProfile))
+                : new FaultInjectingPaymentStore(paymentStore, new FaultInjector(faultProfile));
+        }
+
+        if (Env.getBoolean("paymentExpiryIndex", false)) {
+            PaymentExpiryIndex expiryIndex = new PaymentExpiryIndex(paymentStore, Env.getInt("paymentExpiryIndexStripes", 64),
+                Env.getInt("expiredPaymentCacheSize", 100_000));
+            if (store instanceof InMemoryPaymentStore) {
+                // Nothing else ever removes them from memory, DynamoDB has TTL.
+                expiryIndex.addListener(paymentIds ->
+                    ((InMemoryPaymentStore) store).purgeExpired(paymentIds, Instant.now().getEpochSecond()));
+            }
+            ClaimingPaymentStore claimingStore = ClaimingPaymentStore.of(paymentStore);
+            paymentStore = claimingStore != null
+                ? new ClaimingExpiryIndexedPaymentStore(claimingStore, expiryIndex)
+                : new ExpiryIndexedPaymentStore(paymentStore, expiryIndex);
+        }
+        return paymentStore;
+    }
+
+    private static PaymentStore provideStore(String storeType) {
+        if (Env.getBoolean("compactItems", false) && !"dynamodb-lowlevel".equals(storeType)) {
+            // The flag means compact items are being written, which DynamoDBMapper can't read.
+            throw new IllegalArgumentException("compactItems needs paymentStoreType=dynamodb-lowlevel, not " + storeType);
+        }
+        if ("memory".equals(storeType)) {
+            return new InMemoryPaymentStore();
+        } else if ("dynamodb-lowlevel".equals(storeType)) {
+            return new DynamoDBItemClient(DynamoDBMapperModule.provideAmazonDynamoDB(), System.getenv("merchantPaymentTableName"),
+                DynamoDBMapperModule.provideBatchWriter(), DynamoDBMapperModule.provideBatchReader(),
+                Env.getBoolean("compactItems", false),
+                Env.getBoolean("shardedMerchantIndex", false) ? DynamoDBMapperModule.provideShardedMerchantIndex() : null);
+        }
+        return new DynamoDBClient(DynamoDBMapperModule.provideDynamoDBMapper());
+    }
+}
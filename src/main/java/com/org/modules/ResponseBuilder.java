@@ -1,7 +1,10 @@
 package com.org.modules;
 
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
-import org.json.simple.JSONObject;
+import com.org.json.PaymentJson;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class ResponseBuilder {
 
@@ -14,13 +17,22 @@ public class ResponseBuilder {
     }
 
     public static APIGatewayV2HTTPResponse error(String errorMessage, int statusCode) {
-        JSONObject jsonResponse = new JSONObject();
-
-        jsonResponse.put("errorMessage", errorMessage);
-
         return APIGatewayV2HTTPResponse.builder()
             .withStatusCode(statusCode)
-            .withBody(jsonResponse.toJSONString())
+            .withBody(PaymentJson.writeError(errorMessage))
+            .withIsBase64Encoded(false)
+            .build();
+    }
+
+    /**
+     * A 429 for a merchant over its rate limit, with a Retry-After header in whole seconds.
+     */
+    public static APIGatewayV2HTTPResponse tooManyRequests(long retryAfterNanos) {
+        long retryAfterSeconds = Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        return APIGatewayV2HTTPResponse.builder()
+            .withStatusCode(429)
+            .withHeaders(Map.of("Retry-After", String.valueOf(retryAfterSeconds)))
+            .withBody(PaymentJson.writeError("Too many requests for this merchant, retry after " + retryAfterSeconds + " seconds"))
             .withIsBase64Encoded(false)
             .build();
     }
@@ -0,0 +1,63 @@
+package com.org.outbox;
+
+import com.org.payments.PaymentRecord;
+
+/**
+ * A payment in the outbox, waiting to be written to the store. Only touched under the outbox lock or by its drainer.
+ */
+class JournalEntry {
+
+    private final long appendedMillis;
+    private PaymentRecord record;
+    private int offset;
+    private final int length;
+    private int attempts;
+    private long nextAttemptNanos = System.nanoTime();
+
+    JournalEntry(PaymentRecord record, long appendedMillis, int offset, int length) {
+        this.record = record;
+        this.appendedMillis = appendedMillis;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    PaymentRecord getRecord() {
+        return record;
+    }
+
+    void setRecord(PaymentRecord record) {
+        this.record = record;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the number of attempts so far, including this one.
+     */
+    int failedAttempt(long nextAttemptNanos) {
+        this.nextAttemptNanos = nextAttemptNanos;
+        return ++attempts;
+    }
+
+    long getNextAttemptNanos() {
+        return nextAttemptNanos;
+    }
+
+    long getAppendedMillis() {
+        return appendedMillis;
+    }
+}
@@ -0,0 +1,251 @@
+package com.org.outbox;
+
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.org.modules.Logs;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+import com.org.store.PaymentStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind outbox for make-payment results the store failed to save, so the bank's answer isn't lost.
+ * <p>
+ * Payments are appended to an {@link OutboxJournal}, without their card details, and replayed by a background drainer
+ * with exponential backoff: the stored payment is read and saved with the bank's answer, checked against the version it
+ * had when the answer came. If the version moved on, the stored payment wins when it's settled, being processed, expired
+ * or gone, and the entry is dropped. Otherwise only the version moved on (e.g. a retry got Pending from the bank again)
+ * and the entry is retried on top of the stored version.
+ */
+public class MakePaymentOutbox implements Closeable {
+
+    private static final long BASE_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final double DRAIN_RATE_WINDOW_SECONDS = 10;
+
+    private final OutboxJournal journal;
+    private final PaymentStore paymentStore;
+    private final ConcurrentLinkedQueue<JournalEntry> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder drained = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LambdaLogger logger = LambdaRuntime.getLogger();
+    private volatile double drainRatePerSecond;
+    private long lastDrainNanos = System.nanoTime();
+    private ScheduledExecutorService drainer;
+
+    private MakePaymentOutbox(OutboxJournal journal, List<JournalEntry> recovered, PaymentStore paymentStore) {
+        this.journal = journal;
+        this.paymentStore = paymentStore;
+        pending.addAll(recovered);
+        depth.set(recovered.size());
+    }
+
+    /**
+     * Opens the journal at the path, creating it if needed. Entries left over by a previous run are drained again.
+     *
+     * @param capacityBytes size of the journal file, appends fail once the pending entries fill it.
+     */
+    public static MakePaymentOutbox open(Path path, int capacityBytes, PaymentStore paymentStore) throws IOException {
+        List<JournalEntry> recovered = new ArrayList<>();
+        OutboxJournal journal = OutboxJournal.open(path, capacityBytes, recovered);
+        return new MakePaymentOutbox(journal, recovered, paymentStore);
+    }
+
+    /**
+     * Starts draining in the background, on a daemon thread.
+     */
+    public synchronized void start(long drainIntervalMillis) {
+        if (drainer == null) {
+            drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "make-payment-outbox");
+                thread.setDaemon(true);
+                return thread;
+            });
+            drainer.scheduleWithFixedDelay(() -> {
+                try {
+                    drain();
+                } catch (Exception e) {
+                    // Keep draining, a failed compaction is tried again next time.
+                    logger.log(Logs.withStackTrace("Draining the make-payment outbox failed", e));
+                }
+            }, drainIntervalMillis, drainIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Durably records a payment whose save failed, to be saved later.
+     *
+     * @return false if the journal is full.
+     */
+    public boolean append(MerchantPayment payment) {
+        PaymentRecord record = PaymentRecord.of(payment);
+        synchronized (journal) {
+            JournalEntry entry = journal.append(record);
+            if (entry == null) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    // Still full.
+                }
+                entry = journal.append(record);
+            }
+            if (entry == null) {
+                rejected.increment();
+                return false;
+            }
+            pending.add(entry);
+            depth.incrementAndGet();
+        }
+        appended.increment();
+        return true;
+    }
+
+    /**
+     * Replays the entries due for an attempt, then compacts the journal if it's mostly acknowledged entries.
+     *
+     * @return number of entries done with, saved or superseded.
+     */
+    public int drain() throws IOException {
+        long now = System.nanoTime();
+        int done = 0;
+        for (Iterator<JournalEntry> iterator = pending.iterator(); iterator.hasNext(); ) {
+            JournalEntry entry = iterator.next();
+            if (entry.getNextAttemptNanos() - now > 0 || !replay(entry)) {
+                continue;
+            }
+            synchronized (journal) {
+                journal.acknowledge(entry);
+                iterator.remove();
+                depth.decrementAndGet();
+            }
+            done++;
+        }
+
+        synchronized (journal) {
+            if (depth.get() == 0) {
+                journal.reset();
+            } else if (journal.getPosition() > journal.getCapacity() / 2) {
+                compact();
+            }
+        }
+
+        long end = System.nanoTime();
+        double elapsedSeconds = Math.max(1e-9, (end - lastDrainNanos) / 1e9);
+        double weight = 1 - Math.exp(-elapsedSeconds / DRAIN_RATE_WINDOW_SECONDS);
+        drainRatePerSecond += weight * (done / elapsedSeconds - drainRatePerSecond);
+        lastDrainNanos = end;
+        return done;
+    }
+
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public OutboxStats getStats() {
+        JournalEntry oldest = pending.peek();
+        return new OutboxStats(depth.get(), appended.sum(), drained.sum(), superseded.sum(), rejected.sum(),
+            drainRatePerSecond, oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.getAppendedMillis()));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (drainer != null) {
+            drainer.shutdownNow();
+            drainer = null;
+        }
+    }
+
+    /**
+     * Writes the entry's answer on top of the stored payment, read consistently, which has the card details.
+     *
+     * @return true if the entry is done with.
+     */
+    private boolean replay(JournalEntry entry) {
+        PaymentRecord record = entry.getRecord();
+        try {
+            MerchantPayment stored = paymentStore.getLatestMerchantPayment(record.getPaymentId());
+            if (stored == null || !stored.getMerchantId().equals(record.getMerchantId())) {
+                superseded.increment();
+                return true;
+            }
+            if (stored.getVersion() == null || stored.getVersion() != record.getVersion()) {
+                return resolveConflict(entry, stored);
+            }
+            paymentStore.saveMakePayment(answered(stored, record));
+            drained.increment();
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            // Written since the read, looked at again next time.
+            backOff(entry);
+            return false;
+        } catch (RuntimeException e) {
+            backOff(entry);
+            return false;
+        }
+    }
+
+    private boolean resolveConflict(JournalEntry entry, MerchantPayment stored) {
+        if (stored.isExpired(Instant.now())
+            || PaymentStatus.isFinal(stored.getStatus())
+            || PaymentStatus.Processing.name().equals(stored.getStatus())) {
+            superseded.increment();
+            return true;
+        }
+
+        entry.setRecord(entry.getRecord().withVersion(stored.getVersion()));
+        backOff(entry);
+        return false;
+    }
+
+    private static MerchantPayment answered(MerchantPayment stored, PaymentRecord record) {
+        MerchantPayment answer = record.toMerchantPayment();
+        stored.setStatus(answer.getStatus());
+        stored.setExpiryTimestampSeconds(answer.getExpiryTimestampSeconds());
+        stored.setClaimExpiryTimestampSeconds(answer.getClaimExpiryTimestampSeconds());
+        // A read-write save that failed was the one with the amount, the card details of that attempt are lost.
+        if (answer.getCurrency() != null) {
+            stored.setCurrency(answer.getCurrency());
+        }
+        if (answer.getAmount() != null) {
+            stored.setAmount(answer.getAmount());
+        }
+        return stored;
+    }
+
+    private void backOff(JournalEntry entry) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(entry.getAttempts(), 20));
+        long backoffMillis = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        entry.failedAttempt(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis));
+    }
+
+    private void compact() throws IOException {
+        List<JournalEntry> entries = new ArrayList<>(pending);
+        long pendingBytes = 0;
+        for (JournalEntry entry : entries) {
+            pendingBytes += entry.getLength();
+        }
+        // Not worth a rewrite if most of the journal is still pending.
+        if (pendingBytes < journal.getPosition() / 2) {
+            journal.compact(entries);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.org.outbox;
+
+import com.org.payments.PaymentRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of payments, on a memory-mapped file of fixed capacity. Only what it takes to write the bank's answer
+ * on top of the stored payment is journalled, see {@link #journalled}: no card details end up on local disk.
+ * <p>
+ * Each entry is {@code [int length][int crc32 of payload][byte state][payload]}, followed by a zero length marking the end
+ * of the journal. Entries are acknowledged by flipping their state byte in place. On open, entries are read up to the end
+ * marker or the first torn entry (bad crc) or entry of another format, so a crash mid-append loses at most that entry.
+ * Not thread safe, callers lock.
+ */
+class OutboxJournal {
+
+    static final int HEADER_BYTES = 9;
+
+    private static final byte PENDING = 0;
+    private static final byte DONE = 1;
+    // First byte of a payload. Journals written with card details started with the append time, whose first byte is 0.
+    private static final byte FORMAT = 1;
+
+    private final Path path;
+    private final int capacity;
+    private MappedByteBuffer buffer;
+    private int position;
+
+    private OutboxJournal(Path path, int capacity, MappedByteBuffer buffer) {
+        this.path = path;
+        this.capacity = capacity;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens or creates the journal, and hands back the entries that weren't acknowledged yet.
+     */
+    static OutboxJournal open(Path path, int capacity, List<JournalEntry> pending) throws IOException {
+        OutboxJournal journal = new OutboxJournal(path, capacity, map(path, capacity));
+        journal.recover(pending);
+        return journal;
+    }
+
+    /**
+     * @return the appended entry, or null if the journal is full.
+     */
+    JournalEntry append(PaymentRecord record) {
+        record = journalled(record);
+        long appendedMillis = System.currentTimeMillis();
+        byte[] payload = encode(record, appendedMillis);
+        int length = HEADER_BYTES + payload.length;
+        // Room for the entry, and for the end marker after it.
+        if (position + length + Integer.BYTES > capacity) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.putInt(position + length, 0);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.put(position + 8, PENDING);
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + HEADER_BYTES);
+        view.put(payload);
+        // The length goes last, an entry is only visible once it's complete.
+        buffer.putInt(position, payload.length);
+        buffer.force();
+
+        JournalEntry entry = new JournalEntry(record, appendedMillis, position, length);
+        position += length;
+        return entry;
+    }
+
+    /**
+     * Not forced to disk, losing an acknowledgement in a crash only replays the write, which then fails its version check.
+     */
+    void acknowledge(JournalEntry entry) {
+        buffer.put(entry.getOffset() + 8, DONE);
+    }
+
+    /**
+     * Empties the journal, once every entry has been acknowledged.
+     */
+    void reset() {
+        if (position > 0) {
+            buffer.putInt(0, 0);
+            buffer.force();
+            position = 0;
+        }
+    }
+
+    /**
+     * Rewrites the pending entries at the start of a new file, which then replaces the journal in one rename.
+     */
+    void compact(Collection<JournalEntry> pending) throws IOException {
+        Path compacting = path.resolveSibling(path.getFileName() + ".compacting");
+        MappedByteBuffer compacted = map(compacting, capacity);
+
+        int compactedPosition = 0;
+        List<Integer> offsets = new ArrayList<>(pending.size());
+        for (JournalEntry entry : pending) {
+            ByteBuffer source = buffer.duplicate();
+            source.position(entry.getOffset()).limit(entry.getOffset() + entry.getLength());
+            ByteBuffer target = compacted.duplicate();
+            target.position(compactedPosition);
+            target.put(source);
+            offsets.add(compactedPosition);
+            compactedPosition += entry.getLength();
+        }
+        compacted.putInt(compactedPosition, 0);
+        compacted.force();
+        Files.move(compacting, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        int i = 0;
+        for (JournalEntry entry : pending) {
+            entry.setOffset(offsets.get(i++));
+        }
+        buffer = compacted;
+        position = compactedPosition;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    private void recover(List<JournalEntry> pending) {
+        while (position + HEADER_BYTES <= capacity) {
+            int payloadLength = buffer.getInt(position);
+            if (payloadLength <= 0 || position + HEADER_BYTES + payloadLength > capacity) {
+                break;
+            }
+            byte[] payload = new byte[payloadLength];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + HEADER_BYTES);
+            view.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+
+            if (payload[0] != FORMAT) {
+                break;
+            }
+
+            int length = HEADER_BYTES + payloadLength;
+            if (buffer.get(position + 8) == PENDING) {
+                addDecoded(payload, position, length, pending);
+            }
+            position += length;
+        }
+        // Anything after a torn entry is dropped from now on.
+        if (position + Integer.BYTES <= capacity) {
+            buffer.putInt(position, 0);
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+
+    /**
+     * @return the record as the journal keeps it: ids, status, amount, expiries and version, without the card details.
+     */
+    static PaymentRecord journalled(PaymentRecord record) {
+        return new PaymentRecord(record.getPaymentId(), record.getMerchantId(), null, null, record.getCurrency(),
+            record.getStatus(), null, PaymentRecord.NONE_INT, PaymentRecord.NONE_INT, record.getAmount(),
+            record.getExpiryTimestampSeconds(), PaymentRecord.NONE_LONG, record.getClaimExpiryTimestampSeconds(),
+            record.getVersion());
+    }
+
+    private static byte[] encode(PaymentRecord record, long appendedMillis) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeLong(appendedMillis);
+            writeString(out, record.getPaymentId());
+            writeString(out, record.getMerchantId());
+            writeString(out, record.getCurrency());
+            writeString(out, record.getStatus());
+            out.writeInt(record.getAmount());
+            out.writeLong(record.getExpiryTimestampSeconds());
+            out.writeLong(record.getClaimExpiryTimestampSeconds());
+            out.writeLong(record.getVersion());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void addDecoded(byte[] payload, int offset, int length, List<JournalEntry> entries) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            in.readByte();
+            long appendedMillis = in.readLong();
+            String paymentId = readString(in);
+            String merchantId = readString(in);
+            String currency = readString(in);
+            String status = readString(in);
+            PaymentRecord record = new PaymentRecord(paymentId, merchantId, null, null, currency, status, null,
+                PaymentRecord.NONE_INT, PaymentRecord.NONE_INT, in.readInt(), in.readLong(), PaymentRecord.NONE_LONG,
+                in.readLong(), in.readLong());
+            entries.add(new JournalEntry(record, appendedMillis, offset, length));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
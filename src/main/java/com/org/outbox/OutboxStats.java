@@ -0,0 +1,82 @@
+package com.org.outbox;
+
+/**
+ * Snapshot of a {@link MakePaymentOutbox}'s counters, since it was opened.
+ */
+public class OutboxStats {
+
+    private final int depth;
+    private final long appended;
+    private final long drained;
+    private final long superseded;
+    private final long rejected;
+    private final double drainRatePerSecond;
+    private final long oldestEntryAgeMillis;
+
+    public OutboxStats(int depth, long appended, long drained, long superseded, long rejected, double drainRatePerSecond,
+        long oldestEntryAgeMillis) {
+        this.depth = depth;
+        this.appended = appended;
+        this.drained = drained;
+        this.superseded = superseded;
+        this.rejected = rejected;
+        this.drainRatePerSecond = drainRatePerSecond;
+        this.oldestEntryAgeMillis = oldestEntryAgeMillis;
+    }
+
+    /**
+     * @return payments waiting to be saved.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getAppended() {
+        return appended;
+    }
+
+    /**
+     * @return payments saved by the drainer.
+     */
+    public long getDrained() {
+        return drained;
+    }
+
+    /**
+     * @return payments dropped because the stored payment had settled or moved on since.
+     */
+    public long getSuperseded() {
+        return superseded;
+    }
+
+    /**
+     * @return payments that couldn't be appended because the journal was full.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return payments done with per second, averaged over the last ten seconds or so.
+     */
+    public double getDrainRatePerSecond() {
+        return drainRatePerSecond;
+    }
+
+    public long getOldestEntryAgeMillis() {
+        return oldestEntryAgeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxStats{" +
+            "depth=" + depth +
+            ", appended=" + appended +
+            ", drained=" + drained +
+            ", superseded=" + superseded +
+            ", rejected=" + rejected +
+            ", drainRatePerSecond=" + drainRatePerSecond +
+            ", oldestEntryAgeMillis=" + oldestEntryAgeMillis +
+            '}';
+    }
+}
@@ -2,6 +2,8 @@ package com.org.payments;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBVersionAttribute;
 import com.org.lambda.MakePaymentInput;
@@ -25,6 +27,7 @@ public class MerchantPayment {
     private String billingAddress;
     private Long expiryTimestampSeconds;
     private Long creationTimestampSeconds;
+    private Long claimExpiryTimestampSeconds;
     private Long version;
 
     @DynamoDBHashKey(attributeName = "paymentId")
@@ -36,6 +39,7 @@ public class MerchantPayment {
         this.paymentId = paymentId;
     }
 
+    @DynamoDBIndexHashKey(attributeName = "merchantId", globalSecondaryIndexName = "MerchantCreationGSI")
     public String getMerchantId() {
         return merchantId;
     }
@@ -125,7 +129,7 @@ public class MerchantPayment {
         this.expiryTimestampSeconds = expiryTimestampSeconds;
     }
 
-    @DynamoDBAttribute(attributeName = "creationTimestampSeconds")
+    @DynamoDBIndexRangeKey(attributeName = "creationTimestampSeconds", globalSecondaryIndexName = "MerchantCreationGSI")
     public Long getCreationTimestampSeconds() {
         return creationTimestampSeconds;
     }
@@ -134,6 +138,19 @@ public class MerchantPayment {
         this.creationTimestampSeconds = creationTimestampSeconds;
     }
 
+    /**
+     * Only set while a make-payment request holds the payment in {@link PaymentStatus#Processing}, after this time
+     * another request can take the claim over.
+     */
+    @DynamoDBAttribute(attributeName = "claimExpiryTimestampSeconds")
+    public Long getClaimExpiryTimestampSeconds() {
+        return claimExpiryTimestampSeconds;
+    }
+
+    public void setClaimExpiryTimestampSeconds(Long claimExpiryTimestampSeconds) {
+        this.claimExpiryTimestampSeconds = claimExpiryTimestampSeconds;
+    }
+
     @DynamoDBVersionAttribute
     public Long getVersion() {
         return version;
@@ -143,6 +160,13 @@ public class MerchantPayment {
         this.version = version;
     }
 
+    /**
+     * @return true if the payment has an expiry (only unpaid payments do) and it's before the given time.
+     */
+    public boolean isExpired(Instant now) {
+        return expiryTimestampSeconds != null && Instant.ofEpochSecond(expiryTimestampSeconds).compareTo(now) < 0;
+    }
+
     public static MerchantPayment.MerchantPaymentBuilder builder() {
         return new MerchantPayment.MerchantPaymentBuilder();
     }
@@ -162,6 +186,7 @@ public class MerchantPayment {
             ", billingAddress='" + billingAddress + '\'' +
             ", expiryTimestampSeconds=" + expiryTimestampSeconds +
             ", creationTimestampSeconds=" + creationTimestampSeconds +
+            ", claimExpiryTimestampSeconds=" + claimExpiryTimestampSeconds +
             '}';
     }
 
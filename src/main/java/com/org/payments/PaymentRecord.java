@@ -0,0 +1,159 @@
+package com.org.payments;
+
+/**
+ * Immutable, compact form of a {@link MerchantPayment} used on the storage paths.
+ * Numbers are primitives, with {@link #NONE_INT}/{@link #NONE_LONG} standing for a missing attribute, so nothing is boxed.
+ */
+public final class PaymentRecord {
+
+    public static final int NONE_INT = Integer.MIN_VALUE;
+    public static final long NONE_LONG = Long.MIN_VALUE;
+
+    private final String paymentId;
+    private final String merchantId;
+    private final String cardNumber;
+    private final String cardName;
+    private final String currency;
+    private final String status;
+    private final String billingAddress;
+    private final int expiryYear;
+    private final int expiryMonth;
+    private final int amount;
+    private final long expiryTimestampSeconds;
+    private final long creationTimestampSeconds;
+    private final long claimExpiryTimestampSeconds;
+    private final long version;
+
+    public PaymentRecord(String paymentId, String merchantId, String cardNumber, String cardName, String currency,
+        String status, String billingAddress, int expiryYear, int expiryMonth, int amount,
+        long expiryTimestampSeconds, long creationTimestampSeconds, long claimExpiryTimestampSeconds, long version) {
+        this.paymentId = paymentId;
+        this.merchantId = merchantId;
+        this.cardNumber = cardNumber;
+        this.cardName = cardName;
+        this.currency = currency;
+        this.status = status;
+        this.billingAddress = billingAddress;
+        this.expiryYear = expiryYear;
+        this.expiryMonth = expiryMonth;
+        this.amount = amount;
+        this.expiryTimestampSeconds = expiryTimestampSeconds;
+        this.creationTimestampSeconds = creationTimestampSeconds;
+        this.claimExpiryTimestampSeconds = claimExpiryTimestampSeconds;
+        this.version = version;
+    }
+
+    public static PaymentRecord of(MerchantPayment payment) {
+        return new PaymentRecord(payment.getPaymentId(),
+            payment.getMerchantId(),
+            payment.getCardNumber(),
+            payment.getCardName(),
+            payment.getCurrency(),
+            payment.getStatus(),
+            payment.getBillingAddress(),
+            payment.getExpiryYear() == null ? NONE_INT : payment.getExpiryYear(),
+            payment.getExpiryMonth() == null ? NONE_INT : payment.getExpiryMonth(),
+            payment.getAmount() == null ? NONE_INT : payment.getAmount(),
+            payment.getExpiryTimestampSeconds() == null ? NONE_LONG : payment.getExpiryTimestampSeconds(),
+            payment.getCreationTimestampSeconds() == null ? NONE_LONG : payment.getCreationTimestampSeconds(),
+            payment.getClaimExpiryTimestampSeconds() == null ? NONE_LONG : payment.getClaimExpiryTimestampSeconds(),
+            payment.getVersion() == null ? NONE_LONG : payment.getVersion());
+    }
+
+    public MerchantPayment toMerchantPayment() {
+        MerchantPayment payment = new MerchantPayment();
+        payment.setPaymentId(paymentId);
+        payment.setMerchantId(merchantId);
+        payment.setCardNumber(cardNumber);
+        payment.setCardName(cardName);
+        payment.setCurrency(currency);
+        payment.setStatus(status);
+        payment.setBillingAddress(billingAddress);
+        payment.setExpiryYear(expiryYear == NONE_INT ? null : expiryYear);
+        payment.setExpiryMonth(expiryMonth == NONE_INT ? null : expiryMonth);
+        payment.setAmount(amount == NONE_INT ? null : amount);
+        payment.setExpiryTimestampSeconds(expiryTimestampSeconds == NONE_LONG ? null : expiryTimestampSeconds);
+        payment.setCreationTimestampSeconds(creationTimestampSeconds == NONE_LONG ? null : creationTimestampSeconds);
+        payment.setClaimExpiryTimestampSeconds(claimExpiryTimestampSeconds == NONE_LONG ? null : claimExpiryTimestampSeconds);
+        payment.setVersion(version == NONE_LONG ? null : version);
+        return payment;
+    }
+
+    public PaymentRecord withVersion(long version) {
+        return new PaymentRecord(paymentId, merchantId, cardNumber, cardName, currency, status, billingAddress,
+            expiryYear, expiryMonth, amount, expiryTimestampSeconds, creationTimestampSeconds, claimExpiryTimestampSeconds, version);
+    }
+
+    public String getPaymentId() {
+        return paymentId;
+    }
+
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public String getCardNumber() {
+        return cardNumber;
+    }
+
+    public String getCardName() {
+        return cardName;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getBillingAddress() {
+        return billingAddress;
+    }
+
+    public int getExpiryYear() {
+        return expiryYear;
+    }
+
+    public int getExpiryMonth() {
+        return expiryMonth;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public long getExpiryTimestampSeconds() {
+        return expiryTimestampSeconds;
+    }
+
+    public long getCreationTimestampSeconds() {
+        return creationTimestampSeconds;
+    }
+
+    public long getClaimExpiryTimestampSeconds() {
+        return claimExpiryTimestampSeconds;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean hasVersion() {
+        return version != NONE_LONG;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentRecord{" +
+            "paymentId='" + paymentId + '\'' +
+            ", merchantId='" + merchantId + '\'' +
+            ", status='" + status + '\'' +
+            ", amount=" + amount +
+            ", currency='" + currency + '\'' +
+            ", creationTimestampSeconds=" + creationTimestampSeconds +
+            ", version=" + version +
+            '}';
+    }
+}
@@ -1,11 +1,48 @@
 package com.org.payments;
 
 public enum PaymentStatus {
-    Created,
-    Pending,
-    Accepted,
-    Declined,
-    NotFound,
-    NotAuthorised,
-    InsufficientFunds
+    Created(0),
+    Pending(1),
+    // Claimed by a make-payment request that is waiting on the bank.
+    Processing(2),
+    Accepted(3),
+    Declined(4),
+    NotFound(5),
+    NotAuthorised(6),
+    InsufficientFunds(7);
+
+    private static final PaymentStatus[] BY_CODE = new PaymentStatus[values().length];
+
+    static {
+        for (PaymentStatus status : values()) {
+            BY_CODE[status.code] = status;
+        }
+    }
+
+    // Stored in compact items, so a code must never change or be reused.
+    private final int code;
+
+    PaymentStatus(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return the status stored under the code, or null for an unknown code.
+     */
+    public static PaymentStatus fromCode(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    /**
+     * @return true if a payment stored with this status will never change again.
+     */
+    public static boolean isFinal(String status) {
+        return Accepted.name().equals(status)
+            || Declined.name().equals(status)
+            || InsufficientFunds.name().equals(status);
+    }
 }
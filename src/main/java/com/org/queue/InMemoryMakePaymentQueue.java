@@ -0,0 +1,155 @@
+package com.org.queue;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.org.modules.Logs;
+import com.org.queue.MakePaymentWorker.Outcome;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * {@link MakePaymentQueue} in memory, worked off by a fixed number of threads in the same process: the stand-in for SQS in
+ * the standalone server and in tests. The number of threads bounds the bank calls in flight, however fast payments come in.
+ * <p>
+ * Jobs to retry or resubmit are queued again after a backoff, up to {@link MakePaymentWorker#MAX_ATTEMPTS} times. Queued
+ * jobs are lost with the process, their payments stay Pending until the merchant makes them again.
+ */
+public class InMemoryMakePaymentQueue implements MakePaymentQueue, AutoCloseable {
+
+    private static final long BASE_BACKOFF_MILLIS = 200;
+
+    private final BlockingQueue<MakePaymentJob> queue;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final List<Consumer<Outcome>> listeners = new CopyOnWriteArrayList<>();
+    private final LambdaLogger logger = LambdaRuntime.getLogger();
+    private ScheduledExecutorService workers;
+
+    public InMemoryMakePaymentQueue(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * @throws RejectedExecutionException if the queue is full.
+     */
+    @Override
+    public void send(MakePaymentJob job) {
+        outstanding.incrementAndGet();
+        if (!queue.offer(job)) {
+            outstanding.decrementAndGet();
+            throw new RejectedExecutionException("Make-payment queue is full");
+        }
+    }
+
+    /**
+     * @param listener gets the outcome of every job taken, on the worker's thread.
+     */
+    public void addListener(Consumer<Outcome> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts the worker threads, daemons, until {@link #close()}.
+     */
+    public synchronized void start(MakePaymentWorker worker, int threads) {
+        if (workers != null) {
+            return;
+        }
+        AtomicInteger count = new AtomicInteger();
+        // One more thread than workers, for the retries waiting out their backoff.
+        workers = Executors.newScheduledThreadPool(threads + 1, runnable -> {
+            Thread thread = new Thread(runnable, "make-payment-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ScheduledExecutorService executor = workers;
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> work(worker, executor));
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+    }
+
+    /**
+     * @return jobs queued, being processed or waiting to be retried.
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Waits until every job sent so far is done, for tests.
+     *
+     * @return false if some are still outstanding after the timeout.
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (outstanding.get() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    private void work(MakePaymentWorker worker, ScheduledExecutorService executor) {
+        while (!Thread.currentThread().isInterrupted()) {
+            MakePaymentJob job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            Outcome outcome;
+            try {
+                outcome = worker.process(job);
+            } catch (RuntimeException e) {
+                logger.log(Logs.withStackTrace("Failed processing " + job, e));
+                outcome = Outcome.Retry;
+            }
+            for (Consumer<Outcome> listener : listeners) {
+                listener.accept(outcome);
+            }
+            if (job.getAttempt() + 1 >= MakePaymentWorker.MAX_ATTEMPTS) {
+                outstanding.decrementAndGet();
+            } else if (outcome == Outcome.Retry) {
+                retry(job.nextAttempt(), executor);
+            } else if (outcome == Outcome.Resubmit) {
+                retry(job.resubmission(), executor);
+            } else {
+                outstanding.decrementAndGet();
+            }
+        }
+    }
+
+    private void retry(MakePaymentJob job, ScheduledExecutorService executor) {
+        long backoffMillis = BASE_BACKOFF_MILLIS << (job.getAttempt() - 1);
+        try {
+            executor.schedule(() -> {
+                if (!queue.offer(job)) {
+                    logger.log("Make-payment queue is full, dropped " + job);
+                    outstanding.decrementAndGet();
+                }
+            }, backoffMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed.
+            outstanding.decrementAndGet();
+        }
+    }
+}
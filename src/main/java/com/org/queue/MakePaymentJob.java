@@ -0,0 +1,66 @@
+package com.org.queue;
+
+import com.org.payments.PaymentStatus;
+
+/**
+ * A make-payment accepted in async mode, waiting for the bank. The card details are in the store with the payment, which
+ * stays Pending until a {@link MakePaymentWorker} writes the bank's answer.
+ */
+public final class MakePaymentJob {
+
+    private final String paymentId;
+    private final String merchantId;
+    private final String previousStatus;
+    private final int attempt;
+
+    /**
+     * @param previousStatus the payment's status before it was queued, the bank treats a Pending one as a resubmission.
+     * @param attempt        number of times the job was taken before, 0 when it's first queued.
+     */
+    public MakePaymentJob(String paymentId, String merchantId, String previousStatus, int attempt) {
+        this.paymentId = paymentId;
+        this.merchantId = merchantId;
+        this.previousStatus = previousStatus;
+        this.attempt = attempt;
+    }
+
+    /**
+     * @return the job to retry when the bank didn't answer.
+     */
+    public MakePaymentJob nextAttempt() {
+        return new MakePaymentJob(paymentId, merchantId, previousStatus, attempt + 1);
+    }
+
+    /**
+     * @return the job to resubmit the payment when the bank answered Pending.
+     */
+    public MakePaymentJob resubmission() {
+        return new MakePaymentJob(paymentId, merchantId, PaymentStatus.Pending.name(), attempt + 1);
+    }
+
+    public String getPaymentId() {
+        return paymentId;
+    }
+
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public String getPreviousStatus() {
+        return previousStatus;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    @Override
+    public String toString() {
+        return "MakePaymentJob{" +
+            "paymentId='" + paymentId + '\'' +
+            ", merchantId='" + merchantId + '\'' +
+            ", previousStatus='" + previousStatus + '\'' +
+            ", attempt=" + attempt +
+            '}';
+    }
+}
@@ -0,0 +1,14 @@
+package com.org.queue;
+
+/**
+ * Where async make-payments wait for a {@link MakePaymentWorker}. Jobs may be delivered more than once, the worker skips
+ * payments that aren't Pending anymore.
+ */
+public interface MakePaymentQueue {
+
+    /**
+     * @throws RuntimeException if the job couldn't be queued, e.g. a
+     *                          {@link java.util.concurrent.RejectedExecutionException} when the queue is full.
+     */
+    void send(MakePaymentJob job);
+}
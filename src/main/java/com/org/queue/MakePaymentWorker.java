@@ -0,0 +1,116 @@
+package com.org.queue;
+
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.org.bank.BankConnector;
+import com.org.modules.Logs;
+import com.org.outbox.MakePaymentOutbox;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import com.org.store.PaymentStore;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Takes a queued make-payment to the bank and writes its answer, the background half of async mode.
+ * <p>
+ * The payment is read back from the store, so the card details come from there and a job delivered again finds it
+ * settled and is skipped. The read is strongly consistent: the job can be taken before the Pending write that queued it
+ * has reached every replica, and an eventually consistent read could find the payment still Created and skip it. The
+ * answer is written with {@link PaymentStore#saveMakePayment}, checked against the version read: if the payment changed
+ * in the meantime, e.g. the merchant resubmitted it, the newer write wins and its own job settles it. A Pending answer
+ * isn't written, the payment already is Pending: the job is resubmitted instead, as the merchant would have to in sync
+ * mode, so in async mode Pending only ever means "keep polling".
+ */
+public class MakePaymentWorker {
+
+    /**
+     * Most times a job is taken, retries and resubmissions included. After that the payment stays Pending until the
+     * merchant makes it again.
+     */
+    public static final int MAX_ATTEMPTS = 5;
+
+    public enum Outcome {
+        /**
+         * The bank's final answer was saved, or handed to the outbox.
+         */
+        Settled,
+        /**
+         * The bank answered Pending, the job should be resubmitted, see {@link MakePaymentJob#resubmission()}.
+         */
+        Resubmit,
+        /**
+         * The payment is gone, another merchant's or not Pending anymore, nothing to do.
+         */
+        Skipped,
+        /**
+         * The payment was written again while at the bank, the answer was dropped.
+         */
+        Superseded,
+        /**
+         * The bank didn't answer, the job should be retried, see {@link MakePaymentJob#nextAttempt()}.
+         */
+        Retry,
+        /**
+         * The answer couldn't be saved, and there's no outbox to keep it.
+         */
+        Failed
+    }
+
+    private final PaymentStore paymentStore;
+    private final BankConnector bankConnector;
+    private final MakePaymentOutbox makePaymentOutbox;
+    private final long bankTimeoutMillis;
+    private final LambdaLogger logger = LambdaRuntime.getLogger();
+
+    /**
+     * @param makePaymentOutbox where answers that failed to save go to be saved later, or null.
+     */
+    public MakePaymentWorker(PaymentStore paymentStore, BankConnector bankConnector, MakePaymentOutbox makePaymentOutbox,
+        long bankTimeoutMillis) {
+        this.paymentStore = paymentStore;
+        this.bankConnector = bankConnector;
+        this.makePaymentOutbox = makePaymentOutbox;
+        this.bankTimeoutMillis = bankTimeoutMillis;
+    }
+
+    /**
+     * @return what became of the job. The caller queues a Retry or Resubmit again, unless it's the last attempt.
+     */
+    public Outcome process(MakePaymentJob job) {
+        MerchantPayment payment = paymentStore.getLatestMerchantPayment(job.getPaymentId());
+        if (payment == null || !payment.getMerchantId().equals(job.getMerchantId())
+            || !PaymentStatus.Pending.name().equals(payment.getStatus())) {
+            return Outcome.Skipped;
+        }
+
+        // The bank is told the status from before the payment was queued, a Pending one is a resubmission.
+        payment.setStatus(job.getPreviousStatus());
+        PaymentStatus paymentStatus;
+        try {
+            paymentStatus = bankConnector.makePayment(payment, bankTimeoutMillis).join();
+        } catch (CompletionException | CancellationException e) {
+            return Outcome.Retry;
+        }
+        if (paymentStatus == PaymentStatus.Pending) {
+            return Outcome.Resubmit;
+        }
+
+        payment.setStatus(paymentStatus.name());
+        try {
+            paymentStore.saveMakePayment(payment);
+            return Outcome.Settled;
+        } catch (ConditionalCheckFailedException e) {
+            return Outcome.Superseded;
+        } catch (RuntimeException e) {
+            if (makePaymentOutbox != null && makePaymentOutbox.append(payment)) {
+                return Outcome.Settled;
+            }
+            logger.log(Logs.withStackTrace("Failed saving the bank's answer for paymentId: " + payment.getPaymentId(),
+                e));
+            return Outcome.Failed;
+        }
+    }
+}
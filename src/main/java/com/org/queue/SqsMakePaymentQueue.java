@@ -0,0 +1,38 @@
+package com.org.queue;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.org.json.PaymentJson;
+
+/**
+ * {@link MakePaymentQueue} on SQS, consumed by {@link com.org.lambda.MakePaymentWorkerHandler}. A job that keeps failing
+ * goes to the queue's dead-letter queue, its payment stays Pending until the merchant resubmits it.
+ * <p>
+ * Jobs to retry or resubmit are delayed like the {@link InMemoryMakePaymentQueue} backs them off, doubling from a second,
+ * which is as fine as SQS delays get.
+ */
+public class SqsMakePaymentQueue implements MakePaymentQueue {
+
+    private static final int BASE_DELAY_SECONDS = 1;
+    private static final int MAX_DELAY_SECONDS = 900;
+
+    private final AmazonSQS sqs;
+    private final String queueUrl;
+
+    public SqsMakePaymentQueue(AmazonSQS sqs, String queueUrl) {
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+    }
+
+    @Override
+    public void send(MakePaymentJob job) {
+        sqs.sendMessage(new SendMessageRequest(queueUrl, PaymentJson.write(job)).withDelaySeconds(delaySeconds(job)));
+    }
+
+    static int delaySeconds(MakePaymentJob job) {
+        if (job.getAttempt() == 0) {
+            return 0;
+        }
+        return (int) Math.min(MAX_DELAY_SECONDS, (long) BASE_DELAY_SECONDS << Math.min(job.getAttempt() - 1, 30));
+    }
+}
@@ -0,0 +1,225 @@
+package com.org.ratelimit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket per merchantId, so one merchant can't use up the table's capacity for everyone.
+ * <p>
+ * The buckets are in memory, so the limit holds per instance: a merchant spread over n gateways gets n times the limit.
+ * <p>
+ * Buckets are kept as GCRA (generic cell rate algorithm), the same limit as a token bucket but stored as one timestamp,
+ * the theoretical arrival time of the next permit, updated with a CAS. There are no locks: buckets live in a
+ * {@link ConcurrentHashMap}, so merchants don't contend with each other, and requests of the same merchant retry the CAS.
+ * <p>
+ * The map is capped, so requests with made up merchantIds can't grow it without bound. Once it's full, and sweeping out
+ * the idle buckets didn't make room, merchants without a bucket share one bucket at the default limit.
+ */
+public class MerchantRateLimiter {
+
+    private static final int MAX_BUCKETS = 100_000;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final MerchantLimit defaultLimit;
+    private final Map<String, MerchantLimit> merchantLimits;
+    private final int maxBuckets;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket overflowBucket = new Bucket();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param defaultLimit   limit of merchants without their own, or null for no limit.
+     * @param merchantLimits limits by merchantId, overriding the default.
+     */
+    public MerchantRateLimiter(MerchantLimit defaultLimit, Map<String, MerchantLimit> merchantLimits) {
+        this(defaultLimit, merchantLimits, MAX_BUCKETS);
+    }
+
+    /**
+     * Package visible for testing
+     */
+    MerchantRateLimiter(MerchantLimit defaultLimit, Map<String, MerchantLimit> merchantLimits, int maxBuckets) {
+        this.defaultLimit = defaultLimit;
+        this.merchantLimits = Map.copyOf(merchantLimits);
+        this.maxBuckets = maxBuckets;
+    }
+
+    public static MerchantRateLimiter unlimited() {
+        return new MerchantRateLimiter(null, Map.of());
+    }
+
+    /**
+     * Parses per merchant limits written as {@code merchantA=200:400,merchantB=5}, permits per second and an optional burst.
+     */
+    public static Map<String, MerchantLimit> parseMerchantLimits(String spec) {
+        Map<String, MerchantLimit> limits = new HashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return limits;
+        }
+        for (String entry : spec.split(",")) {
+            String[] merchantLimit = entry.trim().split("=", 2);
+            if (merchantLimit.length != 2) {
+                throw new IllegalArgumentException("Invalid merchant rate limit: " + entry);
+            }
+            limits.put(merchantLimit[0].trim(), MerchantLimit.parse(merchantLimit[1].trim()));
+        }
+        return limits;
+    }
+
+    /**
+     * Takes a permit from the merchant's bucket.
+     *
+     * @return 0 if the request can go ahead, otherwise how long until it would, in nanoseconds.
+     */
+    public long tryAcquire(String merchantId) {
+        return tryAcquire(merchantId, 1);
+    }
+
+    /**
+     * Takes several permits at once, e.g. one per payment of a batch request. It goes ahead as long as the bucket has a
+     * permit left, even if it takes more than that, and the merchant's next requests wait until the bucket is paid back.
+     * That way a batch bigger than the burst isn't rejected forever.
+     *
+     * @return 0 if the request can go ahead, otherwise how long until it would, in nanoseconds.
+     */
+    public long tryAcquire(String merchantId, int permits) {
+        if (merchantId == null) {
+            // Rejected by the handler anyway, counted as one merchant until then.
+            merchantId = "";
+        }
+        MerchantLimit limit = merchantLimits.getOrDefault(merchantId, defaultLimit);
+        if (limit == null) {
+            return 0;
+        }
+
+        Bucket bucket = buckets.get(merchantId);
+        if (bucket == null) {
+            bucket = newBucket(merchantId);
+        }
+
+        long now = System.nanoTime();
+        long cost = limit.getIntervalNanos() * permits;
+        long tolerance = limit.getToleranceNanos();
+        while (true) {
+            long theoreticalArrival = bucket.theoreticalArrival.get();
+            long start = theoreticalArrival - now < 0 ? now : theoreticalArrival;
+            long waitNanos = start - now - tolerance;
+            if (waitNanos > 0) {
+                bucket.rejected.increment();
+                return waitNanos;
+            }
+            if (bucket.theoreticalArrival.compareAndSet(theoreticalArrival, start + cost)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return requests rejected so far, by merchantId, for the merchants that had any.
+     */
+    public Map<String, Long> getRejectedCounts() {
+        Map<String, Long> rejected = new HashMap<>();
+        buckets.forEach((merchantId, bucket) -> {
+            long count = bucket.rejected.sum();
+            if (count > 0) {
+                rejected.put(merchantId, count);
+            }
+        });
+        return rejected;
+    }
+
+    public long getRejectedCount(String merchantId) {
+        Bucket bucket = buckets.get(merchantId);
+        return bucket == null ? 0 : bucket.rejected.sum();
+    }
+
+    /**
+     * @return a new bucket for the merchant, or the shared overflow bucket if the map is full. Merchants with their own
+     * limit always get a bucket, there are only as many of them as are configured.
+     */
+    private Bucket newBucket(String merchantId) {
+        if (buckets.size() >= maxBuckets && !merchantLimits.containsKey(merchantId)) {
+            evictIdleBuckets();
+            if (buckets.size() >= maxBuckets) {
+                return overflowBucket;
+            }
+        }
+        return buckets.computeIfAbsent(merchantId, id -> new Bucket());
+    }
+
+    /**
+     * A bucket that refilled completely is the same as no bucket, so those can go when there are too many merchants,
+     * e.g. requests with made up merchantIds. Their rejection counts go with them. Sweeps at most once a second, by one
+     * thread, since each one scans every bucket.
+     */
+    private void evictIdleBuckets() {
+        long now = System.nanoTime();
+        long sweepAt = nextSweep.get();
+        if (sweepAt - now > 0 || !nextSweep.compareAndSet(sweepAt, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        buckets.values().removeIf(bucket -> bucket.theoreticalArrival.get() - now <= 0);
+    }
+
+    private static class Bucket {
+        private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+        private final LongAdder rejected = new LongAdder();
+    }
+
+    /**
+     * A sustained rate, and how many requests can go through at once after a quiet period.
+     */
+    public static class MerchantLimit {
+        private final double permitsPerSecond;
+        private final int burst;
+        private final long intervalNanos;
+
+        public MerchantLimit(double permitsPerSecond, int burst) {
+            if (permitsPerSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Rate limits need a positive rate and a burst of at least 1");
+            }
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        }
+
+        /**
+         * Parses {@code RATE} or {@code RATE:BURST}, the burst defaulting to one second's worth of permits.
+         */
+        public static MerchantLimit parse(String spec) {
+            String[] parts = spec.split(":");
+            try {
+                double permitsPerSecond = Double.parseDouble(parts[0]);
+                int burst = parts.length > 1 ? Integer.parseInt(parts[1]) : (int) Math.max(1, Math.ceil(permitsPerSecond));
+                return new MerchantLimit(permitsPerSecond, burst);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid rate limit: " + spec, e);
+            }
+        }
+
+        public double getPermitsPerSecond() {
+            return permitsPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        long getIntervalNanos() {
+            return intervalNanos;
+        }
+
+        long getToleranceNanos() {
+            return intervalNanos * (burst - 1);
+        }
+
+        @Override
+        public String toString() {
+            return permitsPerSecond + "/s, burst " + burst;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.org.reconcile;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.org.bank.BankConnector;
+import com.org.bank.BankSimulator;
+import com.org.bank.ExecutorBankConnector;
+import com.org.dynamodb.MerchantPaymentCodec;
+import com.org.dynamodb.ParallelScanner;
+import com.org.faults.FaultInjector;
+import com.org.modules.DynamoDBMapperModule;
+import com.org.modules.Env;
+import com.org.modules.Logs;
+import com.org.modules.PaymentStoreModule;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+import com.org.store.ClaimingPaymentStore;
+import com.org.store.PaymentStore;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the payments the store and the bank disagree on, e.g. the bank settled a payment but saving its answer failed
+ * (see Availability and Consistency in the README), and reports them or fixes them.
+ * <p>
+ * Only payments that went to the bank without settling are checked: Pending ones, and Processing ones whose claim lapsed,
+ * i.e. the make-payment holding it died between the bank call and the write. A Processing payment with a live claim is
+ * still being made, and a Created one never reached the bank as far as the store knows, a failed save without a claim
+ * leaves the payment as it was (that's for the {@link com.org.outbox.MakePaymentOutbox}). The bank is asked again, which is
+ * safe since it's idempotent on paymentId, and an answer that differs from the stored status is a mismatch. It's asked
+ * with the payment as first made, i.e. Created: sent as Pending it would be a resubmission, which the bank may settle,
+ * and the reconciler would then report and write an answer to a payment the merchant never made again. Fixes are
+ * conditional on the version scanned, so a payment the gateway wrote since is left to the gateway.
+ * <p>
+ * Run with: java -cp target/PaymentGateway-0.1.jar com.org.reconcile.PaymentReconciler, configured with the env variables
+ * merchantPaymentTableName, reconcileSegments (8), reconcileReadCapacityFraction (0.25, of the table's provisioned read
+ * capacity), reconcileReadUnitsPerSecond (overrides the fraction, needed for an on-demand table), bankTimeoutMillis (5000)
+ * and reconcileFix (false, only reports the mismatches). Fixes are written to the store paymentStoreType picks.
+ */
+public class PaymentReconciler {
+
+    private static final String UNSETTLED_FILTER = "#status IN (:pending, :processing, :pendingCode, :processingCode)";
+
+    public enum Outcome {
+        /**
+         * Settled, Created, or Processing with a live claim, not checked.
+         */
+        Skipped,
+        /**
+         * The bank agrees with the store.
+         */
+        Consistent,
+        /**
+         * The bank disagrees with the store, reported but not fixed.
+         */
+        Mismatch,
+        /**
+         * The bank disagreed with the store, which now has the bank's answer.
+         */
+        Fixed,
+        /**
+         * The payment was written again since it was scanned, the fix was dropped.
+         */
+        Superseded,
+        /**
+         * The bank didn't answer, the payment is left as it is.
+         */
+        Unanswered,
+        /**
+         * The fix couldn't be saved.
+         */
+        Failed
+    }
+
+    private final PaymentStore paymentStore;
+    private final BankConnector bankConnector;
+    private final long bankTimeoutMillis;
+    private final boolean fix;
+    private final Map<Outcome, LongAdder> outcomes = new EnumMap<>(Outcome.class);
+    private final LambdaLogger logger = LambdaRuntime.getLogger();
+
+    /**
+     * @param fix true to write the bank's answer for mismatches, false to only report them.
+     */
+    public PaymentReconciler(PaymentStore paymentStore, BankConnector bankConnector, long bankTimeoutMillis, boolean fix) {
+        this.paymentStore = paymentStore;
+        this.bankConnector = bankConnector;
+        this.bankTimeoutMillis = bankTimeoutMillis;
+        this.fix = fix;
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        AmazonDynamoDB dynamoDB = DynamoDBMapperModule.provideAmazonDynamoDB();
+        String tableName = Env.get("merchantPaymentTableName", null);
+        int segments = Env.getInt("reconcileSegments", 8);
+        double readUnitsPerSecond = Env.getDouble("reconcileReadUnitsPerSecond", 0);
+        if (readUnitsPerSecond <= 0) {
+            double provisioned = ParallelScanner.provisionedReadUnits(dynamoDB, tableName);
+            if (provisioned <= 0) {
+                throw new IllegalArgumentException("The table has no provisioned read capacity, set reconcileReadUnitsPerSecond");
+            }
+            readUnitsPerSecond = provisioned * Env.getDouble("reconcileReadCapacityFraction", 0.25);
+        }
+
+        ParallelScanner scanner = new ParallelScanner(dynamoDB, segments, readUnitsPerSecond);
+        PaymentReconciler reconciler = new PaymentReconciler(PaymentStoreModule.providePaymentStore(),
+            new BankSimulator(ExecutorBankConnector.newExecutor(segments, segments), FaultInjector.NONE),
+            Env.getLong("bankTimeoutMillis", 5_000), Env.getBoolean("reconcileFix", false));
+        reconciler.run(scanner, tableName);
+        System.out.println(scanner);
+        System.out.println(reconciler);
+    }
+
+    /**
+     * Scans the table for Pending and Processing payments, in either item format, and reconciles them on the scanning
+     * threads.
+     */
+    public void run(ParallelScanner scanner, String tableName) throws InterruptedException, ExecutionException {
+        Map<String, AttributeValue> values = Map.of(
+            ":pending", new AttributeValue(PaymentStatus.Pending.name()),
+            ":processing", new AttributeValue(PaymentStatus.Processing.name()),
+            ":pendingCode", MerchantPaymentCodec.statusValue(PaymentStatus.Pending.name()),
+            ":processingCode", MerchantPaymentCodec.statusValue(PaymentStatus.Processing.name()));
+        ScanRequest request = new ScanRequest()
+            .withTableName(tableName)
+            .withFilterExpression(UNSETTLED_FILTER)
+            .withExpressionAttributeNames(Map.of("#status", MerchantPaymentCodec.STATUS))
+            .withExpressionAttributeValues(values);
+
+        MerchantPaymentCodec codec = new MerchantPaymentCodec();
+        scanner.scan(request, item -> reconcile(codec.fromItem(item), Instant.now().getEpochSecond()));
+    }
+
+    /**
+     * Checks a payment against the bank, and fixes it if it's a mismatch and fixing is on. Safe to call from several threads.
+     */
+    public Outcome reconcile(PaymentRecord record, long nowEpochSeconds) {
+        Outcome outcome = check(record, nowEpochSeconds);
+        outcomes.get(outcome).increment();
+        return outcome;
+    }
+
+    private Outcome check(PaymentRecord record, long nowEpochSeconds) {
+        boolean processing = PaymentStatus.Processing.name().equals(record.getStatus());
+        if (!PaymentStatus.Pending.name().equals(record.getStatus())
+            && !(processing && record.getClaimExpiryTimestampSeconds() < nowEpochSeconds)) {
+            return Outcome.Skipped;
+        }
+
+        MerchantPayment submitted = record.toMerchantPayment();
+        submitted.setStatus(PaymentStatus.Created.name());
+        PaymentStatus bankStatus;
+        try {
+            bankStatus = bankConnector.makePayment(submitted, bankTimeoutMillis).join();
+        } catch (CompletionException | CancellationException e) {
+            return Outcome.Unanswered;
+        }
+        if (bankStatus.name().equals(record.getStatus())) {
+            return Outcome.Consistent;
+        }
+
+        logger.log("Mismatch for paymentId: " + record.getPaymentId() + ", stored " + record.getStatus() + ", bank "
+            + bankStatus);
+        if (!fix) {
+            return Outcome.Mismatch;
+        }
+        try {
+            ClaimingPaymentStore claimingStore = ClaimingPaymentStore.of(paymentStore);
+            if (processing && claimingStore != null) {
+                claimingStore.completeMakePayment(record.getPaymentId(), record.getVersion(), bankStatus.name());
+            } else {
+                MerchantPayment payment = record.toMerchantPayment();
+                payment.setStatus(bankStatus.name());
+                payment.setClaimExpiryTimestampSeconds(null);
+                paymentStore.saveMakePayment(payment);
+            }
+            return Outcome.Fixed;
+        } catch (ConditionalCheckFailedException e) {
+            return Outcome.Superseded;
+        } catch (RuntimeException e) {
+            logger.log(Logs.withStackTrace("Failed fixing paymentId: " + record.getPaymentId(), e));
+            return Outcome.Failed;
+        }
+    }
+
+    public long getCount(Outcome outcome) {
+        return outcomes.get(outcome).sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("PaymentReconciler{fix=").append(fix);
+        for (Outcome outcome : Outcome.values()) {
+            builder.append(", ").append(outcome).append('=').append(getCount(outcome));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,202 @@
+package com.org.server;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.org.lambda.BatchCreatePaymentHandler;
+import com.org.lambda.CreatePaymentHandler;
+import com.org.lambda.GetPaymentHandler;
+import com.org.lambda.ListPaymentsHandler;
+import com.org.lambda.MakePaymentHandler;
+import com.org.lambda.MerchantStatsHandler;
+import com.org.modules.Env;
+import com.org.modules.GatewayModule;
+import com.org.queue.InMemoryMakePaymentQueue;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.org.modules.ResponseBuilder.error;
+
+/**
+ * Runs the gateway as a long-lived service on the JDK's HttpServer, with the same routes and JSON as the API Gateway
+ * deployment. All requests share one set of handlers, so the JIT stays warm and the caches are shared. Each handler's
+ * {@code handle} method takes the request without the API Gateway event around it, and is what its Lambda
+ * {@code handleRequest} calls too.
+ * <p>
+ * Configured with the env variables serverPort (8080), serverExecutor ("fixed", or "virtual" for a thread per request on
+ * JDKs with virtual threads), serverThreads (64, for the fixed pool) and serverShutdownGraceSeconds (10).
+ */
+public class GatewayServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public GatewayServer(InetSocketAddress address, ExecutorService executor, CreatePaymentHandler createPaymentHandler,
+        BatchCreatePaymentHandler batchCreatePaymentHandler, MakePaymentHandler makePaymentHandler,
+        GetPaymentHandler getPaymentHandler, ListPaymentsHandler listPaymentsHandler,
+        MerchantStatsHandler merchantStatsHandler) throws IOException {
+        this.executor = executor;
+        this.server = HttpServer.create(address, Env.getInt("serverBacklog", 1024));
+        server.setExecutor(executor);
+
+        route("/create-payment", "POST", exchange -> createPaymentHandler.handle(body(exchange)));
+        route("/create-payments", "POST", exchange -> batchCreatePaymentHandler.handle(body(exchange)));
+        route("/make-payment", "POST", exchange -> makePaymentHandler.handle(body(exchange)));
+        route("/get-payment", "GET", exchange -> getPaymentHandler.handle(null, queryParameters(exchange.getRequestURI())));
+        route("/get-payments", "POST", exchange -> getPaymentHandler.handle(body(exchange), null));
+        route("/list-payments", "GET", exchange -> listPaymentsHandler.handle(queryParameters(exchange.getRequestURI())));
+        route("/merchant-stats", "GET", exchange -> merchantStatsHandler.handle(queryParameters(exchange.getRequestURI())));
+        server.createContext("/", exchange -> respond(exchange, error("Not found", 404)));
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Builds the module, and with it the store and its connections, before taking traffic.
+        GatewayModule gatewayModule = GatewayModule.get();
+        GatewayServer server = new GatewayServer(new InetSocketAddress(Env.getInt("serverPort", 8080)),
+            newExecutor(Env.get("serverExecutor", "fixed"), Env.getInt("serverThreads", 64)),
+            new CreatePaymentHandler(), new BatchCreatePaymentHandler(), new MakePaymentHandler(), new GetPaymentHandler(),
+            new ListPaymentsHandler(), new MerchantStatsHandler());
+
+        // Lambdas log their metrics after every invocation, the server does it for all handlers every interval.
+        gatewayModule.getMetrics().startPeriodicFlush(Env.getLong("metricsFlushIntervalSeconds", 60));
+        if (gatewayModule.getExpiryIndex() != null) {
+            gatewayModule.getExpiryIndex().start();
+        }
+
+        int graceSeconds = Env.getInt("serverShutdownGraceSeconds", 10);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(graceSeconds);
+            gatewayModule.getMetrics().close();
+            if (gatewayModule.getExpiryIndex() != null) {
+                gatewayModule.getExpiryIndex().close();
+            }
+            if (gatewayModule.getMakePaymentQueue() instanceof InMemoryMakePaymentQueue) {
+                // The queue is lost with the process, give the workers the grace period to empty it.
+                InMemoryMakePaymentQueue queue = (InMemoryMakePaymentQueue) gatewayModule.getMakePaymentQueue();
+                try {
+                    queue.awaitIdle(TimeUnit.SECONDS.toMillis(graceSeconds));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                queue.close();
+            }
+            if (gatewayModule.getMakePaymentOutbox() != null) {
+                gatewayModule.getMakePaymentOutbox().close();
+            }
+        }, "gateway-shutdown"));
+
+        server.start();
+        System.out.println("Listening on " + server.getAddress());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops accepting connections, then waits up to the grace period for the requests in flight to finish.
+     */
+    public void stop(int graceSeconds) {
+        server.stop(graceSeconds);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(graceSeconds, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param type "virtual" for a virtual thread per request, falling back to a fixed pool on JDKs without them.
+     */
+    public static ExecutorService newExecutor(String type, int threads) {
+        if ("virtual".equals(type)) {
+            try {
+                // Looked up reflectively, the build targets Java 11.
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads aren't available on Java " + Runtime.version() + ", using a fixed pool");
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, "gateway-http-" + count.incrementAndGet()));
+    }
+
+    /**
+     * Query parameters the way API Gateway passes them: decoded, repeated ones joined with commas, null if there are none.
+     */
+    static Map<String, String> queryParameters(URI uri) {
+        String query = uri.getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            String name = URLDecoder.decode(separator < 0 ? pair : pair.substring(0, separator), StandardCharsets.UTF_8);
+            String value = separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+            parameters.merge(name, value, (first, second) -> first + "," + second);
+        }
+        return parameters;
+    }
+
+    private void route(String path, String method, Route route) {
+        server.createContext(path, exchange -> {
+            APIGatewayV2HTTPResponse response;
+            if (!path.equals(exchange.getRequestURI().getPath())) {
+                response = error("Not found", 404);
+            } else if (!method.equals(exchange.getRequestMethod())) {
+                response = error("Method not allowed, use " + method, 405);
+            } else {
+                try {
+                    response = route.handle(exchange);
+                } catch (Exception e) {
+                    response = error("Internal Error", 500);
+                }
+            }
+            respond(exchange, response);
+        });
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        return new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, APIGatewayV2HTTPResponse response) throws IOException {
+        byte[] body = response.getBody() == null ? new byte[0] : response.getBody().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (response.getHeaders() != null) {
+            response.getHeaders().forEach(exchange.getResponseHeaders()::set);
+        }
+        exchange.sendResponseHeaders(response.getStatusCode(), body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        exchange.close();
+    }
+
+    private interface Route {
+        APIGatewayV2HTTPResponse handle(HttpExchange exchange) throws IOException;
+    }
+}
@@ -0,0 +1,43 @@
+package com.org.store;
+
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.org.expiry.PaymentExpiryIndex;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+
+/**
+ * {@link ExpiryIndexedPaymentStore} for a store that can claim. A claimed payment has no expiry anymore, until the claim
+ * is released with the expiry it had.
+ */
+public class ClaimingExpiryIndexedPaymentStore extends ExpiryIndexedPaymentStore implements ClaimingPaymentStore {
+
+    private final ClaimingPaymentStore claimingStore;
+
+    public ClaimingExpiryIndexedPaymentStore(ClaimingPaymentStore claimingStore, PaymentExpiryIndex expiryIndex) {
+        super(claimingStore, expiryIndex);
+        this.claimingStore = claimingStore;
+    }
+
+    @Override
+    public MerchantPayment claimMakePayment(MerchantPayment payment, long nowEpochSeconds, long leaseSeconds) {
+        if (getExpiryIndex().isExpired(payment.getPaymentId())) {
+            throw new ConditionalCheckFailedException("Payment expired: " + payment.getPaymentId());
+        }
+        MerchantPayment previous = claimingStore.claimMakePayment(payment, nowEpochSeconds, leaseSeconds);
+        getExpiryIndex().untrack(payment.getPaymentId());
+        return previous;
+    }
+
+    @Override
+    public void completeMakePayment(String paymentId, long claimedVersion, String status) {
+        claimingStore.completeMakePayment(paymentId, claimedVersion, status);
+    }
+
+    @Override
+    public void releaseClaim(String paymentId, long claimedVersion, String previousStatus, Long previousExpiryTimestampSeconds) {
+        claimingStore.releaseClaim(paymentId, claimedVersion, previousStatus, previousExpiryTimestampSeconds);
+        if (PaymentStatus.Created.name().equals(previousStatus) && previousExpiryTimestampSeconds != null) {
+            getExpiryIndex().track(paymentId, previousExpiryTimestampSeconds);
+        }
+    }
+}
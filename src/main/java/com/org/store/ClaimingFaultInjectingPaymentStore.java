@@ -0,0 +1,35 @@
+package com.org.store;
+
+import com.org.faults.FaultInjector;
+import com.org.payments.MerchantPayment;
+
+/**
+ * {@link FaultInjectingPaymentStore} for a store that can claim, claims are conditional writes.
+ */
+public class ClaimingFaultInjectingPaymentStore extends FaultInjectingPaymentStore implements ClaimingPaymentStore {
+
+    private final ClaimingPaymentStore claimingStore;
+
+    public ClaimingFaultInjectingPaymentStore(ClaimingPaymentStore claimingStore, FaultInjector faultInjector) {
+        super(claimingStore, faultInjector);
+        this.claimingStore = claimingStore;
+    }
+
+    @Override
+    public MerchantPayment claimMakePayment(MerchantPayment payment, long nowEpochSeconds, long leaseSeconds) {
+        injectFault(true);
+        return claimingStore.claimMakePayment(payment, nowEpochSeconds, leaseSeconds);
+    }
+
+    @Override
+    public void completeMakePayment(String paymentId, long claimedVersion, String status) {
+        injectFault(true);
+        claimingStore.completeMakePayment(paymentId, claimedVersion, status);
+    }
+
+    @Override
+    public void releaseClaim(String paymentId, long claimedVersion, String previousStatus, Long previousExpiryTimestampSeconds) {
+        injectFault(true);
+        claimingStore.releaseClaim(paymentId, claimedVersion, previousStatus, previousExpiryTimestampSeconds);
+    }
+}
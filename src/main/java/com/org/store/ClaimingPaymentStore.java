@@ -0,0 +1,43 @@
+package com.org.store;
+
+import com.org.payments.MerchantPayment;
+
+/**
+ * A {@link PaymentStore} that can claim a payment for make-payment, so only one request at a time calls the bank for it.
+ */
+public interface ClaimingPaymentStore extends PaymentStore {
+
+    /**
+     * Claims a payment for make-payment in a single conditional write. The stored payment must exist, belong to the
+     * payment's merchant, not be expired, and be Created or Pending (or Processing with a lapsed claim). It's then moved to
+     * {@link com.org.payments.PaymentStatus#Processing} with the card details of the given payment, a claim lease until
+     * {@code nowEpochSeconds + leaseSeconds}, no expiry, and the next version, which is set on the given payment.
+     *
+     * @return the stored payment as it was before the claim.
+     * @throws com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException if the payment can't be claimed,
+     *                                                                                 read it to find out why.
+     */
+    MerchantPayment claimMakePayment(MerchantPayment payment, long nowEpochSeconds, long leaseSeconds);
+
+    /**
+     * Writes the final status of a payment claimed by {@link #claimMakePayment}, without reading it first. Fails with a
+     * {@link com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException} if the claim was taken over since.
+     */
+    void completeMakePayment(String paymentId, long claimedVersion, String status);
+
+    /**
+     * Hands back a payment claimed by {@link #claimMakePayment} that didn't get an answer from the bank, putting back the
+     * status and expiry it had before the claim and dropping the card details of the attempt. Fails with a
+     * {@link com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException} if the claim was taken over since.
+     *
+     * @param previousExpiryTimestampSeconds the expiry before the claim, null for none.
+     */
+    void releaseClaim(String paymentId, long claimedVersion, String previousStatus, Long previousExpiryTimestampSeconds);
+
+    /**
+     * @return the store if it can claim, otherwise null.
+     */
+    static ClaimingPaymentStore of(PaymentStore paymentStore) {
+        return paymentStore instanceof ClaimingPaymentStore ? (ClaimingPaymentStore) paymentStore : null;
+    }
+}
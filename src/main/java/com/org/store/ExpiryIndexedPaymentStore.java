@@ -0,0 +1,90 @@
+package com.org.store;
+
+import com.org.expiry.PaymentExpiryIndex;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Wraps a store to keep a {@link PaymentExpiryIndex} of its Created payments up to date, and to answer for payments the
+ * index knows have expired without reading the store: they're reported missing, which is what the handlers make of an
+ * expired payment anyway. Use {@link ClaimingExpiryIndexedPaymentStore} to wrap a store that can claim.
+ */
+public class ExpiryIndexedPaymentStore implements PaymentStore {
+
+    private final PaymentStore paymentStore;
+    private final PaymentExpiryIndex expiryIndex;
+
+    public ExpiryIndexedPaymentStore(PaymentStore paymentStore, PaymentExpiryIndex expiryIndex) {
+        this.paymentStore = paymentStore;
+        this.expiryIndex = expiryIndex;
+    }
+
+    @Override
+    public void save(MerchantPayment payment) {
+        paymentStore.save(payment);
+        indexSaved(payment);
+    }
+
+    @Override
+    public void saveAll(List<MerchantPayment> payments) {
+        paymentStore.saveAll(payments);
+        for (MerchantPayment payment : payments) {
+            indexSaved(payment);
+        }
+    }
+
+    @Override
+    public void saveMakePayment(MerchantPayment payment) {
+        paymentStore.saveMakePayment(payment);
+        indexSaved(payment);
+    }
+
+    @Override
+    public MerchantPayment getMerchantPayment(String paymentId) {
+        return expiryIndex.isExpired(paymentId) ? null : paymentStore.getMerchantPayment(paymentId);
+    }
+
+    @Override
+    public MerchantPayment getLatestMerchantPayment(String paymentId) {
+        return expiryIndex.isExpired(paymentId) ? null : paymentStore.getLatestMerchantPayment(paymentId);
+    }
+
+    @Override
+    public Map<String, MerchantPayment> getMerchantPayments(Collection<String> paymentIds) {
+        List<String> unexpired = new ArrayList<>(paymentIds.size());
+        for (String paymentId : paymentIds) {
+            if (!expiryIndex.isExpired(paymentId)) {
+                unexpired.add(paymentId);
+            }
+        }
+        return paymentStore.getMerchantPayments(unexpired);
+    }
+
+    @Override
+    public PaymentCursor listMerchantPayments(PaymentListQuery query, Consumer<PaymentRecord> sink) {
+        return paymentStore.listMerchantPayments(query, sink);
+    }
+
+    public PaymentStore getPaymentStore() {
+        return paymentStore;
+    }
+
+    public PaymentExpiryIndex getExpiryIndex() {
+        return expiryIndex;
+    }
+
+    private void indexSaved(MerchantPayment payment) {
+        if (PaymentStatus.Created.name().equals(payment.getStatus()) && payment.getExpiryTimestampSeconds() != null) {
+            expiryIndex.track(payment.getPaymentId(), payment.getExpiryTimestampSeconds());
+        } else {
+            expiryIndex.untrack(payment.getPaymentId());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.org.store;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.org.faults.Fault;
+import com.org.faults.FaultInjector;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Wraps a store to add latency and fail calls the way DynamoDB does: 500s, throttling, and on conditional writes
+ * version check failures. Faults are injected before the call, so a failed call never reaches the store. Use
+ * {@link ClaimingFaultInjectingPaymentStore} to wrap a store that can claim.
+ */
+public class FaultInjectingPaymentStore implements PaymentStore {
+
+    private final PaymentStore paymentStore;
+    private final FaultInjector faultInjector;
+
+    public FaultInjectingPaymentStore(PaymentStore paymentStore, FaultInjector faultInjector) {
+        this.paymentStore = paymentStore;
+        this.faultInjector = faultInjector;
+    }
+
+    @Override
+    public void save(MerchantPayment payment) {
+        injectFault(true);
+        paymentStore.save(payment);
+    }
+
+    @Override
+    public void saveAll(List<MerchantPayment> payments) {
+        injectFault(false);
+        paymentStore.saveAll(payments);
+    }
+
+    @Override
+    public void saveMakePayment(MerchantPayment payment) {
+        injectFault(true);
+        paymentStore.saveMakePayment(payment);
+    }
+
+    @Override
+    public MerchantPayment getMerchantPayment(String paymentId) {
+        injectFault(false);
+        return paymentStore.getMerchantPayment(paymentId);
+    }
+
+    @Override
+    public MerchantPayment getLatestMerchantPayment(String paymentId) {
+        injectFault(false);
+        return paymentStore.getLatestMerchantPayment(paymentId);
+    }
+
+    @Override
+    public Map<String, MerchantPayment> getMerchantPayments(Collection<String> paymentIds) {
+        injectFault(false);
+        return paymentStore.getMerchantPayments(paymentIds);
+    }
+
+    @Override
+    public PaymentCursor listMerchantPayments(PaymentListQuery query, Consumer<PaymentRecord> sink) {
+        injectFault(false);
+        return paymentStore.listMerchantPayments(query, sink);
+    }
+
+    public PaymentStore getPaymentStore() {
+        return paymentStore;
+    }
+
+    void injectFault(boolean conditionalWrite) {
+        Fault fault = faultInjector.next();
+        if (!fault.sleep()) {
+            throw new AbortedException("Interrupted during injected latency");
+        }
+
+        switch (fault.getKind()) {
+            case ERROR:
+                AmazonDynamoDBException error = new AmazonDynamoDBException("Injected internal server error");
+                error.setStatusCode(500);
+                error.setErrorCode("InternalServerError");
+                throw error;
+            case THROTTLE:
+                throw new ProvisionedThroughputExceededException("Injected throttling");
+            case CONDITIONAL_CHECK_FAILED:
+                if (conditionalWrite) {
+                    throw new ConditionalCheckFailedException("Injected conditional check failure");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.org.store;
+
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Concurrent in-memory {@link PaymentStore} for standalone deployments, load tests and fast tests.
+ * <p>
+ * Payments are spread over lock stripes by paymentId, each stripe being a plain {@link HashMap} guarded by a read/write lock,
+ * so readers of different payments never contend and writers only block their own stripe.
+ * Payments are kept as compact immutable {@link PaymentRecord}s with primitive fields, so millions of them stay cheap for the GC.
+ * <p>
+ * Listings go through a per-merchant index sorted by (creationTimestampSeconds, paymentId), the in-memory MerchantCreationGSI.
+ */
+public class InMemoryPaymentStore implements ClaimingPaymentStore {
+
+    private static final int DEFAULT_STRIPES = 256;
+    // Sorts after any paymentId, to include all the payments of the last second of a range.
+    private static final String MAX_PAYMENT_ID = "\uffff";
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final Map<String, NavigableSet<IndexKey>> merchantIndex = new ConcurrentHashMap<>();
+
+    public InMemoryPaymentStore() {
+        this(DEFAULT_STRIPES, 0);
+    }
+
+    /**
+     * @param stripes          number of lock stripes, rounded up to a power of two.
+     * @param expectedPayments payments to size the stripes for upfront, to avoid rehashing while loading.
+     */
+    public InMemoryPaymentStore(int stripes, int expectedPayments) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Stripe[size];
+        this.mask = size - 1;
+        int perStripe = expectedPayments / size;
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    @Override
+    public void save(MerchantPayment payment) {
+        write(payment, false);
+    }
+
+    @Override
+    public void saveMakePayment(MerchantPayment payment) {
+        write(payment, true);
+    }
+
+    @Override
+    public MerchantPayment getMerchantPayment(String paymentId) {
+        PaymentRecord record = getRecord(paymentId);
+        return record == null ? null : record.toMerchantPayment();
+    }
+
+    @Override
+    public PaymentCursor listMerchantPayments(PaymentListQuery query, Consumer<PaymentRecord> sink) {
+        NavigableSet<IndexKey> index = merchantIndex.get(query.getMerchantId());
+        if (index == null) {
+            return null;
+        }
+        PaymentCursor after = query.getAfter();
+        NavigableSet<IndexKey> candidates = after == null
+            ? index.headSet(new IndexKey(query.getToSeconds(), MAX_PAYMENT_ID), true)
+            : index.headSet(new IndexKey(after.getCreationTimestampSeconds(), after.getPaymentId()), false);
+
+        long nowEpochSeconds = System.currentTimeMillis() / 1000;
+        int maxEvaluated = query.getLimit() * PaymentListQuery.MAX_EVALUATED_PER_LIMIT;
+        int listed = 0;
+        int evaluated = 0;
+        IndexKey last = null;
+        for (IndexKey key : candidates.descendingSet()) {
+            if (key.creationTimestampSeconds < query.getFromSeconds()) {
+                return null;
+            }
+            if (listed == query.getLimit() || evaluated == maxEvaluated) {
+                return new PaymentCursor(last.creationTimestampSeconds, last.paymentId);
+            }
+            evaluated++;
+            last = key;
+            if (key.creationTimestampSeconds > query.getToSeconds()) {
+                // Only when the cursor came from a wider range.
+                continue;
+            }
+
+            PaymentRecord record = getRecord(key.paymentId);
+            if (record != null && !isExpired(record, nowEpochSeconds)
+                && (query.getStatus() == null || query.getStatus().equals(record.getStatus()))) {
+                sink.accept(record);
+                listed++;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public MerchantPayment claimMakePayment(MerchantPayment payment, long nowEpochSeconds, long leaseSeconds) {
+        String paymentId = payment.getPaymentId();
+        Stripe stripe = stripeFor(paymentId);
+        stripe.lock.writeLock().lock();
+        try {
+            PaymentRecord existing = stripe.payments.get(paymentId);
+            if (existing == null || !existing.getMerchantId().equals(payment.getMerchantId())
+                || isExpired(existing, nowEpochSeconds) || !isClaimable(existing, nowEpochSeconds)) {
+                throw conditionalCheckFailed(paymentId);
+            }
+            long claimedVersion = existing.hasVersion() ? existing.getVersion() + 1 : 1L;
+            PaymentRecord claimed = new PaymentRecord(paymentId,
+                existing.getMerchantId(),
+                payment.getCardNumber(),
+                payment.getCardName(),
+                payment.getCurrency(),
+                PaymentStatus.Processing.name(),
+                payment.getBillingAddress(),
+                payment.getExpiryYear() == null ? PaymentRecord.NONE_INT : payment.getExpiryYear(),
+                payment.getExpiryMonth() == null ? PaymentRecord.NONE_INT : payment.getExpiryMonth(),
+                payment.getAmount() == null ? PaymentRecord.NONE_INT : payment.getAmount(),
+                PaymentRecord.NONE_LONG,
+                existing.getCreationTimestampSeconds(),
+                nowEpochSeconds + leaseSeconds,
+                claimedVersion);
+            stripe.payments.put(paymentId, claimed);
+
+            payment.setStatus(PaymentStatus.Processing.name());
+            payment.setVersion(claimedVersion);
+            return existing.toMerchantPayment();
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void completeMakePayment(String paymentId, long claimedVersion, String status) {
+        Stripe stripe = stripeFor(paymentId);
+        stripe.lock.writeLock().lock();
+        try {
+            PaymentRecord existing = stripe.payments.get(paymentId);
+            if (existing == null || existing.getVersion() != claimedVersion
+                || !PaymentStatus.Processing.name().equals(existing.getStatus())) {
+                throw conditionalCheckFailed(paymentId);
+            }
+            stripe.payments.put(paymentId, new PaymentRecord(paymentId,
+                existing.getMerchantId(),
+                existing.getCardNumber(),
+                existing.getCardName(),
+                existing.getCurrency(),
+                status,
+                existing.getBillingAddress(),
+                existing.getExpiryYear(),
+                existing.getExpiryMonth(),
+                existing.getAmount(),
+                existing.getExpiryTimestampSeconds(),
+                existing.getCreationTimestampSeconds(),
+                PaymentRecord.NONE_LONG,
+                claimedVersion + 1));
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void releaseClaim(String paymentId, long claimedVersion, String previousStatus, Long previousExpiryTimestampSeconds) {
+        Stripe stripe = stripeFor(paymentId);
+        stripe.lock.writeLock().lock();
+        try {
+            PaymentRecord existing = stripe.payments.get(paymentId);
+            if (existing == null || existing.getVersion() != claimedVersion
+                || !PaymentStatus.Processing.name().equals(existing.getStatus())) {
+                throw conditionalCheckFailed(paymentId);
+            }
+            stripe.payments.put(paymentId, new PaymentRecord(paymentId,
+                existing.getMerchantId(),
+                null,
+                null,
+                null,
+                previousStatus,
+                null,
+                PaymentRecord.NONE_INT,
+                PaymentRecord.NONE_INT,
+                PaymentRecord.NONE_INT,
+                previousExpiryTimestampSeconds == null ? PaymentRecord.NONE_LONG : previousExpiryTimestampSeconds,
+                existing.getCreationTimestampSeconds(),
+                PaymentRecord.NONE_LONG,
+                claimedVersion + 1));
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    public PaymentRecord getRecord(String paymentId) {
+        Stripe stripe = stripeFor(paymentId);
+        stripe.lock.readLock().lock();
+        try {
+            return stripe.payments.get(paymentId);
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    public void delete(String paymentId) {
+        Stripe stripe = stripeFor(paymentId);
+        stripe.lock.writeLock().lock();
+        try {
+            unindex(stripe.payments.remove(paymentId));
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes payments whose expiryTimestampSeconds is before the given time, like DynamoDB TTL does.
+     *
+     * @return number of removed payments.
+     */
+    public int purgeExpired(long nowEpochSeconds) {
+        int purged = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.writeLock().lock();
+            try {
+                Iterator<PaymentRecord> records = stripe.payments.values().iterator();
+                while (records.hasNext()) {
+                    PaymentRecord record = records.next();
+                    if (isExpired(record, nowEpochSeconds)) {
+                        records.remove();
+                        unindex(record);
+                        purged++;
+                    }
+                }
+            } finally {
+                stripe.lock.writeLock().unlock();
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Same as {@link #purgeExpired(long)} for the given payments only, e.g. the ones a {@link com.org.expiry.PaymentExpiryIndex}
+     * found expired, without going through the whole store.
+     *
+     * @return number of removed payments.
+     */
+    public int purgeExpired(Collection<String> paymentIds, long nowEpochSeconds) {
+        int purged = 0;
+        for (String paymentId : paymentIds) {
+            Stripe stripe = stripeFor(paymentId);
+            stripe.lock.writeLock().lock();
+            try {
+                PaymentRecord record = stripe.payments.get(paymentId);
+                if (record != null && isExpired(record, nowEpochSeconds)) {
+                    stripe.payments.remove(paymentId);
+                    unindex(record);
+                    purged++;
+                }
+            } finally {
+                stripe.lock.writeLock().unlock();
+            }
+        }
+        return purged;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                size += stripe.payments.size();
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    private void write(MerchantPayment payment, boolean mustExistForMerchant) {
+        String paymentId = payment.getPaymentId();
+        Long expectedVersion = payment.getVersion();
+        long nextVersion = expectedVersion == null ? 1L : expectedVersion + 1;
+        PaymentRecord record = PaymentRecord.of(payment).withVersion(nextVersion);
+        if (record.getMerchantId() == null) {
+            throw new IllegalArgumentException("merchantId is required for paymentId: " + paymentId);
+        }
+
+        Stripe stripe = stripeFor(paymentId);
+        stripe.lock.writeLock().lock();
+        try {
+            PaymentRecord existing = stripe.payments.get(paymentId);
+            if (mustExistForMerchant && (existing == null || !existing.getMerchantId().equals(payment.getMerchantId()))) {
+                throw conditionalCheckFailed(paymentId);
+            }
+            boolean versionMatches = existing == null ? expectedVersion == null
+                : expectedVersion != null && existing.getVersion() == expectedVersion;
+            if (!versionMatches) {
+                throw conditionalCheckFailed(paymentId);
+            }
+            stripe.payments.put(paymentId, record);
+            if (existing == null) {
+                index(record);
+            }
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+        payment.setVersion(nextVersion);
+    }
+
+    /**
+     * Like a sparse GSI, payments without a creationTimestampSeconds aren't indexed. Neither the merchantId nor the
+     * creationTimestampSeconds of a payment change after it's created, so only creates and deletes touch the index.
+     */
+    private void index(PaymentRecord record) {
+        if (record.getCreationTimestampSeconds() != PaymentRecord.NONE_LONG) {
+            merchantIndex.computeIfAbsent(record.getMerchantId(), merchantId -> new ConcurrentSkipListSet<>())
+                .add(new IndexKey(record.getCreationTimestampSeconds(), record.getPaymentId()));
+        }
+    }
+
+    private void unindex(PaymentRecord record) {
+        if (record != null && record.getCreationTimestampSeconds() != PaymentRecord.NONE_LONG) {
+            NavigableSet<IndexKey> index = merchantIndex.get(record.getMerchantId());
+            if (index != null) {
+                index.remove(new IndexKey(record.getCreationTimestampSeconds(), record.getPaymentId()));
+            }
+        }
+    }
+
+    private static boolean isExpired(PaymentRecord record, long nowEpochSeconds) {
+        long expiry = record.getExpiryTimestampSeconds();
+        return expiry != PaymentRecord.NONE_LONG && expiry < nowEpochSeconds;
+    }
+
+    private static boolean isClaimable(PaymentRecord record, long nowEpochSeconds) {
+        String status = record.getStatus();
+        if (PaymentStatus.Created.name().equals(status) || PaymentStatus.Pending.name().equals(status)) {
+            return true;
+        }
+        return PaymentStatus.Processing.name().equals(status) && record.getClaimExpiryTimestampSeconds() < nowEpochSeconds;
+    }
+
+    private Stripe stripeFor(String paymentId) {
+        int hash = paymentId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private static ConditionalCheckFailedException conditionalCheckFailed(String paymentId) {
+        return new ConditionalCheckFailedException("The conditional request failed for paymentId: " + paymentId);
+    }
+
+    private static final class Stripe {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, PaymentRecord> payments;
+
+        private Stripe(int expectedPayments) {
+            this.payments = new HashMap<>(Math.max(16, (int) (expectedPayments / 0.75f) + 1));
+        }
+    }
+
+    private static final class IndexKey implements Comparable<IndexKey> {
+        private final long creationTimestampSeconds;
+        private final String paymentId;
+
+        private IndexKey(long creationTimestampSeconds, String paymentId) {
+            this.creationTimestampSeconds = creationTimestampSeconds;
+            this.paymentId = paymentId;
+        }
+
+        @Override
+        public int compareTo(IndexKey other) {
+            int compare = Long.compare(creationTimestampSeconds, other.creationTimestampSeconds);
+            return compare != 0 ? compare : paymentId.compareTo(other.paymentId);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.org.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Position in a merchant's payments listing: the last (creationTimestampSeconds, paymentId) returned, i.e. the
+ * MerchantCreationGSI key without the merchantId, which always comes from the request. Sent to clients as an opaque string.
+ * <p>
+ * A listing over a sharded index has a position per shard instead, see {@link #ofShards(List)}.
+ */
+public final class PaymentCursor {
+
+    /**
+     * Position of a shard that was listed to the end.
+     */
+    public static final PaymentCursor END = new PaymentCursor(Long.MIN_VALUE, null);
+
+    private static final String SHARDS_PREFIX = "s";
+    private static final String SHARD_SEPARATOR = "|";
+    private static final String END_TOKEN = "-";
+
+    private final long creationTimestampSeconds;
+    private final String paymentId;
+    private final List<PaymentCursor> shards;
+
+    public PaymentCursor(long creationTimestampSeconds, String paymentId) {
+        this(creationTimestampSeconds, paymentId, null);
+    }
+
+    private PaymentCursor(long creationTimestampSeconds, String paymentId, List<PaymentCursor> shards) {
+        this.creationTimestampSeconds = creationTimestampSeconds;
+        this.paymentId = paymentId;
+        this.shards = shards;
+    }
+
+    /**
+     * @param shards the position in each shard, null for a shard not listed from yet, or {@link #END}.
+     */
+    public static PaymentCursor ofShards(List<PaymentCursor> shards) {
+        return new PaymentCursor(Long.MIN_VALUE, null, Collections.unmodifiableList(new ArrayList<>(shards)));
+    }
+
+    public boolean isSharded() {
+        return shards != null;
+    }
+
+    /**
+     * @return the position in each shard, null for a shard not listed from yet, or {@link #END}.
+     */
+    public List<PaymentCursor> getShards() {
+        return shards;
+    }
+
+    /**
+     * @throws IllegalArgumentException for the cursor of a sharded listing, which has a position per shard instead.
+     */
+    public long getCreationTimestampSeconds() {
+        requireUnsharded();
+        return creationTimestampSeconds;
+    }
+
+    /**
+     * @throws IllegalArgumentException for the cursor of a sharded listing, which has a position per shard instead.
+     */
+    public String getPaymentId() {
+        requireUnsharded();
+        return paymentId;
+    }
+
+    public String encode() {
+        String cursor;
+        if (shards == null) {
+            cursor = position(this);
+        } else {
+            StringBuilder builder = new StringBuilder(SHARDS_PREFIX);
+            for (PaymentCursor shard : shards) {
+                builder.append(SHARD_SEPARATOR).append(shard == null ? "" : shard == END ? END_TOKEN : position(shard));
+            }
+            cursor = builder.toString();
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor wasn't produced by {@link #encode()}.
+     */
+    public static PaymentCursor decode(String cursor) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (!decoded.startsWith(SHARDS_PREFIX + SHARD_SEPARATOR)) {
+            return parsePosition(decoded, cursor);
+        }
+
+        List<PaymentCursor> shards = new ArrayList<>();
+        for (String token : decoded.substring(SHARDS_PREFIX.length() + 1).split("\\" + SHARD_SEPARATOR, -1)) {
+            shards.add(token.isEmpty() ? null : END_TOKEN.equals(token) ? END : parsePosition(token, cursor));
+        }
+        return ofShards(shards);
+    }
+
+    private static String position(PaymentCursor cursor) {
+        return cursor.creationTimestampSeconds + ":" + cursor.paymentId;
+    }
+
+    private static PaymentCursor parsePosition(String position, String cursor) {
+        int separator = position.indexOf(':');
+        if (separator <= 0 || separator == position.length() - 1) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        try {
+            return new PaymentCursor(Long.parseLong(position.substring(0, separator)), position.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    private void requireUnsharded() {
+        if (shards != null) {
+            throw new IllegalArgumentException("Cursor of a sharded listing");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.org.store;
+
+/**
+ * One page of a merchant's payments, newest first, created between fromSeconds and toSeconds (both inclusive).
+ * Expired payments are left out, like get-payment does.
+ */
+public final class PaymentListQuery {
+
+    /**
+     * Upper bound on the payments evaluated per page, as a multiple of the limit, so that a selective status filter
+     * returns a short page with a cursor instead of reading a whole partition.
+     */
+    public static final int MAX_EVALUATED_PER_LIMIT = 10;
+
+    private final String merchantId;
+    private final long fromSeconds;
+    private final long toSeconds;
+    private final String status;
+    private final int limit;
+    private final PaymentCursor after;
+
+    /**
+     * @param status only return payments with this status, or null for all.
+     * @param after  cursor returned by the previous page, or null for the first one.
+     */
+    public PaymentListQuery(String merchantId, long fromSeconds, long toSeconds, String status, int limit, PaymentCursor after) {
+        this.merchantId = merchantId;
+        this.fromSeconds = fromSeconds;
+        this.toSeconds = toSeconds;
+        this.status = status;
+        this.limit = limit;
+        this.after = after;
+    }
+
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public long getFromSeconds() {
+        return fromSeconds;
+    }
+
+    public long getToSeconds() {
+        return toSeconds;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public PaymentCursor getAfter() {
+        return after;
+    }
+}
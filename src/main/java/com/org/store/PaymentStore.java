@@ -0,0 +1,75 @@
+package com.org.store;
+
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Storage for merchant payments. Writes follow the optimistic locking of {@code @DynamoDBVersionAttribute}:
+ * a payment without a version must not exist yet, otherwise the stored version must match. On success the
+ * payment's version is bumped, on a mismatch a {@link com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException} is thrown.
+ */
+public interface PaymentStore {
+
+    void save(MerchantPayment payment);
+
+    /**
+     * Saves new payments (without a version) in bulk, setting their version to 1. Stores may write them without the
+     * must-not-exist check of {@link #save(MerchantPayment)}, so it's only for payments with freshly generated ids.
+     * If it throws, some of the payments may have been saved.
+     */
+    default void saveAll(List<MerchantPayment> payments) {
+        for (MerchantPayment payment : payments) {
+            save(payment);
+        }
+    }
+
+    /**
+     * Same as {@link #save(MerchantPayment)}, but the payment must already exist and belong to the same merchant.
+     */
+    void saveMakePayment(MerchantPayment payment);
+
+    /**
+     * @return the stored payment, or null if it doesn't exist.
+     */
+    MerchantPayment getMerchantPayment(String paymentId);
+
+    /**
+     * Same as {@link #getMerchantPayment(String)}, but sees every write made before it, e.g. by another request a moment
+     * ago. On DynamoDB that's a strongly consistent read, at twice the read units.
+     */
+    default MerchantPayment getLatestMerchantPayment(String paymentId) {
+        return getMerchantPayment(paymentId);
+    }
+
+    /**
+     * Bulk version of {@link #getMerchantPayment(String)}.
+     *
+     * @param paymentIds distinct paymentIds.
+     * @return the stored payments by paymentId, missing ones are left out.
+     */
+    default Map<String, MerchantPayment> getMerchantPayments(Collection<String> paymentIds) {
+        Map<String, MerchantPayment> payments = new HashMap<>();
+        for (String paymentId : paymentIds) {
+            MerchantPayment payment = getMerchantPayment(paymentId);
+            if (payment != null) {
+                payments.put(paymentId, payment);
+            }
+        }
+        return payments;
+    }
+
+    /**
+     * Lists a page of a merchant's payments, handing each one to the sink as it's read rather than collecting the page.
+     * Listed payments may only have the attributes projected on MerchantCreationGSI: paymentId, merchantId, status, amount,
+     * currency, creationTimestampSeconds and expiryTimestampSeconds.
+     *
+     * @return the cursor of the next page, or null if there are no more payments.
+     */
+    PaymentCursor listMerchantPayments(PaymentListQuery query, Consumer<PaymentRecord> sink);
+}
@@ -0,0 +1,33 @@
+package com.org.aggregates;
+
+import com.org.payments.PaymentRecord;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand-in for the payment table's stream: records every write of a payment, with its previous image and an increasing
+ * sequence number, and hands them out in batches that can be read again from any position.
+ */
+class LocalChangeFeed {
+
+    private final List<PaymentChange> changes = new ArrayList<>();
+    private final Map<String, PaymentRecord> payments = new HashMap<>();
+
+    synchronized PaymentChange write(PaymentRecord payment, long changedAtSeconds) {
+        PaymentChange change = new PaymentChange(String.format("%021d", changes.size() + 1), changedAtSeconds,
+            payments.put(payment.getPaymentId(), payment), payment);
+        changes.add(change);
+        return change;
+    }
+
+    synchronized List<PaymentChange> read(int from, int maxChanges) {
+        return new ArrayList<>(changes.subList(from, Math.min(changes.size(), from + maxChanges)));
+    }
+
+    synchronized int size() {
+        return changes.size();
+    }
+}
@@ -0,0 +1,137 @@
+package com.org.aggregates;
+
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MerchantAggregatorTest {
+
+    private static final long START = 1_700_000_000L / 86_400 * 86_400;
+
+    private final InMemoryAggregateStore memoryStore = new InMemoryAggregateStore();
+    private final AggregateStore store = new AggregateStore() {
+        @Override
+        public Set<String> apply(Collection<String> sequenceNumbers, Collection<MerchantAggregate> deltas) {
+            assertTrue(sequenceNumbers.size() + deltas.size() <= MAX_WRITES);
+            return memoryStore.apply(sequenceNumbers, deltas);
+        }
+
+        @Override
+        public List<MerchantAggregate> query(String merchantId, Granularity granularity, long fromSeconds, long toSeconds) {
+            return memoryStore.query(merchantId, granularity, fromSeconds, toSeconds);
+        }
+    };
+    private final MerchantAggregator aggregator = new MerchantAggregator(store);
+    private final LocalChangeFeed feed = new LocalChangeFeed();
+
+    @Test
+    public void testReplayedChangesShouldNotBeCountedTwice() {
+        for (int i = 0; i < 300; i++) {
+            String merchantId = "merchant-" + i % 3;
+            String currency = i % 4 == 0 ? "USD" : "GBP";
+            feed.write(payment("payment-" + i, merchantId, PaymentStatus.Created, currency, 0), START + i);
+            String status = (i % 5 == 0 ? PaymentStatus.Declined : PaymentStatus.Accepted).name();
+            feed.write(payment("payment-" + i, merchantId, PaymentStatus.valueOf(status), currency, 10 + i), START + i);
+        }
+
+        assertEquals(300, applyFeed(0, 7));
+        Map<String, Long> counted = totals("merchant-0", Granularity.Hour);
+        assertEquals(100, counted.get("Accepted#GBP") + counted.get("Accepted#USD") + counted.get("Declined#GBP")
+            + counted.get("Declined#USD"));
+
+        // Delivered again, in other batches and from the middle of the feed.
+        assertEquals(0, applyFeed(0, 50));
+        assertEquals(0, applyFeed(13, 1_000));
+        assertEquals(counted, totals("merchant-0", Granularity.Hour));
+        assertEquals(counted, totals("merchant-0", Granularity.Day));
+    }
+
+    @Test
+    public void testBatchWithSomeChangesCountedShouldOnlyCountTheRest() {
+        for (int i = 0; i < 40; i++) {
+            feed.write(payment("payment-" + i, "merchant", PaymentStatus.Accepted, "GBP", 1), START);
+        }
+
+        assertEquals(15, aggregator.apply(feed.read(10, 15)));
+        assertEquals(25, aggregator.apply(feed.read(0, 40)));
+
+        List<MerchantAggregate> aggregates = store.query("merchant", Granularity.Hour, START, START);
+        assertEquals(1, aggregates.size());
+        assertEquals(40, aggregates.get(0).getCount());
+        assertEquals(40, aggregates.get(0).getAmount());
+    }
+
+    @Test
+    public void testOnlyChangesSettlingAPaymentShouldBeCounted() {
+        List<PaymentChange> changes = List.of(
+            feed.write(payment("paid", "merchant", PaymentStatus.Created, "GBP", 0), START),
+            feed.write(payment("paid", "merchant", PaymentStatus.Processing, "GBP", 5), START),
+            feed.write(payment("paid", "merchant", PaymentStatus.Accepted, "GBP", 5), START),
+            // Written again without a status change, e.g. by the outbox.
+            feed.write(payment("paid", "merchant", PaymentStatus.Accepted, "GBP", 5), START),
+            feed.write(payment("unpaid", "merchant", PaymentStatus.Created, "GBP", 0), START),
+            feed.write(payment("declined", "merchant", PaymentStatus.InsufficientFunds, null, 7), START));
+
+        assertEquals(2, aggregator.apply(changes));
+        assertEquals(Map.of("Accepted#GBP", 1L, "Accepted#GBP$", 5L, "InsufficientFunds#null", 1L,
+            "InsufficientFunds#null$", 7L), totals("merchant", Granularity.Hour));
+    }
+
+    @Test
+    public void testChangesShouldBeCountedInTheirHourAndDay() {
+        feed.write(payment("a", "merchant", PaymentStatus.Accepted, "GBP", 1), START + 10);
+        feed.write(payment("b", "merchant", PaymentStatus.Accepted, "GBP", 2), START + 3_599);
+        feed.write(payment("c", "merchant", PaymentStatus.Accepted, "GBP", 4), START + 3_600);
+        feed.write(payment("d", "merchant", PaymentStatus.Accepted, "GBP", 8), START + 86_400);
+        applyFeed(0, 10);
+
+        List<MerchantAggregate> hours = store.query("merchant", Granularity.Hour, START, START + 86_400);
+        assertEquals(List.of(START, START + 3_600, START + 86_400),
+            List.of(hours.get(0).getKey().getBucketStartSeconds(), hours.get(1).getKey().getBucketStartSeconds(),
+                hours.get(2).getKey().getBucketStartSeconds()));
+        assertEquals(List.of(3L, 4L, 8L), List.of(hours.get(0).getAmount(), hours.get(1).getAmount(), hours.get(2).getAmount()));
+        assertEquals(1, store.query("merchant", Granularity.Hour, START + 1, START + 3_600).size());
+
+        List<MerchantAggregate> days = store.query("merchant", Granularity.Day, START, START + 86_400);
+        assertEquals(2, days.size());
+        assertEquals(3, days.get(0).getCount());
+        assertEquals(7, days.get(0).getAmount());
+        assertEquals(1, days.get(1).getCount());
+        assertTrue(store.query("other-merchant", Granularity.Day, START, START + 86_400).isEmpty());
+    }
+
+    private int applyFeed(int from, int batchSize) {
+        int counted = 0;
+        for (int position = from; position < feed.size(); position += batchSize) {
+            counted += aggregator.apply(feed.read(position, batchSize));
+        }
+        return counted;
+    }
+
+    /**
+     * @return count ("status#currency") and amount ("status#currency$") totals of the merchant.
+     */
+    private Map<String, Long> totals(String merchantId, Granularity granularity) {
+        Map<String, Long> totals = new HashMap<>();
+        for (MerchantAggregate aggregate : store.query(merchantId, granularity, 0, Long.MAX_VALUE)) {
+            String key = aggregate.getKey().getStatus() + "#" + aggregate.getKey().getCurrency();
+            totals.merge(key, aggregate.getCount(), Long::sum);
+            totals.merge(key + "$", aggregate.getAmount(), Long::sum);
+        }
+        return totals;
+    }
+
+    private static PaymentRecord payment(String paymentId, String merchantId, PaymentStatus status, String currency,
+        int amount) {
+        return new PaymentRecord(paymentId, merchantId, null, null, currency, status.name(), null, PaymentRecord.NONE_INT,
+            PaymentRecord.NONE_INT, amount, PaymentRecord.NONE_LONG, 0, PaymentRecord.NONE_LONG, 1);
+    }
+}
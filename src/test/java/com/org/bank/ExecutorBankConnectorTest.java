@@ -0,0 +1,122 @@
+package com.org.bank;
+
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutorBankConnectorTest {
+
+    @Test
+    public void testSettledPaymentShouldOnlyCallTheBankOnce() {
+        ScriptedBank bank = new ScriptedBank(1, 16);
+
+        assertEquals(PaymentStatus.Accepted, bank.makePayment(payment("p1"), 1000).join());
+        assertEquals(PaymentStatus.Accepted, bank.makePayment(payment("p1"), 1000).join());
+
+        assertEquals(1, bank.calls.get());
+        assertEquals(1, bank.getStats().getDeduplicated());
+    }
+
+    @Test
+    public void testConcurrentCallsForSamePaymentShouldJoinTheCallInFlight() {
+        ScriptedBank bank = new ScriptedBank(2, 16);
+        bank.release = new CountDownLatch(1);
+
+        CompletableFuture<PaymentStatus> first = bank.makePayment(payment("p1"), 5000);
+        CompletableFuture<PaymentStatus> second = bank.makePayment(payment("p1"), 5000);
+        assertEquals(1, bank.getInFlight());
+        bank.release.countDown();
+
+        assertEquals(PaymentStatus.Accepted, first.join());
+        assertEquals(PaymentStatus.Accepted, second.join());
+        assertEquals(1, bank.calls.get());
+        assertEquals(1, bank.getStats().getDeduplicated());
+    }
+
+    @Test
+    public void testCallPastItsDeadlineShouldTimeOutAndBeInterrupted() throws InterruptedException {
+        ScriptedBank bank = new ScriptedBank(1, 16);
+        bank.release = new CountDownLatch(1);
+
+        CompletionException e = assertThrows(CompletionException.class, () -> bank.makePayment(payment("p1"), 50).join());
+
+        assertTrue(e.getCause() instanceof TimeoutException);
+        assertTrue(bank.interrupted.await(1, TimeUnit.SECONDS));
+        assertEquals(1, bank.getStats().getTimedOut());
+        assertEquals(0, bank.getInFlight());
+    }
+
+    @Test
+    public void testRetryableBankErrorsShouldBeRetried() {
+        ScriptedBank bank = new ScriptedBank(1, 16);
+        bank.failures.set(2);
+
+        assertEquals(PaymentStatus.Accepted, bank.makePayment(payment("p1"), 5000).join());
+
+        assertEquals(3, bank.calls.get());
+        assertEquals(2, bank.getStats().getRetries());
+    }
+
+    @Test
+    public void testCallsBeyondTheQueueShouldBeRejected() {
+        ScriptedBank bank = new ScriptedBank(1, 1);
+        bank.release = new CountDownLatch(1);
+
+        bank.makePayment(payment("p1"), 5000);
+        bank.makePayment(payment("p2"), 5000);
+        CompletionException e = assertThrows(CompletionException.class, () -> bank.makePayment(payment("p3"), 5000).join());
+        bank.release.countDown();
+
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(1, bank.getStats().getRejected());
+    }
+
+    private static MerchantPayment payment(String paymentId) {
+        return MerchantPayment.builder()
+            .withPaymentId(paymentId)
+            .withMerchantId("testMerchantId")
+            .withAmount(50)
+            .build();
+    }
+
+    /**
+     * Accepts every payment, after failing the first few calls with a 503 and waiting on {@link #release} if it's set.
+     */
+    private static class ScriptedBank extends ExecutorBankConnector {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+        private volatile CountDownLatch release;
+
+        ScriptedBank(int concurrency, int queueSize) {
+            super(newExecutor(concurrency, queueSize), 3, 1);
+        }
+
+        @Override
+        protected PaymentStatus callBank(MerchantPayment payment) {
+            calls.incrementAndGet();
+            if (failures.getAndDecrement() > 0) {
+                throw new BankException(503, "Service unavailable");
+            }
+            try {
+                if (release != null && !release.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Never released");
+                }
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new IllegalStateException("Interrupted");
+            }
+            return PaymentStatus.Accepted;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.org.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallersShouldShareOneExecution() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        Future<Integer> first = executor.submit(() -> singleFlight.execute("payment", () -> {
+            running.countDown();
+            await(release);
+            return executions.incrementAndGet();
+        }, 5_000));
+        running.await();
+        Future<Integer> second = executor.submit(() -> singleFlight.execute("payment", executions::incrementAndGet, 5_000));
+        Future<Integer> third = executor.submit(() -> singleFlight.execute("payment", executions::incrementAndGet, 5_000));
+        while (singleFlight.getCoalesced() < 2) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, third.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+        assertEquals(1, singleFlight.getExecuted());
+        assertEquals(0, singleFlight.getInFlight());
+
+        // Done flights aren't remembered.
+        assertEquals(2, singleFlight.execute("payment", executions::incrementAndGet, 5_000));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testWaitingShouldBeBoundedAndFailuresShared() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<Integer> first = executor.submit(() -> singleFlight.execute("payment", () -> {
+            running.countDown();
+            await(release);
+            throw new IllegalStateException("store is down");
+        }, 5_000));
+        running.await();
+
+        assertThrows(TimeoutException.class, () -> singleFlight.execute("payment", () -> 1, 10));
+        assertEquals(1, singleFlight.getTimedOut());
+        assertEquals(1, singleFlight.execute("other-payment", () -> 1, 10));
+        Future<Integer> joined = executor.submit(() -> singleFlight.execute("payment", () -> 1, 5_000));
+        while (singleFlight.getCoalesced() < 2) {
+            Thread.sleep(1);
+        }
+
+        release.countDown();
+        assertTrue(assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS)).getCause() instanceof IllegalStateException);
+        assertTrue(assertThrows(Exception.class, () -> joined.get(5, TimeUnit.SECONDS)).getCause() instanceof IllegalStateException);
+        assertEquals(0, singleFlight.getInFlight());
+        executor.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
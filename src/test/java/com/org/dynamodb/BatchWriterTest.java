@@ -0,0 +1,87 @@
+package com.org.dynamodb;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchWriterTest {
+
+    private static final String TABLE_NAME = "MerchantPaymentTestTable";
+
+    @Test
+    public void testPutAllShouldSplitInBatchesOf25AndRetryUnprocessedItems() throws InterruptedException {
+        // Leaves the last item of every request unprocessed on its first attempt.
+        FlakyDynamoDB dynamoDB = new FlakyDynamoDB(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        BatchWriter batchWriter = new BatchWriter(dynamoDB, executor, 3, 1);
+
+        batchWriter.putAll(TABLE_NAME, items(60));
+        executor.shutdown();
+
+        assertEquals(60, dynamoDB.written.size());
+        // 3 requests of 25, 25 and 10 items, each retried once for its unprocessed item.
+        assertEquals(6, dynamoDB.calls.get());
+        assertTrue(dynamoDB.maxRequestSize.get() <= BatchWriter.MAX_BATCH_SIZE);
+    }
+
+    @Test
+    public void testPutAllShouldGiveUpAfterMaxAttempts() {
+        FlakyDynamoDB dynamoDB = new FlakyDynamoDB(Integer.MAX_VALUE);
+        BatchWriter batchWriter = new BatchWriter(dynamoDB, Runnable::run, 3, 1);
+
+        assertThrows(SdkClientException.class, () -> batchWriter.putAll(TABLE_NAME, items(5)));
+        assertEquals(3, dynamoDB.calls.get());
+        assertEquals(4, dynamoDB.written.size());
+    }
+
+    private static List<Map<String, AttributeValue>> items(int count) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(MerchantPaymentCodec.key("payment-" + i));
+        }
+        return items;
+    }
+
+    private static class FlakyDynamoDB extends AbstractAmazonDynamoDB {
+        private final int failingAttempts;
+        private final Set<String> written = ConcurrentHashMap.newKeySet();
+        private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger maxRequestSize = new AtomicInteger();
+
+        private FlakyDynamoDB(int failingAttempts) {
+            this.failingAttempts = failingAttempts;
+        }
+
+        @Override
+        public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+            calls.incrementAndGet();
+            List<WriteRequest> writes = request.getRequestItems().get(TABLE_NAME);
+            maxRequestSize.accumulateAndGet(writes.size(), Math::max);
+
+            WriteRequest last = writes.get(writes.size() - 1);
+            String lastId = last.getPutRequest().getItem().get(MerchantPaymentCodec.PAYMENT_ID).getS();
+            boolean failLast = attempts.computeIfAbsent(lastId, id -> new AtomicInteger()).incrementAndGet() <= failingAttempts;
+            for (WriteRequest write : failLast ? writes.subList(0, writes.size() - 1) : writes) {
+                written.add(write.getPutRequest().getItem().get(MerchantPaymentCodec.PAYMENT_ID).getS());
+            }
+            return new BatchWriteItemResult()
+                .withUnprocessedItems(failLast ? Map.of(TABLE_NAME, List.of(last)) : Map.of());
+        }
+    }
+}
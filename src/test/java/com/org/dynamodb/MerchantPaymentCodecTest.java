@@ -0,0 +1,147 @@
+package com.org.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MerchantPaymentCodecTest {
+
+    private final MerchantPaymentCodec codec = new MerchantPaymentCodec();
+    // The table model never calls DynamoDB, it's only used as the reference for the attributes we should produce.
+    private final DynamoDBMapperTableModel<MerchantPayment> tableModel =
+        new DynamoDBMapper(new AbstractAmazonDynamoDB() {}).getTableModel(MerchantPayment.class);
+
+    @Test
+    public void testToItemShouldMatchDynamoDBMapperForAPaidPayment() {
+        MerchantPayment payment = paidPayment();
+
+        assertEquals(tableModel.convert(payment), codec.toItem(PaymentRecord.of(payment)));
+    }
+
+    @Test
+    public void testToItemShouldMatchDynamoDBMapperForACreatedPayment() {
+        MerchantPayment payment = MerchantPayment.builder()
+            .newPayment()
+            .withMerchantId("testMerchantId")
+            .withStatus(PaymentStatus.Created.name())
+            .withCreationTimestampSeconds(1641845321L)
+            .withVersion(1L)
+            .build();
+
+        assertEquals(tableModel.convert(payment), codec.toItem(PaymentRecord.of(payment)));
+    }
+
+    @Test
+    public void testFromItemShouldRoundTrip() {
+        MerchantPayment payment = paidPayment();
+
+        MerchantPayment decoded = codec.fromItem(tableModel.convert(payment)).toMerchantPayment();
+
+        assertEquals(payment.toString(), decoded.toString());
+        assertEquals(payment.getVersion(), decoded.getVersion());
+        assertNull(codec.fromItem(null));
+    }
+
+    @Test
+    public void testCompactItemShouldRoundTripAndBeSmaller() {
+        MerchantPaymentCodec compactCodec = new MerchantPaymentCodec(true);
+        MerchantPayment payment = paidPayment();
+        payment.setClaimExpiryTimestampSeconds(1641845400L);
+
+        Map<String, AttributeValue> item = compactCodec.toItem(PaymentRecord.of(payment));
+        MerchantPayment decoded = compactCodec.fromItem(item).toMerchantPayment();
+
+        assertEquals(payment.toString(), decoded.toString());
+        assertEquals(payment.getVersion(), decoded.getVersion());
+        assertEquals(payment.getClaimExpiryTimestampSeconds(), decoded.getClaimExpiryTimestampSeconds());
+        assertEquals(Integer.toString(PaymentStatus.Accepted.getCode()), item.get(MerchantPaymentCodec.STATUS).getN());
+        assertFalse(item.containsKey(MerchantPaymentCodec.CARD_NUMBER));
+        assertFalse(item.containsKey(MerchantPaymentCodec.CLAIM_EXPIRY_TIMESTAMP_SECONDS));
+        assertTrue(itemSize(item) < itemSize(codec.toItem(PaymentRecord.of(payment))) * 0.85);
+        // The item buffers are read again by the SDK when sent, decoding must not consume them.
+        assertEquals(payment.toString(), compactCodec.fromItem(item).toMerchantPayment().toString());
+    }
+
+    @Test
+    public void testCompactItemOfACreatedPaymentShouldHaveNoCard() {
+        MerchantPayment payment = MerchantPayment.builder()
+            .newPayment()
+            .withMerchantId("testMerchantId")
+            .withStatus(PaymentStatus.Created.name())
+            .withCreationTimestampSeconds(1641845321L)
+            .withVersion(1L)
+            .build();
+
+        Map<String, AttributeValue> item = new MerchantPaymentCodec(true).toItem(PaymentRecord.of(payment));
+
+        assertFalse(item.containsKey(MerchantPaymentCodec.COMPACT_CARD));
+        assertEquals(payment.getExpiryTimestampSeconds(), Long.valueOf(item.get(MerchantPaymentCodec.EXPIRY_TIMESTAMP_SECONDS).getN()));
+        assertEquals(payment.toString(), codec.fromItem(item).toMerchantPayment().toString());
+    }
+
+    @Test
+    public void testBothCodecsShouldReadBothFormats() {
+        MerchantPaymentCodec compactCodec = new MerchantPaymentCodec(true);
+        MerchantPayment payment = paidPayment();
+        payment.setCardName("Zo\u00eb N\u00f8rgaard");
+        Map<String, AttributeValue> originalItem = codec.toItem(PaymentRecord.of(payment));
+        Map<String, AttributeValue> compactItem = compactCodec.toItem(PaymentRecord.of(payment));
+
+        for (MerchantPaymentCodec reader : new MerchantPaymentCodec[]{codec, compactCodec}) {
+            assertEquals(payment.toString(), reader.fromItem(originalItem).toMerchantPayment().toString());
+            assertEquals(payment.toString(), reader.fromItem(compactItem).toMerchantPayment().toString());
+        }
+        assertTrue(codec.isInFormat(originalItem));
+        assertFalse(codec.isInFormat(compactItem));
+        assertTrue(compactCodec.isInFormat(compactItem));
+        assertFalse(compactCodec.isInFormat(originalItem));
+    }
+
+    @Test
+    public void testStatusCodesShouldBeStable() {
+        assertEquals(0, PaymentStatus.Created.getCode());
+        assertEquals(3, PaymentStatus.Accepted.getCode());
+        assertEquals(7, PaymentStatus.InsufficientFunds.getCode());
+        for (PaymentStatus status : PaymentStatus.values()) {
+            assertEquals(status, PaymentStatus.fromCode(status.getCode()));
+        }
+        assertNull(PaymentStatus.fromCode(PaymentStatus.values().length));
+    }
+
+    // Item size as DynamoDB bills it, close enough: attribute names plus values.
+    private static int itemSize(Map<String, AttributeValue> item) {
+        int size = 0;
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            AttributeValue value = attribute.getValue();
+            size += attribute.getKey().length();
+            size += value.getS() != null ? value.getS().length() : value.getN() != null ? value.getN().length() : value.getB().remaining();
+        }
+        return size;
+    }
+
+    private MerchantPayment paidPayment() {
+        return MerchantPayment.builder()
+            .newPayment()
+            .withMerchantId("testMerchantId")
+            .withStatus(PaymentStatus.Accepted.name())
+            .withCardNumber("2234020200202002")
+            .withCardName("testCardName")
+            .withExpiryYear(2023)
+            .withExpiryMonth(11)
+            .withCurrency("GBP")
+            .withAmount(50)
+            .withBillingAddress("23Hellenda")
+            .withCreationTimestampSeconds(1641845321L)
+            .withVersion(3L)
+            .build();
+    }
+}
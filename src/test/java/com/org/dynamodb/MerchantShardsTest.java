@@ -0,0 +1,55 @@
+package com.org.dynamodb;
+
+import com.org.store.PaymentCursor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MerchantShardsTest {
+
+    @Test
+    public void testPaymentsShouldBeSpreadOverTheMerchantsShards() {
+        MerchantShards merchantShards = new MerchantShards(1, MerchantShards.parseMerchantShards("big=8, small = 2"));
+
+        int[] counts = new int[8];
+        for (int i = 0; i < 8_000; i++) {
+            String paymentId = UUID.randomUUID().toString();
+            int shard = merchantShards.shardOf("big", paymentId);
+            assertEquals(shard, merchantShards.shardOf("big", paymentId));
+            assertEquals("big#" + shard, merchantShards.shardKey("big", paymentId));
+            counts[shard]++;
+        }
+
+        assertTrue(Arrays.stream(counts).allMatch(count -> count > 800 && count < 1200), Arrays.toString(counts));
+        assertEquals(2, merchantShards.shardCount("small"));
+        assertEquals("other#0", merchantShards.shardKey("other", UUID.randomUUID().toString()));
+    }
+
+    @Test
+    public void testInvalidShardCountsShouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> MerchantShards.parseMerchantShards("big"));
+        assertThrows(IllegalArgumentException.class, () -> MerchantShards.parseMerchantShards("big=many"));
+        assertThrows(IllegalArgumentException.class, () -> new MerchantShards(0, Map.of()));
+        assertThrows(IllegalArgumentException.class, () -> new MerchantShards(1, Map.of("big", MerchantShards.MAX_SHARDS + 1)));
+    }
+
+    @Test
+    public void testShardedCursorShouldRoundTrip() {
+        PaymentCursor cursor = PaymentCursor.ofShards(Arrays.asList(new PaymentCursor(1000, "a"), null, PaymentCursor.END));
+
+        PaymentCursor decoded = PaymentCursor.decode(cursor.encode());
+
+        assertTrue(decoded.isSharded());
+        assertEquals(3, decoded.getShards().size());
+        assertEquals(1000, decoded.getShards().get(0).getCreationTimestampSeconds());
+        assertEquals("a", decoded.getShards().get(0).getPaymentId());
+        assertNull(decoded.getShards().get(1));
+        assertSame(PaymentCursor.END, decoded.getShards().get(2));
+        assertThrows(IllegalArgumentException.class, decoded::getPaymentId);
+        assertFalse(PaymentCursor.decode(new PaymentCursor(1000, "a").encode()).isSharded());
+    }
+}
@@ -0,0 +1,99 @@
+package com.org.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelScannerTest {
+
+    private static final String TABLE_NAME = "MerchantPaymentTestTable";
+
+    @Test
+    public void testScanShouldHandEveryItemOfEverySegmentOnce() throws Exception {
+        SegmentedDynamoDB dynamoDB = new SegmentedDynamoDB(250, 10);
+        ParallelScanner scanner = new ParallelScanner(dynamoDB, 3, 0);
+        Set<String> paymentIds = ConcurrentHashMap.newKeySet();
+
+        scanner.scan(new ScanRequest().withTableName(TABLE_NAME).withFilterExpression("attribute_exists(paymentId)"),
+            item -> assertTrue(paymentIds.add(item.get(MerchantPaymentCodec.PAYMENT_ID).getS())));
+
+        assertEquals(750, paymentIds.size());
+        assertEquals(750, scanner.getItems());
+        // Pages of 100 items, 3 per segment.
+        assertEquals(9, scanner.getPages());
+        assertEquals(90, scanner.getConsumedReadUnits(), 1e-9);
+        for (ScanRequest request : dynamoDB.requests) {
+            assertEquals(TABLE_NAME, request.getTableName());
+            assertEquals("attribute_exists(paymentId)", request.getFilterExpression());
+            assertEquals(3, request.getTotalSegments());
+            assertEquals(ReturnConsumedCapacity.TOTAL.toString(), request.getReturnConsumedCapacity());
+        }
+    }
+
+    @Test
+    public void testScanShouldKeepToItsReadUnitsPerSecond() throws Exception {
+        // 14 pages of 100 units at 1000 units per second, with a second's worth of burst.
+        SegmentedDynamoDB dynamoDB = new SegmentedDynamoDB(70, 100);
+        ParallelScanner scanner = new ParallelScanner(dynamoDB, 2, 1000);
+
+        long start = System.nanoTime();
+        scanner.scan(new ScanRequest().withTableName(TABLE_NAME).withLimit(10), item -> { });
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(14, scanner.getPages());
+        assertEquals(1400, scanner.getConsumedReadUnits(), 1e-9);
+        assertTrue(elapsedMillis >= 250, "Scanned 1400 units in " + elapsedMillis + "ms");
+        assertTrue(scanner.getPacedMillis() > 0);
+    }
+
+    /**
+     * Serves the items of each segment in pages, the start key being the position in the segment.
+     */
+    private static class SegmentedDynamoDB extends AbstractAmazonDynamoDB {
+
+        private final int itemsPerSegment;
+        private final double pageReadUnits;
+        private final List<ScanRequest> requests = new CopyOnWriteArrayList<>();
+
+        private SegmentedDynamoDB(int itemsPerSegment, double pageReadUnits) {
+            this.itemsPerSegment = itemsPerSegment;
+            this.pageReadUnits = pageReadUnits;
+        }
+
+        @Override
+        public ScanResult scan(ScanRequest request) {
+            requests.add(request);
+            Map<String, AttributeValue> startKey = request.getExclusiveStartKey();
+            int from = startKey == null ? 0 : Integer.parseInt(startKey.get("position").getN());
+            int to = Math.min(itemsPerSegment, from + request.getLimit());
+
+            List<Map<String, AttributeValue>> items = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                items.add(MerchantPaymentCodec.key("payment-" + request.getSegment() + "-" + i));
+            }
+            ScanResult result = new ScanResult()
+                .withItems(items)
+                .withCount(items.size())
+                .withScannedCount(items.size())
+                .withConsumedCapacity(new ConsumedCapacity().withTableName(TABLE_NAME).withCapacityUnits(pageReadUnits));
+            if (to < itemsPerSegment) {
+                result.withLastEvaluatedKey(Map.of("position", new AttributeValue().withN(Integer.toString(to))));
+            }
+            return result;
+        }
+    }
+}
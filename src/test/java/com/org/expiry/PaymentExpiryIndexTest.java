@@ -0,0 +1,101 @@
+package com.org.expiry;
+
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import com.org.store.ClaimingExpiryIndexedPaymentStore;
+import com.org.store.InMemoryPaymentStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaymentExpiryIndexTest {
+
+    private final InMemoryPaymentStore memoryStore = new InMemoryPaymentStore();
+    private final PaymentExpiryIndex expiryIndex = new PaymentExpiryIndex(memoryStore, 4, 1_000);
+    private final ClaimingExpiryIndexedPaymentStore store = new ClaimingExpiryIndexedPaymentStore(memoryStore, expiryIndex);
+    private final long afterExpiry = Instant.now().getEpochSecond() + 3_600;
+
+    @Test
+    public void testCreatedPaymentShouldExpireAndBeTurnedDownWithoutReadingTheStore() {
+        List<List<String>> events = new ArrayList<>();
+        expiryIndex.addListener(events::add);
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+        assertEquals(1, expiryIndex.getTracked());
+
+        assertEquals(1, expiryIndex.tick(afterExpiry));
+
+        assertEquals(List.of(List.of(payment.getPaymentId())), events);
+        assertEquals(0, expiryIndex.getTracked());
+        assertNotNull(memoryStore.getMerchantPayment(payment.getPaymentId()));
+        assertNull(store.getMerchantPayment(payment.getPaymentId()));
+        assertTrue(store.getMerchantPayments(Set.of(payment.getPaymentId())).isEmpty());
+        assertThrows(ConditionalCheckFailedException.class, () -> store.claimMakePayment(payment, afterExpiry, 30));
+        assertEquals(3, expiryIndex.getRejected());
+    }
+
+    @Test
+    public void testPaidPaymentShouldNotExpire() {
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+
+        MerchantPayment paid = memoryStore.getMerchantPayment(payment.getPaymentId());
+        paid.setStatus(PaymentStatus.Accepted.name());
+        paid.setExpiryTimestampSeconds(null);
+        store.saveMakePayment(paid);
+
+        assertEquals(0, expiryIndex.getTracked());
+        assertEquals(0, expiryIndex.tick(afterExpiry));
+        assertNotNull(store.getMerchantPayment(payment.getPaymentId()));
+    }
+
+    @Test
+    public void testPaymentPaidElsewhereShouldBeConfirmedAgainstTheStore() {
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+
+        // Paid through another gateway, this one still tracks it.
+        MerchantPayment paid = memoryStore.getMerchantPayment(payment.getPaymentId());
+        paid.setStatus(PaymentStatus.Accepted.name());
+        paid.setExpiryTimestampSeconds(null);
+        memoryStore.saveMakePayment(paid);
+
+        assertEquals(0, expiryIndex.tick(afterExpiry));
+        assertEquals(0, expiryIndex.getTracked());
+        assertNotNull(store.getMerchantPayment(payment.getPaymentId()));
+    }
+
+    @Test
+    public void testExpiredPaymentsShouldBeHandedOverInBatchesAndPurged() {
+        List<List<String>> events = new ArrayList<>();
+        expiryIndex.addListener(events::add);
+        expiryIndex.addListener(paymentIds -> memoryStore.purgeExpired(paymentIds, afterExpiry));
+        int payments = PaymentExpiryIndex.BATCH_SIZE + 10;
+        for (int i = 0; i < payments; i++) {
+            store.save(newPayment());
+        }
+
+        assertEquals(payments, expiryIndex.tick(afterExpiry));
+
+        assertEquals(2, events.size());
+        assertEquals(PaymentExpiryIndex.BATCH_SIZE, events.get(0).size());
+        assertEquals(10, events.get(1).size());
+        assertEquals(0, memoryStore.size());
+        assertEquals(payments, expiryIndex.getExpired());
+    }
+
+    private MerchantPayment newPayment() {
+        return MerchantPayment.builder()
+            .newPayment()
+            .withStatus(PaymentStatus.Created.name())
+            .withMerchantId("testMerchantId")
+            .withCreationTimestampSeconds(Instant.now().getEpochSecond())
+            .build();
+    }
+}
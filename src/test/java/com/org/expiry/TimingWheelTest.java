@@ -0,0 +1,97 @@
+package com.org.expiry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    private final long start = 1_600_000_000L;
+
+    @Test
+    public void testIdsShouldBeDueAtTheirDeadlineAcrossLevels() {
+        TimingWheel wheel = new TimingWheel(start, 16);
+        long[] offsets = {1, 63, 64, 70, 4095, 4096, 5000, 262_144, 300_000, 16_777_216, 20_000_000};
+        for (long offset : offsets) {
+            assertTrue(wheel.schedule("id" + offset, start + offset));
+        }
+
+        List<String> due = new ArrayList<>();
+        for (long offset : offsets) {
+            wheel.advance(start + offset - 1, due::add);
+            assertTrue(due.isEmpty(), "Due early: " + due);
+            wheel.advance(start + offset, due::add);
+            assertEquals(List.of("id" + offset), due);
+            due.clear();
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testPassedDeadlineShouldNotBeScheduled() {
+        TimingWheel wheel = new TimingWheel(start, 16);
+        wheel.schedule("id", start + 10);
+
+        assertFalse(wheel.schedule("id", start));
+        assertFalse(wheel.contains("id"));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRescheduleAndCancelShouldReplaceTheDeadline() {
+        TimingWheel wheel = new TimingWheel(start, 16);
+        wheel.schedule("later", start + 10);
+        wheel.schedule("later", start + 100);
+        wheel.schedule("cancelled", start + 5);
+        assertTrue(wheel.cancel("cancelled"));
+        assertFalse(wheel.cancel("cancelled"));
+
+        List<String> due = new ArrayList<>();
+        assertEquals(0, wheel.advance(start + 99, due::add));
+        assertEquals(1, wheel.advance(start + 100, due::add));
+        assertEquals(List.of("later"), due);
+    }
+
+    @Test
+    public void testRandomOperationsShouldMatchAMap() {
+        TimingWheel wheel = new TimingWheel(start, 16);
+        Map<String, Long> deadlines = new HashMap<>();
+        Random random = new Random(42);
+        long now = start;
+
+        for (int round = 0; round < 2_000; round++) {
+            for (int i = 0; i < 20; i++) {
+                String id = "id" + random.nextInt(5_000);
+                if (random.nextInt(4) == 0) {
+                    assertEquals(deadlines.remove(id) != null, wheel.cancel(id));
+                } else {
+                    long deadline = now + 1 + (long) Math.pow(random.nextInt(20_000), random.nextDouble() * 2);
+                    assertTrue(wheel.schedule(id, deadline));
+                    deadlines.put(id, deadline);
+                }
+            }
+
+            long to = now + random.nextInt(random.nextInt(10) == 0 ? 100_000 : 100);
+            long from = now;
+            List<String> due = new ArrayList<>();
+            wheel.advance(to, due::add);
+            long previous = Long.MIN_VALUE;
+            for (String id : due) {
+                long deadline = deadlines.remove(id);
+                assertTrue(deadline > from && deadline <= to, id + " due at " + to + " for " + deadline);
+                assertTrue(deadline >= previous, "Out of order: " + id);
+                previous = deadline;
+            }
+            deadlines.values().forEach(deadline -> assertTrue(deadline > to));
+            assertEquals(deadlines.size(), wheel.size());
+            now = to;
+        }
+        deadlines.keySet().forEach(id -> assertTrue(wheel.contains(id)));
+    }
+}
@@ -0,0 +1,101 @@
+package com.org.faults;
+
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import com.org.store.ClaimingFaultInjectingPaymentStore;
+import com.org.store.ClaimingPaymentStore;
+import com.org.store.FaultInjectingPaymentStore;
+import com.org.store.InMemoryPaymentStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FaultInjectorTest {
+
+    private static final String PROFILE = "latency=lognormal:40:0.6,spikeRate=0.01,spikeMillis=2000,"
+        + "errorRate=0.05,throttleRate=0.1,conditionalCheckFailedRate=0.15,seed=42";
+
+    @Test
+    public void testSameSeedShouldInjectSameFaults() {
+        assertEquals(draw(PROFILE, 1000), draw(PROFILE, 1000));
+        assertNotEquals(draw(PROFILE, 1000), draw(PROFILE.replace("seed=42", "seed=43"), 1000));
+    }
+
+    @Test
+    public void testFaultsShouldFollowTheProfileRates() {
+        FaultInjector faultInjector = new FaultInjector(FaultProfile.parse(PROFILE));
+        int[] kinds = new int[Fault.Kind.values().length];
+        long[] latencies = new long[100_000];
+        for (int i = 0; i < latencies.length; i++) {
+            Fault fault = faultInjector.next();
+            kinds[fault.getKind().ordinal()]++;
+            latencies[i] = fault.getLatencyNanos();
+        }
+        Arrays.sort(latencies);
+
+        assertEquals(0.05, kinds[Fault.Kind.ERROR.ordinal()] / 100_000.0, 0.005);
+        assertEquals(0.1, kinds[Fault.Kind.THROTTLE.ordinal()] / 100_000.0, 0.005);
+        assertEquals(0.15, kinds[Fault.Kind.CONDITIONAL_CHECK_FAILED.ordinal()] / 100_000.0, 0.005);
+        assertEquals(40, TimeUnit.NANOSECONDS.toMillis(latencies[50_000]), 2);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(latencies[99_950]) > 2000);
+    }
+
+    @Test
+    public void testInvalidProfilesShouldBeRejected() {
+        assertFalse(FaultProfile.parse(null).isEnabled());
+        assertFalse(FaultProfile.parse(" ").isEnabled());
+        assertThrows(IllegalArgumentException.class, () -> FaultProfile.parse("latency=gaussian:40"));
+        assertThrows(IllegalArgumentException.class, () -> FaultProfile.parse("errorRate=1.5"));
+        assertThrows(IllegalArgumentException.class, () -> FaultProfile.parse("errorRate=0.6,throttleRate=0.6"));
+        assertThrows(IllegalArgumentException.class, () -> FaultProfile.parse("retries=3"));
+    }
+
+    @Test
+    public void testConditionalCheckFailuresShouldOnlyBeInjectedOnConditionalWrites() {
+        FaultInjectingPaymentStore store = new FaultInjectingPaymentStore(new InMemoryPaymentStore(),
+            new FaultInjector(FaultProfile.parse("conditionalCheckFailedRate=1")));
+        MerchantPayment payment = MerchantPayment.builder()
+            .newPayment()
+            .withStatus(PaymentStatus.Created.name())
+            .withMerchantId("testMerchantId")
+            .withCreationTimestampSeconds(Instant.now().getEpochSecond())
+            .build();
+
+        assertThrows(ConditionalCheckFailedException.class, () -> store.save(payment));
+        store.saveAll(List.of(payment));
+        assertNotNull(store.getMerchantPayment(payment.getPaymentId()));
+    }
+
+    @Test
+    public void testClaimsShouldOnlyGoThroughTheClaimingWrapper() {
+        FaultInjector faultInjector = new FaultInjector(FaultProfile.parse("conditionalCheckFailedRate=1"));
+        InMemoryPaymentStore memoryStore = new InMemoryPaymentStore();
+        ClaimingFaultInjectingPaymentStore store = new ClaimingFaultInjectingPaymentStore(memoryStore, faultInjector);
+        MerchantPayment payment = MerchantPayment.builder()
+            .newPayment()
+            .withStatus(PaymentStatus.Created.name())
+            .withMerchantId("testMerchantId")
+            .withCreationTimestampSeconds(Instant.now().getEpochSecond())
+            .build();
+
+        assertThrows(ConditionalCheckFailedException.class,
+            () -> store.claimMakePayment(payment, Instant.now().getEpochSecond(), 30));
+        assertNull(ClaimingPaymentStore.of(new FaultInjectingPaymentStore(memoryStore, faultInjector)));
+    }
+
+    private static List<String> draw(String profile, int count) {
+        FaultInjector faultInjector = new FaultInjector(FaultProfile.parse(profile));
+        List<String> faults = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            faults.add(faultInjector.next().toString());
+        }
+        return faults;
+    }
+}
@@ -0,0 +1,115 @@
+package com.org.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.org.lambda.BatchCreatePaymentInput;
+import com.org.lambda.BatchCreatePaymentResponse;
+import com.org.lambda.BatchGetPaymentInput;
+import com.org.lambda.CreatePaymentResponse;
+import com.org.lambda.GetPaymentResponse;
+import com.org.lambda.MakePaymentInput;
+import com.org.lambda.MakePaymentResponse;
+import com.org.queue.MakePaymentJob;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaymentJsonTest {
+
+    private final String makePaymentBody = "{\"paymentId\":\"59c7a3dd\",\"merchantId\":\"test-merchant\",\"cardNumber\":\"1234432198761543\","
+        + "\"expiryYear\":2000,\"expiryMonth\":12,\"currency\":\"GBP\",\"amount\":50,\"cardName\":\"OmarElmohandes\","
+        + "\"billingAddress\":\"77Merenda\",\"cvv\":\"232\"}";
+
+    @Test
+    public void testReadMakePaymentInputShouldReadAllFields() throws JsonProcessingException {
+        MakePaymentInput input = PaymentJson.readMakePaymentInput(makePaymentBody);
+
+        assertEquals("59c7a3dd", input.getPaymentId());
+        assertEquals("test-merchant", input.getMerchantId());
+        assertEquals("1234432198761543", input.getCardNumber());
+        assertEquals(2000, input.getExpiryYear());
+        assertEquals(12, input.getExpiryMonth());
+        assertEquals("GBP", input.getCurrency());
+        assertEquals(50, input.getAmount());
+        assertEquals("OmarElmohandes", input.getCardName());
+        assertEquals("77Merenda", input.getBillingAddress());
+        assertEquals("232", input.getCvv());
+    }
+
+    @Test
+    public void testReadMakePaymentInputShouldRejectMissingAndUnknownFields() {
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readMakePaymentInput(makePaymentBody.replace("\"cvv\":\"232\"", "\"cv\":\"232\"")));
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readMakePaymentInput(makePaymentBody.replace(",\"cvv\":\"232\"", "")));
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readMakePaymentInput("[]"));
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readMakePaymentInput(null));
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readCreatePaymentInput("{}"));
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readCreatePaymentInput("{\"merchantId\":"));
+    }
+
+    @Test
+    public void testWriteShouldSkipNullFields() {
+        assertEquals("{\"paymentId\":\"p1\",\"status\":\"Created\",\"creationTimestampSeconds\":1641845321}",
+            PaymentJson.write(new CreatePaymentResponse("p1", "Created", 1641845321L)));
+        assertEquals("{\"paymentStatus\":\"Accepted\"}", PaymentJson.write(new MakePaymentResponse("Accepted", null, null)));
+
+        GetPaymentResponse response = new GetPaymentResponse();
+        response.setFailCode(404);
+        response.setFailReason("PaymentId is expired or not found");
+        assertEquals("{\"failCode\":404,\"failReason\":\"PaymentId is expired or not found\"}", PaymentJson.write(response));
+
+        assertEquals("{\"errorMessage\":\"a \\\"quoted\\\" message\"}", PaymentJson.writeError("a \"quoted\" message"));
+    }
+
+    @Test
+    public void testMakePaymentJobShouldRoundTrip() throws JsonProcessingException {
+        String body = PaymentJson.write(new MakePaymentJob("p1", "test-merchant", "Created", 2));
+        assertEquals("{\"paymentId\":\"p1\",\"merchantId\":\"test-merchant\",\"previousStatus\":\"Created\",\"attempt\":2}", body);
+
+        MakePaymentJob job = PaymentJson.readMakePaymentJob(body);
+        assertEquals("p1", job.getPaymentId());
+        assertEquals("test-merchant", job.getMerchantId());
+        assertEquals("Created", job.getPreviousStatus());
+        assertEquals(2, job.getAttempt());
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readMakePaymentJob("{\"paymentId\":\"p1\"}"));
+    }
+
+    @Test
+    public void testBatchCreatePaymentShouldReadInputAndWriteAllPayments() throws JsonProcessingException {
+        BatchCreatePaymentInput input = PaymentJson.readBatchCreatePaymentInput("{\"merchantId\":\"test-merchant\",\"count\":3}");
+        assertEquals("test-merchant", input.getMerchantId());
+        assertEquals(3, input.getCount());
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readBatchCreatePaymentInput("{\"merchantId\":\"test-merchant\"}"));
+
+        BatchCreatePaymentResponse response = new BatchCreatePaymentResponse(List.of(
+            new CreatePaymentResponse("p1", "Created", 1641845321L),
+            new CreatePaymentResponse("p2", "Created", 1641845321L)));
+        assertEquals("{\"payments\":[{\"paymentId\":\"p1\",\"status\":\"Created\",\"creationTimestampSeconds\":1641845321},"
+            + "{\"paymentId\":\"p2\",\"status\":\"Created\",\"creationTimestampSeconds\":1641845321}]}", PaymentJson.write(response));
+    }
+
+    @Test
+    public void testBatchGetPaymentShouldReadInputAndWriteRenderedPayments() throws IOException {
+        BatchGetPaymentInput input = PaymentJson.readBatchGetPaymentInput("{\"payments\":[{\"merchantId\":\"m1\",\"paymentId\":\"p1\"},"
+            + "{\"paymentId\":\"p2\",\"merchantId\":\"m2\"}]}", 2);
+        assertEquals(2, input.getPayments().size());
+        assertEquals("m2", input.getPayments().get(1).getMerchantId());
+        assertEquals("p2", input.getPayments().get(1).getPaymentId());
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readBatchGetPaymentInput("{\"payments\":[{\"merchantId\":\"m1\","
+            + "\"paymentId\":\"p1\"},{\"merchantId\":\"m1\",\"paymentId\":\"p2\"}]}", 1));
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readBatchGetPaymentInput("{\"payments\":[{\"merchantId\":\"m1\"}]}", 2));
+        assertThrows(JsonProcessingException.class, () -> PaymentJson.readBatchGetPaymentInput("{\"payments\":[\"p1\"]}", 2));
+
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = PaymentJson.factory().createGenerator(writer)) {
+            generator.writeStartArray();
+            PaymentJson.writeRenderedPayment(generator, "p1", "{\"status\":\"Created\"}");
+            PaymentJson.writeRenderedPayment(generator, "p2", "{\"failCode\":404}");
+            generator.writeEndArray();
+        }
+        assertEquals("[{\"paymentId\":\"p1\",\"status\":\"Created\"},{\"paymentId\":\"p2\",\"failCode\":404}]", writer.toString());
+    }
+}
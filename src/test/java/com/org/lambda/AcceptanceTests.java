@@ -6,16 +6,49 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.local.embedded.DynamoDBEmbedded;
 import com.amazonaws.services.dynamodbv2.local.shared.access.AmazonDynamoDBLocal;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.org.bank.ExecutorBankConnector;
+import com.org.dynamodb.BatchReader;
+import com.org.dynamodb.BatchWriter;
 import com.org.dynamodb.DynamoDBClient;
+import com.org.dynamodb.DynamoDBItemClient;
+import com.org.dynamodb.ItemFormatBackfill;
+import com.org.dynamodb.MerchantPaymentCodec;
+import com.org.dynamodb.MerchantShards;
+import com.org.dynamodb.ShardedMerchantIndex;
 import com.org.payments.MerchantPayment;
 import com.org.payments.PaymentStatus;
+import com.org.store.InMemoryPaymentStore;
+import com.org.store.PaymentCursor;
+import com.org.store.PaymentListQuery;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,6 +59,16 @@ public class AcceptanceTests {
     private static CreatePaymentHandler createPaymentHandler;
     private static GetPaymentHandler getPaymentHandler;
     private static MakePaymentHandler makePaymentHandler;
+    private static MakePaymentHandler claimingMakePaymentHandler;
+    private static BatchCreatePaymentHandler batchCreatePaymentHandler;
+    private static BatchCreatePaymentHandler itemClientBatchCreatePaymentHandler;
+    private static GetPaymentHandler itemClientGetPaymentHandler;
+    private static ListPaymentsHandler listPaymentsHandler;
+    private static ListPaymentsHandler itemClientListPaymentsHandler;
+    private static DynamoDBItemClient itemClient;
+    private static DynamoDBItemClient compactItemClient;
+    private static AmazonDynamoDB client;
+    private static String tableName;
     private final String merchantId = "testMerchantId";
 
     @BeforeAll
@@ -33,9 +76,9 @@ public class AcceptanceTests {
         System.setProperty("sqlite4java.library.path", "native-libs");
 
         AmazonDynamoDBLocal amazonDynamoDBLocal = DynamoDBEmbedded.create();
-        AmazonDynamoDB client = amazonDynamoDBLocal.amazonDynamoDB();
+        client = amazonDynamoDBLocal.amazonDynamoDB();
         dynamoDB = new DynamoDB(client);
-        String tableName = "MerchantPaymentTestTable";
+        tableName = "MerchantPaymentTestTable";
 
         DynamoDBMapperConfig mapperConfig = DynamoDBMapperConfig.builder()
             .withTableNameOverride(DynamoDBMapperConfig.TableNameOverride.withTableNameReplacement(tableName))
@@ -44,11 +87,34 @@ public class AcceptanceTests {
 
         CreateTableRequest request = mapper.generateCreateTableRequest(MerchantPayment.class);
         request.withProvisionedThroughput(new ProvisionedThroughput(10L, 10L));
+        for (GlobalSecondaryIndex index : request.getGlobalSecondaryIndexes()) {
+            index.withProvisionedThroughput(new ProvisionedThroughput(10L, 10L))
+                .withProjection(new Projection()
+                    .withProjectionType(ProjectionType.INCLUDE)
+                    .withNonKeyAttributes(MerchantPaymentCodec.MERCHANT_INDEX_ATTRIBUTES));
+        }
+        request.getAttributeDefinitions().add(new AttributeDefinition(MerchantPaymentCodec.MERCHANT_SHARD, ScalarAttributeType.S));
+        request.getGlobalSecondaryIndexes().add(new GlobalSecondaryIndex()
+            .withIndexName(MerchantPaymentCodec.MERCHANT_SHARD_INDEX)
+            .withKeySchema(new KeySchemaElement(MerchantPaymentCodec.MERCHANT_SHARD, KeyType.HASH),
+                new KeySchemaElement(MerchantPaymentCodec.CREATION_TIMESTAMP_SECONDS, KeyType.RANGE))
+            .withProvisionedThroughput(new ProvisionedThroughput(10L, 10L))
+            .withProjection(new Projection()
+                .withProjectionType(ProjectionType.INCLUDE)
+                .withNonKeyAttributes(MerchantPaymentCodec.MERCHANT_SHARD_INDEX_ATTRIBUTES)));
         dynamoDB.createTable(request);
 
         createPaymentHandler = new CreatePaymentHandler(new DynamoDBClient(mapper));
         getPaymentHandler = new GetPaymentHandler(new DynamoDBClient(mapper));
         makePaymentHandler = new MakePaymentHandler(new DynamoDBClient(mapper));
+        itemClient = new DynamoDBItemClient(client, tableName);
+        compactItemClient = new DynamoDBItemClient(client, tableName, BatchWriter.sequential(client), BatchReader.sequential(client), true);
+        claimingMakePaymentHandler = new MakePaymentHandler(itemClient, true);
+        batchCreatePaymentHandler = new BatchCreatePaymentHandler(new DynamoDBClient(mapper));
+        itemClientBatchCreatePaymentHandler = new BatchCreatePaymentHandler(itemClient);
+        itemClientGetPaymentHandler = new GetPaymentHandler(itemClient);
+        listPaymentsHandler = new ListPaymentsHandler(new DynamoDBClient(mapper));
+        itemClientListPaymentsHandler = new ListPaymentsHandler(itemClient);
     }
 
     @Test
@@ -76,6 +142,36 @@ public class AcceptanceTests {
         assertEquals(10, paymentIds.size());
     }
 
+    @Test
+    public void testBatchCreatePaymentShouldStoreAllPayments() {
+        for (BatchCreatePaymentHandler handler : new BatchCreatePaymentHandler[]{batchCreatePaymentHandler, itemClientBatchCreatePaymentHandler}) {
+            BatchCreatePaymentResponse response = handler.createPayments(new BatchCreatePaymentInput(merchantId, 60));
+
+            Set<String> paymentIds = new HashSet<>();
+            for (CreatePaymentResponse payment : response.getPayments()) {
+                MerchantPayment storedMerchantPayment = mapper.load(MerchantPayment.class, payment.getPaymentId());
+                assertEquals(PaymentStatus.Created.name(), storedMerchantPayment.getStatus());
+                assertEquals(merchantId, storedMerchantPayment.getMerchantId());
+                assertEquals(payment.getCreationTimestampSeconds(), storedMerchantPayment.getCreationTimestampSeconds());
+                assertNotNull(storedMerchantPayment.getExpiryTimestampSeconds());
+                assertNotNull(storedMerchantPayment.getVersion());
+                paymentIds.add(payment.getPaymentId());
+            }
+            assertEquals(60, paymentIds.size());
+        }
+    }
+
+    @Test
+    public void testBatchCreatedPaymentShouldBePayable() {
+        BatchCreatePaymentResponse response = itemClientBatchCreatePaymentHandler.createPayments(new BatchCreatePaymentInput(merchantId, 2));
+
+        MakePaymentInput makePaymentInput = createMakePaymentInput();
+        makePaymentInput.setPaymentId(response.getPayments().get(1).getPaymentId());
+        MakePaymentResponse makePaymentResponse = makePaymentHandler.processMakePayment(makePaymentInput);
+
+        assertEquals(PaymentStatus.Accepted.name(), makePaymentResponse.getPaymentStatus());
+    }
+
     @Test
     public void testCreatePaymentThenGetPaymentShouldReturnSameData() {
         CreatePaymentInput createPaymentInput = new CreatePaymentInput(merchantId);
@@ -199,6 +295,92 @@ public class AcceptanceTests {
         assertEquals(2, storedPayment.getVersion());
     }
 
+    @Test
+    public void testMakePaymentShouldGiveUpOnASlowBankAndKeepThePaymentPayable() {
+        CountDownLatch bankHangs = new CountDownLatch(1);
+        ExecutorBankConnector slowBank = new ExecutorBankConnector(ExecutorBankConnector.newExecutor(1, 1), 1, 0) {
+            @Override
+            protected PaymentStatus callBank(MerchantPayment payment) {
+                try {
+                    bankHangs.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("Bank call cancelled");
+                }
+                return PaymentStatus.Accepted;
+            }
+        };
+        DynamoDBClient store = new DynamoDBClient(mapper);
+
+        for (boolean claimPayments : new boolean[]{false, true}) {
+            MakePaymentHandler handler = new MakePaymentHandler(claimPayments ? itemClient : store, slowBank, claimPayments, 100);
+            CreatePaymentResponse createPaymentResponse = createPaymentHandler.createPayment(new CreatePaymentInput(merchantId));
+            MakePaymentInput makePaymentInput = createMakePaymentInput();
+            makePaymentInput.setPaymentId(createPaymentResponse.getPaymentId());
+            Long expiry = store.getMerchantPayment(createPaymentResponse.getPaymentId()).getExpiryTimestampSeconds();
+            assertNotNull(expiry);
+
+            MakePaymentResponse makePaymentResponse = handler.processMakePayment(makePaymentInput);
+
+            assertEquals(504, makePaymentResponse.getFailCode());
+            assertEquals(PaymentStatus.Created.name(), makePaymentResponse.getPaymentStatus());
+            MerchantPayment handedBack = store.getMerchantPayment(createPaymentResponse.getPaymentId());
+            assertEquals(PaymentStatus.Created.name(), handedBack.getStatus());
+            assertEquals(expiry, handedBack.getExpiryTimestampSeconds());
+            assertNull(handedBack.getCardNumber());
+            assertNull(handedBack.getAmount());
+            assertEquals(PaymentStatus.Accepted.name(), makePaymentHandler.processMakePayment(makePaymentInput).getPaymentStatus());
+        }
+        assertEquals(2, slowBank.getStats().getTimedOut());
+    }
+
+    @Test
+    public void testConcurrentDuplicateMakePaymentsShouldShareOneExecution() throws Exception {
+        CountDownLatch bankCalled = new CountDownLatch(1);
+        CountDownLatch bankAnswers = new CountDownLatch(1);
+        AtomicInteger bankCalls = new AtomicInteger();
+        ExecutorBankConnector gatedBank = new ExecutorBankConnector(ExecutorBankConnector.newExecutor(2, 2), 1, 0) {
+            @Override
+            protected PaymentStatus callBank(MerchantPayment payment) {
+                bankCalls.incrementAndGet();
+                bankCalled.countDown();
+                try {
+                    bankAnswers.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("Bank call cancelled");
+                }
+                return PaymentStatus.Accepted;
+            }
+        };
+        MakePaymentHandler handler = new MakePaymentHandler(new DynamoDBClient(mapper), gatedBank, false, 5_000);
+        CreatePaymentResponse createPaymentResponse = createPaymentHandler.createPayment(new CreatePaymentInput(merchantId));
+        MakePaymentInput makePaymentInput = createMakePaymentInput();
+        makePaymentInput.setPaymentId(createPaymentResponse.getPaymentId());
+
+        ExecutorService clients = Executors.newFixedThreadPool(3);
+        List<Future<MakePaymentResponse>> responses = new ArrayList<>();
+        responses.add(clients.submit(() -> handler.makePayment(makePaymentInput)));
+        bankCalled.await();
+        for (int i = 0; i < 2; i++) {
+            MakePaymentInput retry = createMakePaymentInput();
+            retry.setPaymentId(createPaymentResponse.getPaymentId());
+            responses.add(clients.submit(() -> handler.makePayment(retry)));
+        }
+        while (handler.getSingleFlight().getCoalesced() < 2) {
+            Thread.sleep(1);
+        }
+        bankAnswers.countDown();
+
+        for (Future<MakePaymentResponse> response : responses) {
+            assertEquals(PaymentStatus.Accepted.name(), response.get(10, TimeUnit.SECONDS).getPaymentStatus());
+            assertNull(response.get().getFailCode());
+        }
+        clients.shutdown();
+        assertEquals(1, bankCalls.get());
+        assertEquals(1, handler.getSingleFlight().getExecuted());
+        // CreatePayment and the one MakePayment write.
+        assertEquals(2, mapper.load(MerchantPayment.class, createPaymentResponse.getPaymentId()).getVersion());
+    }
+
     @Test
     public void testMakePaymentToBeDeclined() {
         CreatePaymentInput createPaymentInput = new CreatePaymentInput(merchantId);
@@ -246,6 +428,381 @@ public class AcceptanceTests {
         assertNull(response1.getFailReason());
     }
 
+    @Test
+    public void testClaimingMakePaymentShouldSettlePaymentAndRejectReplays() {
+        CreatePaymentInput createPaymentInput = new CreatePaymentInput(merchantId);
+        CreatePaymentResponse createPaymentResponse = createPaymentHandler.createPayment(createPaymentInput);
+
+        MakePaymentInput makePaymentInput = createMakePaymentInput();
+        makePaymentInput.setPaymentId(createPaymentResponse.getPaymentId());
+
+        MakePaymentResponse response1 = claimingMakePaymentHandler.processMakePayment(makePaymentInput);
+        MakePaymentResponse response2 = claimingMakePaymentHandler.processMakePayment(makePaymentInput);
+        MerchantPayment storedMerchantPayment = mapper.load(MerchantPayment.class, createPaymentResponse.getPaymentId());
+
+        assertEquals(PaymentStatus.Accepted.name(), response1.getPaymentStatus());
+        assertEquals(PaymentStatus.Accepted.name(), response2.getPaymentStatus());
+        assertNull(response2.getFailCode());
+        assertEquals(PaymentStatus.Accepted.name(), storedMerchantPayment.getStatus());
+        assertEquals(3L, storedMerchantPayment.getVersion());
+        assertEquals(makePaymentInput.getCardNumber(), storedMerchantPayment.getCardNumber());
+        assertNull(storedMerchantPayment.getExpiryTimestampSeconds());
+        assertNull(storedMerchantPayment.getClaimExpiryTimestampSeconds());
+    }
+
+    @Test
+    public void testCompactItemsShouldBeClaimedListedAndReadInBothFormats() throws JsonProcessingException {
+        String compactMerchantId = "compactMerchant-" + Instant.now().toEpochMilli();
+        CreatePaymentResponse createPaymentResponse = createPaymentHandler.createPayment(new CreatePaymentInput(compactMerchantId));
+        MakePaymentInput makePaymentInput = createMakePaymentInput();
+        makePaymentInput.setMerchantId(compactMerchantId);
+        makePaymentInput.setPaymentId(createPaymentResponse.getPaymentId());
+
+        // Created in the original format by the mapper, claimed and completed by the compact client.
+        MakePaymentResponse response = new MakePaymentHandler(compactItemClient, true).processMakePayment(makePaymentInput);
+        Map<String, AttributeValue> item = storedItem(createPaymentResponse.getPaymentId());
+        MerchantPayment stored = itemClient.getMerchantPayment(createPaymentResponse.getPaymentId());
+
+        assertEquals(PaymentStatus.Accepted.name(), response.getPaymentStatus());
+        assertTrue(new MerchantPaymentCodec(true).isInFormat(item));
+        assertEquals(Integer.toString(PaymentStatus.Accepted.getCode()), item.get(MerchantPaymentCodec.STATUS).getN());
+        assertEquals(PaymentStatus.Accepted.name(), stored.getStatus());
+        assertEquals(makePaymentInput.getCardNumber(), stored.getCardNumber());
+        assertEquals(makePaymentInput.getBillingAddress(), stored.getBillingAddress());
+        assertEquals(3L, stored.getVersion());
+        assertNull(stored.getExpiryTimestampSeconds());
+        assertNull(stored.getClaimExpiryTimestampSeconds());
+
+        JsonNode page = new ObjectMapper().readTree(new ListPaymentsHandler(compactItemClient).listPayments(
+            new PaymentListQuery(compactMerchantId, 0, Long.MAX_VALUE, PaymentStatus.Accepted.name(), 10, null)));
+        assertEquals(1, page.get("payments").size());
+        assertEquals(50, page.get("payments").get(0).get("amount").asInt());
+        assertEquals("GBP", page.get("payments").get(0).get("currency").asText());
+
+        // Back to the original format on the next write.
+        stored.setStatus(PaymentStatus.Declined.name());
+        itemClient.save(stored);
+        assertTrue(new MerchantPaymentCodec().isInFormat(storedItem(createPaymentResponse.getPaymentId())));
+        assertEquals(PaymentStatus.Declined.name(), mapper.load(MerchantPayment.class, createPaymentResponse.getPaymentId()).getStatus());
+    }
+
+    @Test
+    public void testBackfillShouldRewriteItemsCompactKeepingTheirVersion() throws Exception {
+        CreatePaymentResponse createPaymentResponse = createPaymentHandler.createPayment(new CreatePaymentInput(merchantId));
+        MakePaymentInput makePaymentInput = createMakePaymentInput();
+        makePaymentInput.setPaymentId(createPaymentResponse.getPaymentId());
+        makePaymentHandler.processMakePayment(makePaymentInput);
+        MerchantPayment before = mapper.load(MerchantPayment.class, createPaymentResponse.getPaymentId());
+
+        ItemFormatBackfill dryRun = new ItemFormatBackfill(client, tableName, new MerchantPaymentCodec(true), 4, 10_000, true);
+        dryRun.run();
+        assertTrue(dryRun.getRewritten() >= 1);
+        assertTrue(new MerchantPaymentCodec().isInFormat(storedItem(createPaymentResponse.getPaymentId())));
+
+        ItemFormatBackfill backfill = new ItemFormatBackfill(client, tableName, new MerchantPaymentCodec(true), 4, 10_000, false);
+        backfill.run();
+        Map<String, AttributeValue> item = storedItem(createPaymentResponse.getPaymentId());
+
+        assertTrue(new MerchantPaymentCodec(true).isInFormat(item));
+        assertEquals(backfill.getScanned(), dryRun.getScanned());
+        assertEquals(0, backfill.getConflicts());
+        assertEquals(before.toString(), itemClient.getMerchantPayment(createPaymentResponse.getPaymentId()).toString());
+        assertEquals(before.getVersion(), compactItemClient.getMerchantPayment(createPaymentResponse.getPaymentId()).getVersion());
+
+        ItemFormatBackfill again = new ItemFormatBackfill(client, tableName, new MerchantPaymentCodec(true), 4, 10_000, false);
+        again.run();
+        assertEquals(0, again.getRewritten());
+    }
+
+    @Test
+    public void testClaimingMakePaymentToReturnPendingAndRetryThenSucceed() {
+        CreatePaymentInput createPaymentInput = new CreatePaymentInput(merchantId);
+        CreatePaymentResponse createPaymentResponse = createPaymentHandler.createPayment(createPaymentInput);
+
+        MakePaymentInput makePaymentInput = createMakePaymentInput();
+        makePaymentInput.setPaymentId(createPaymentResponse.getPaymentId());
+        makePaymentInput.setAmount(24);
+
+        MakePaymentResponse response1 = claimingMakePaymentHandler.processMakePayment(makePaymentInput);
+        MakePaymentResponse response2 = claimingMakePaymentHandler.processMakePayment(makePaymentInput);
+        assertEquals(PaymentStatus.Pending.name(), response1.getPaymentStatus());
+        assertEquals(PaymentStatus.Accepted.name(), response2.getPaymentStatus());
+    }
+
+    @Test
+    public void testClaimingMakePaymentWhileClaimedShouldReturnProcessing() {
+        CreatePaymentInput createPaymentInput = new CreatePaymentInput(merchantId);
+        CreatePaymentResponse createPaymentResponse = createPaymentHandler.createPayment(createPaymentInput);
+
+        MakePaymentInput makePaymentInput = createMakePaymentInput();
+        makePaymentInput.setPaymentId(createPaymentResponse.getPaymentId());
+        MerchantPayment claim = MerchantPayment.builder().withMakePaymentInput(makePaymentInput).build();
+        itemClient.claimMakePayment(claim, Instant.now().getEpochSecond(), 60);
+
+        MakePaymentResponse response = claimingMakePaymentHandler.processMakePayment(makePaymentInput);
+        assertEquals(PaymentStatus.Processing.name(), response.getPaymentStatus());
+        assertEquals(409, response.getFailCode());
+    }
+
+    @Test
+    public void testMakePaymentOfAClaimedPaymentShouldReturnProcessing() {
+        CreatePaymentInput createPaymentInput = new CreatePaymentInput(merchantId);
+        CreatePaymentResponse createPaymentResponse = createPaymentHandler.createPayment(createPaymentInput);
+
+        MakePaymentInput makePaymentInput = createMakePaymentInput();
+        makePaymentInput.setPaymentId(createPaymentResponse.getPaymentId());
+        MerchantPayment claim = MerchantPayment.builder().withMakePaymentInput(makePaymentInput).build();
+        itemClient.claimMakePayment(claim, Instant.now().getEpochSecond(), 60);
+
+        MakePaymentResponse response = makePaymentHandler.processMakePayment(makePaymentInput);
+        assertEquals(PaymentStatus.Processing.name(), response.getPaymentStatus());
+        assertEquals(409, response.getFailCode());
+    }
+
+    @Test
+    public void testClaimingMakePaymentWithWrongMerchantOrPaymentIdShouldFail() {
+        CreatePaymentInput createPaymentInput = new CreatePaymentInput(merchantId);
+        CreatePaymentResponse createPaymentResponse = createPaymentHandler.createPayment(createPaymentInput);
+
+        MakePaymentInput makePaymentInput = createMakePaymentInput();
+        makePaymentInput.setPaymentId(createPaymentResponse.getPaymentId());
+        makePaymentInput.setMerchantId("merchant2");
+        MakePaymentResponse response1 = claimingMakePaymentHandler.processMakePayment(makePaymentInput);
+
+        makePaymentInput.setPaymentId("unknown-payment-id");
+        MakePaymentResponse response2 = claimingMakePaymentHandler.processMakePayment(makePaymentInput);
+
+        assertEquals(PaymentStatus.NotAuthorised.name(), response1.getPaymentStatus());
+        assertEquals(401, response1.getFailCode());
+        assertEquals(PaymentStatus.NotFound.name(), response2.getPaymentStatus());
+        assertEquals(404, response2.getFailCode());
+    }
+
+    @Test
+    public void testBatchGetPaymentShouldReturnEachPaymentInOrderWithFailCodes() throws JsonProcessingException {
+        for (GetPaymentHandler handler : new GetPaymentHandler[]{getPaymentHandler, itemClientGetPaymentHandler}) {
+            List<CreatePaymentResponse> created = itemClientBatchCreatePaymentHandler
+                .createPayments(new BatchCreatePaymentInput(merchantId, 150)).getPayments();
+            MakePaymentInput makePaymentInput = createMakePaymentInput();
+            makePaymentInput.setPaymentId(created.get(0).getPaymentId());
+            makePaymentHandler.processMakePayment(makePaymentInput);
+
+            List<GetPaymentInput> inputs = new ArrayList<>();
+            for (CreatePaymentResponse payment : created) {
+                inputs.add(new GetPaymentInput(merchantId, payment.getPaymentId()));
+            }
+            inputs.add(new GetPaymentInput("merchant2", created.get(1).getPaymentId()));
+            inputs.add(new GetPaymentInput(merchantId, "unknown-payment-id"));
+
+            JsonNode payments = new ObjectMapper().readTree(handler.renderPayments(inputs));
+
+            assertEquals(152, payments.size());
+            assertEquals(created.get(0).getPaymentId(), payments.get(0).get("paymentId").asText());
+            assertEquals(PaymentStatus.Accepted.name(), payments.get(0).get("status").asText());
+            assertEquals("************2002", payments.get(0).get("cardNumber").asText());
+            assertEquals(created.get(149).getPaymentId(), payments.get(149).get("paymentId").asText());
+            assertEquals(PaymentStatus.Created.name(), payments.get(149).get("status").asText());
+            assertEquals(401, payments.get(150).get("failCode").asInt());
+            assertEquals("unknown-payment-id", payments.get(151).get("paymentId").asText());
+            assertEquals(404, payments.get(151).get("failCode").asInt());
+        }
+    }
+
+    @Test
+    public void testListPaymentsShouldPageThroughMerchantPaymentsNewestFirst() throws JsonProcessingException {
+        for (ListPaymentsHandler handler : new ListPaymentsHandler[]{listPaymentsHandler, itemClientListPaymentsHandler}) {
+            String listedMerchantId = "listMerchant-" + Instant.now().toEpochMilli();
+            List<CreatePaymentResponse> created = itemClientBatchCreatePaymentHandler
+                .createPayments(new BatchCreatePaymentInput(listedMerchantId, 25)).getPayments();
+            long createdAt = created.get(0).getCreationTimestampSeconds();
+
+            Set<String> listed = new HashSet<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                PaymentListQuery query = new PaymentListQuery(listedMerchantId, createdAt, createdAt, null, 10,
+                    cursor == null ? null : PaymentCursor.decode(cursor));
+                JsonNode page = new ObjectMapper().readTree(handler.listPayments(query));
+                for (JsonNode payment : page.get("payments")) {
+                    assertEquals(PaymentStatus.Created.name(), payment.get("status").asText());
+                    assertEquals(createdAt, payment.get("creationTimestampSeconds").asLong());
+                    listed.add(payment.get("paymentId").asText());
+                }
+                cursor = page.has("nextCursor") ? page.get("nextCursor").asText() : null;
+                pages++;
+            } while (cursor != null);
+
+            assertEquals(25, listed.size());
+            assertTrue(pages >= 3);
+
+            JsonNode otherRange = new ObjectMapper().readTree(handler.listPayments(
+                new PaymentListQuery(listedMerchantId, createdAt + 1, Long.MAX_VALUE, null, 10, null)));
+            assertEquals(0, otherRange.get("payments").size());
+        }
+    }
+
+    @Test
+    public void testListPaymentsShouldFilterByStatus() throws JsonProcessingException {
+        for (ListPaymentsHandler handler : new ListPaymentsHandler[]{listPaymentsHandler, itemClientListPaymentsHandler}) {
+            String listedMerchantId = "listMerchant-" + Instant.now().toEpochMilli();
+            List<CreatePaymentResponse> created = itemClientBatchCreatePaymentHandler
+                .createPayments(new BatchCreatePaymentInput(listedMerchantId, 5)).getPayments();
+            MakePaymentInput makePaymentInput = createMakePaymentInput();
+            makePaymentInput.setMerchantId(listedMerchantId);
+            makePaymentInput.setPaymentId(created.get(2).getPaymentId());
+            makePaymentHandler.processMakePayment(makePaymentInput);
+
+            JsonNode page = new ObjectMapper().readTree(handler.listPayments(
+                new PaymentListQuery(listedMerchantId, 0, Long.MAX_VALUE, PaymentStatus.Accepted.name(), 10, null)));
+
+            assertEquals(1, page.get("payments").size());
+            assertEquals(created.get(2).getPaymentId(), page.get("payments").get(0).get("paymentId").asText());
+            assertEquals(50, page.get("payments").get(0).get("amount").asInt());
+            assertEquals("GBP", page.get("payments").get(0).get("currency").asText());
+            assertFalse(page.get("payments").get(0).has("cardNumber"));
+        }
+    }
+
+    @Test
+    public void testShardedListingShouldMergeShardsNewestFirstAcrossPages() throws JsonProcessingException {
+        String listedMerchantId = "shardedMerchant-" + Instant.now().toEpochMilli();
+        DynamoDBItemClient shardedItemClient = new DynamoDBItemClient(client, tableName, BatchWriter.sequential(client),
+            BatchReader.sequential(client), false,
+            ShardedMerchantIndex.sequential(client, new MerchantShards(1, Map.of(listedMerchantId, 4))));
+        ListPaymentsHandler handler = new ListPaymentsHandler(shardedItemClient);
+        Set<String> accepted = new HashSet<>();
+        Set<String> shardKeys = new HashSet<>();
+        for (int i = 0; i < 30; i++) {
+            // Three seconds only, so every shard has several payments of the same second.
+            MerchantPayment payment = MerchantPayment.builder()
+                .newPayment()
+                .withStatus(PaymentStatus.Created.name())
+                .withMerchantId(listedMerchantId)
+                .withCreationTimestampSeconds(1000L + i % 3)
+                .build();
+            if (i % 5 == 0) {
+                payment.setStatus(PaymentStatus.Accepted.name());
+                payment.setExpiryTimestampSeconds(null);
+                accepted.add(payment.getPaymentId());
+            }
+            shardedItemClient.save(payment);
+            shardKeys.add(storedItem(payment.getPaymentId()).get(MerchantPaymentCodec.MERCHANT_SHARD).getS());
+        }
+        assertEquals(4, shardKeys.size());
+
+        Set<String> listed = new HashSet<>();
+        long previous = Long.MAX_VALUE;
+        String cursor = null;
+        int pages = 0;
+        do {
+            PaymentListQuery query = new PaymentListQuery(listedMerchantId, 0, Long.MAX_VALUE, null, 7,
+                cursor == null ? null : PaymentCursor.decode(cursor));
+            JsonNode page = new ObjectMapper().readTree(handler.listPayments(query));
+            for (JsonNode payment : page.get("payments")) {
+                assertTrue(payment.get("creationTimestampSeconds").asLong() <= previous);
+                previous = payment.get("creationTimestampSeconds").asLong();
+                assertTrue(listed.add(payment.get("paymentId").asText()));
+            }
+            cursor = page.has("nextCursor") ? page.get("nextCursor").asText() : null;
+            pages++;
+        } while (cursor != null);
+        assertEquals(30, listed.size());
+        assertTrue(pages >= 5);
+
+        Set<String> listedAccepted = new HashSet<>();
+        JsonNode acceptedPage = new ObjectMapper().readTree(handler.listPayments(
+            new PaymentListQuery(listedMerchantId, 0, Long.MAX_VALUE, PaymentStatus.Accepted.name(), 10, null)));
+        acceptedPage.get("payments").forEach(payment -> listedAccepted.add(payment.get("paymentId").asText()));
+        assertEquals(accepted, listedAccepted);
+
+        assertEquals(400, handler.handle(Map.of("merchantId", listedMerchantId,
+            "cursor", new PaymentCursor(1000, "paymentId").encode())).getStatusCode());
+    }
+
+    @Test
+    public void testGetPaymentOfSettledPaymentShouldBeServedFromCache() {
+        CreatePaymentInput createPaymentInput = new CreatePaymentInput(merchantId);
+        CreatePaymentResponse createPaymentResponse = createPaymentHandler.createPayment(createPaymentInput);
+
+        MakePaymentInput makePaymentInput = createMakePaymentInput();
+        makePaymentInput.setPaymentId(createPaymentResponse.getPaymentId());
+        makePaymentHandler.processMakePayment(makePaymentInput);
+
+        long hits = getPaymentHandler.getSettledPaymentCache().getHits();
+        String first = getPaymentHandler.renderPayment(new GetPaymentInput(merchantId, createPaymentResponse.getPaymentId()));
+        String second = getPaymentHandler.renderPayment(new GetPaymentInput(merchantId, createPaymentResponse.getPaymentId()));
+        String otherMerchant = getPaymentHandler.renderPayment(new GetPaymentInput("merchant2", createPaymentResponse.getPaymentId()));
+
+        assertEquals(first, second);
+        assertEquals(hits + 2, getPaymentHandler.getSettledPaymentCache().getHits());
+        assertTrue(otherMerchant.contains("401"));
+    }
+
+    @Test
+    public void testGetPaymentWithUnknownPaymentIdShouldBeNegativelyCached() {
+        long hits = getPaymentHandler.getNotFoundPaymentCache().getHits();
+
+        String first = getPaymentHandler.renderPayment(new GetPaymentInput(merchantId, "unknown-payment-id"));
+        String second = getPaymentHandler.renderPayment(new GetPaymentInput(merchantId, "unknown-payment-id"));
+
+        assertEquals(first, second);
+        assertTrue(first.contains("404"));
+        assertEquals(hits + 1, getPaymentHandler.getNotFoundPaymentCache().getHits());
+    }
+
+    @Test
+    public void testGetPaymentMissedByAnEventuallyConsistentReadShouldNotBeNegativelyCached() {
+        // A replica that hasn't seen the create yet.
+        InMemoryPaymentStore laggingStore = new InMemoryPaymentStore() {
+            @Override
+            public MerchantPayment getMerchantPayment(String paymentId) {
+                return null;
+            }
+
+            @Override
+            public MerchantPayment getLatestMerchantPayment(String paymentId) {
+                return super.getMerchantPayment(paymentId);
+            }
+        };
+        String paymentId = new CreatePaymentHandler(laggingStore).createPayment(new CreatePaymentInput(merchantId)).getPaymentId();
+        GetPaymentHandler handler = new GetPaymentHandler(laggingStore);
+
+        String body = handler.renderPayment(new GetPaymentInput(merchantId, paymentId));
+
+        assertTrue(body.contains(PaymentStatus.Created.name()));
+        assertFalse(body.contains("404"));
+        assertNull(handler.getNotFoundPaymentCache().get(paymentId));
+    }
+
+    @Test
+    public void testBatchGetPaymentMissesShouldNotBeReadConsistentlyOrNegativelyCached() {
+        AtomicInteger consistentReads = new AtomicInteger();
+        InMemoryPaymentStore laggingStore = new InMemoryPaymentStore() {
+            @Override
+            public MerchantPayment getMerchantPayment(String paymentId) {
+                return null;
+            }
+
+            @Override
+            public MerchantPayment getLatestMerchantPayment(String paymentId) {
+                consistentReads.incrementAndGet();
+                return super.getMerchantPayment(paymentId);
+            }
+        };
+        String paymentId = new CreatePaymentHandler(laggingStore).createPayment(new CreatePaymentInput(merchantId)).getPaymentId();
+        GetPaymentHandler handler = new GetPaymentHandler(laggingStore);
+
+        handler.renderPayments(List.of(new GetPaymentInput(merchantId, paymentId), new GetPaymentInput(merchantId, "unknown")));
+
+        assertEquals(0, consistentReads.get());
+        assertNull(handler.getNotFoundPaymentCache().get(paymentId));
+        assertNull(handler.getNotFoundPaymentCache().get("unknown"));
+    }
+
+    private static Map<String, AttributeValue> storedItem(String paymentId) {
+        return client.getItem(new GetItemRequest().withTableName(tableName).withKey(MerchantPaymentCodec.key(paymentId))).getItem();
+    }
+
     private MakePaymentInput createMakePaymentInput() {
         return new MakePaymentInput("payment-id",
             merchantId,
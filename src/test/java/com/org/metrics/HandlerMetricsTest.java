@@ -0,0 +1,112 @@
+package com.org.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.org.lambda.MakePaymentHandler;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import com.org.store.InMemoryPaymentStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HandlerMetricsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testBucketsShouldCoverValuesWithinSixPercent() {
+        for (long micros = 0; micros < 10_000_000; micros += 1 + micros / 50) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(highest >= micros && highest <= micros * 1.0625 + 1, micros + " reported as " + highest);
+            assertTrue(bucket == 0 || LatencyHistogram.highestValueOf(bucket - 1) < micros);
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentilesShouldMatchTheRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10_000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(10_000, snapshot.getMaxMicros());
+        assertEquals(5_000, snapshot.getPercentileMicros(50), 5_000 * 0.0625);
+        assertEquals(9_900, snapshot.getPercentileMicros(99), 9_900 * 0.0625);
+        assertEquals(0, histogram.snapshot().getCount());
+    }
+
+    @Test
+    public void testFlushShouldWriteEmfAndReset() throws Exception {
+        HandlerMetrics metrics = new HandlerMetrics("PaymentGateway", "MakePaymentHandler");
+        assertNull(metrics.flush());
+
+        for (int i = 0; i < 100; i++) {
+            metrics.getHistogram(Stage.BankCall).recordMicros(ThreadLocalRandom.current().nextLong(1_000, 2_000));
+        }
+        metrics.countStatus(PaymentStatus.Accepted.name(), 3);
+        metrics.countFailCode(404);
+        metrics.countFailCode(418);
+
+        JsonNode line = objectMapper.readTree(metrics.flush());
+        JsonNode definition = line.get("_aws").get("CloudWatchMetrics").get(0);
+        assertEquals("PaymentGateway", definition.get("Namespace").asText());
+        assertEquals("Handler", definition.get("Dimensions").get(0).get(0).asText());
+        Set<String> names = new HashSet<>();
+        for (JsonNode metric : definition.get("Metrics")) {
+            names.add(metric.get("Name").asText());
+            assertTrue(line.has(metric.get("Name").asText()), "every metric has a value");
+        }
+        assertEquals(Set.of("BankCall.p50", "BankCall.p90", "BankCall.p99", "BankCall.max", "BankCall.count",
+            "Status.Accepted", "FailCode.404"), names);
+        assertEquals("MakePaymentHandler", line.get("Handler").asText());
+        assertEquals(100, line.get("BankCall.count").asLong());
+        assertTrue(line.get("BankCall.p50").asLong() >= 1_000 && line.get("BankCall.max").asLong() < 2_000);
+        assertEquals(3, line.get("Status.Accepted").asLong());
+
+        assertNull(metrics.flush());
+    }
+
+    @Test
+    public void testFlushShouldWriteOutcomeCounts() throws Exception {
+        HandlerMetrics metrics = new HandlerMetrics("PaymentGateway", "MakePaymentWorker");
+        metrics.countOutcome("Settled", 2);
+        metrics.countOutcome("Retry", 1);
+        metrics.countOutcome("Settled", 1);
+
+        JsonNode line = objectMapper.readTree(metrics.flush());
+        assertEquals(3, line.get("Outcome.Settled").asLong());
+        assertEquals(1, line.get("Outcome.Retry").asLong());
+        assertEquals(2, line.get("_aws").get("CloudWatchMetrics").get(0).get("Metrics").size());
+        assertNull(metrics.flush());
+    }
+
+    @Test
+    public void testHandlerShouldRecordItsStagesAndOutcomes() throws Exception {
+        InMemoryPaymentStore store = new InMemoryPaymentStore();
+        store.save(MerchantPayment.builder().newPayment().withPaymentId("payment").withMerchantId("merchant")
+            .withStatus(PaymentStatus.Created.name()).withCreationTimestampSeconds(Instant.now().getEpochSecond()).build());
+        MakePaymentHandler handler = new MakePaymentHandler(store);
+
+        handler.handle("{\"paymentId\":\"payment\",\"merchantId\":\"merchant\",\"cardNumber\":\"1234432198761543\","
+            + "\"expiryYear\":2030,\"expiryMonth\":12,\"currency\":\"GBP\",\"amount\":50,\"cardName\":\"test\","
+            + "\"billingAddress\":\"77Merenda\",\"cvv\":\"232\"}");
+        handler.handle("{\"paymentId\":\"payment\"}");
+
+        JsonNode line = objectMapper.readTree(handler.getMetrics().flush());
+        for (Stage stage : Stage.values()) {
+            assertEquals(1, line.get(stage + ".count").asLong(), stage.name());
+        }
+        assertEquals(1, line.get("Status.Accepted").asLong());
+        assertEquals(1, line.get("FailCode.400").asLong());
+    }
+}
@@ -0,0 +1,225 @@
+package com.org.outbox;
+
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.org.bank.BankSimulator;
+import com.org.lambda.MakePaymentHandler;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import com.org.ratelimit.MerchantRateLimiter;
+import com.org.store.InMemoryPaymentStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MakePaymentOutboxTest {
+
+    private final FlakyStore store = new FlakyStore();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testAppendedPaymentShouldBeSavedOnceTheStoreRecovers() throws IOException {
+        MakePaymentOutbox outbox = open(64 * 1024);
+        MerchantPayment payment = accepted(created());
+
+        store.failing = true;
+        assertTrue(outbox.append(payment));
+        assertEquals(0, outbox.drain());
+        assertEquals(1, outbox.getStats().getDepth());
+
+        store.failing = false;
+        // Past the first backoff.
+        sleep(250);
+        assertEquals(1, outbox.drain());
+
+        MerchantPayment saved = store.getMerchantPayment(payment.getPaymentId());
+        assertEquals(PaymentStatus.Accepted.name(), saved.getStatus());
+        assertEquals(50, saved.getAmount());
+        assertEquals(0, outbox.getStats().getDepth());
+        assertEquals(1, outbox.getStats().getDrained());
+    }
+
+    @Test
+    public void testPendingEntriesShouldSurviveReopeningTheJournal() throws IOException {
+        MakePaymentOutbox outbox = open(64 * 1024);
+        MerchantPayment first = accepted(created());
+        MerchantPayment second = accepted(created());
+        outbox.append(first);
+        outbox.append(second);
+        store.saveMakePayment(accepted(first));
+        String journal = new String(Files.readAllBytes(tempDir.resolve("outbox.journal")), StandardCharsets.ISO_8859_1);
+        assertTrue(journal.contains(second.getPaymentId()));
+        assertFalse(journal.contains(second.getCardNumber()));
+        assertFalse(journal.contains(second.getCardName()));
+
+        MakePaymentOutbox reopened = open(64 * 1024);
+
+        assertEquals(2, reopened.getDepth());
+        assertEquals(2, reopened.drain());
+        assertEquals(1, reopened.getStats().getDrained());
+        assertEquals(1, reopened.getStats().getSuperseded());
+        assertEquals(0, open(64 * 1024).getDepth());
+    }
+
+    @Test
+    public void testConflictShouldKeepASettledPaymentAndOverwriteAPendingOne() throws IOException {
+        MakePaymentOutbox outbox = open(64 * 1024);
+
+        MerchantPayment settled = created();
+        MerchantPayment stale = accepted(settled);
+        MerchantPayment declined = store.getMerchantPayment(settled.getPaymentId());
+        declined.setStatus(PaymentStatus.Declined.name());
+        store.saveMakePayment(declined);
+
+        MerchantPayment pending = created();
+        MerchantPayment behind = accepted(pending);
+        MerchantPayment movedOn = store.getMerchantPayment(pending.getPaymentId());
+        movedOn.setStatus(PaymentStatus.Pending.name());
+        store.saveMakePayment(movedOn);
+
+        outbox.append(stale);
+        outbox.append(behind);
+        assertEquals(1, outbox.drain());
+        sleep(250);
+        assertEquals(1, outbox.drain());
+
+        assertEquals(PaymentStatus.Declined.name(), store.getMerchantPayment(settled.getPaymentId()).getStatus());
+        assertEquals(PaymentStatus.Accepted.name(), store.getMerchantPayment(pending.getPaymentId()).getStatus());
+        assertEquals(3L, store.getMerchantPayment(pending.getPaymentId()).getVersion());
+    }
+
+    @Test
+    public void testFullJournalShouldBeCompactedAndThenRejectAppends() throws IOException {
+        MakePaymentOutbox outbox = open(2 * 1024);
+        store.failing = true;
+
+        int appended = 0;
+        while (outbox.append(accepted(created()))) {
+            appended++;
+        }
+        assertTrue(appended > 1);
+        assertEquals(1, outbox.getStats().getRejected());
+
+        store.failing = false;
+        sleep(250);
+        assertEquals(appended, outbox.drain());
+        for (int i = 0; i < appended * 3; i++) {
+            assertTrue(outbox.append(accepted(created())));
+            assertEquals(1, outbox.drain());
+        }
+        assertEquals(0, open(2 * 1024).getDepth());
+    }
+
+    @Test
+    public void testFailedClaimCompletionShouldBeSavedFromTheOutbox() throws IOException {
+        MakePaymentOutbox outbox = open(64 * 1024);
+        MakePaymentHandler handler = new MakePaymentHandler(store, new BankSimulator(), outbox,
+            MerchantRateLimiter.unlimited(), true, 5_000);
+        MerchantPayment payment = created();
+
+        store.failingCompletes = true;
+        String body = handler.handle("{\"paymentId\":\"" + payment.getPaymentId() + "\",\"merchantId\":\"testMerchantId\","
+            + "\"cardNumber\":\"1234432198761543\",\"expiryYear\":2030,\"expiryMonth\":12,\"currency\":\"GBP\","
+            + "\"amount\":50,\"cardName\":\"test\",\"billingAddress\":\"77Merenda\",\"cvv\":\"232\"}").getBody();
+        assertEquals(PaymentStatus.Accepted.name(), new ObjectMapper().readTree(body).get("paymentStatus").asText());
+        assertEquals(PaymentStatus.Processing.name(), store.getMerchantPayment(payment.getPaymentId()).getStatus());
+        assertEquals(1, outbox.getDepth());
+
+        assertEquals(1, outbox.drain());
+        MerchantPayment saved = store.getMerchantPayment(payment.getPaymentId());
+        assertEquals(PaymentStatus.Accepted.name(), saved.getStatus());
+        assertNull(saved.getClaimExpiryTimestampSeconds());
+        assertEquals("1234432198761543", saved.getCardNumber());
+    }
+
+    @Test
+    public void testBankAnswerThatCantBeSavedOrKeptShouldBeCounted() throws IOException {
+        MakePaymentHandler handler = new MakePaymentHandler(store, new BankSimulator(), null,
+            MerchantRateLimiter.unlimited(), false, 5_000);
+        MerchantPayment payment = created();
+
+        store.failing = true;
+        handler.handle("{\"paymentId\":\"" + payment.getPaymentId() + "\",\"merchantId\":\"testMerchantId\","
+            + "\"cardNumber\":\"1234432198761543\",\"expiryYear\":2030,\"expiryMonth\":12,\"currency\":\"GBP\","
+            + "\"amount\":50,\"cardName\":\"test\",\"billingAddress\":\"77Merenda\",\"cvv\":\"232\"}");
+
+        assertEquals(PaymentStatus.Created.name(), store.getMerchantPayment(payment.getPaymentId()).getStatus());
+        assertEquals(1, new ObjectMapper().readTree(handler.getMetrics().flush()).get("Outcome.Unsaved").asLong());
+    }
+
+    private MakePaymentOutbox open(int capacityBytes) throws IOException {
+        return MakePaymentOutbox.open(tempDir.resolve("outbox.journal"), capacityBytes, store);
+    }
+
+    private MerchantPayment created() {
+        boolean failing = store.failing;
+        store.failing = false;
+        MerchantPayment payment = MerchantPayment.builder()
+            .newPayment()
+            .withStatus(PaymentStatus.Created.name())
+            .withMerchantId("testMerchantId")
+            .withCreationTimestampSeconds(Instant.now().getEpochSecond())
+            .build();
+        store.save(payment);
+        store.failing = failing;
+        return payment;
+    }
+
+    /**
+     * The payment make-payment would save after the bank accepted it.
+     */
+    private static MerchantPayment accepted(MerchantPayment created) {
+        return MerchantPayment.builder()
+            .withPaymentId(created.getPaymentId())
+            .withMerchantId(created.getMerchantId())
+            .withCardNumber("2234020200202002")
+            .withCardName("testCardName")
+            .withExpiryYear(2030)
+            .withExpiryMonth(11)
+            .withCurrency("GBP")
+            .withAmount(50)
+            .withBillingAddress("23Hellenda")
+            .withStatus(PaymentStatus.Accepted.name())
+            .withCreationTimestampSeconds(created.getCreationTimestampSeconds())
+            .withVersion(1L)
+            .build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class FlakyStore extends InMemoryPaymentStore {
+        private volatile boolean failing;
+        private volatile boolean failingCompletes;
+
+        @Override
+        public void saveMakePayment(MerchantPayment payment) {
+            if (failing) {
+                throw new AmazonDynamoDBException("Service unavailable");
+            }
+            super.saveMakePayment(payment);
+        }
+
+        @Override
+        public void completeMakePayment(String paymentId, long claimedVersion, String status) {
+            if (failingCompletes) {
+                throw new AmazonDynamoDBException("Service unavailable");
+            }
+            super.completeMakePayment(paymentId, claimedVersion, status);
+        }
+    }
+}
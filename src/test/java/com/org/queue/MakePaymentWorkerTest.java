@@ -0,0 +1,176 @@
+package com.org.queue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.org.bank.BankSimulator;
+import com.org.lambda.MakePaymentHandler;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import com.org.queue.MakePaymentWorker.Outcome;
+import com.org.store.InMemoryPaymentStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MakePaymentWorkerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InMemoryPaymentStore store = new InMemoryPaymentStore();
+    private final InMemoryMakePaymentQueue queue = new InMemoryMakePaymentQueue(100);
+    private final MakePaymentHandler handler = new MakePaymentHandler(store, queue);
+
+    @AfterEach
+    public void tearDown() {
+        queue.close();
+    }
+
+    @Test
+    public void testAsyncMakePaymentShouldAnswerPendingAndSettleInTheBackground() throws Exception {
+        Map<Integer, String> expected = Map.of(50, "Accepted", 1, "Declined", 2, "InsufficientFunds", 24, "Accepted");
+        for (int amount : expected.keySet()) {
+            createPayment("payment-" + amount);
+            JsonNode response = makePayment("payment-" + amount, amount);
+            assertEquals("Pending", response.get("paymentStatus").asText());
+            assertNull(response.get("failCode"));
+            // Durable before the bank is called.
+            MerchantPayment queued = store.getMerchantPayment("payment-" + amount);
+            assertEquals("Pending", queued.getStatus());
+            assertEquals("1234432198761543", queued.getCardNumber());
+            assertNull(queued.getExpiryTimestampSeconds());
+        }
+
+        Map<Outcome, AtomicInteger> outcomes = new ConcurrentHashMap<>();
+        queue.addListener(outcome -> outcomes.computeIfAbsent(outcome, key -> new AtomicInteger()).incrementAndGet());
+        MakePaymentWorker worker = new MakePaymentWorker(store, new BankSimulator(), null, 5_000);
+        queue.start(worker, 2);
+        assertTrue(queue.awaitIdle(10_000));
+
+        for (Map.Entry<Integer, String> payment : expected.entrySet()) {
+            assertEquals(payment.getValue(), store.getMerchantPayment("payment-" + payment.getKey()).getStatus());
+        }
+        // The bank answered Pending for 24 first, and the worker resubmitted it.
+        assertEquals(4, outcomes.get(Outcome.Settled).get());
+        assertEquals(1, outcomes.get(Outcome.Resubmit).get());
+
+        // Delivered again, e.g. by SQS, it's skipped.
+        MerchantPayment settled = store.getMerchantPayment("payment-50");
+        assertEquals(Outcome.Skipped, worker.process(new MakePaymentJob("payment-50", "merchant", "Created", 0)));
+        assertEquals(settled.getVersion(), store.getMerchantPayment("payment-50").getVersion());
+        // And settled payments are answered from the store.
+        assertEquals("Accepted", makePayment("payment-50", 50).get("paymentStatus").asText());
+    }
+
+    @Test
+    public void testWorkersShouldBoundTheBankCallsInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        BankSimulator slowBank = new BankSimulator() {
+            @Override
+            public PaymentStatus authorise(MerchantPayment payment) {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return super.authorise(payment);
+            }
+        };
+        for (int i = 0; i < 30; i++) {
+            createPayment("payment-" + i);
+            assertEquals("Pending", makePayment("payment-" + i, 50).get("paymentStatus").asText());
+        }
+        queue.start(new MakePaymentWorker(store, slowBank, null, 5_000), 3);
+        assertTrue(queue.awaitIdle(10_000));
+
+        assertEquals(3, maxInFlight.get());
+        for (int i = 0; i < 30; i++) {
+            assertEquals("Accepted", store.getMerchantPayment("payment-" + i).getStatus());
+        }
+    }
+
+    @Test
+    public void testFullQueueShouldLeaveThePaymentPendingToBeMadeAgain() throws Exception {
+        InMemoryMakePaymentQueue tinyQueue = new InMemoryMakePaymentQueue(1);
+        MakePaymentHandler tinyHandler = new MakePaymentHandler(store, tinyQueue);
+        createPayment("first");
+        createPayment("second");
+        assertNull(makePayment(tinyHandler, "first", 50).get("failCode"));
+
+        JsonNode rejected = makePayment(tinyHandler, "second", 50);
+        assertEquals("Pending", rejected.get("paymentStatus").asText());
+        assertEquals(503, rejected.get("failCode").asInt());
+
+        tinyQueue.start(new MakePaymentWorker(store, new BankSimulator(), null, 5_000), 1);
+        assertTrue(tinyQueue.awaitIdle(10_000));
+        assertNull(makePayment(tinyHandler, "second", 50).get("failCode"));
+        assertTrue(tinyQueue.awaitIdle(10_000));
+        tinyQueue.close();
+
+        for (String paymentId : List.of("first", "second")) {
+            assertEquals("Accepted", store.getMerchantPayment(paymentId).getStatus());
+        }
+    }
+
+    @Test
+    public void testWorkerShouldSeeThePendingWriteThatQueuedTheJob() throws Exception {
+        Map<String, MerchantPayment> replica = new ConcurrentHashMap<>();
+        InMemoryPaymentStore laggingStore = new InMemoryPaymentStore() {
+            @Override
+            public MerchantPayment getMerchantPayment(String paymentId) {
+                // A replica that hasn't seen the Pending write yet.
+                return replica.get(paymentId);
+            }
+
+            @Override
+            public MerchantPayment getLatestMerchantPayment(String paymentId) {
+                return super.getMerchantPayment(paymentId);
+            }
+        };
+        laggingStore.save(MerchantPayment.builder().newPayment().withPaymentId("payment").withMerchantId("merchant")
+            .withStatus(PaymentStatus.Created.name()).withCreationTimestampSeconds(Instant.now().getEpochSecond()).build());
+        replica.put("payment", laggingStore.getLatestMerchantPayment("payment"));
+        List<MakePaymentJob> jobs = new CopyOnWriteArrayList<>();
+        assertEquals("Pending", makePayment(new MakePaymentHandler(laggingStore, jobs::add), "payment", 50)
+            .get("paymentStatus").asText());
+
+        MakePaymentWorker worker = new MakePaymentWorker(laggingStore, new BankSimulator(), null, 5_000);
+        assertEquals(Outcome.Settled, worker.process(jobs.get(0)));
+        assertEquals("Accepted", laggingStore.getLatestMerchantPayment("payment").getStatus());
+    }
+
+    @Test
+    public void testSqsRetriesShouldBeDelayedByTheirAttempt() {
+        MakePaymentJob job = new MakePaymentJob("payment", "merchant", PaymentStatus.Created.name(), 0);
+        assertEquals(0, SqsMakePaymentQueue.delaySeconds(job));
+        assertEquals(1, SqsMakePaymentQueue.delaySeconds(job.nextAttempt()));
+        assertEquals(2, SqsMakePaymentQueue.delaySeconds(job.nextAttempt().resubmission()));
+        assertEquals(900, SqsMakePaymentQueue.delaySeconds(new MakePaymentJob("payment", "merchant", "Pending", 40)));
+    }
+
+    private void createPayment(String paymentId) {
+        store.save(MerchantPayment.builder().newPayment().withPaymentId(paymentId).withMerchantId("merchant")
+            .withStatus(PaymentStatus.Created.name()).withCreationTimestampSeconds(Instant.now().getEpochSecond()).build());
+    }
+
+    private JsonNode makePayment(String paymentId, int amount) throws Exception {
+        return makePayment(handler, paymentId, amount);
+    }
+
+    private JsonNode makePayment(MakePaymentHandler handler, String paymentId, int amount) throws Exception {
+        String body = handler.handle("{\"paymentId\":\"" + paymentId + "\",\"merchantId\":\"merchant\","
+            + "\"cardNumber\":\"1234432198761543\",\"expiryYear\":2030,\"expiryMonth\":12,\"currency\":\"GBP\","
+            + "\"amount\":" + amount + ",\"cardName\":\"test\",\"billingAddress\":\"77Merenda\",\"cvv\":\"232\"}").getBody();
+        return objectMapper.readTree(body);
+    }
+}
@@ -0,0 +1,113 @@
+package com.org.ratelimit;
+
+import com.org.ratelimit.MerchantRateLimiter.MerchantLimit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MerchantRateLimiterTest {
+
+    @Test
+    public void testBurstShouldGoThroughThenWaitForTheRate() throws Exception {
+        MerchantRateLimiter rateLimiter = new MerchantRateLimiter(new MerchantLimit(20, 5), Map.of());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, rateLimiter.tryAcquire("merchant"));
+        }
+        long waitNanos = rateLimiter.tryAcquire("merchant");
+        assertTrue(waitNanos > 0 && waitNanos <= TimeUnit.MILLISECONDS.toNanos(50), "waits at most one interval: " + waitNanos);
+        assertEquals(1, rateLimiter.getRejectedCount("merchant"));
+
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos) + 5);
+        assertEquals(0, rateLimiter.tryAcquire("merchant"));
+    }
+
+    @Test
+    public void testMerchantsShouldHaveTheirOwnBucketsAndLimits() {
+        MerchantRateLimiter rateLimiter = new MerchantRateLimiter(new MerchantLimit(1, 1),
+            MerchantRateLimiter.parseMerchantLimits("big-merchant=1:3, small-merchant=1"));
+
+        assertEquals(0, rateLimiter.tryAcquire("merchantA"));
+        assertTrue(rateLimiter.tryAcquire("merchantA") > 0);
+        assertEquals(0, rateLimiter.tryAcquire("merchantB"));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rateLimiter.tryAcquire("big-merchant"));
+        }
+        assertTrue(rateLimiter.tryAcquire("big-merchant") > 0);
+
+        assertEquals(Map.of("merchantA", 1L, "big-merchant", 1L), rateLimiter.getRejectedCounts());
+        assertEquals(0, MerchantRateLimiter.unlimited().tryAcquire("merchantA", 1_000_000));
+    }
+
+    @Test
+    public void testBatchShouldGoThroughAndMakeTheNextRequestsPayItBack() {
+        MerchantRateLimiter rateLimiter = new MerchantRateLimiter(new MerchantLimit(10, 10), Map.of());
+        assertEquals(0, rateLimiter.tryAcquire("merchant", 50));
+        // 50 permits at 10/s are 5 seconds, less the 0.9 seconds of burst left after the first permit.
+        long waitNanos = rateLimiter.tryAcquire("merchant");
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(3_600) && waitNanos <= TimeUnit.MILLISECONDS.toNanos(4_100),
+            "waits " + waitNanos);
+    }
+
+    @Test
+    public void testConcurrentRequestsShouldNotGetMoreThanTheBurst() throws Exception {
+        MerchantRateLimiter rateLimiter = new MerchantRateLimiter(new MerchantLimit(0.001, 100), Map.of());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> allowed = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            allowed.add(executor.submit(() -> {
+                start.await();
+                int count = 0;
+                for (int i = 0; i < 1000; i++) {
+                    if (rateLimiter.tryAcquire("merchant") == 0) {
+                        count++;
+                    }
+                }
+                return count;
+            }));
+        }
+        start.countDown();
+
+        int total = 0;
+        for (Future<Integer> count : allowed) {
+            total += count.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(100, total);
+        assertEquals(8000 - 100, rateLimiter.getRejectedCount("merchant"));
+    }
+
+    @Test
+    public void testMerchantsBeyondTheCapShouldShareABucket() {
+        MerchantRateLimiter rateLimiter = new MerchantRateLimiter(new MerchantLimit(0.001, 1),
+            MerchantRateLimiter.parseMerchantLimits("big-merchant=1:3"), 2);
+        assertEquals(0, rateLimiter.tryAcquire("merchantA"));
+        assertEquals(0, rateLimiter.tryAcquire("merchantB"));
+
+        // Both buckets are still paying back, so the sweep can't make room.
+        assertEquals(0, rateLimiter.tryAcquire("made-up-1"));
+        assertTrue(rateLimiter.tryAcquire("made-up-2") > 0);
+        assertEquals(0, rateLimiter.getRejectedCount("made-up-2"));
+        assertEquals(0, rateLimiter.tryAcquire("big-merchant"));
+    }
+
+    @Test
+    public void testLimitsShouldParse() {
+        MerchantLimit limit = MerchantLimit.parse("2.5");
+        assertEquals(2.5, limit.getPermitsPerSecond());
+        assertEquals(3, limit.getBurst());
+        assertEquals(40, MerchantLimit.parse("20:40").getBurst());
+        assertThrows(IllegalArgumentException.class, () -> MerchantLimit.parse("fast"));
+        assertThrows(IllegalArgumentException.class, () -> MerchantLimit.parse("0"));
+        assertThrows(IllegalArgumentException.class, () -> MerchantRateLimiter.parseMerchantLimits("merchantA"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.org.reconcile;
+
+import com.org.bank.BankSimulator;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentRecord;
+import com.org.payments.PaymentStatus;
+import com.org.reconcile.PaymentReconciler.Outcome;
+import com.org.store.InMemoryPaymentStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaymentReconcilerTest {
+
+    private static final long LEASE_SECONDS = 30;
+
+    private final InMemoryPaymentStore store = new InMemoryPaymentStore();
+    private final long now = Instant.now().getEpochSecond();
+
+    @Test
+    public void testReportOnlyShouldLeaveMismatchesAlone() {
+        PaymentReconciler reconciler = new PaymentReconciler(store, new BankSimulator(), 5_000, false);
+        savePending("pending", 50);
+
+        assertEquals(Outcome.Mismatch, reconciler.reconcile(store.getRecord("pending"), now));
+        assertEquals("Pending", store.getMerchantPayment("pending").getStatus());
+        assertEquals(1, reconciler.getCount(Outcome.Mismatch));
+    }
+
+    @Test
+    public void testFixShouldWriteTheBanksAnswerForPaymentsThatWentToTheBank() {
+        PaymentReconciler reconciler = new PaymentReconciler(store, new BankSimulator(), 5_000, true);
+        savePending("pending", 2);
+        saveClaimed("lapsed", 1);
+        saveClaimed("claimed", 50);
+        savePayment("created", PaymentStatus.Created, 50);
+        savePayment("accepted", PaymentStatus.Accepted, 50);
+
+        long afterLease = now + LEASE_SECONDS + 1;
+        assertEquals(Outcome.Fixed, reconciler.reconcile(store.getRecord("pending"), afterLease));
+        assertEquals(Outcome.Fixed, reconciler.reconcile(store.getRecord("lapsed"), afterLease));
+        assertEquals("InsufficientFunds", store.getMerchantPayment("pending").getStatus());
+        MerchantPayment lapsed = store.getMerchantPayment("lapsed");
+        assertEquals("Declined", lapsed.getStatus());
+        assertNull(lapsed.getClaimExpiryTimestampSeconds());
+
+        // Still being made, or never went to the bank.
+        assertEquals(Outcome.Skipped, reconciler.reconcile(store.getRecord("claimed"), now));
+        assertEquals(Outcome.Skipped, reconciler.reconcile(store.getRecord("created"), afterLease));
+        assertEquals(Outcome.Skipped, reconciler.reconcile(store.getRecord("accepted"), afterLease));
+        assertEquals("Processing", store.getMerchantPayment("claimed").getStatus());
+        assertEquals(2, reconciler.getCount(Outcome.Fixed));
+        assertEquals(3, reconciler.getCount(Outcome.Skipped));
+    }
+
+    @Test
+    public void testPendingPaymentShouldBeCheckedWithoutResubmittingIt() {
+        PaymentReconciler reconciler = new PaymentReconciler(store, new BankSimulator(), 5_000, true);
+        // The bank answers Accepted when a Pending payment is made again, and Pending to the payment as first made.
+        savePending("pending", 24);
+
+        assertEquals(Outcome.Consistent, reconciler.reconcile(store.getRecord("pending"), now));
+        assertEquals("Pending", store.getMerchantPayment("pending").getStatus());
+    }
+
+    @Test
+    public void testFixShouldNotOverwriteAPaymentWrittenSinceTheScan() {
+        PaymentReconciler reconciler = new PaymentReconciler(store, new BankSimulator(), 5_000, true);
+        savePending("pending", 50);
+        PaymentRecord scanned = store.getRecord("pending");
+
+        MerchantPayment payment = store.getMerchantPayment("pending");
+        payment.setStatus(PaymentStatus.Declined.name());
+        store.saveMakePayment(payment);
+
+        assertEquals(Outcome.Superseded, reconciler.reconcile(scanned, now));
+        assertEquals("Declined", store.getMerchantPayment("pending").getStatus());
+    }
+
+    private void savePending(String paymentId, int amount) {
+        savePayment(paymentId, PaymentStatus.Created, amount);
+        MerchantPayment payment = store.getMerchantPayment(paymentId);
+        payment.setStatus(PaymentStatus.Pending.name());
+        store.saveMakePayment(payment);
+    }
+
+    private void saveClaimed(String paymentId, int amount) {
+        savePayment(paymentId, PaymentStatus.Created, amount);
+        store.claimMakePayment(store.getMerchantPayment(paymentId), now, LEASE_SECONDS);
+    }
+
+    private void savePayment(String paymentId, PaymentStatus status, int amount) {
+        store.save(MerchantPayment.builder().newPayment().withPaymentId(paymentId).withMerchantId("merchant")
+            .withCardNumber("1234432198761543").withCardName("test").withExpiryYear(2030).withExpiryMonth(12)
+            .withCurrency("GBP").withAmount(amount).withStatus(status.name())
+            .withCreationTimestampSeconds(now).build());
+    }
+}
@@ -0,0 +1,114 @@
+package com.org.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.org.aggregates.InMemoryAggregateStore;
+import com.org.lambda.BatchCreatePaymentHandler;
+import com.org.lambda.CreatePaymentHandler;
+import com.org.lambda.GetPaymentHandler;
+import com.org.lambda.ListPaymentsHandler;
+import com.org.lambda.MakePaymentHandler;
+import com.org.lambda.MerchantStatsHandler;
+import com.org.payments.PaymentStatus;
+import com.org.ratelimit.MerchantRateLimiter;
+import com.org.ratelimit.MerchantRateLimiter.MerchantLimit;
+import com.org.store.InMemoryPaymentStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GatewayServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private GatewayServer server;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        InMemoryPaymentStore store = new InMemoryPaymentStore();
+        MerchantRateLimiter rateLimiter = new MerchantRateLimiter(null, Map.of("limited-merchant", new MerchantLimit(0.1, 2)));
+        server = new GatewayServer(new InetSocketAddress("127.0.0.1", 0),
+            GatewayServer.newExecutor("fixed", 4), new CreatePaymentHandler(store, rateLimiter),
+            new BatchCreatePaymentHandler(store, rateLimiter), new MakePaymentHandler(store), new GetPaymentHandler(store, rateLimiter),
+            new ListPaymentsHandler(store, rateLimiter), new MerchantStatsHandler(new InMemoryAggregateStore(), rateLimiter));
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(1);
+    }
+
+    @Test
+    public void testCreateMakeAndGetPaymentOverHttp() throws Exception {
+        HttpResponse<String> created = post("/create-payment", "{\"merchantId\":\"test-merchant\"}");
+        assertEquals(200, created.statusCode());
+        String paymentId = objectMapper.readTree(created.body()).get("paymentId").asText();
+
+        HttpResponse<String> made = post("/make-payment", "{\"paymentId\":\"" + paymentId + "\",\"merchantId\":\"test-merchant\","
+            + "\"cardNumber\":\"1234432198761543\",\"expiryYear\":2030,\"expiryMonth\":12,\"currency\":\"GBP\",\"amount\":50,"
+            + "\"cardName\":\"test\",\"billingAddress\":\"77Merenda\",\"cvv\":\"232\"}");
+        assertEquals(200, made.statusCode());
+        assertEquals(PaymentStatus.Accepted.name(), objectMapper.readTree(made.body()).get("paymentStatus").asText());
+
+        HttpResponse<String> fetched = get("/get-payment?merchantId=test-merchant&paymentId=" + paymentId);
+        JsonNode payment = objectMapper.readTree(fetched.body());
+        assertEquals(200, fetched.statusCode());
+        assertEquals("application/json", fetched.headers().firstValue("Content-Type").orElse(null));
+        assertEquals(PaymentStatus.Accepted.name(), payment.get("status").asText());
+        assertEquals("************1543", payment.get("cardNumber").asText());
+    }
+
+    @Test
+    public void testBadRequestsShouldGetTheSameErrorsAsTheLambdas() throws Exception {
+        assertEquals(400, post("/create-payment", "{\"merchant\":\"test-merchant\"}").statusCode());
+        assertEquals(400, get("/get-payment?merchantId=test-merchant").statusCode());
+        assertEquals(405, get("/make-payment").statusCode());
+        assertEquals(404, get("/delete-payment").statusCode());
+        assertEquals(404, post("/create-payment/extra", "{}").statusCode());
+    }
+
+    @Test
+    public void testMerchantOverItsLimitShouldGet429WithRetryAfter() throws Exception {
+        assertEquals(200, post("/create-payment", "{\"merchantId\":\"limited-merchant\"}").statusCode());
+        assertEquals(200, get("/list-payments?merchantId=limited-merchant").statusCode());
+
+        HttpResponse<String> throttled = get("/get-payment?merchantId=limited-merchant&paymentId=any");
+        assertEquals(429, throttled.statusCode());
+        assertEquals("10", throttled.headers().firstValue("Retry-After").orElse(null));
+        assertEquals(429, post("/create-payments", "{\"merchantId\":\"limited-merchant\",\"count\":1}").statusCode());
+
+        // Other merchants aren't limited.
+        assertEquals(200, post("/create-payment", "{\"merchantId\":\"test-merchant\"}").statusCode());
+    }
+
+    @Test
+    public void testQueryParametersShouldBeDecodedAndRepeatedOnesJoined() {
+        assertNull(GatewayServer.queryParameters(URI.create("/get-payment")));
+        assertEquals(Map.of("merchantId", "a b&c", "status", "Accepted,Declined", "cursor", ""),
+            GatewayServer.queryParameters(URI.create("/list-payments?merchantId=a+b%26c&status=Accepted&status=Declined&cursor")));
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+}
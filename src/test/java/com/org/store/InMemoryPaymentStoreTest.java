@@ -0,0 +1,303 @@
+package com.org.store;
+
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.org.payments.MerchantPayment;
+import com.org.payments.PaymentStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryPaymentStoreTest {
+
+    private final String merchantId = "testMerchantId";
+    private final InMemoryPaymentStore store = new InMemoryPaymentStore();
+
+    @Test
+    public void testSaveShouldSetVersionAndLoadShouldReturnACopy() {
+        MerchantPayment payment = newPayment();
+
+        store.save(payment);
+
+        MerchantPayment stored = store.getMerchantPayment(payment.getPaymentId());
+        assertEquals(1L, payment.getVersion());
+        assertEquals(1L, stored.getVersion());
+        assertEquals(merchantId, stored.getMerchantId());
+        assertEquals(PaymentStatus.Created.name(), stored.getStatus());
+        assertEquals(payment.getCreationTimestampSeconds(), stored.getCreationTimestampSeconds());
+        assertNull(stored.getAmount());
+        assertNotSame(payment, stored);
+    }
+
+    @Test
+    public void testSaveWithoutVersionShouldFailIfPaymentExists() {
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+
+        payment.setVersion(null);
+
+        assertThrows(ConditionalCheckFailedException.class, () -> store.save(payment));
+    }
+
+    @Test
+    public void testSaveMakePaymentWithStaleVersionShouldFail() {
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+
+        MerchantPayment first = store.getMerchantPayment(payment.getPaymentId());
+        MerchantPayment second = store.getMerchantPayment(payment.getPaymentId());
+        first.setStatus(PaymentStatus.Accepted.name());
+        store.saveMakePayment(first);
+
+        second.setStatus(PaymentStatus.Declined.name());
+        assertThrows(ConditionalCheckFailedException.class, () -> store.saveMakePayment(second));
+        assertEquals(PaymentStatus.Accepted.name(), store.getMerchantPayment(payment.getPaymentId()).getStatus());
+        assertEquals(2L, store.getMerchantPayment(payment.getPaymentId()).getVersion());
+    }
+
+    @Test
+    public void testSaveMakePaymentShouldFailForMissingPaymentOrOtherMerchant() {
+        MerchantPayment missing = newPayment();
+        missing.setVersion(1L);
+        assertThrows(ConditionalCheckFailedException.class, () -> store.saveMakePayment(missing));
+
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+        payment.setMerchantId("merchant2");
+        assertThrows(ConditionalCheckFailedException.class, () -> store.saveMakePayment(payment));
+    }
+
+    @Test
+    public void testConcurrentWritersOnSamePaymentShouldOnlyLetOneWin() throws InterruptedException {
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+
+        AtomicInteger succeeded = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 100; i++) {
+            executor.execute(() -> {
+                MerchantPayment copy = store.getMerchantPayment(payment.getPaymentId());
+                copy.setVersion(1L);
+                copy.setStatus(PaymentStatus.Accepted.name());
+                try {
+                    store.saveMakePayment(copy);
+                    succeeded.incrementAndGet();
+                } catch (ConditionalCheckFailedException e) {
+                    // expected for all but one writer.
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, succeeded.get());
+        assertEquals(2L, store.getMerchantPayment(payment.getPaymentId()).getVersion());
+    }
+
+    @Test
+    public void testPurgeExpiredShouldOnlyRemoveExpiredPayments() {
+        MerchantPayment expired = newPayment();
+        expired.setExpiryTimestampSeconds(Instant.now().minusSeconds(60).getEpochSecond());
+        MerchantPayment alive = newPayment();
+        store.save(expired);
+        store.save(alive);
+
+        assertEquals(1, store.purgeExpired(Instant.now().getEpochSecond()));
+        assertNull(store.getMerchantPayment(expired.getPaymentId()));
+        assertNotNull(store.getMerchantPayment(alive.getPaymentId()));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testClaimShouldMovePaymentToProcessingAndReturnThePreviousPayment() {
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+        long now = Instant.now().getEpochSecond();
+
+        MerchantPayment claim = claimFor(payment);
+        MerchantPayment previous = store.claimMakePayment(claim, now, 30);
+
+        MerchantPayment stored = store.getMerchantPayment(payment.getPaymentId());
+        assertEquals(PaymentStatus.Created.name(), previous.getStatus());
+        assertEquals(2L, claim.getVersion());
+        assertEquals(PaymentStatus.Processing.name(), stored.getStatus());
+        assertEquals(now + 30, stored.getClaimExpiryTimestampSeconds());
+        assertEquals(50, stored.getAmount());
+        assertNull(stored.getExpiryTimestampSeconds());
+        assertEquals(payment.getCreationTimestampSeconds(), stored.getCreationTimestampSeconds());
+
+        store.completeMakePayment(payment.getPaymentId(), claim.getVersion(), PaymentStatus.Accepted.name());
+
+        stored = store.getMerchantPayment(payment.getPaymentId());
+        assertEquals(PaymentStatus.Accepted.name(), stored.getStatus());
+        assertEquals(3L, stored.getVersion());
+        assertNull(stored.getClaimExpiryTimestampSeconds());
+    }
+
+    @Test
+    public void testReleasedClaimShouldGetItsExpiryBackWithoutTheCardDetails() {
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+        long now = Instant.now().getEpochSecond();
+        MerchantPayment claim = claimFor(payment);
+        MerchantPayment previous = store.claimMakePayment(claim, now, 30);
+
+        store.releaseClaim(payment.getPaymentId(), claim.getVersion(), previous.getStatus(),
+            previous.getExpiryTimestampSeconds());
+
+        MerchantPayment stored = store.getMerchantPayment(payment.getPaymentId());
+        assertEquals(PaymentStatus.Created.name(), stored.getStatus());
+        assertEquals(payment.getExpiryTimestampSeconds(), stored.getExpiryTimestampSeconds());
+        assertEquals(3L, stored.getVersion());
+        assertNull(stored.getClaimExpiryTimestampSeconds());
+        assertNull(stored.getCardNumber());
+        assertNull(stored.getAmount());
+        assertThrows(ConditionalCheckFailedException.class, () -> store.releaseClaim(payment.getPaymentId(),
+            claim.getVersion(), previous.getStatus(), previous.getExpiryTimestampSeconds()));
+        store.claimMakePayment(claimFor(payment), now, 30);
+    }
+
+    @Test
+    public void testClaimShouldFailForMissingExpiredSettledOrOtherMerchantPayments() {
+        long now = Instant.now().getEpochSecond();
+        assertThrows(ConditionalCheckFailedException.class, () -> store.claimMakePayment(claimFor(newPayment()), now, 30));
+
+        MerchantPayment expired = newPayment();
+        expired.setExpiryTimestampSeconds(now - 60);
+        store.save(expired);
+        assertThrows(ConditionalCheckFailedException.class, () -> store.claimMakePayment(claimFor(expired), now, 30));
+
+        MerchantPayment settled = newPayment();
+        settled.setStatus(PaymentStatus.Declined.name());
+        store.save(settled);
+        assertThrows(ConditionalCheckFailedException.class, () -> store.claimMakePayment(claimFor(settled), now, 30));
+
+        MerchantPayment otherMerchant = newPayment();
+        store.save(otherMerchant);
+        MerchantPayment claim = claimFor(otherMerchant);
+        claim.setMerchantId("merchant2");
+        assertThrows(ConditionalCheckFailedException.class, () -> store.claimMakePayment(claim, now, 30));
+    }
+
+    @Test
+    public void testClaimShouldOnlyBeTakenOverAfterTheLeaseLapses() {
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+        long now = Instant.now().getEpochSecond();
+
+        MerchantPayment first = claimFor(payment);
+        store.claimMakePayment(first, now, 30);
+        assertThrows(ConditionalCheckFailedException.class, () -> store.claimMakePayment(claimFor(payment), now + 10, 30));
+
+        MerchantPayment second = claimFor(payment);
+        MerchantPayment previous = store.claimMakePayment(second, now + 31, 30);
+
+        assertEquals(PaymentStatus.Processing.name(), previous.getStatus());
+        assertThrows(ConditionalCheckFailedException.class,
+            () -> store.completeMakePayment(payment.getPaymentId(), first.getVersion(), PaymentStatus.Accepted.name()));
+        store.completeMakePayment(payment.getPaymentId(), second.getVersion(), PaymentStatus.Accepted.name());
+    }
+
+    @Test
+    public void testConcurrentClaimsOnSamePaymentShouldOnlyLetOneWin() throws InterruptedException {
+        MerchantPayment payment = newPayment();
+        store.save(payment);
+        long now = Instant.now().getEpochSecond();
+
+        AtomicInteger claimed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 100; i++) {
+            executor.execute(() -> {
+                try {
+                    store.claimMakePayment(claimFor(payment), now, 30);
+                    claimed.incrementAndGet();
+                } catch (ConditionalCheckFailedException e) {
+                    // expected for all but one claim.
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, claimed.get());
+    }
+
+    @Test
+    public void testListMerchantPaymentsShouldPageNewestFirstWithinTheRange() {
+        for (int i = 0; i < 5; i++) {
+            MerchantPayment payment = newPayment();
+            payment.setCreationTimestampSeconds(1000L + i);
+            store.save(payment);
+        }
+        MerchantPayment otherMerchant = newPayment();
+        otherMerchant.setMerchantId("merchant2");
+        otherMerchant.setCreationTimestampSeconds(1002L);
+        store.save(otherMerchant);
+
+        List<Long> listed = new ArrayList<>();
+        PaymentCursor next = store.listMerchantPayments(new PaymentListQuery(merchantId, 1001, 1003, null, 2, null),
+            record -> listed.add(record.getCreationTimestampSeconds()));
+        assertNotNull(next);
+        next = store.listMerchantPayments(new PaymentListQuery(merchantId, 1001, 1003, null, 2, PaymentCursor.decode(next.encode())),
+            record -> listed.add(record.getCreationTimestampSeconds()));
+
+        assertNull(next);
+        assertEquals(List.of(1003L, 1002L, 1001L), listed);
+    }
+
+    @Test
+    public void testListMerchantPaymentsShouldFilterByStatusAndSkipExpiredOrDeletedPayments() {
+        MerchantPayment accepted = newPayment();
+        accepted.setStatus(PaymentStatus.Accepted.name());
+        store.save(accepted);
+        MerchantPayment expired = newPayment();
+        expired.setExpiryTimestampSeconds(Instant.now().minusSeconds(60).getEpochSecond());
+        store.save(expired);
+        MerchantPayment deleted = newPayment();
+        store.save(deleted);
+        store.delete(deleted.getPaymentId());
+        MerchantPayment created = newPayment();
+        store.save(created);
+
+        List<String> all = new ArrayList<>();
+        store.listMerchantPayments(new PaymentListQuery(merchantId, 0, Long.MAX_VALUE, null, 10, null),
+            record -> all.add(record.getPaymentId()));
+        List<String> acceptedOnly = new ArrayList<>();
+        store.listMerchantPayments(new PaymentListQuery(merchantId, 0, Long.MAX_VALUE, PaymentStatus.Accepted.name(), 10, null),
+            record -> acceptedOnly.add(record.getPaymentId()));
+
+        assertEquals(2, all.size());
+        assertTrue(all.containsAll(List.of(accepted.getPaymentId(), created.getPaymentId())));
+        assertEquals(List.of(accepted.getPaymentId()), acceptedOnly);
+    }
+
+    private MerchantPayment claimFor(MerchantPayment payment) {
+        return MerchantPayment.builder()
+            .withPaymentId(payment.getPaymentId())
+            .withMerchantId(payment.getMerchantId())
+            .withCardNumber("2234020200202002")
+            .withCardName("testCardName")
+            .withExpiryYear(2030)
+            .withExpiryMonth(11)
+            .withCurrency("GBP")
+            .withAmount(50)
+            .withBillingAddress("23Hellenda")
+            .build();
+    }
+
+    private MerchantPayment newPayment() {
+        return MerchantPayment.builder()
+            .newPayment()
+            .withStatus(PaymentStatus.Created.name())
+            .withMerchantId(merchantId)
+            .withCreationTimestampSeconds(Instant.now().getEpochSecond())
+            .build();
+    }
+}